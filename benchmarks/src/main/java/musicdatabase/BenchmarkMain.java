@@ -0,0 +1,43 @@
+package musicdatabase;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar: runs JMH with the given command line and
+ * the GC profiler added, so every result also reports allocation per
+ * operation. Listing and help requests are passed to JMH as they are.
+ */
+public final class BenchmarkMain {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            JMH command line arguments
+     * @throws Exception
+     *             If JMH fails
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList()
+                || options.shouldListWithParams()
+                || options.shouldListProfilers()
+                || options.shouldListResultFormats()) {
+            Main.main(args);
+        } else {
+            new Runner(new OptionsBuilder().parent(options)
+                    .addProfiler(GCProfiler.class).build()).run();
+        }
+    }
+
+}
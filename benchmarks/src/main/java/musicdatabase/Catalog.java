@@ -0,0 +1,122 @@
+package musicdatabase;
+
+import java.util.Random;
+
+/**
+ * Song catalogs for the benchmarks, the same for every run of a given size.
+ * Titles are unique; about twenty songs share each artist and four each
+ * album, and lengths run from one to ten minutes, so field lookups return a
+ * realistic handful of songs rather than one or all.
+ */
+final class Catalog {
+
+    /**
+     * Seed of the generator, fixed so every kernel sees the same catalog.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Songs per artist, on average.
+     */
+    static final int SONGS_PER_ARTIST = 20;
+
+    /**
+     * Albums per artist.
+     */
+    private static final int ALBUMS_PER_ARTIST = 5;
+
+    /**
+     * Seconds in a minute.
+     */
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /**
+     * Longest length, in seconds.
+     */
+    private static final int MAX_SECONDS = 600;
+
+    /**
+     * Lengths under this many seconds past the minute get a leading zero.
+     */
+    private static final int TWO_DIGITS = 10;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Catalog() {
+    }
+
+    /**
+     * Returns {@code count} songs numbered from {@code first}; numbers at or
+     * past {@code size} give songs that are not in the catalog of
+     * {@code size}, under artists that are.
+     *
+     * @param size
+     *            The catalog size
+     * @param first
+     *            The number of the first song
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    static Song[] songs(int size, int first, int count) {
+        int artists = size / SONGS_PER_ARTIST + 1;
+        Random random = new Random(SEED + first);
+        Song[] result = new Song[count];
+        for (int i = 0; i < count; i++) {
+            int artist = random.nextInt(artists);
+            int seconds = SECONDS_PER_MINUTE
+                    + random.nextInt(MAX_SECONDS - SECONDS_PER_MINUTE);
+            String pad = "";
+            if (seconds % SECONDS_PER_MINUTE < TWO_DIGITS) {
+                pad = "0";
+            }
+            result[i] = new Song("Song " + (first + i), "Artist " + artist,
+                    "Album " + artist + "-" + random.nextInt(ALBUMS_PER_ARTIST),
+                    seconds / SECONDS_PER_MINUTE + ":" + pad
+                            + seconds % SECONDS_PER_MINUTE);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the catalog of {@code size} songs.
+     *
+     * @param size
+     *            The catalog size
+     * @return The songs
+     */
+    static Song[] songs(int size) {
+        return songs(size, 0, size);
+    }
+
+    /**
+     * Returns a new, empty database of the named kernel.
+     *
+     * @param kernel
+     *            The simple name of a kernel class
+     * @return The database
+     */
+    static MusicDatabase newDatabase(String kernel) {
+        MusicDatabase result;
+        switch (kernel) {
+            case "MusicDatabase1":
+                result = new MusicDatabase1();
+                break;
+            case "MusicDatabase2":
+                result = new MusicDatabase2();
+                break;
+            case "MusicDatabase3":
+                result = new MusicDatabase3();
+                break;
+            case "MusicDatabase4":
+                result = new MusicDatabase4();
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "unknown kernel " + kernel);
+        }
+        return result;
+    }
+
+}
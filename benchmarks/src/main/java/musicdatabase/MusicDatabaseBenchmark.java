@@ -0,0 +1,469 @@
+package musicdatabase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the {@code MusicDatabase} kernel and secondary methods, for
+ * every kernel and catalog size.
+ *
+ * <p>
+ * Queries, iteration, {@code sort}, and file I/O run against one loaded
+ * database in throughput and sample-time modes, so both operations per
+ * second and latency percentiles are reported. Methods that add or remove
+ * songs would change the catalog under measurement, so each of their
+ * iterations is a single shot against a fresh copy of the loaded database,
+ * timing a fixed batch of calls.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class MusicDatabaseBenchmark {
+
+    /**
+     * Number of songs and values queries cycle through; a power of two.
+     */
+    private static final int PROBES = 1024;
+
+    /**
+     * Songs added per shot of {@code addEntry}.
+     */
+    private static final int ADDS = 1000;
+
+    /**
+     * Artists removed per shot of {@code removeEntries} and {@code split};
+     * the smallest catalog has a few more than this.
+     */
+    private static final int REMOVALS = 50;
+
+    /**
+     * Shots per measurement of the batched benchmarks.
+     */
+    private static final int SHOTS = 20;
+
+    /**
+     * A loaded database.
+     */
+    @State(Scope.Benchmark)
+    public static class Loaded {
+
+        /**
+         * Number of songs.
+         */
+        @Param({ "1000", "10000", "100000", "1000000", "10000000" })
+        public int size;
+
+        /**
+         * Kernel implementation.
+         */
+        @Param({ "MusicDatabase1", "MusicDatabase2", "MusicDatabase3",
+                "MusicDatabase4" })
+        public String kernel;
+
+        /**
+         * The database.
+         */
+        MusicDatabase db;
+
+        /**
+         * Songs in the database, to look up.
+         */
+        Song[] present;
+
+        /**
+         * Songs not in the database, to look up.
+         */
+        Song[] absent;
+
+        /**
+         * Index of the last probe used.
+         */
+        int next;
+
+        /**
+         * Loads the catalog.
+         */
+        @Setup(Level.Trial)
+        public void load() {
+            Song[] songs = Catalog.songs(this.size);
+            this.db = Catalog.newDatabase(this.kernel);
+            this.db.addAll(Arrays.asList(songs));
+            Random random = new Random(this.size);
+            this.present = new Song[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                this.present[i] = songs[random.nextInt(songs.length)];
+            }
+            this.absent = Catalog.songs(this.size, this.size, PROBES);
+        }
+
+        /**
+         * Returns the next probe index.
+         *
+         * @return An index into the probes
+         */
+        int nextProbe() {
+            this.next = (this.next + 1) & (PROBES - 1);
+            return this.next;
+        }
+    }
+
+    /**
+     * Field values to look up in a loaded database.
+     */
+    @State(Scope.Benchmark)
+    public static class Lookup {
+
+        /**
+         * The field looked up.
+         */
+        @Param({ "TITLE", "ARTIST", "ALBUM", "LENGTH" })
+        public MusicDatabaseKernel.SearchField field;
+
+        /**
+         * Values of the field in the database.
+         */
+        String[] values;
+
+        /**
+         * Picks the values of the present probes.
+         *
+         * @param loaded
+         *            The loaded database
+         */
+        @Setup(Level.Trial)
+        public void pick(Loaded loaded) {
+            this.values = new String[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                this.values[i] = loaded.present[i].field(this.field);
+            }
+        }
+    }
+
+    /**
+     * A copy of the loaded database that may be changed, made again before
+     * every shot.
+     */
+    @State(Scope.Benchmark)
+    public static class Copy {
+
+        /**
+         * The copy.
+         */
+        MusicDatabase db;
+
+        /**
+         * Songs not in the catalog, to add.
+         */
+        Song[] added;
+
+        /**
+         * Artists in the catalog, to remove.
+         */
+        String[] artists;
+
+        /**
+         * A database of songs not in the catalog, a tenth its size, to
+         * append.
+         */
+        MusicDatabase other;
+
+        /**
+         * Builds the songs and databases to add.
+         *
+         * @param loaded
+         *            The loaded database
+         */
+        @Setup(Level.Trial)
+        public void prepare(Loaded loaded) {
+            this.added = Catalog.songs(loaded.size, loaded.size, ADDS);
+            this.artists = new String[REMOVALS];
+            for (int i = 0; i < REMOVALS; i++) {
+                this.artists[i] = "Artist " + i;
+            }
+            this.other = loaded.db.newInstance();
+            this.other.addAll(Arrays.asList(Catalog.songs(loaded.size,
+                    loaded.size + ADDS, Math.max(1, loaded.size / 10))));
+        }
+
+        /**
+         * Copies the loaded database, and changes the copy once so that any
+         * representation it shares is copied now rather than in the shot.
+         *
+         * @param loaded
+         *            The loaded database
+         */
+        @Setup(Level.Iteration)
+        public void copy(Loaded loaded) {
+            this.db = loaded.db.newInstance();
+            this.db.append(loaded.db);
+            this.db.addEntry(this.added[0]);
+            this.db.removeEntry(this.added[0]);
+        }
+    }
+
+    /**
+     * Files to read and write.
+     */
+    @State(Scope.Benchmark)
+    public static class CatalogFiles {
+
+        /**
+         * The catalog, written by {@code writeToFile}.
+         */
+        Path input;
+
+        /**
+         * Where {@code writeToFile} writes.
+         */
+        Path output;
+
+        /**
+         * Writes the catalog out.
+         *
+         * @param loaded
+         *            The loaded database
+         * @throws IOException
+         *             If the files cannot be created
+         */
+        @Setup(Level.Trial)
+        public void create(Loaded loaded) throws IOException {
+            this.input = Files.createTempFile("catalog", ".txt");
+            this.output = Files.createTempFile("output", ".txt");
+            loaded.db.writeToFile(this.input.toString());
+        }
+
+        /**
+         * Deletes the files.
+         *
+         * @throws IOException
+         *             If a file cannot be deleted
+         */
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(this.input);
+            Files.deleteIfExists(this.output);
+        }
+    }
+
+    /*
+     * Queries ----------------------------------------------------------------
+     */
+
+    /**
+     * {@code contains} of a song in the database.
+     *
+     * @param loaded
+     *            The loaded database
+     * @return The answer
+     */
+    @Benchmark
+    public Boolean containsPresent(Loaded loaded) {
+        return loaded.db.contains(loaded.present[loaded.nextProbe()]);
+    }
+
+    /**
+     * {@code contains} of a song not in the database.
+     *
+     * @param loaded
+     *            The loaded database
+     * @return The answer
+     */
+    @Benchmark
+    public Boolean containsAbsent(Loaded loaded) {
+        return loaded.db.contains(loaded.absent[loaded.nextProbe()]);
+    }
+
+    /**
+     * {@code getEntries} of a value the database has, per field.
+     *
+     * @param loaded
+     *            The loaded database
+     * @param lookup
+     *            The values to look up
+     * @return The songs found
+     */
+    @Benchmark
+    public Object getEntries(Loaded loaded, Lookup lookup) {
+        return loaded.db.getEntries(lookup.field,
+                lookup.values[loaded.nextProbe()]);
+    }
+
+    /**
+     * Iteration over every song.
+     *
+     * @param loaded
+     *            The loaded database
+     * @param bh
+     *            Consumes the songs
+     */
+    @Benchmark
+    public void iterate(Loaded loaded, Blackhole bh) {
+        for (Song song : loaded.db) {
+            bh.consume(song);
+        }
+    }
+
+    /**
+     * {@code sort}, by a different order each time, so the songs are never
+     * already in the order asked for.
+     *
+     * @param loaded
+     *            The loaded database
+     */
+    @Benchmark
+    public void sort(Loaded loaded) {
+        SongOrder[] orders = SongOrder.values();
+        Comparator<Song> order = orders[loaded.nextProbe() % orders.length];
+        loaded.db.sort(order);
+    }
+
+    /*
+     * File I/O ---------------------------------------------------------------
+     */
+
+    /**
+     * {@code readFromFile} of the catalog into an empty database.
+     *
+     * @param loaded
+     *            The loaded database
+     * @param files
+     *            The catalog file
+     * @return The database read
+     */
+    @Benchmark
+    public MusicDatabase readFromFile(Loaded loaded, CatalogFiles files) {
+        MusicDatabase db = loaded.db.newInstance();
+        db.readFromFile(files.input.toString());
+        return db;
+    }
+
+    /**
+     * {@code writeToFile} of the catalog.
+     *
+     * @param loaded
+     *            The loaded database
+     * @param files
+     *            The file to write
+     */
+    @Benchmark
+    public void writeToFile(Loaded loaded, CatalogFiles files) {
+        loaded.db.writeToFile(files.output.toString());
+    }
+
+    /*
+     * Changes ----------------------------------------------------------------
+     */
+
+    /**
+     * {@code addEntry} of songs not in the database, per song.
+     *
+     * @param copy
+     *            A fresh copy of the loaded database
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = SHOTS / 4)
+    @Measurement(iterations = SHOTS)
+    @OperationsPerInvocation(ADDS)
+    public void addEntry(Copy copy) {
+        for (Song song : copy.added) {
+            copy.db.addEntry(song);
+        }
+    }
+
+    /**
+     * {@code removeEntries} of every song of an artist, per artist.
+     *
+     * @param copy
+     *            A fresh copy of the loaded database
+     * @param bh
+     *            Consumes the songs removed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = SHOTS / 4)
+    @Measurement(iterations = SHOTS)
+    @OperationsPerInvocation(REMOVALS)
+    public void removeEntries(Copy copy, Blackhole bh) {
+        for (String artist : copy.artists) {
+            bh.consume(copy.db.removeEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, artist));
+        }
+    }
+
+    /**
+     * {@code split} on an artist, per artist.
+     *
+     * @param copy
+     *            A fresh copy of the loaded database
+     * @param bh
+     *            Consumes the databases split off
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = SHOTS / 4)
+    @Measurement(iterations = SHOTS)
+    @OperationsPerInvocation(REMOVALS)
+    public void split(Copy copy, Blackhole bh) {
+        for (String artist : copy.artists) {
+            bh.consume(copy.db.split(MusicDatabaseKernel.SearchField.ARTIST,
+                    artist));
+        }
+    }
+
+    /**
+     * {@code snapshot} followed by one {@code addEntry}, which copies the
+     * representation the snapshot shares.
+     *
+     * @param copy
+     *            A fresh copy of the loaded database
+     * @return The snapshot
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = SHOTS / 4)
+    @Measurement(iterations = SHOTS)
+    public MusicDatabase writeAfterSnapshot(Copy copy) {
+        MusicDatabase snapshot = copy.db.snapshot();
+        copy.db.addEntry(copy.added[0]);
+        return snapshot;
+    }
+
+    /**
+     * {@code append} of a database a tenth the size of the catalog.
+     *
+     * @param copy
+     *            A fresh copy of the loaded database
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = SHOTS / 4)
+    @Measurement(iterations = SHOTS)
+    public void append(Copy copy) {
+        copy.db.append(copy.other);
+    }
+
+}
@@ -0,0 +1,517 @@
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * A {@code MusicDatabase} that remembers which songs were added or removed,
+ * so the changes since a checkpoint can be written out without exporting and
+ * diffing the whole database. Changes are applied to a wrapped database;
+ * queries and iteration are passed on to it unchanged.
+ *
+ * <p>
+ * Every change to a song is numbered, and the last number given out is the
+ * checkpoint. Each song changed since the oldest checkpoint still known is
+ * filed under the number of its last change, so {@code writeChangesSince}
+ * reads only the songs changed after the checkpoint it is given, in the
+ * order of their last change, and reports each as added if it is in this now
+ * and removed if not. A song added and removed again since the checkpoint is
+ * reported as removed, which a reader applying the file ignores.
+ *
+ * <p>
+ * {@code clear} and {@code transferFrom}, which replace every song, forget the
+ * changes before them; so does {@code forgetChangesBefore}, to bound the
+ * memory held for songs changed long ago. A checkpoint older than what is
+ * known, such as -1, gets a full export: a reset row, then every song as
+ * added. Only membership is tracked, not order.
+ *
+ * <p>
+ * Changes, checkpoints, and exports are serialized by a lock, so this may be
+ * shared by threads if the wrapped database may.
+ *
+ * @convention [$this.sequenceOf and $this.bySequence hold the same pairs] AND
+ *             [every number in them is greater than $this.oldest and at most
+ *             $this.sequence] AND [every song added to or removed from
+ *             $this.db after change $this.oldest is in $this.sequenceOf,
+ *             mapped to the number of its last change]
+ * @correspondence this = $this.db
+ */
+public final class ChangeTrackingMusicDatabase extends MusicDatabaseSecondary {
+
+    /**
+     * Change column of a song in this.
+     */
+    static final String ADDED = "add";
+
+    /**
+     * Change column of a song no longer in this.
+     */
+    static final String REMOVED = "remove";
+
+    /**
+     * Change column of the row telling a reader to drop every song first.
+     */
+    static final String RESET = "reset";
+
+    /**
+     * The database changes are applied to.
+     */
+    private final MusicDatabase db;
+
+    /**
+     * Held while changing {@code db} and numbering the change, and while
+     * reading the changes for an export.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Each song changed, mapped to the number of its last change.
+     */
+    private final HashMap<Song, Long> sequenceOf;
+
+    /**
+     * The number of each song's last change, mapped to the song.
+     */
+    private final TreeMap<Long, Song> bySequence;
+
+    /**
+     * The number of the last change.
+     */
+    private long sequence;
+
+    /**
+     * The oldest checkpoint whose later changes are all known.
+     */
+    private long oldest;
+
+    /**
+     * Constructor; changes are tracked from here on, and the checkpoint is 0.
+     *
+     * @param db
+     *            The database to apply changes to; no other reference to it
+     *            may be used to change it
+     */
+    public ChangeTrackingMusicDatabase(MusicDatabase db) {
+        assert db != null : "Violation of: db != null";
+
+        this.db = db;
+        this.lock = new ReentrantLock();
+        this.sequenceOf = new HashMap<Song, Long>();
+        this.bySequence = new TreeMap<Long, Song>();
+        this.sequence = 0;
+        this.oldest = 0;
+    }
+
+    /**
+     * Numbers a change to {@code song}.
+     *
+     * @param song
+     *            The song added or removed
+     * @requires this.lock is held by the current thread
+     */
+    private void changed(Song song) {
+        this.sequence++;
+        Long previous = this.sequenceOf.put(song, this.sequence);
+        if (previous != null) {
+            this.bySequence.remove(previous);
+        }
+        this.bySequence.put(this.sequence, song);
+    }
+
+    /**
+     * Forgets every change, since every song has been replaced.
+     *
+     * @requires this.lock is held by the current thread
+     */
+    private void replaced() {
+        this.sequence++;
+        this.oldest = this.sequence;
+        this.sequenceOf.clear();
+        this.bySequence.clear();
+    }
+
+    /*
+     * Change tracking methods ------------------------------------------------
+     */
+
+    /**
+     * Returns the current checkpoint, to pass to {@code writeChangesSince}
+     * later.
+     *
+     * @return The number of the last change
+     */
+    public long checkpoint() {
+        long result;
+        this.lock.lock();
+        try {
+            result = this.sequence;
+        } finally {
+            this.lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the changes made at or before {@code checkpoint}; a later
+     * export since such a checkpoint writes every song.
+     *
+     * @param checkpoint
+     *            The oldest checkpoint still to be exported from
+     */
+    public void forgetChangesBefore(long checkpoint) {
+        this.lock.lock();
+        try {
+            if (checkpoint > this.oldest) {
+                Map<Long, Song> old = this.bySequence.headMap(checkpoint,
+                        true);
+                for (Song song : old.values()) {
+                    this.sequenceOf.remove(song);
+                }
+                old.clear();
+                this.oldest = Math.min(checkpoint, this.sequence);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the songs added and removed since {@code checkpoint} to
+     * {@code outputPath}, replacing it atomically, as a tab-delimited file
+     * with a Change column of "add" or "remove" before the usual columns. If
+     * the changes since {@code checkpoint} are not all known, the file starts
+     * with a "reset" row and lists every song as added. A new file gets the
+     * default permissions of a new file.
+     *
+     * @param checkpoint
+     *            A checkpoint returned by {@code checkpoint} or by this, or -1
+     * @param outputPath
+     *            The file to write
+     * @return The checkpoint the file is current to, or {@code checkpoint}
+     *         if it could not be written
+     * @requires outputPath != ""
+     */
+    public long writeChangesSince(long checkpoint, String outputPath) {
+        assert outputPath != null : "Violation of: outputPath != null";
+        assert outputPath != "" : "Violation of: outputPath != \"\"";
+
+        ArrayList<Song> songs;
+        ArrayList<Boolean> added;
+        boolean reset;
+        long current;
+        this.lock.lock();
+        try {
+            current = this.sequence;
+            reset = checkpoint < this.oldest;
+            if (reset) {
+                songs = new ArrayList<Song>(this.db.size());
+                for (Song song : this.db) {
+                    songs.add(song);
+                }
+            } else {
+                songs = new ArrayList<Song>(
+                        this.bySequence.tailMap(checkpoint, false).values());
+            }
+            added = new ArrayList<Boolean>(songs.size());
+            for (Song song : songs) {
+                added.add(reset || this.db.contains(song));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        long result = checkpoint;
+        Path temp = null;
+        try {
+            Path outputFile = Paths.get(outputPath).toAbsolutePath();
+            Path outputDirectory = outputFile.getParent();
+            if (outputDirectory != null) {
+                Files.createDirectories(outputDirectory);
+            }
+            temp = createSibling(outputFile);
+            try (TabDelimitedSongWriter wrtr = new TabDelimitedSongWriter(
+                    FileChannel.open(temp, StandardOpenOption.WRITE))) {
+                wrtr.writeChangeHeader();
+                if (reset) {
+                    wrtr.writeChange(RESET, null);
+                }
+                for (int i = 0; i < songs.size(); i++) {
+                    String change = REMOVED;
+                    if (added.get(i)) {
+                        change = ADDED;
+                    }
+                    wrtr.writeChange(change, songs.get(i));
+                }
+                wrtr.sync();
+            }
+            replace(temp, outputFile);
+            temp = null;
+            result = current;
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    /**
+     * Returns a new, empty database of the kind this one wraps, without
+     * change tracking.
+     *
+     * @return The new database
+     */
+    @Override
+    public MusicDatabase newInstance() {
+        return this.db.newInstance();
+    }
+
+    @Override
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.db.clear();
+            this.replaced();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the songs of this with those of {@code source}, in order, and
+     * clears {@code source}. Unlike the kernels, {@code source} may be any
+     * {@code MusicDatabase}.
+     *
+     * @param source
+     *            The database to take the songs of
+     */
+    @Override
+    public void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+
+        ArrayList<Song> songs = new ArrayList<Song>(source.size());
+        for (Song song : source) {
+            songs.add(song);
+        }
+        this.lock.lock();
+        try {
+            this.db.clear();
+            this.db.addAll(songs);
+            this.replaced();
+        } finally {
+            this.lock.unlock();
+        }
+        source.clear();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        this.lock.lock();
+        try {
+            if (!this.db.contains(song)) {
+                this.db.addEntry(song);
+                this.changed(song);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        this.lock.lock();
+        try {
+            HashSet<Song> seen = new HashSet<Song>();
+            ArrayList<Song> fresh = new ArrayList<Song>();
+            for (Song song : songs) {
+                if (!this.db.contains(song) && seen.add(song)) {
+                    fresh.add(song);
+                }
+            }
+            this.db.addAll(fresh);
+            for (Song song : fresh) {
+                this.changed(song);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Song getEntryInOrder(int n) {
+        return this.db.getEntryInOrder(n);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(SearchField field, String value) {
+        return this.db.getEntries(field, value);
+    }
+
+    @Override
+    public ArrayList<Song> removeEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result;
+        this.lock.lock();
+        try {
+            result = this.db.removeEntries(field, value);
+            for (Song song : result) {
+                this.changed(song);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        Song result;
+        this.lock.lock();
+        try {
+            result = this.db.removeEntry(song);
+            this.changed(song);
+        } finally {
+            this.lock.unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public Boolean contains(Song song) {
+        return this.db.contains(song);
+    }
+
+    @Override
+    public int size() {
+        return this.db.size();
+    }
+
+    @Override
+    public void sort(Comparator<Song> order) {
+        this.db.sort(order);
+    }
+
+    @Override
+    public void keepSorted(Comparator<Song> order) {
+        this.db.keepSorted(order);
+    }
+
+    @Override
+    public void stopKeepingSorted() {
+        this.db.stopKeepingSorted();
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return this.db.iterator();
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    @Override
+    public ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        return this.db.getEntriesInLengthRange(minSeconds, maxSeconds);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        return this.db.getEntries(criteria);
+    }
+
+    @Override
+    public void indexNormalized(SearchField field) {
+        this.db.indexNormalized(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        return this.db.getEntriesNormalized(field, value);
+    }
+
+    @Override
+    public void indexPrefixes(SearchField field) {
+        this.db.indexPrefixes(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesWithPrefix(SearchField field,
+            String prefix, int limit) {
+        return this.db.getEntriesWithPrefix(field, prefix, limit);
+    }
+
+    @Override
+    public void indexText(SearchField field) {
+        this.db.indexText(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesContaining(SearchField field,
+            String text) {
+        return this.db.getEntriesContaining(field, text);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesMatching(SearchField field,
+            String pattern) {
+        return this.db.getEntriesMatching(field, pattern);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesSimilar(SearchField field, String value,
+            int maxEdits) {
+        return this.db.getEntriesSimilar(field, value, maxEdits);
+    }
+
+    @Override
+    public Stream<Song> stream() {
+        return this.db.stream();
+    }
+
+    @Override
+    public Stream<Song> streamEntries(SearchField field, String value) {
+        return this.db.streamEntries(field, value);
+    }
+
+    @Override
+    public MusicDatabase snapshot() {
+        return this.db.snapshot();
+    }
+
+}
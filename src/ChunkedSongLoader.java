@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parallel loader for the data rows of a large tab-delimited song file. The
+ * rows are split into chunks at line boundaries, each chunk is parsed by a
+ * {@code MappedSongReader} on the common {@code ForkJoinPool}, and the chunks
+ * are merged into the target database strictly in file order as they finish,
+ * so the resulting order is the same as a sequential read.
+ */
+final class ChunkedSongLoader {
+
+    /**
+     * Smallest chunk worth handing to a separate task.
+     */
+    private static final long MIN_CHUNK_SIZE = 1L << 24;
+
+    /**
+     * Chunks per worker thread, so uneven chunks still balance out.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Size of the buffer used to look for line breaks at chunk boundaries.
+     */
+    private static final int PROBE_SIZE = 1 << 16;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ChunkedSongLoader() {
+    }
+
+    /**
+     * The result of parsing one chunk.
+     */
+    private static final class Chunk {
+
+        /**
+         * The valid songs of the chunk, in order, without duplicates.
+         */
+        private final ArrayList<Song> songs;
+
+        /**
+         * Pairs of (line number within the chunk, problem code) for each
+         * invalid row; only the first {@code problemCount} pairs are used.
+         */
+        private int[] problems;
+
+        /**
+         * Number of invalid rows.
+         */
+        private int problemCount;
+
+        /**
+         * Number of lines in the chunk.
+         */
+        private int lineCount;
+
+        /**
+         * Constructor.
+         *
+         * @param songs
+         *            The valid songs of the chunk
+         */
+        Chunk(ArrayList<Song> songs) {
+            this.songs = songs;
+            this.problems = new int[2];
+        }
+
+        /**
+         * Records an invalid row.
+         *
+         * @param line
+         *            The line within the chunk, starting at 1
+         * @param problem
+         *            The {@code SongRowReader} problem code
+         */
+        void addProblem(int line, int problem) {
+            if (2 * this.problemCount == this.problems.length) {
+                this.problems = Arrays.copyOf(this.problems,
+                        2 * this.problems.length);
+            }
+            this.problems[2 * this.problemCount] = line;
+            this.problems[2 * this.problemCount + 1] = problem;
+            this.problemCount++;
+        }
+    }
+
+    /**
+     * Returns the offset just past the first line feed at or after
+     * {@code from}, or {@code end} if there is none before it.
+     *
+     * @param channel
+     *            The channel to search
+     * @param from
+     *            Absolute offset to start searching at
+     * @param end
+     *            Absolute offset to stop searching at
+     * @return The offset of the start of the next line
+     * @throws IOException
+     *             If reading fails
+     */
+    private static long nextLineStart(FileChannel channel, long from,
+            long end) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        long offset = from;
+        long result = end;
+        boolean found = false;
+        while (!found && offset < end) {
+            probe.clear();
+            int read = channel.read(probe, offset);
+            if (read <= 0) {
+                offset = end;
+            } else {
+                for (int i = 0; i < read && !found; i++) {
+                    if (probe.get(i) == '\n') {
+                        result = Math.min(offset + i + 1, end);
+                        found = true;
+                    }
+                }
+                offset += read;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the rows in {@code [start, end)}.
+     *
+     * @param channel
+     *            The channel to read from
+     * @param start
+     *            Offset of the first line of the chunk
+     * @param end
+     *            Offset just past the last line of the chunk
+     * @return The parsed chunk
+     * @throws IOException
+     *             If reading fails
+     */
+    private static Chunk parse(FileChannel channel, long start, long end)
+            throws IOException {
+        /*
+         * Deduplicating here spreads most of the hashing over the workers,
+         * leaving only the cross-chunk checks to the merge.
+         */
+        LinkedHashSet<Song> songs = new LinkedHashSet<Song>();
+        Chunk chunk = new Chunk(new ArrayList<Song>());
+        try (MappedSongReader rdr = new MappedSongReader(channel, start, end,
+                1)) {
+            Song song = rdr.next();
+            while (song != null || rdr.problem() != SongRowReader.VALID) {
+                if (song == null) {
+                    chunk.addProblem(rdr.lineNumber(), rdr.problem());
+                } else {
+                    songs.add(song);
+                }
+                song = rdr.next();
+            }
+            chunk.lineCount = rdr.lineNumber();
+        }
+        chunk.songs.addAll(songs);
+        return chunk;
+    }
+
+    /**
+     * Adds every valid row of {@code channel} from {@code start} onwards that
+     * is not already in {@code target}, in file order. Invalid rows are
+     * reported to the console and skipped.
+     *
+     * @param channel
+     *            The channel to read; it stays open
+     * @param start
+     *            Offset of the first data row
+     * @param firstLineNumber
+     *            Line number of the first data row, for error messages
+     * @param target
+     *            The database to add to
+     * @throws IOException
+     *             If reading fails
+     * @updates target
+     */
+    static void load(FileChannel channel, long start, int firstLineNumber,
+            MusicDatabase target) throws IOException {
+        long end = channel.size();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        long chunkCount = Math.max(1, Math.min(
+                (end - start) / MIN_CHUNK_SIZE,
+                (long) CHUNKS_PER_THREAD * (pool.getParallelism() + 1)));
+        long nominalSize = (end - start) / chunkCount;
+
+        ArrayList<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        long chunkStart = start;
+        for (long i = 1; i <= chunkCount && chunkStart < end; i++) {
+            long chunkEnd = end;
+            if (i < chunkCount) {
+                chunkEnd = nextLineStart(channel,
+                        Math.max(chunkStart, start + i * nominalSize), end);
+            }
+            final long s = chunkStart;
+            final long e = chunkEnd;
+            tasks.add(pool.submit(() -> parse(channel, s, e)));
+            chunkStart = chunkEnd;
+        }
+
+        try {
+            int line = firstLineNumber;
+            for (ForkJoinTask<Chunk> task : tasks) {
+                Chunk chunk = task.join();
+                for (int i = 0; i < chunk.problemCount; i++) {
+                    System.err.println(SongRowReader.problemMessage(
+                            chunk.problems[2 * i + 1],
+                            line + chunk.problems[2 * i] - 1));
+                }
+                target.addAll(chunk.songs);
+                line += chunk.lineCount;
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+}
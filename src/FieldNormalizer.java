@@ -0,0 +1,86 @@
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalization of field values for {@code getEntriesNormalized}: Unicode
+ * NFKC, so compatibility forms such as full-width letters and half-width kana
+ * match their plain forms; full case folding; and whitespace collapsed to
+ * single spaces, with none at either end.
+ *
+ * <p>
+ * Most values are already plain lowercase ASCII with single spaces, and those
+ * are returned as they are, without any copy.
+ */
+final class FieldNormalizer {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private FieldNormalizer() {
+    }
+
+    /**
+     * Reports whether {@code value} is its own normal form because it is
+     * ASCII without uppercase letters or control characters, and has no
+     * leading, trailing, or repeated spaces.
+     *
+     * @param value
+     *            The value to check
+     * @return Whether {@code value} needs no normalization
+     */
+    private static boolean isNormalAscii(String value) {
+        boolean result = value.isEmpty() || (value.charAt(0) != ' '
+                && value.charAt(value.length() - 1) != ' ');
+        for (int i = 0; i < value.length() && result; i++) {
+            char c = value.charAt(i);
+            result = c >= ' ' && c < 0x7F && !(c >= 'A' && c <= 'Z')
+                    && !(c == ' ' && value.charAt(i - 1) == ' ');
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code value} in normal form.
+     *
+     * @param value
+     *            The value to normalize
+     * @return The normal form of {@code value}
+     * @ensures normalize = [value with NFKC applied, case folded, and runs of
+     *          whitespace replaced by one space, trimmed] AND
+     *          normalize(normalize) = normalize
+     */
+    static String normalize(String value) {
+        String result = value;
+        if (!isNormalAscii(value)) {
+            /*
+             * Lowercasing first maps capitals such as U+1E9E to the letter
+             * that uppercasing then expands (sharp s, U+00DF, to "SS").
+             */
+            String folded = Normalizer.normalize(value, Normalizer.Form.NFKC)
+                    .toLowerCase(Locale.ROOT).toUpperCase(Locale.ROOT)
+                    .toLowerCase(Locale.ROOT);
+            /*
+             * Folding can undo composition, so the result is composed again.
+             */
+            folded = Normalizer.normalize(folded, Normalizer.Form.NFKC);
+            StringBuilder collapsed = new StringBuilder(folded.length());
+            boolean space = false;
+            for (int i = 0; i < folded.length(); i++) {
+                char c = folded.charAt(i);
+                if (Character.isWhitespace(c) || Character.isSpaceChar(c)
+                        || Character.isISOControl(c)) {
+                    space = collapsed.length() > 0;
+                } else {
+                    if (space) {
+                        collapsed.append(' ');
+                        space = false;
+                    }
+                    collapsed.append(c);
+                }
+            }
+            result = collapsed.toString();
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,429 @@
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * A list of distinct songs that finds and removes any of them in O(log n)
+ * time. The songs are kept in an array of slots, in order; removing one
+ * leaves a hole in its slot rather than shifting the songs after it. A
+ * Fenwick tree counts the songs in the slots, so {@code get(n)} finds the
+ * slot of song n in O(log n), and an open-addressed table of slots finds the
+ * slot of a song from its hash.
+ *
+ * <p>
+ * Table entries are never removed: an entry whose slot no longer holds its
+ * song, after a removal or a {@code set}, is simply passed over. Once there
+ * are more holes than songs, or the table is half full, the songs are packed
+ * into new arrays in one pass, so each change pays O(1) amortized for it.
+ * The slots, counts, and table take about 30 bytes per song in all.
+ *
+ * @convention [$this.size is the number of non-null entries of
+ *             $this.slots[0, $this.used)] AND [$this.slots[$this.used,
+ *             |$this.slots|) are null] AND [the non-null entries of
+ *             $this.slots are distinct, except within a run of set calls]
+ *             AND [$this.counts is the Fenwick tree of the number of songs
+ *             in each slot] AND [$this.table.length is a power of two, at
+ *             least 2 * $this.tableUsed] AND [$this.tableUsed is the number
+ *             of nonzero entries of $this.table] AND [for each song in slot
+ *             s, s + 1 is stored in an entry of $this.table reachable by
+ *             linear probing from the hash of the song, with no zero entry
+ *             before it]
+ * @correspondence this = [the non-null entries of $this.slots[0,
+ *                 $this.used), in order]
+ */
+final class IndexedSongList extends AbstractList<Song> {
+
+    /**
+     * Fewest slots a list has.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Holes allowed beyond the number of songs before the list is packed,
+     * so a small list is not packed on every removal.
+     */
+    private static final int HOLE_SLACK = 4096;
+
+    /**
+     * The songs in order, with null in the slots of removed songs.
+     */
+    private Song[] slots;
+
+    /**
+     * Number of slots filled so far, songs or holes.
+     */
+    private int used;
+
+    /**
+     * Number of songs.
+     */
+    private int size;
+
+    /**
+     * Fenwick tree of the number of songs in each slot: entry i, from 1, is
+     * the number of songs in slots [i - (i &amp; -i), i).
+     */
+    private int[] counts;
+
+    /**
+     * Open-addressed table of slots plus one; 0 marks an empty entry.
+     */
+    private int[] table;
+
+    /**
+     * Number of nonzero entries of {@code table}.
+     */
+    private int tableUsed;
+
+    /**
+     * Constructor for an empty list.
+     */
+    IndexedSongList() {
+        this.slots = new Song[DEFAULT_CAPACITY];
+        this.counts = new int[DEFAULT_CAPACITY + 1];
+        this.table = new int[2 * DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Constructor for a list of {@code songs}, in the order given.
+     *
+     * @param songs
+     *            The songs
+     * @requires songs has no duplicates
+     */
+    IndexedSongList(Iterable<Song> songs) {
+        this();
+        for (Song song : songs) {
+            this.add(song);
+        }
+    }
+
+    /**
+     * Returns the first table entry to probe for {@code song}.
+     *
+     * @param song
+     *            The song
+     * @return The entry
+     */
+    private int start(Song song) {
+        int hash = song.hashCode();
+        return (hash ^ (hash >>> 16)) & (this.table.length - 1);
+    }
+
+    /**
+     * Returns the slot holding {@code song}, or -1 if it is not in this.
+     *
+     * @param song
+     *            The song to look up
+     * @return Its slot, or -1
+     */
+    private int find(Song song) {
+        int mask = this.table.length - 1;
+        int i = this.start(song);
+        int result = -1;
+        while (result < 0 && this.table[i] != 0) {
+            if (song.equals(this.slots[this.table[i] - 1])) {
+                result = this.table[i] - 1;
+            } else {
+                i = (i + 1) & mask;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records in the table that {@code song} is in {@code slot}.
+     *
+     * @param song
+     *            The song
+     * @param slot
+     *            Its slot
+     */
+    private void addEntry(Song song, int slot) {
+        int mask = this.table.length - 1;
+        int i = this.start(song);
+        while (this.table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.table[i] = slot + 1;
+        this.tableUsed++;
+    }
+
+    /**
+     * Adds {@code delta} to the count of songs in {@code slot}.
+     *
+     * @param slot
+     *            The slot
+     * @param delta
+     *            The change in its count
+     */
+    private void count(int slot, int delta) {
+        for (int i = slot + 1; i < this.counts.length; i += i & -i) {
+            this.counts[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the number of songs in the slots before {@code slot}.
+     *
+     * @param slot
+     *            The slot
+     * @return The number of songs before it
+     */
+    private int rank(int slot) {
+        int result = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            result += this.counts[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot of song {@code n}.
+     *
+     * @param n
+     *            The position of the song
+     * @return Its slot
+     * @requires 0 <= n < |this|
+     */
+    private int select(int n) {
+        int result = 0;
+        int rest = n;
+        for (int step = Integer.highestOneBit(this.counts.length - 1);
+                step > 0; step >>= 1) {
+            int next = result + step;
+            if (next < this.counts.length && this.counts[next] <= rest) {
+                result = next;
+                rest -= this.counts[next];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves the songs, in order, to the front of new arrays with room for
+     * half as many again, and rebuilds the counts and table for them.
+     */
+    private void pack() {
+        Song[] old = this.slots;
+        int oldUsed = this.used;
+        int capacity = Math.max(DEFAULT_CAPACITY,
+                this.size + this.size / 2 + 1);
+        this.slots = new Song[capacity];
+        this.counts = new int[capacity + 1];
+        this.table = new int[Integer.highestOneBit(capacity) * 4];
+        this.used = 0;
+        this.tableUsed = 0;
+        for (int s = 0; s < oldUsed; s++) {
+            if (old[s] != null) {
+                this.slots[this.used] = old[s];
+                this.addEntry(old[s], this.used);
+                this.counts[this.used + 1] = 1;
+                this.used++;
+            }
+        }
+        /*
+         * Each entry of a Fenwick tree adds itself to the one it is part of,
+         * which builds the tree in one pass.
+         */
+        for (int i = 1; i < this.counts.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < this.counts.length) {
+                this.counts[parent] += this.counts[i];
+            }
+        }
+    }
+
+    /**
+     * Packs the list if there is no free slot or the table is half full.
+     */
+    private void ensureRoom() {
+        if (this.used == this.slots.length
+                || 2 * (this.tableUsed + 1) > this.table.length) {
+            this.pack();
+        }
+    }
+
+    /**
+     * Empties {@code slot}, which holds a song, and packs the list once
+     * there are more holes than songs.
+     *
+     * @param slot
+     *            The slot
+     */
+    private void removeSlot(int slot) {
+        this.slots[slot] = null;
+        this.count(slot, -1);
+        this.size--;
+        this.modCount++;
+        if (this.used - this.size > this.size + HOLE_SLACK) {
+            this.pack();
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Song get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.slots[this.select(index)];
+    }
+
+    /**
+     * Replaces song {@code index} with {@code song}. A run of calls may hold
+     * a song twice on the way to a permutation, as a sort does, but not once
+     * it ends.
+     *
+     * @param index
+     *            The position to write
+     * @param song
+     *            The new song
+     * @return The song replaced
+     */
+    @Override
+    public Song set(int index, Song song) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        this.ensureRoom();
+        int slot = this.select(index);
+        Song result = this.slots[slot];
+        this.slots[slot] = song;
+        this.addEntry(song, slot);
+        return result;
+    }
+
+    /**
+     * Appends {@code song}.
+     *
+     * @param song
+     *            The song to append
+     * @return true
+     * @requires song is not in this
+     */
+    @Override
+    public boolean add(Song song) {
+        this.ensureRoom();
+        this.slots[this.used] = song;
+        this.addEntry(song, this.used);
+        this.count(this.used, 1);
+        this.used++;
+        this.size++;
+        this.modCount++;
+        return true;
+    }
+
+    @Override
+    public Song remove(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int slot = this.select(index);
+        Song result = this.slots[slot];
+        this.removeSlot(slot);
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int slot = -1;
+        if (o instanceof Song) {
+            slot = this.find((Song) o);
+        }
+        if (slot >= 0) {
+            this.removeSlot(slot);
+        }
+        return slot >= 0;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Song> filter) {
+        boolean result = false;
+        for (int s = 0; s < this.used; s++) {
+            if (this.slots[s] != null && filter.test(this.slots[s])) {
+                this.slots[s] = null;
+                this.size--;
+                result = true;
+            }
+        }
+        if (result) {
+            this.modCount++;
+            this.pack();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Song && this.find((Song) o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        int result = -1;
+        if (o instanceof Song) {
+            int slot = this.find((Song) o);
+            if (slot >= 0) {
+                result = this.rank(slot);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return new SlotIterator();
+    }
+
+    /**
+     * Iterator over the slots, passing over holes.
+     */
+    private final class SlotIterator implements Iterator<Song> {
+
+        /**
+         * The slot of the next song, or {@code used} if there is none.
+         */
+        private int next;
+
+        /**
+         * No-argument constructor.
+         */
+        SlotIterator() {
+            this.next = 0;
+            this.skipHoles();
+        }
+
+        /**
+         * Moves {@code next} past any holes.
+         */
+        private void skipHoles() {
+            while (this.next < IndexedSongList.this.used
+                    && IndexedSongList.this.slots[this.next] == null) {
+                this.next++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < IndexedSongList.this.used;
+        }
+
+        @Override
+        public Song next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Song result = IndexedSongList.this.slots[this.next];
+            this.next++;
+            this.skipHoles();
+            return result;
+        }
+    }
+
+}
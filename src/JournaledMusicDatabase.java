@@ -0,0 +1,986 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * A {@code MusicDatabase} kept durable in a directory by an append-only
+ * journal ({@code SongJournal}) rather than by rewriting a whole file on every
+ * save. Each change is applied to a wrapped database and recorded in a few
+ * dozen bytes; queries and iteration are passed on to the wrapped database
+ * unchanged.
+ *
+ * <p>
+ * The directory holds at most one binary snapshot, {@code snapshot-g.mdb},
+ * and the journals {@code journal-g.log}, {@code journal-(g+1).log}, ... of
+ * the changes made after it. The constructor loads the snapshot and replays
+ * the journals into the wrapped database, dropping a torn record left at the
+ * end by a crash. Once the current journal grows past a set size, a new one is
+ * started and an O(1) {@code snapshot()} of the database is written out as
+ * the next snapshot on a background thread, after which the files it covers
+ * are deleted; writers are not held up by the write.
+ *
+ * <p>
+ * With a sync interval of 0, each change returns only once its record is
+ * forced to the storage device, and changes made at the same time from
+ * several threads share one force. With a positive interval, changes return
+ * at once and a background thread forces the journal that often, so a crash
+ * loses at most that much time's worth of changes.
+ *
+ * <p>
+ * Orders are recorded by {@code SongOrder} name; sorting or keeping sorted by
+ * any other comparator starts a new snapshot right away, which holds the
+ * order but not the comparator, so songs added after a restart are not kept
+ * in that order. Opt-in indexes are not recorded, and are built again by
+ * calling {@code indexNormalized} and the like after opening. Only one
+ * {@code JournaledMusicDatabase}, in any process, may use a directory at a
+ * time: each holds a lock on the file {@code lock} in it until closed, and
+ * opening a directory whose lock is held throws. An error writing the journal
+ * is thrown as an {@code UncheckedIOException} after the change it records has
+ * been made in memory; the journal then writes nothing more, and every later
+ * wait for a change to reach the storage device throws as well.
+ *
+ * @convention [$this.db = the songs of the snapshot file of $this.directory
+ *             with every record of its journals applied, in order, once the
+ *             pending records of $this.journal are written] AND
+ *             [$this.keptOrder is the SongOrder $this.db is kept sorted by, or
+ *             null if there is none]
+ * @correspondence this = $this.db
+ */
+public final class JournaledMusicDatabase extends MusicDatabaseSecondary
+        implements Closeable {
+
+    /**
+     * Default size, in bytes, past which the journal is folded into a new
+     * snapshot.
+     */
+    private static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+    /**
+     * Pending records are written out, even without a commit being asked
+     * for, once there are this many bytes of them.
+     */
+    private static final int FLUSH_BYTES = 1 << 20;
+
+    /**
+     * Prefix of snapshot file names.
+     */
+    private static final String SNAPSHOT = "snapshot-";
+
+    /**
+     * Prefix of journal file names.
+     */
+    private static final String JOURNAL = "journal-";
+
+    /**
+     * Suffix of snapshot file names.
+     */
+    private static final String SNAPSHOT_SUFFIX = ".mdb";
+
+    /**
+     * Suffix of journal file names.
+     */
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    /**
+     * Suffix of snapshot files still being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Name of the file locked while the directory is in use.
+     */
+    private static final String LOCK = "lock";
+
+    /**
+     * The database changes are applied to.
+     */
+    private final MusicDatabase db;
+
+    /**
+     * The directory of the snapshot and journals.
+     */
+    private final Path directory;
+
+    /**
+     * Milliseconds between background forces, or 0 to force on every change.
+     */
+    private final long syncMillis;
+
+    /**
+     * Journal size past which a new snapshot is started.
+     */
+    private final long compactBytes;
+
+    /**
+     * Held while changing {@code db} and recording the change, so records
+     * are in the order the changes were made.
+     */
+    private final ReentrantLock writeLock;
+
+    /**
+     * The lock on the lock file of {@code directory}, held until closed.
+     */
+    private FileLock lock;
+
+    /**
+     * Runs periodic forces and snapshot writes.
+     */
+    private final ScheduledExecutorService background;
+
+    /**
+     * The journal being appended to.
+     */
+    private volatile SongJournal journal;
+
+    /**
+     * The number of the journal being appended to; guarded by
+     * {@code writeLock}.
+     */
+    private long generation;
+
+    /**
+     * The order {@code db} is kept sorted by, or null; guarded by
+     * {@code writeLock}.
+     */
+    private SongOrder keptOrder;
+
+    /**
+     * The last snapshot write started, or null; guarded by
+     * {@code writeLock}.
+     */
+    private Future<?> compaction;
+
+    /**
+     * Opens the journaled database in {@code directory}, forcing every change
+     * to the storage device before it returns.
+     *
+     * @param db
+     *            The empty database to load into and apply changes to; no
+     *            other reference to it may be used to change it
+     * @param directory
+     *            The directory of the snapshot and journals, created if need
+     *            be
+     */
+    public JournaledMusicDatabase(MusicDatabase db, String directory) {
+        this(db, directory, 0, DEFAULT_COMPACT_BYTES);
+    }
+
+    /**
+     * Opens the journaled database in {@code directory}.
+     *
+     * @param db
+     *            The empty database to load into and apply changes to; no
+     *            other reference to it may be used to change it
+     * @param directory
+     *            The directory of the snapshot and journals, created if need
+     *            be
+     * @param syncMillis
+     *            Milliseconds between background forces of the journal, or 0
+     *            to force it before each change returns
+     * @param compactBytes
+     *            Journal size, in bytes, past which it is folded into a new
+     *            snapshot
+     * @requires |db| = 0 AND syncMillis >= 0 AND compactBytes > 0
+     */
+    public JournaledMusicDatabase(MusicDatabase db, String directory,
+            long syncMillis, long compactBytes) {
+        assert db != null : "Violation of: db != null";
+        assert directory != null : "Violation of: directory != null";
+        assert db.size() == 0 : "Violation of: |db| = 0";
+        assert syncMillis >= 0 : "Violation of: syncMillis >= 0";
+        assert compactBytes > 0 : "Violation of: compactBytes > 0";
+
+        this.db = db;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.syncMillis = syncMillis;
+        this.compactBytes = compactBytes;
+        this.writeLock = new ReentrantLock();
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "music-database-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            this.lockDirectory();
+            this.recover();
+        } catch (IOException | RuntimeException e) {
+            this.background.shutdown();
+            try {
+                this.unlockDirectory();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            if (e instanceof IOException) {
+                throw new UncheckedIOException((IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+        if (syncMillis > 0) {
+            this.background.scheduleWithFixedDelay(this::syncQuietly,
+                    syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the path of snapshot {@code g}.
+     *
+     * @param g
+     *            The generation
+     * @return The path
+     */
+    private Path snapshotPath(long g) {
+        return this.directory.resolve(SNAPSHOT + g + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Returns the path of journal {@code g}.
+     *
+     * @param g
+     *            The generation
+     * @return The path
+     */
+    private Path journalPath(long g) {
+        return this.directory.resolve(JOURNAL + g + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Returns the generation in {@code name} if it is named
+     * {@code prefix + g + suffix}, or -1.
+     *
+     * @param name
+     *            A file name
+     * @param prefix
+     *            The expected prefix
+     * @param suffix
+     *            The expected suffix
+     * @return The generation, or -1
+     */
+    private static long generationOf(String name, String prefix,
+            String suffix) {
+        long result = -1;
+        if (name.startsWith(prefix) && name.endsWith(suffix)) {
+            try {
+                result = Long.parseLong(name.substring(prefix.length(),
+                        name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                result = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates {@code directory} if need be and locks its lock file, so no
+     * other {@code JournaledMusicDatabase} uses it while this one is open.
+     *
+     * @throws IOException
+     *             If the lock file cannot be opened
+     * @throws IllegalStateException
+     *             If the lock is held, by this process or another
+     */
+    private void lockDirectory() throws IOException {
+        Files.createDirectories(this.directory);
+        FileChannel channel = FileChannel.open(this.directory.resolve(LOCK),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            this.lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            /* held by another channel of this process */
+            this.lock = null;
+        } finally {
+            if (this.lock == null) {
+                channel.close();
+            }
+        }
+        if (this.lock == null) {
+            throw new IllegalStateException("ERROR: " + this.directory
+                    + " is in use by another JournaledMusicDatabase");
+        }
+    }
+
+    /**
+     * Releases the lock on the lock file of {@code directory}, if it is held.
+     *
+     * @throws IOException
+     *             If the lock file cannot be closed
+     */
+    private void unlockDirectory() throws IOException {
+        FileLock held = this.lock;
+        this.lock = null;
+        if (held != null) {
+            held.acquiredBy().close();
+        }
+    }
+
+    /**
+     * Loads the newest snapshot, replays the journals after it, deletes the
+     * files it makes obsolete, and opens the last journal for appending.
+     *
+     * @throws IOException
+     *             If reading fails
+     */
+    private void recover() throws IOException {
+        long snapshot = -1;
+        ArrayList<Long> journals = new ArrayList<Long>();
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                snapshot = Math.max(snapshot,
+                        generationOf(name, SNAPSHOT, SNAPSHOT_SUFFIX));
+                long g = generationOf(name, JOURNAL, JOURNAL_SUFFIX);
+                if (g >= 0) {
+                    journals.add(g);
+                }
+            }
+        }
+        Collections.sort(journals);
+
+        if (snapshot >= 0) {
+            MusicDatabaseBinaryFormat.read(this.snapshotPath(snapshot),
+                    this.db);
+        }
+        long base = Math.max(snapshot, 0);
+        this.generation = base;
+        long valid = 0;
+        for (long g : journals) {
+            if (g >= this.generation) {
+                valid = SongJournal.replay(this.journalPath(g), this::apply);
+                this.generation = g;
+            }
+        }
+        this.deleteBefore(base);
+        this.journal = new SongJournal(this.journalPath(this.generation),
+                valid, 0);
+    }
+
+    /**
+     * Applies a record read back from a journal to {@code db}.
+     *
+     * @param operation
+     *            The operation
+     * @param arguments
+     *            Its arguments
+     */
+    private void apply(byte operation, String[] arguments) {
+        if (operation == SongJournal.ADD) {
+            Song song = songOf(arguments);
+            if (!this.db.contains(song)) {
+                this.db.addEntry(song);
+            }
+        } else if (operation == SongJournal.REMOVE) {
+            Song song = songOf(arguments);
+            if (this.db.contains(song)) {
+                this.db.removeEntry(song);
+            }
+        } else if (operation == SongJournal.REMOVE_ENTRIES) {
+            this.db.removeEntries(SearchField.valueOf(arguments[0]),
+                    arguments[1]);
+        } else if (operation == SongJournal.CLEAR) {
+            this.db.clear();
+            this.keptOrder = null;
+        } else if (operation == SongJournal.SORT) {
+            this.db.sort(SongOrder.valueOf(arguments[0]));
+        } else if (operation == SongJournal.KEEP_SORTED) {
+            this.keptOrder = SongOrder.valueOf(arguments[0]);
+            this.db.keepSorted(this.keptOrder);
+        } else {
+            this.db.stopKeepingSorted();
+            this.keptOrder = null;
+        }
+    }
+
+    /**
+     * Returns the song recorded as {@code arguments}.
+     *
+     * @param arguments
+     *            Title, artist, album, and length
+     * @return The song
+     */
+    private static Song songOf(String[] arguments) {
+        return new Song(arguments[0], arguments[1], arguments[2],
+                arguments[3]);
+    }
+
+    /**
+     * Returns {@code song} as record arguments.
+     *
+     * @param song
+     *            The song
+     * @return Its title, artist, album, and length
+     */
+    private static String[] argumentsOf(Song song) {
+        return new String[] { song.title(), song.artist(), song.album(),
+                song.length() };
+    }
+
+    /**
+     * Records a change just made to {@code db}, writing pending records out
+     * if there are many and starting a new snapshot if the journal is full.
+     *
+     * @param operation
+     *            The operation
+     * @param arguments
+     *            Its arguments
+     * @return The position to wait for with {@code await}
+     * @requires this.writeLock is held by the current thread
+     */
+    private long record(byte operation, String... arguments) {
+        SongJournal j = this.journal;
+        long result = j.append(operation, arguments);
+        try {
+            if (j.pendingBytes() >= FLUSH_BYTES) {
+                j.commit(result);
+            }
+            if (j.size() >= this.compactBytes) {
+                this.startCompaction();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns once the records before {@code end} are on the storage device,
+     * if changes are forced as they are made.
+     *
+     * @param end
+     *            A position returned by {@code record}, or 0
+     */
+    private void await(long end) {
+        if (this.syncMillis == 0) {
+            try {
+                this.journal.commit(end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Forces every record, reporting rather than throwing a failure; run by
+     * the background thread.
+     */
+    private void syncQuietly() {
+        try {
+            SongJournal j = this.journal;
+            j.commit(j.position());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Forces the journal, starts a new one and, on the background thread,
+     * writes a snapshot of {@code db} as it is now, unless a snapshot is
+     * still being written.
+     *
+     * @throws IOException
+     *             If the journal cannot be forced or the new one cannot be
+     *             opened
+     * @requires this.writeLock is held by the current thread
+     */
+    private void startCompaction() throws IOException {
+        if (this.compaction == null || this.compaction.isDone()) {
+            SongJournal old = this.journal;
+            /*
+             * A writer may wait for a position of the old journal on the new
+             * one, whose forced position starts where the old one ends, so
+             * every record of the old one is forced before the new one is
+             * published. If that fails, the old journal stays and is failed.
+             */
+            old.commit(old.position());
+            long next = this.generation + 1;
+            SongJournal fresh = new SongJournal(this.journalPath(next), 0,
+                    old.position());
+            if (this.keptOrder != null) {
+                fresh.append(SongJournal.KEEP_SORTED, this.keptOrder.name());
+            }
+            MusicDatabase frozen = this.db.snapshot();
+            this.journal = fresh;
+            this.generation = next;
+            old.close();
+            this.compaction = this.background.submit(() -> {
+                try {
+                    this.writeSnapshot(frozen, next);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes {@code frozen} as snapshot {@code g}, then deletes the snapshot
+     * and journals it replaces.
+     *
+     * @param frozen
+     *            The database as it was when journal {@code g} was started
+     * @param g
+     *            The generation
+     * @throws IOException
+     *             If writing fails
+     */
+    private void writeSnapshot(MusicDatabase frozen, long g)
+            throws IOException {
+        Path temp = this.directory.resolve(SNAPSHOT + g + TEMP_SUFFIX);
+        MusicDatabaseBinaryFormat.write(frozen, temp);
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        replace(temp, this.snapshotPath(g));
+        /*
+         * The rename must be durable before the files it replaces go. Not
+         * every platform can open a directory to force it; there the rename
+         * is left to the file system.
+         */
+        try (FileChannel dir = FileChannel.open(this.directory,
+                StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            /* left to the file system */
+        }
+        this.deleteBefore(g);
+    }
+
+    /**
+     * Deletes the snapshots, journals, and unfinished snapshots numbered
+     * below {@code g}.
+     *
+     * @param g
+     *            The oldest generation to keep
+     * @throws IOException
+     *             If a file cannot be deleted
+     */
+    private void deleteBefore(long g) throws IOException {
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long old = Math.max(
+                        generationOf(name, SNAPSHOT, SNAPSHOT_SUFFIX),
+                        Math.max(generationOf(name, JOURNAL, JOURNAL_SUFFIX),
+                                generationOf(name, SNAPSHOT, TEMP_SUFFIX)));
+                if (old >= 0 && old < g) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for {@code write} to finish, if it is not null.
+     *
+     * @param write
+     *            A snapshot write, or null
+     */
+    private static void waitFor(Future<?> write) {
+        if (write != null) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw (UncheckedIOException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /*
+     * Journal methods --------------------------------------------------------
+     */
+
+    /**
+     * Forces every change made so far to the storage device.
+     */
+    public void sync() {
+        SongJournal j = this.journal;
+        try {
+            j.commit(j.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Folds the journal into a new snapshot now, returning once the snapshot
+     * is written and the files it replaces are deleted.
+     */
+    public void compact() {
+        Future<?> write;
+        this.writeLock.lock();
+        try {
+            write = this.compaction;
+        } finally {
+            this.writeLock.unlock();
+        }
+        waitFor(write);
+        this.writeLock.lock();
+        try {
+            this.startCompaction();
+            write = this.compaction;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.writeLock.unlock();
+        }
+        waitFor(write);
+    }
+
+    /**
+     * Waits for any snapshot being written, forces every change to the
+     * storage device, closes the journal, and releases the directory. This
+     * must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        this.background.shutdown();
+        try {
+            this.background.awaitTermination(Long.MAX_VALUE,
+                    TimeUnit.NANOSECONDS);
+            try {
+                this.journal.close();
+            } finally {
+                this.unlockDirectory();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    /**
+     * Returns a new, empty database of the kind this one wraps, without a
+     * journal.
+     *
+     * @return The new database
+     */
+    @Override
+    public MusicDatabase newInstance() {
+        return this.db.newInstance();
+    }
+
+    @Override
+    public void clear() {
+        long end;
+        this.writeLock.lock();
+        try {
+            this.db.clear();
+            this.keptOrder = null;
+            end = this.record(SongJournal.CLEAR);
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+    }
+
+    /**
+     * Replaces the songs of this with those of {@code source}, in order, and
+     * clears {@code source}. Unlike the kernels, {@code source} may be any
+     * {@code MusicDatabase}.
+     *
+     * @param source
+     *            The database to take the songs of
+     */
+    @Override
+    public void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+
+        ArrayList<Song> songs = new ArrayList<Song>(source.size());
+        for (Song song : source) {
+            songs.add(song);
+        }
+        long end;
+        this.writeLock.lock();
+        try {
+            this.db.clear();
+            this.keptOrder = null;
+            end = this.record(SongJournal.CLEAR);
+            this.db.addAll(songs);
+            for (Song song : songs) {
+                end = this.record(SongJournal.ADD, argumentsOf(song));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+        source.clear();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        long end = 0;
+        this.writeLock.lock();
+        try {
+            if (!this.db.contains(song)) {
+                this.db.addEntry(song);
+                end = this.record(SongJournal.ADD, argumentsOf(song));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+    }
+
+    /**
+     * Adds the songs as the kernels do, recording one addition per song; a
+     * song already in this is a no-op when the journal is replayed.
+     *
+     * @param songs
+     *            The songs to add
+     */
+    @Override
+    public void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        long end = 0;
+        this.writeLock.lock();
+        try {
+            this.db.addAll(songs);
+            for (Song song : songs) {
+                end = this.record(SongJournal.ADD, argumentsOf(song));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+    }
+
+    @Override
+    public Song getEntryInOrder(int n) {
+        return this.db.getEntryInOrder(n);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(SearchField field, String value) {
+        return this.db.getEntries(field, value);
+    }
+
+    @Override
+    public ArrayList<Song> removeEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result;
+        long end = 0;
+        this.writeLock.lock();
+        try {
+            result = this.db.removeEntries(field, value);
+            if (!result.isEmpty()) {
+                end = this.record(SongJournal.REMOVE_ENTRIES, field.name(),
+                        value);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+        return result;
+    }
+
+    @Override
+    public Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        Song result;
+        long end;
+        this.writeLock.lock();
+        try {
+            result = this.db.removeEntry(song);
+            end = this.record(SongJournal.REMOVE, argumentsOf(song));
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+        return result;
+    }
+
+    @Override
+    public Boolean contains(Song song) {
+        return this.db.contains(song);
+    }
+
+    @Override
+    public int size() {
+        return this.db.size();
+    }
+
+    @Override
+    public void sort(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        long end = 0;
+        this.writeLock.lock();
+        try {
+            this.db.sort(order);
+            if (order instanceof SongOrder) {
+                end = this.record(SongJournal.SORT,
+                        ((SongOrder) order).name());
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+        if (!(order instanceof SongOrder)) {
+            this.compact();
+        }
+    }
+
+    @Override
+    public void keepSorted(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        boolean named = order instanceof SongOrder;
+        long end;
+        this.writeLock.lock();
+        try {
+            this.db.keepSorted(order);
+            this.keptOrder = null;
+            if (named) {
+                this.keptOrder = (SongOrder) order;
+                end = this.record(SongJournal.KEEP_SORTED,
+                        this.keptOrder.name());
+            } else {
+                end = this.record(SongJournal.STOP_KEEPING_SORTED);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+        if (!named) {
+            this.compact();
+        }
+    }
+
+    @Override
+    public void stopKeepingSorted() {
+        long end;
+        this.writeLock.lock();
+        try {
+            this.db.stopKeepingSorted();
+            this.keptOrder = null;
+            end = this.record(SongJournal.STOP_KEEPING_SORTED);
+        } finally {
+            this.writeLock.unlock();
+        }
+        this.await(end);
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return this.db.iterator();
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    @Override
+    public ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        return this.db.getEntriesInLengthRange(minSeconds, maxSeconds);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        return this.db.getEntries(criteria);
+    }
+
+    @Override
+    public void indexNormalized(SearchField field) {
+        this.db.indexNormalized(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        return this.db.getEntriesNormalized(field, value);
+    }
+
+    @Override
+    public void indexPrefixes(SearchField field) {
+        this.db.indexPrefixes(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesWithPrefix(SearchField field,
+            String prefix, int limit) {
+        return this.db.getEntriesWithPrefix(field, prefix, limit);
+    }
+
+    @Override
+    public void indexText(SearchField field) {
+        this.db.indexText(field);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesContaining(SearchField field,
+            String text) {
+        return this.db.getEntriesContaining(field, text);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesMatching(SearchField field,
+            String pattern) {
+        return this.db.getEntriesMatching(field, pattern);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesSimilar(SearchField field, String value,
+            int maxEdits) {
+        return this.db.getEntriesSimilar(field, value, maxEdits);
+    }
+
+    @Override
+    public Stream<Song> stream() {
+        return this.db.stream();
+    }
+
+    @Override
+    public Stream<Song> streamEntries(SearchField field, String value) {
+        return this.db.streamEntries(field, value);
+    }
+
+    @Override
+    public MusicDatabase snapshot() {
+        return this.db.snapshot();
+    }
+
+}
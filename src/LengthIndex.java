@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+/**
+ * A sorted index over {@code Song.seconds}, mapping each length to the songs
+ * that have it. Since the keys are kept in order, a range of lengths is found
+ * with one tree lookup and then read off in order, rather than by a scan. Songs
+ * whose length cannot be parsed are kept under -1.
+ *
+ * @convention [every posting list in $this.postings is non-empty] AND [every
+ *             song in the posting list for s has s = its seconds]
+ * @correspondence this = $this.postings
+ */
+final class LengthIndex {
+
+    /**
+     * Map from each length in seconds to the songs with that length.
+     */
+    private final TreeMap<Integer, LinkedHashSet<Song>> postings;
+
+    /**
+     * No-argument constructor.
+     */
+    LengthIndex() {
+        this.postings = new TreeMap<Integer, LinkedHashSet<Song>>();
+    }
+
+    /**
+     * Adds {@code song} to the posting list of its length.
+     *
+     * @param song
+     *            The song to index
+     * @updates this
+     */
+    void add(Song song) {
+        this.postings.computeIfAbsent(song.seconds(),
+                k -> new LinkedHashSet<Song>()).add(song);
+    }
+
+    /**
+     * Adds every song in {@code songs} to the posting list of its length,
+     * reusing the posting list of the previous song when the length repeats.
+     *
+     * @param songs
+     *            The songs to index
+     * @updates this
+     */
+    void addAll(Collection<Song> songs) {
+        int lastSeconds = 0;
+        LinkedHashSet<Song> posting = null;
+        for (Song song : songs) {
+            if (posting == null || song.seconds() != lastSeconds) {
+                lastSeconds = song.seconds();
+                posting = this.postings.computeIfAbsent(lastSeconds,
+                        k -> new LinkedHashSet<Song>());
+            }
+            posting.add(song);
+        }
+    }
+
+    /**
+     * Removes {@code song} from the posting list of its length, dropping the
+     * list once it is empty.
+     *
+     * @param song
+     *            The song to unindex
+     * @updates this
+     */
+    void remove(Song song) {
+        LinkedHashSet<Song> posting = this.postings.get(song.seconds());
+        if (posting != null && posting.remove(song) && posting.isEmpty()) {
+            this.postings.remove(song.seconds());
+        }
+    }
+
+    /**
+     * Returns the songs whose length is in {@code [minSeconds, maxSeconds]},
+     * shortest first, with songs of equal length in the order they were added.
+     *
+     * @param minSeconds
+     *            The shortest length to include
+     * @param maxSeconds
+     *            The longest length to include
+     * @return The songs in the range
+     * @requires 0 <= minSeconds <= maxSeconds
+     */
+    ArrayList<Song> range(int minSeconds, int maxSeconds) {
+        Collection<LinkedHashSet<Song>> lists = this.postings
+                .subMap(minSeconds, true, maxSeconds, true).values();
+        int count = 0;
+        for (LinkedHashSet<Song> posting : lists) {
+            count += posting.size();
+        }
+        ArrayList<Song> result = new ArrayList<Song>(count);
+        for (LinkedHashSet<Song> posting : lists) {
+            result.addAll(posting);
+        }
+        return result;
+    }
+
+    /**
+     * Empties the index.
+     *
+     * @clears this
+     */
+    void clear() {
+        this.postings.clear();
+    }
+
+}
@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@code SongRowReader} over a byte range of a file, read through
+ * {@code MappedByteBuffer} windows of a {@code FileChannel}. Tabs and line
+ * breaks are always single bytes in UTF-8, so rows are scanned directly in the
+ * mapped region and each field is decoded from UTF-8 exactly once, without a
+ * {@code Reader} or the platform charset in between.
+ *
+ * <p>
+ * The range may be larger than 2 GB; windows are remapped as the scan moves,
+ * always starting at the row currently being read.
+ */
+final class MappedSongReader implements SongRowReader {
+
+    /**
+     * Default size of each mapped window.
+     */
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+    /**
+     * Index of the length field in a row.
+     */
+    private static final int LENGTH_FIELD = 3;
+
+    /**
+     * The channel being read; it is owned by the caller.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Absolute file offset just past the last byte to read.
+     */
+    private final long end;
+
+    /**
+     * Size to map each window with.
+     */
+    private int windowSize;
+
+    /**
+     * The current window.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Absolute file offset of {@code window}'s first byte.
+     */
+    private long windowStart;
+
+    /**
+     * Position of the next unread byte in {@code window}.
+     */
+    private int pos;
+
+    /**
+     * Whether the last line ended with a carriage return, in which case a
+     * following line feed belongs to the same line break.
+     */
+    private boolean skipLineFeed;
+
+    /**
+     * Number of the line most recently read.
+     */
+    private int lineNumber;
+
+    /**
+     * Start offsets of the fields of the current line, relative to
+     * {@code window}. The entry after the last field start holds the line end
+     * plus one, so field {@code i} spans
+     * {@code [starts[i], starts[i + 1] - 1)}.
+     */
+    private final int[] starts = new int[FIELD_COUNT + 1];
+
+    /**
+     * Dictionary of the artist, album, and length values read so far, which
+     * repeat across many rows; titles are mostly distinct so are not kept.
+     */
+    private final StringDictionary strings = new StringDictionary();
+
+    /**
+     * Reusable buffer for copying a field out of the window before decoding.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Problem code of the row most recently read by {@code next}.
+     */
+    private int problem;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            The channel to read from
+     * @param start
+     *            Absolute offset of the first byte to read; must be the start
+     *            of a line
+     * @param end
+     *            Absolute offset just past the last byte to read; must be the
+     *            end of a line or of the file
+     * @param firstLineNumber
+     *            The line number of the line at {@code start}, used in error
+     *            messages
+     * @throws IOException
+     *             If mapping fails
+     */
+    MappedSongReader(FileChannel channel, long start, long end,
+            int firstLineNumber) throws IOException {
+        this.channel = channel;
+        this.end = end;
+        this.windowSize = DEFAULT_WINDOW_SIZE;
+        this.lineNumber = firstLineNumber - 1;
+        this.map(start);
+    }
+
+    /**
+     * Maps a new window starting at absolute offset {@code start}.
+     *
+     * @param start
+     *            Absolute offset of the new window
+     * @throws IOException
+     *             If mapping fails
+     */
+    private void map(long start) throws IOException {
+        long size = Math.min(this.windowSize, this.end - start);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, start,
+                size);
+        this.windowStart = start;
+        this.pos = 0;
+    }
+
+    /**
+     * Whether there are bytes in the range past the current window.
+     *
+     * @return true if the range continues past the window
+     */
+    private boolean moreAfterWindow() {
+        return this.windowStart + this.window.limit() < this.end;
+    }
+
+    /**
+     * Scans the next line, recording its field starts in {@code this.starts}.
+     *
+     * @return The number of fields in the line (tabs + 1), or 0 at end of
+     *         range
+     * @throws IOException
+     *             If mapping fails
+     */
+    private int scanLine() throws IOException {
+        if (this.pos == this.window.limit() && this.moreAfterWindow()) {
+            this.map(this.windowStart + this.pos);
+        }
+        if (this.skipLineFeed && this.pos < this.window.limit()
+                && this.window.get(this.pos) == '\n') {
+            this.pos++;
+            if (this.pos == this.window.limit() && this.moreAfterWindow()) {
+                this.map(this.windowStart + this.pos);
+            }
+        }
+        this.skipLineFeed = false;
+        int fields = 0;
+        if (this.pos < this.window.limit()) {
+            int lineStart = this.pos;
+            fields = 1;
+            this.starts[0] = lineStart;
+            int i = lineStart;
+            int limit = this.window.limit();
+            boolean done = false;
+            while (!done) {
+                if (i == limit) {
+                    if (!this.moreAfterWindow()) {
+                        done = true;
+                    } else {
+                        /*
+                         * The row runs past the window, so remap starting at
+                         * the row, growing the window if the row alone fills
+                         * it.
+                         */
+                        if (lineStart == 0) {
+                            this.windowSize = (int) Math.min(
+                                    2L * this.windowSize, Integer.MAX_VALUE);
+                        }
+                        this.map(this.windowStart + lineStart);
+                        for (int f = 0; f < fields && f < FIELD_COUNT; f++) {
+                            this.starts[f] -= lineStart;
+                        }
+                        i -= lineStart;
+                        lineStart = 0;
+                        limit = this.window.limit();
+                    }
+                } else {
+                    byte b = this.window.get(i);
+                    if (b == '\n' || b == '\r') {
+                        this.skipLineFeed = b == '\r';
+                        done = true;
+                    } else {
+                        if (b == '\t') {
+                            if (fields < FIELD_COUNT) {
+                                this.starts[fields] = i + 1;
+                            }
+                            fields++;
+                        }
+                        i++;
+                    }
+                }
+            }
+            this.starts[Math.min(fields, FIELD_COUNT)] = i + 1;
+            this.pos = Math.min(i + 1, limit);
+            this.lineNumber++;
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the length in bytes of field {@code f} of the current line.
+     *
+     * @param f
+     *            The field index
+     * @return The number of bytes in the field
+     */
+    private int fieldLength(int f) {
+        return this.starts[f + 1] - 1 - this.starts[f];
+    }
+
+    /**
+     * Decodes {@code length} bytes of the window starting at {@code offset}.
+     *
+     * @param offset
+     *            Offset in the window of the first byte
+     * @param length
+     *            Number of bytes to decode
+     * @return The decoded text
+     */
+    private String decode(int offset, int length) {
+        if (length > this.scratch.length) {
+            this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+        }
+        this.window.get(offset, this.scratch, 0, length);
+        return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns field {@code f} of the current line, decoded from UTF-8.
+     *
+     * @param f
+     *            The field index
+     * @return The field value
+     */
+    private String field(int f) {
+        return this.decode(this.starts[f], this.fieldLength(f));
+    }
+
+    /**
+     * Returns field {@code f} of the current line, as the single copy of that
+     * value held by {@code strings}.
+     *
+     * @param f
+     *            The field index
+     * @return The field value
+     */
+    private String sharedField(int f) {
+        int length = this.fieldLength(f);
+        if (length > this.scratch.length) {
+            this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+        }
+        this.window.get(this.starts[f], this.scratch, 0, length);
+        return this.strings.intern(this.scratch, 0, length);
+    }
+
+    @Override
+    public String readHeader() throws IOException {
+        int fields = this.scanLine();
+        String result = null;
+        if (fields > 0) {
+            int last = Math.min(fields, FIELD_COUNT);
+            result = this.decode(this.starts[0],
+                    this.starts[last] - 1 - this.starts[0]);
+        }
+        return result;
+    }
+
+    @Override
+    public Song next() throws IOException {
+        this.problem = VALID;
+        Song result = null;
+        int fields = this.scanLine();
+        if (fields > 0) {
+            if (fields == FIELD_COUNT) {
+                this.problem = SongRowReader.rowProblem(fields,
+                        this.fieldLength(0), this.fieldLength(1),
+                        this.fieldLength(LENGTH_FIELD));
+            } else {
+                this.problem = SongRowReader.rowProblem(fields, 0, 0, 0);
+            }
+            if (this.problem == VALID) {
+                result = new Song(this.field(0), this.sharedField(1),
+                        this.sharedField(2), this.sharedField(LENGTH_FIELD));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String error() {
+        String result = null;
+        if (this.problem != VALID) {
+            result = SongRowReader.problemMessage(this.problem,
+                    this.lineNumber);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the problem code of the row last read by {@code next}.
+     *
+     * @return A {@code SongRowReader} problem code
+     */
+    int problem() {
+        return this.problem;
+    }
+
+    /**
+     * Returns the line number of the line last read.
+     *
+     * @return The line number, counting from the {@code firstLineNumber} given
+     *         to the constructor
+     */
+    int lineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * Returns the absolute file offset of the next line to be read.
+     *
+     * @return The offset of the next unread line
+     * @throws IOException
+     *             If mapping fails
+     */
+    long position() throws IOException {
+        if (this.skipLineFeed) {
+            if (this.pos == this.window.limit() && this.moreAfterWindow()) {
+                this.map(this.windowStart + this.pos);
+            }
+            if (this.pos < this.window.limit()
+                    && this.window.get(this.pos) == '\n') {
+                this.pos++;
+            }
+            this.skipLineFeed = false;
+        }
+        return this.windowStart + this.pos;
+    }
+
+    /**
+     * Releases the current window. The channel is left open, since it belongs
+     * to the caller.
+     */
+    @Override
+    public void close() {
+        this.window = null;
+    }
+
+}
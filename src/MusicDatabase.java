@@ -1,4 +1,6 @@
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * {@code MusicDatabaseKernel} enhanced with secondary methods.
@@ -17,11 +19,30 @@ public interface MusicDatabase extends MusicDatabaseKernel {
      *           the second contains the artist, the third contains the album
      *           (optionally), and the fourth contains the length.
      * @ensures this contains all song data in the file {@code inputPath} points
-     *          to
+     *          to, except for rows breaking the format above, which are
+     *          reported to the console and skipped
      * @updates this
      */
     void readFromFile(String inputPath);
 
+    /**
+     * Adds to a database by reading from a tab-delimited .txt file through a
+     * memory mapping of the file rather than a {@code Reader}. Meant for very
+     * large files; the file must be UTF-8 encoded. Otherwise identical to
+     * {@code readFromFile}.
+     *
+     * @param inputPath
+     *            The path to the .txt file
+     * @requires {@code inputPath} not null or "" AND the file it leads to is a
+     *           UTF-8 encoded, tab delimited .txt file formatted as described
+     *           by {@code readFromFile}
+     * @ensures this contains all song data in the file {@code inputPath} points
+     *          to, except for rows breaking the format, which are reported to
+     *          the console and skipped
+     * @updates this
+     */
+    void readFromMappedFile(String inputPath);
+
     /**
      * Writes to a tab delimited .txt file from the database. If no path is
      * given the data will be printed to .\output\Music_Database.txt by default.
@@ -41,6 +62,57 @@ public interface MusicDatabase extends MusicDatabaseKernel {
      */
     void writeToFile(String outputPath);
 
+    /**
+     * Writes to a tab delimited .txt file from the database, exactly like
+     * {@code writeToFile(outputPath)}. If {@code atomic} is true, the data is
+     * first written to a temporary file in the same folder, which then
+     * replaces the output file in one step, so readers of the output file
+     * never see it half written.
+     *
+     * @param outputPath
+     *            Path to create the .txt in. If "", the .txt file will be
+     *            printed to .\output\Music_Database.txt by default.
+     * @param atomic
+     *            Whether to replace the output file atomically
+     * @requires {@code outputPath} is a valid file path and can be printed to,
+     *           or it is ""
+     * @ensures All songs in this are printed to the output file as described
+     *          by {@code writeToFile(outputPath)}, encoded as UTF-8
+     */
+    void writeToFile(String outputPath, boolean atomic);
+
+    /**
+     * Adds to a database by reading a binary file written by
+     * {@code writeToBinaryFile}. Rows are not split or decoded one by one:
+     * each distinct string is decoded, and each distinct length parsed, once.
+     * So this is faster than {@code readFromFile} for the same songs, though
+     * for the kernels that index every field most of the time goes to adding
+     * the songs either way.
+     *
+     * @param inputPath
+     *            The path to the binary file
+     * @requires {@code inputPath} not null or "" AND the file it leads to was
+     *           written by {@code writeToBinaryFile}
+     * @ensures this = #this * [the songs in the file that were not already in
+     *          #this, in the order they were written]
+     * @updates this
+     */
+    void readFromBinaryFile(String inputPath);
+
+    /**
+     * Writes the database to a compact binary file that
+     * {@code readFromBinaryFile} can load. Strings are stored once each in a
+     * dictionary, songs as columns of dictionary ids, and each song's length
+     * is also stored in seconds. The output file is replaced atomically.
+     *
+     * @param outputPath
+     *            Path to create the binary file in
+     * @requires {@code outputPath} is a valid file path and can be written to
+     * @ensures the file at {@code outputPath} holds all songs in this, in
+     *          order
+     */
+    void writeToBinaryFile(String outputPath);
+
     /**
      * Prints out the details of the given {@code song} with nice formatting.
      *
@@ -108,4 +180,224 @@ public interface MusicDatabase extends MusicDatabaseKernel {
      * @updates this
      */
     void addEntries(ArrayList<Song> songs);
+
+    /**
+     * Returns the songs in this whose length is between {@code minSeconds} and
+     * {@code maxSeconds} seconds, inclusive, shortest first. Songs of equal
+     * length keep their order in this. Songs whose length cannot be parsed are
+     * never included.
+     *
+     * @param minSeconds
+     *            The shortest length to include, in seconds
+     * @param maxSeconds
+     *            The longest length to include, in seconds
+     * @return The songs in the given range of lengths
+     * @requires 0 <= minSeconds <= maxSeconds
+     * @ensures getEntriesInLengthRange = [the songs in this with minSeconds <=
+     *          seconds <= maxSeconds, in increasing order of seconds, ties in
+     *          the order of this]
+     */
+    ArrayList<Song> getEntriesInLengthRange(int minSeconds, int maxSeconds);
+
+    /**
+     * Returns an immutable snapshot of this: a {@code MusicDatabase} holding
+     * the songs of this, in order, that never changes afterwards, whatever is
+     * done to this later. It can be queried, iterated, and written out, from
+     * any thread, while this keeps changing; every method that would change
+     * it throws {@code UnsupportedOperationException}. Taking a snapshot
+     * costs O(1), since it shares the representation of this, but the copy is
+     * only deferred: the first change to this afterwards copies the
+     * representation in O(|this|), and later changes cost as usual until the
+     * next snapshot. A snapshot before each of many changes thus costs
+     * O(|this|) per change.
+     *
+     * @return The snapshot
+     * @ensures snapshot = this
+     */
+    MusicDatabase snapshot();
+
+    /**
+     * Returns the songs in this that meet every criterion in
+     * {@code criteria}: for each field it names, the song's value of that
+     * field is the value the field maps to. Implementations with indexes start
+     * from the smallest posting list among the criteria, so the cost follows
+     * the most selective field rather than the size of this. An empty map
+     * matches every song.
+     *
+     * @param criteria
+     *            Map from fields to the values they must have
+     * @return The matching songs, in the order of this
+     * @requires criteria != null AND no value in criteria is null
+     * @ensures getEntries = [the songs s of this with s.matches(criteria), in
+     *          the order of this]
+     */
+    ArrayList<Song> getEntries(Map<SearchField, String> criteria);
+
+    /**
+     * Asks this to keep an index of {@code field} by normalized value, built
+     * as songs are added, so that {@code getEntriesNormalized} on that field
+     * no longer normalizes every song on each call. Implementations without
+     * indexes may ignore it. The index lasts until {@code clear}.
+     *
+     * @param field
+     *            The field to index by normalized value
+     * @ensures this = #this
+     */
+    void indexNormalized(SearchField field);
+
+    /**
+     * Returns the songs in this whose {@code field} matches {@code value}
+     * once both are normalized: Unicode NFKC applied, case folded, and runs of
+     * whitespace collapsed to one space with none at either end. So
+     * "hoshimachi  suisei" matches "Hoshimachi Suisei", and full-width or
+     * half-width forms match their plain forms.
+     *
+     * @param field
+     *            The field to match on
+     * @param value
+     *            The value to match
+     * @return The matching songs, in the order of this
+     * @requires value != null
+     * @ensures getEntriesNormalized = [the songs of this whose field has the
+     *          same normal form as value, in the order of this]
+     */
+    ArrayList<Song> getEntriesNormalized(SearchField field, String value);
+
+    /**
+     * Asks this to keep the values of {@code field} in sorted order, updated
+     * as songs are added and removed, so that {@code getEntriesWithPrefix} on
+     * that field costs about O(log n + limit) instead of a scan.
+     * Implementations without indexes may ignore it. The index lasts until
+     * {@code clear}.
+     *
+     * @param field
+     *            The field to keep sorted values of
+     * @ensures this = #this
+     */
+    void indexPrefixes(SearchField field);
+
+    /**
+     * Returns up to {@code limit} songs of this whose {@code field} starts
+     * with {@code prefix}, for type-ahead search. Songs come in order of
+     * their {@code field} value, as {@code String.compareTo} orders it, and
+     * songs with the same value in the order of this.
+     *
+     * @param field
+     *            The field to match on
+     * @param prefix
+     *            The prefix to match
+     * @param limit
+     *            The most songs to return
+     * @return The first matching songs
+     * @requires prefix != null and limit >= 0
+     * @ensures getEntriesWithPrefix = [the first min(limit, |matches|) songs
+     *          of matches, where matches is the songs of this whose field
+     *          starts with prefix, stably sorted by field]
+     */
+    ArrayList<Song> getEntriesWithPrefix(SearchField field, String prefix,
+            int limit);
+
+    /**
+     * Asks this to keep a trigram index of the values of {@code field},
+     * updated as songs are added and removed, so that
+     * {@code getEntriesContaining}, {@code getEntriesMatching}, and
+     * {@code getEntriesSimilar} on that field check only the values sharing
+     * trigrams with the query instead of every song. Implementations without
+     * indexes may ignore it. The index lasts until {@code clear}.
+     *
+     * @param field
+     *            The field to index
+     * @ensures this = #this
+     */
+    void indexText(SearchField field);
+
+    /**
+     * Returns the songs of this whose {@code field} contains {@code text},
+     * both normalized as by {@code getEntriesNormalized}. Songs come in order
+     * of their {@code field} value, and songs with the same value in the order
+     * of this.
+     *
+     * @param field
+     *            The field to search
+     * @param text
+     *            The text to find
+     * @return The matching songs
+     * @requires text != null
+     * @ensures getEntriesContaining = [the songs of this whose normalized
+     *          field contains the normal form of text, stably sorted by
+     *          field]
+     */
+    ArrayList<Song> getEntriesContaining(SearchField field, String text);
+
+    /**
+     * Returns the songs of this whose {@code field} matches {@code pattern},
+     * both normalized as by {@code getEntriesNormalized}, where {@code *} in
+     * {@code pattern} stands for any run of characters and {@code ?} for any
+     * one character. Songs come in order of their {@code field} value, and
+     * songs with the same value in the order of this.
+     *
+     * @param field
+     *            The field to search
+     * @param pattern
+     *            The pattern to match
+     * @return The matching songs
+     * @requires pattern != null
+     * @ensures getEntriesMatching = [the songs of this whose normalized field
+     *          matches the normal form of pattern, stably sorted by field]
+     */
+    ArrayList<Song> getEntriesMatching(SearchField field, String pattern);
+
+    /**
+     * Returns the songs of this whose {@code field} is at most
+     * {@code maxEdits} single-character insertions, deletions, or
+     * substitutions away from {@code value}, both normalized as by
+     * {@code getEntriesNormalized}, to tolerate typos. Songs come closest
+     * first, then in order of their {@code field} value, and songs with the
+     * same value in the order of this.
+     *
+     * @param field
+     *            The field to search
+     * @param value
+     *            The value to look for
+     * @param maxEdits
+     *            The most edits allowed, usually 1 or 2
+     * @return The matching songs
+     * @requires value != null and maxEdits >= 0
+     * @ensures getEntriesSimilar = [the songs of this whose normalized field
+     *          is within maxEdits edits of the normal form of value, stably
+     *          sorted by that distance and then by field]
+     */
+    ArrayList<Song> getEntriesSimilar(SearchField field, String value,
+            int maxEdits);
+
+    /**
+     * Returns a sequential stream of the songs in this, in order. Songs are
+     * produced as the stream is consumed, so {@code limit}, {@code findFirst},
+     * and similar operations stop early without building a list. This must
+     * not change while the stream is in use, unless the implementation is
+     * documented as safe for that.
+     *
+     * @return The songs of this, in order
+     * @ensures stream = this
+     */
+    Stream<Song> stream();
+
+    /**
+     * Returns a sequential stream of the songs in this whose {@code field}
+     * matches {@code value}, in the order of this: a lazy form of
+     * {@code getEntries}, read from an index where the implementation has
+     * one. Further conditions can be chained with {@code filter}, and
+     * {@code skip} and {@code limit} page through the matches without
+     * building the whole result. This must not change while the stream is in
+     * use, unless the implementation is documented as safe for that.
+     *
+     * @param field
+     *            The field to match on
+     * @param value
+     *            The value to match
+     * @return The matching songs, in order
+     * @requires value != null
+     * @ensures streamEntries = getEntries(field, value)
+     */
+    Stream<Song> streamEntries(SearchField field, String value);
 }
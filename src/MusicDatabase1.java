@@ -0,0 +1,367 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@code MusicDatabase} represented as an {@code ArrayList<Song>} holding the
+ * songs in order, paired with a {@code HashSet<Song>} holding the same songs
+ * for constant time membership checks. While the database is kept sorted, the
+ * {@code ArrayList} is replaced by a {@code SortedSongList}, which places each
+ * added song in order and finds the n-th song in O(log n).
+ *
+ * <p>
+ * {@code snapshot} shares the list and set with the snapshot in O(1) time;
+ * the next change to this copies them first, so the snapshot never sees it.
+ *
+ * @convention [$this.entries and $this.songSet contain exactly the same Song
+ *             objects] AND [$this.entries contains no duplicates] AND [no
+ *             element of $this.entries is null] AND [$this.entries is an
+ *             ArrayList or a SortedSongList]
+ * @correspondence this = $this.entries, in order
+ */
+public class MusicDatabase1 extends MusicDatabaseSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default load factor of {@code HashSet}, used to size sets up front.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The songs in the database, in order.
+     */
+    private List<Song> entries;
+
+    /**
+     * The songs in the database, used for fast lookups.
+     */
+    private HashSet<Song> songSet;
+
+    /**
+     * Whether a snapshot shares {@code entries} and {@code songSet}, which
+     * must then be copied before they are changed.
+     */
+    private boolean shared;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.entries = new ArrayList<Song>();
+        this.songSet = new HashSet<Song>();
+        this.shared = false;
+    }
+
+    /**
+     * Replaces {@code entries} and {@code songSet} with copies if a snapshot
+     * shares them.
+     */
+    private void unshare() {
+        if (this.shared) {
+            if (this.entries instanceof SortedSongList) {
+                this.entries = new SortedSongList(
+                        (SortedSongList) this.entries);
+            } else {
+                this.entries = new ArrayList<Song>(this.entries);
+            }
+            this.songSet = new HashSet<Song>(this.songSet);
+            this.shared = false;
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public MusicDatabase1() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor for a snapshot of {@code source}, sharing its
+     * representation.
+     *
+     * @param source
+     *            The database to share the representation of
+     */
+    private MusicDatabase1(MusicDatabase1 source) {
+        this.entries = source.entries;
+        this.songSet = source.songSet;
+        this.shared = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final MusicDatabase newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MusicDatabase1 : ""
+                + "Violation of: source is of dynamic type MusicDatabase1";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case.
+         */
+        MusicDatabase1 localSource = (MusicDatabase1) source;
+        this.entries = localSource.entries;
+        this.songSet = localSource.songSet;
+        this.shared = localSource.shared;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        this.unshare();
+        /*
+         * HashSet.add reports whether the song was new, so the duplicate check
+         * and the insertion share a single hash lookup.
+         */
+        if (this.songSet.add(song)) {
+            this.entries.add(song);
+        }
+    }
+
+    @Override
+    public final void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        this.unshare();
+        if (this.songSet.isEmpty()) {
+            /*
+             * HashSet cannot grow ahead of time, but an empty one can be
+             * replaced by one sized for the whole batch.
+             */
+            this.songSet = new HashSet<Song>(
+                    (int) (songs.size() / LOAD_FACTOR) + 1);
+        }
+
+        ArrayList<Song> added = new ArrayList<Song>(songs.size());
+        for (Song song : songs) {
+            if (this.songSet.add(song)) {
+                added.add(song);
+            }
+        }
+        this.entries.addAll(added);
+    }
+
+    @Override
+    public final Song getEntryInOrder(int n) {
+        Song result = null;
+        if (n >= 0 && n < this.entries.size()) {
+            result = this.entries.get(n);
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> foundSongs = new ArrayList<Song>();
+        for (Song song : this.entries) {
+            if (song.field(field).equals(value)) {
+                foundSongs.add(song);
+            }
+        }
+
+        return foundSongs;
+    }
+
+    @Override
+    public final ArrayList<Song> removeEntries(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        this.unshare();
+        ArrayList<Song> removedSongs = new ArrayList<Song>();
+        for (Song song : this.entries) {
+            if (song.field(field).equals(value)) {
+                removedSongs.add(song);
+                this.songSet.remove(song);
+            }
+        }
+        if (!removedSongs.isEmpty()) {
+            this.entries.removeIf(song -> song.field(field).equals(value));
+        }
+
+        return removedSongs;
+    }
+
+    @Override
+    public final Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+        assert this.songSet.contains(song) : "Violation of: song is in this";
+
+        this.unshare();
+        this.songSet.remove(song);
+        this.entries.remove(song);
+
+        return song;
+    }
+
+    @Override
+    public final Boolean contains(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        return this.songSet.contains(song);
+    }
+
+    @Override
+    public final int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public final void sort(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.stopKeepingSorted();
+        this.unshare();
+        SongSorter.sort(this.entries, order);
+    }
+
+    @Override
+    public final void keepSorted(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.entries = new SortedSongList(order, this.entries);
+    }
+
+    @Override
+    public final void stopKeepingSorted() {
+        if (this.entries instanceof SortedSongList) {
+            this.entries = new ArrayList<Song>(this.entries);
+        }
+    }
+
+    @Override
+    public final MusicDatabase snapshot() {
+        this.shared = true;
+        return new MusicDatabaseSnapshot(new MusicDatabase1(this));
+    }
+
+    @Override
+    public final MusicDatabase split(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        MusicDatabase1 result = (MusicDatabase1) this.newInstance();
+        /*
+         * The removed songs are distinct and already in order, so they become
+         * the new database's list as they are.
+         */
+        ArrayList<Song> moved = this.removeEntries(field, value);
+        result.entries = moved;
+        result.songSet = new HashSet<Song>(moved);
+
+        return result;
+    }
+
+    @Override
+    public final void append(MusicDatabase db) {
+        assert db != null : "Violation of: db != null";
+
+        if (db instanceof MusicDatabase1 && db != this) {
+            MusicDatabase1 localDb = (MusicDatabase1) db;
+            if (this.songSet.isEmpty()
+                    && !(this.entries instanceof SortedSongList)
+                    && !(localDb.entries instanceof SortedSongList)) {
+                /*
+                 * Appending to an empty database copies db exactly, so the
+                 * representation is shared, as with a snapshot, until either
+                 * side changes.
+                 */
+                this.entries = localDb.entries;
+                this.songSet = localDb.songSet;
+                this.shared = true;
+                localDb.shared = true;
+            } else {
+                this.addAll(localDb.entries);
+            }
+        } else {
+            super.append(db);
+        }
+    }
+
+    @Override
+    public final Iterator<Song> iterator() {
+        return new MusicDatabase1Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MusicDatabase1}.
+     */
+    private final class MusicDatabase1Iterator implements Iterator<Song> {
+
+        /**
+         * Representation iterator.
+         */
+        private final Iterator<Song> iterator;
+
+        /**
+         * No-argument constructor.
+         */
+        MusicDatabase1Iterator() {
+            this.iterator = MusicDatabase1.this.entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Song next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            return this.iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,885 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * {@code MusicDatabase} represented like {@code MusicDatabase1}, with an
+ * additional inverted index per {@code SearchField} so that
+ * {@code getEntries} and {@code removeEntries} cost O(matches) rather than a
+ * full scan, and a sorted index of lengths in seconds for
+ * {@code getEntriesInLengthRange}. Every field value is canonicalized through
+ * a {@code StringDictionary} as songs are added, so each distinct value is
+ * held once and the indexes are keyed by its dictionary id. The order list is
+ * an {@code IndexedSongList}, which finds and removes a song in O(log n)
+ * rather than scanning and shifting the list. While the database is kept
+ * sorted, it is a {@code SortedSongList} instead; posting lists then keep the
+ * order songs were added in and are sorted when read.
+ * Fields opted in with {@code indexNormalized} get a second index keyed by
+ * normalized value, sharing the same dictionary. The index of a field opted
+ * in with {@code indexPrefixes} also keeps its values sorted for prefix
+ * queries, and that of one opted in with {@code indexText} keeps them in a
+ * {@code TrigramIndex}.
+ *
+ * <p>
+ * {@code snapshot} shares the whole representation with the snapshot in O(1)
+ * time; the next change to this copies the order list and set and rebuilds
+ * the dictionary and indexes first, so the snapshot never sees it.
+ *
+ * @convention [$this.entries and $this.songSet contain exactly the same Song
+ *             objects] AND [$this.entries contains no duplicates] AND [no
+ *             element of $this.entries is null] AND [$this.indexes has one
+ *             SongIndex per SearchField] AND [$this.normalizedIndexes maps
+ *             some SearchFields to normalized SongIndexes] AND
+ *             [$this.allIndexes holds exactly the SongIndexes of
+ *             $this.indexes and $this.normalizedIndexes] AND [each SongIndex
+ *             holds exactly the songs of $this.entries] AND [$this.lengths
+ *             holds exactly the songs of $this.entries] AND [$this.entries is
+ *             an IndexedSongList or a SortedSongList] AND [if $this.entries
+ *             is an IndexedSongList, every posting list is in the same
+ *             relative order as $this.entries, and otherwise it is once
+ *             stably sorted by the comparator of $this.entries; likewise for
+ *             $this.lengths] AND
+ *             [every field of every song in $this.entries is the copy of that
+ *             value held by $this.strings]
+ * @correspondence this = $this.entries, in order
+ */
+public class MusicDatabase2 extends MusicDatabaseSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Default load factor of {@code HashSet}, used to size sets up front.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Songs that may be removed before the dictionary is rebuilt, however few
+     * are left, so a small database is not rebuilt on every removal.
+     */
+    private static final int REBUILD_SLACK = 4096;
+
+    /**
+     * {@code removeEntries} removes its matches from the order list in one
+     * pass, rather than one by one, once they are more than the list divided
+     * by this.
+     */
+    private static final int BULK_REMOVE_RATIO = 64;
+
+    /**
+     * The songs in the database, in order.
+     */
+    private List<Song> entries;
+
+    /**
+     * The songs in the database, used for fast lookups.
+     */
+    private HashSet<Song> songSet;
+
+    /**
+     * Dictionary of every field value, shared by the indexes. Values stay in
+     * it after their last song is removed, until it is rebuilt.
+     */
+    private StringDictionary strings;
+
+    /**
+     * Songs removed since the dictionary was last rebuilt, whose values may
+     * still be in it.
+     */
+    private int removedSinceRebuild;
+
+    /**
+     * One inverted index per {@code SearchField}.
+     */
+    private EnumMap<SearchField, SongIndex> indexes;
+
+    /**
+     * A normalized index for each field opted in with
+     * {@code indexNormalized}.
+     */
+    private EnumMap<SearchField, SongIndex> normalizedIndexes;
+
+    /**
+     * Every index in {@code indexes} and {@code normalizedIndexes}, for
+     * updating them all.
+     */
+    private ArrayList<SongIndex> allIndexes;
+
+    /**
+     * Sorted index of song lengths in seconds.
+     */
+    private LengthIndex lengths;
+
+    /**
+     * Whether a snapshot shares the representation, which must then be copied
+     * before it is changed.
+     */
+    private boolean shared;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.entries = new IndexedSongList();
+        this.songSet = new HashSet<Song>();
+        this.indexes = null;
+        this.normalizedIndexes = null;
+        this.createIndexes();
+        this.shared = false;
+    }
+
+    /**
+     * Replaces the dictionary and every index with empty ones, keeping the
+     * fields that have normalized indexes, sorted values, or text indexes.
+     */
+    private void createIndexes() {
+        Set<SearchField> normalizedFields = EnumSet.noneOf(SearchField.class);
+        if (this.normalizedIndexes != null) {
+            normalizedFields.addAll(this.normalizedIndexes.keySet());
+        }
+        Set<SearchField> prefixFields = EnumSet.noneOf(SearchField.class);
+        Set<SearchField> textFields = EnumSet.noneOf(SearchField.class);
+        if (this.indexes != null) {
+            for (SongIndex index : this.indexes.values()) {
+                if (index.keepsSortedValues()) {
+                    prefixFields.add(index.field());
+                }
+                if (index.textIndex() != null) {
+                    textFields.add(index.field());
+                }
+            }
+        }
+        this.strings = new StringDictionary();
+        this.indexes = new EnumMap<SearchField, SongIndex>(SearchField.class);
+        for (SearchField field : SearchField.values()) {
+            SongIndex index = new SongIndex(field, this.strings);
+            if (prefixFields.contains(field)) {
+                index.keepSortedValues();
+            }
+            if (textFields.contains(field)) {
+                index.keepTextIndex();
+            }
+            this.indexes.put(field, index);
+        }
+        this.normalizedIndexes = new EnumMap<SearchField, SongIndex>(
+                SearchField.class);
+        for (SearchField field : normalizedFields) {
+            this.normalizedIndexes.put(field,
+                    new SongIndex(field, this.strings, true));
+        }
+        this.allIndexes = new ArrayList<SongIndex>(this.indexes.values());
+        this.allIndexes.addAll(this.normalizedIndexes.values());
+        this.lengths = new LengthIndex();
+        this.removedSinceRebuild = 0;
+    }
+
+    /**
+     * Returns {@code song} with every field replaced by the copy held by
+     * {@code this.strings}, adding values the dictionary does not have yet.
+     * A new {@code Song} is only built if some field was not already that
+     * copy.
+     *
+     * @param song
+     *            The song to canonicalize
+     * @return A song equal to {@code song} whose fields are held by
+     *         {@code this.strings}
+     */
+    private Song canonical(Song song) {
+        String title = this.strings.intern(song.title());
+        String artist = this.strings.intern(song.artist());
+        String album = this.strings.intern(song.album());
+        String length = this.strings.intern(song.length());
+        Song result = song;
+        /*
+         * Reference comparison is intended: it tells whether the dictionary
+         * already held these exact strings.
+         */
+        if (title != song.title() || artist != song.artist()
+                || album != song.album() || length != song.length()) {
+            result = new Song(title, artist, album, length, song.seconds());
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code song} to every index.
+     *
+     * @param song
+     *            The song to index
+     */
+    private void index(Song song) {
+        for (SongIndex index : this.allIndexes) {
+            index.add(song);
+        }
+        this.lengths.add(song);
+    }
+
+    /**
+     * Removes {@code song} from every index.
+     *
+     * @param song
+     *            The song to unindex
+     */
+    private void unindex(Song song) {
+        for (SongIndex index : this.allIndexes) {
+            index.remove(song);
+        }
+        this.lengths.remove(song);
+    }
+
+    /**
+     * Rebuilds the dictionary and every index from {@code this.entries}, so
+     * posting lists follow the current order and values no longer in use are
+     * dropped.
+     */
+    private void reindex() {
+        this.createIndexes();
+        if (SongSorter.isParallel(this.entries.size())) {
+            /*
+             * The indexes share only the dictionary. Once it holds every key,
+             * indexing just looks ids up, so the indexes can be rebuilt side
+             * by side.
+             */
+            for (Song song : this.entries) {
+                for (SongIndex index : this.allIndexes) {
+                    this.strings.add(index.key(song.field(index.field())));
+                }
+            }
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (SongIndex index : this.allIndexes) {
+                tasks.add(ForkJoinPool.commonPool()
+                        .submit(() -> index.addAll(this.entries)));
+            }
+            this.lengths.addAll(this.entries);
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } else {
+            for (SongIndex index : this.allIndexes) {
+                index.addAll(this.entries);
+            }
+            this.lengths.addAll(this.entries);
+        }
+    }
+
+    /**
+     * Records that {@code count} songs were removed. Once more songs have been
+     * removed since the dictionary was last rebuilt than are left, the
+     * dictionary and indexes are rebuilt, dropping the values no song has any
+     * more. Without this, a database whose songs are steadily replaced by
+     * songs with new values would grow without bound; with it, the
+     * dictionary stays within a constant factor of the values in use, and
+     * each removal pays O(1) amortized for the rebuilds.
+     *
+     * @param count
+     *            The number of songs just removed
+     */
+    private void removed(int count) {
+        this.removedSinceRebuild += count;
+        if (this.removedSinceRebuild > this.entries.size() + REBUILD_SLACK) {
+            this.reindex();
+        }
+    }
+
+    /**
+     * Replaces the representation with a copy if a snapshot shares it.
+     */
+    private void unshare() {
+        if (this.shared) {
+            if (this.entries instanceof SortedSongList) {
+                this.entries = new SortedSongList(
+                        (SortedSongList) this.entries);
+            } else {
+                this.entries = new IndexedSongList(this.entries);
+            }
+            this.songSet = new HashSet<Song>(this.songSet);
+            this.reindex();
+            this.shared = false;
+        }
+    }
+
+    /**
+     * Reports whether some field was opted in with {@code indexNormalized},
+     * {@code indexPrefixes}, or {@code indexText}.
+     *
+     * @return Whether this has opted-in indexes
+     */
+    private boolean hasOptedInIndexes() {
+        boolean result = !this.normalizedIndexes.isEmpty();
+        for (SongIndex index : this.indexes.values()) {
+            result = result || index.keepsSortedValues()
+                    || index.textIndex() != null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the songs having each of {@code values} in {@code index}, value
+     * by value, and in the order of {@code this.entries} within a value.
+     *
+     * @param index
+     *            The index to read
+     * @param values
+     *            The values, in the order wanted
+     * @return The songs
+     */
+    private ArrayList<Song> songsWith(SongIndex index, List<String> values) {
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (String value : values) {
+            if (this.entries instanceof SortedSongList) {
+                result.addAll(
+                        this.inOrder(new ArrayList<Song>(index.get(value))));
+            } else {
+                result.addAll(index.get(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Puts {@code songs}, taken from posting lists, in the order of
+     * {@code this.entries}. Posting lists already follow it unless the
+     * database is kept sorted, in which case they follow the order songs were
+     * added in, and a stable sort by the kept order fixes them up.
+     *
+     * @param songs
+     *            Songs from posting lists, in posting list order
+     * @return {@code songs}
+     * @updates songs
+     */
+    private ArrayList<Song> inOrder(ArrayList<Song> songs) {
+        if (this.entries instanceof SortedSongList) {
+            songs.sort(((SortedSongList) this.entries).comparator());
+        }
+        return songs;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public MusicDatabase2() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor for a snapshot of {@code source}, sharing its
+     * representation.
+     *
+     * @param source
+     *            The database to share the representation of
+     */
+    private MusicDatabase2(MusicDatabase2 source) {
+        this.entries = source.entries;
+        this.songSet = source.songSet;
+        this.strings = source.strings;
+        this.indexes = source.indexes;
+        this.normalizedIndexes = source.normalizedIndexes;
+        this.allIndexes = source.allIndexes;
+        this.lengths = source.lengths;
+        this.shared = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final MusicDatabase newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MusicDatabase2 : ""
+                + "Violation of: source is of dynamic type MusicDatabase2";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case.
+         */
+        MusicDatabase2 localSource = (MusicDatabase2) source;
+        this.entries = localSource.entries;
+        this.songSet = localSource.songSet;
+        this.strings = localSource.strings;
+        this.indexes = localSource.indexes;
+        this.normalizedIndexes = localSource.normalizedIndexes;
+        this.allIndexes = localSource.allIndexes;
+        this.lengths = localSource.lengths;
+        this.shared = localSource.shared;
+        this.removedSinceRebuild = localSource.removedSinceRebuild;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        this.unshare();
+        Song canonical = this.canonical(song);
+        if (this.songSet.add(canonical)) {
+            this.entries.add(canonical);
+            this.index(canonical);
+        }
+    }
+
+    @Override
+    public final void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        this.unshare();
+        if (this.songSet.isEmpty()) {
+            /*
+             * HashSet cannot grow ahead of time, but an empty one can be
+             * replaced by one sized for the whole batch.
+             */
+            this.songSet = new HashSet<Song>(
+                    (int) (songs.size() / LOAD_FACTOR) + 1);
+        }
+
+        ArrayList<Song> added = new ArrayList<Song>(songs.size());
+        for (Song song : songs) {
+            Song canonical = this.canonical(song);
+            if (this.songSet.add(canonical)) {
+                added.add(canonical);
+            }
+        }
+        this.entries.addAll(added);
+        for (SongIndex index : this.allIndexes) {
+            index.addAll(added);
+        }
+        this.lengths.addAll(added);
+    }
+
+    @Override
+    public final Song getEntryInOrder(int n) {
+        Song result = null;
+        if (n >= 0 && n < this.entries.size()) {
+            result = this.entries.get(n);
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        return this.inOrder(
+                new ArrayList<Song>(this.indexes.get(field).get(value)));
+    }
+
+    @Override
+    public final ArrayList<Song> removeEntries(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        this.unshare();
+        Set<Song> matches = this.indexes.get(field).removeValue(value);
+        ArrayList<Song> removedSongs = new ArrayList<Song>(matches);
+        if (!matches.isEmpty()) {
+            for (Song song : removedSongs) {
+                this.songSet.remove(song);
+                for (SongIndex index : this.allIndexes) {
+                    if (index.field() != field || index.isNormalized()) {
+                        index.remove(song);
+                    }
+                }
+                this.lengths.remove(song);
+            }
+            /*
+             * Either kind of order list removes a song in O(log n), so a few
+             * matches are removed one by one; many are removed in one pass.
+             */
+            if (removedSongs.size() > this.entries.size() / BULK_REMOVE_RATIO) {
+                this.entries.removeIf(matches::contains);
+            } else {
+                for (Song song : removedSongs) {
+                    this.entries.remove(song);
+                }
+            }
+            this.removed(removedSongs.size());
+        }
+
+        return this.inOrder(removedSongs);
+    }
+
+    @Override
+    public final Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+        assert this.songSet.contains(song) : "Violation of: song is in this";
+
+        this.unshare();
+        this.songSet.remove(song);
+        this.entries.remove(song);
+        this.unindex(song);
+        this.removed(1);
+
+        return song;
+    }
+
+    @Override
+    public final Boolean contains(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        return this.songSet.contains(song);
+    }
+
+    @Override
+    public final int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    public final void sort(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.stopKeepingSorted();
+        this.unshare();
+        SongSorter.sort(this.entries, order);
+        this.reindex();
+    }
+
+    @Override
+    public final void keepSorted(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.entries = new SortedSongList(order, this.entries);
+        this.reindex();
+    }
+
+    @Override
+    public final void stopKeepingSorted() {
+        if (this.entries instanceof SortedSongList) {
+            this.entries = new IndexedSongList(this.entries);
+            this.reindex();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        assert 0 <= minSeconds : "Violation of: 0 <= minSeconds";
+        assert minSeconds <= maxSeconds : ""
+                + "Violation of: minSeconds <= maxSeconds";
+
+        ArrayList<Song> result = this.lengths.range(minSeconds, maxSeconds);
+        if (this.entries instanceof SortedSongList) {
+            result.sort(Comparator.comparingInt(Song::seconds).thenComparing(
+                    ((SortedSongList) this.entries).comparator()));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        assert criteria != null : "Violation of: criteria != null";
+
+        /*
+         * Posting list sizes are exact counts, so the smallest one bounds the
+         * result; each of its songs is then checked against the other
+         * criteria directly, which costs less than intersecting the larger
+         * lists.
+         */
+        Set<Song> smallest = null;
+        for (Map.Entry<SearchField, String> criterion : criteria.entrySet()) {
+            Set<Song> posting = this.indexes.get(criterion.getKey())
+                    .get(criterion.getValue());
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        ArrayList<Song> result;
+        if (smallest == null) {
+            result = new ArrayList<Song>(this.entries);
+        } else {
+            result = new ArrayList<Song>();
+            for (Song song : smallest) {
+                if (song.matches(criteria)) {
+                    result.add(song);
+                }
+            }
+            result = this.inOrder(result);
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexNormalized(SearchField field) {
+        if (!this.normalizedIndexes.containsKey(field)) {
+            this.unshare();
+            SongIndex index = new SongIndex(field, this.strings, true);
+            index.addAll(this.entries);
+            this.normalizedIndexes.put(field, index);
+            this.allIndexes.add(index);
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result;
+        SongIndex index = this.normalizedIndexes.get(field);
+        if (index == null) {
+            result = super.getEntriesNormalized(field, value);
+        } else {
+            result = this.inOrder(new ArrayList<Song>(
+                    index.get(FieldNormalizer.normalize(value))));
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexPrefixes(SearchField field) {
+        if (!this.indexes.get(field).keepsSortedValues()) {
+            this.unshare();
+            this.indexes.get(field).keepSortedValues();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesWithPrefix(SearchField field,
+            String prefix, int limit) {
+        assert prefix != null : "Violation of: prefix != null";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        ArrayList<Song> result;
+        SongIndex index = this.indexes.get(field);
+        if (!index.keepsSortedValues()) {
+            result = super.getEntriesWithPrefix(field, prefix, limit);
+        } else {
+            result = new ArrayList<Song>();
+            Iterator<String> values = index.valuesFrom(prefix).iterator();
+            while (result.size() < limit && values.hasNext()) {
+                String value = values.next();
+                if (value.startsWith(prefix)) {
+                    Collection<Song> songs = index.get(value);
+                    if (this.entries instanceof SortedSongList) {
+                        songs = this.inOrder(new ArrayList<Song>(songs));
+                    }
+                    Iterator<Song> it = songs.iterator();
+                    while (result.size() < limit && it.hasNext()) {
+                        result.add(it.next());
+                    }
+                } else {
+                    /*
+                     * Values sharing a prefix are contiguous, so none after
+                     * this one can match.
+                     */
+                    values = Collections.emptyIterator();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexText(SearchField field) {
+        if (this.indexes.get(field).textIndex() == null) {
+            this.unshare();
+            this.indexes.get(field).keepTextIndex();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesContaining(SearchField field,
+            String text) {
+        assert text != null : "Violation of: text != null";
+
+        ArrayList<Song> result;
+        SongIndex index = this.indexes.get(field);
+        if (index.textIndex() == null) {
+            result = super.getEntriesContaining(field, text);
+        } else {
+            result = this.songsWith(index, index.textIndex().containing(text));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesMatching(SearchField field,
+            String pattern) {
+        assert pattern != null : "Violation of: pattern != null";
+
+        ArrayList<Song> result;
+        SongIndex index = this.indexes.get(field);
+        if (index.textIndex() == null) {
+            result = super.getEntriesMatching(field, pattern);
+        } else {
+            result = this.songsWith(index,
+                    index.textIndex().matching(pattern));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesSimilar(SearchField field,
+            String value, int maxEdits) {
+        assert value != null : "Violation of: value != null";
+        assert maxEdits >= 0 : "Violation of: maxEdits >= 0";
+
+        ArrayList<Song> result;
+        SongIndex index = this.indexes.get(field);
+        if (index.textIndex() == null) {
+            result = super.getEntriesSimilar(field, value, maxEdits);
+        } else {
+            result = this.songsWith(index,
+                    index.textIndex().similar(value, maxEdits));
+        }
+        return result;
+    }
+
+    @Override
+    public final Stream<Song> streamEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        Stream<Song> result = this.indexes.get(field).get(value).stream();
+        if (this.entries instanceof SortedSongList) {
+            /*
+             * As in inOrder, posting lists of a kept sorted database follow
+             * the order songs were added in, so the matches are sorted, which
+             * buffers them, before the first is handed out.
+             */
+            result = result
+                    .sorted(((SortedSongList) this.entries).comparator());
+        }
+        return result;
+    }
+
+    @Override
+    public final MusicDatabase snapshot() {
+        this.shared = true;
+        return new MusicDatabaseSnapshot(new MusicDatabase2(this));
+    }
+
+    @Override
+    public final MusicDatabase split(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        MusicDatabase2 result = (MusicDatabase2) this.newInstance();
+        /*
+         * The removed songs are distinct, in order, and canonical in a
+         * dictionary holding one copy of each value, so they become the new
+         * database's list as they are and its indexes are built in one pass.
+         */
+        ArrayList<Song> moved = this.removeEntries(field, value);
+        result.entries = new IndexedSongList(moved);
+        result.songSet = new HashSet<Song>(moved);
+        result.reindex();
+
+        return result;
+    }
+
+    @Override
+    public final void append(MusicDatabase db) {
+        assert db != null : "Violation of: db != null";
+
+        if (db instanceof MusicDatabase2 && db != this) {
+            MusicDatabase2 localDb = (MusicDatabase2) db;
+            if (this.songSet.isEmpty() && !this.hasOptedInIndexes()
+                    && !(this.entries instanceof SortedSongList)
+                    && !(localDb.entries instanceof SortedSongList)) {
+                /*
+                 * Appending to an empty database copies db exactly, so the
+                 * representation is shared, as with a snapshot, until either
+                 * side changes.
+                 */
+                this.entries = localDb.entries;
+                this.songSet = localDb.songSet;
+                this.strings = localDb.strings;
+                this.indexes = localDb.indexes;
+                this.normalizedIndexes = localDb.normalizedIndexes;
+                this.allIndexes = localDb.allIndexes;
+                this.lengths = localDb.lengths;
+                this.shared = true;
+                localDb.shared = true;
+            } else {
+                this.addAll(localDb.entries);
+            }
+        } else {
+            super.append(db);
+        }
+    }
+
+    @Override
+    public final Iterator<Song> iterator() {
+        return new MusicDatabase2Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MusicDatabase2}.
+     */
+    private final class MusicDatabase2Iterator implements Iterator<Song> {
+
+        /**
+         * Representation iterator.
+         */
+        private final Iterator<Song> iterator;
+
+        /**
+         * No-argument constructor.
+         */
+        MusicDatabase2Iterator() {
+            this.iterator = MusicDatabase2.this.entries.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Song next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            return this.iterator.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,1088 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * {@code MusicDatabase} represented as off-heap columns. Every distinct field
+ * value is stored once, as UTF-8, in an {@code OffHeapStringPool}; each song
+ * is a row of dictionary ids in four {@code OffHeapIntColumn}s (plus a column
+ * of lengths in seconds), addressed by a slot number. A further column lists
+ * the slots in database order, and an open-addressed table of slots, kept off
+ * heap as well, finds a song's row from its ids.
+ *
+ * <p>
+ * No {@code Song} objects are kept: one is built from the columns each time
+ * {@code getEntryInOrder}, {@code iterator}, or a query hands a song out, so
+ * the heap does not grow with the number of songs. {@code getEntries} and
+ * {@code getEntriesInLengthRange} scan only the column they filter on.
+ * Strings of removed songs stay in the pool until more songs have been
+ * removed since it was last built than are left; then a new pool is built
+ * from the strings still in use, so a catalog whose songs are steadily
+ * replaced does not grow the pool without bound. Once
+ * {@code indexNormalized} is called, a further column maps each pool id to
+ * the id of its normal form, so {@code getEntriesNormalized} compares ids as
+ * {@code getEntries} does.
+ *
+ * <p>
+ * The order is an {@code OffHeapIntList}, which keeps the slots in blocks of
+ * a few thousand, so {@code getEntryInOrder} costs a binary search over the
+ * blocks and an insertion or removal shifts only the rest of one block.
+ * The list also remembers the block each slot is in, so {@code removeEntry}
+ * finds the position of a song by searching that block alone.
+ * While the database is kept sorted, an added song is placed by binary
+ * search over the order; a batch from {@code addAll} is sorted and merged in
+ * one pass.
+ *
+ * <p>
+ * {@code snapshot} shares the columns and pool with the snapshot in O(1)
+ * time; the next change to this copies them first, so the snapshot never
+ * sees it.
+ *
+ * @convention [$this.order holds distinct live slots] AND [the live slots are
+ *             exactly those in $this.order] AND [every slot in [0,
+ *             $this.titles.size()) is either live or in $this.freeSlots, not
+ *             both] AND [no two live slots have the same four ids] AND
+ *             [$this.rows.size() is a power of two, more than 2 *
+ *             $this.rowsUsed] AND [each live slot is stored, plus one, in
+ *             exactly one entry of $this.rows, reachable by linear probing
+ *             from the hash of its ids] AND [$this.rowsUsed is the number of
+ *             entries of $this.rows that are not EMPTY] AND [if
+ *             $this.normalizedIds != null, then for each id in $this.pool,
+ *             $this.normalizedIds[id] is the id in $this.pool of its normal
+ *             form]
+ * @correspondence this = [the song made of the strings with ids
+ *                 $this.titles[s], $this.artists[s], $this.albums[s],
+ *                 $this.lengths[s] in $this.pool, for each slot s of
+ *                 $this.order, in order]
+ */
+public class MusicDatabase3 extends MusicDatabaseSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Row table entry of an empty slot.
+     */
+    private static final int EMPTY = 0;
+
+    /**
+     * Row table entry of a removed row.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * Default number of row table entries.
+     */
+    private static final int DEFAULT_TABLE_SIZE = 1 << 10;
+
+    /**
+     * Multiplier used to combine the ids of a row into one hash.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Odd multiplier that scatters row hashes, since ids are small and dense.
+     */
+    private static final int SCATTER = 0x9E3779B9;
+
+    /**
+     * Songs that may be removed before the pool is rebuilt, however few are
+     * left, so a small database is not rebuilt on every removal.
+     */
+    private static final int REBUILD_SLACK = 4096;
+
+    /**
+     * Every distinct field value.
+     */
+    private OffHeapStringPool pool;
+
+    /**
+     * Songs removed since the pool was last built, whose strings may still
+     * be in it.
+     */
+    private int removedSinceRebuild;
+
+    /**
+     * Title id of each slot.
+     */
+    private OffHeapIntColumn titles;
+
+    /**
+     * Artist id of each slot.
+     */
+    private OffHeapIntColumn artists;
+
+    /**
+     * Album id of each slot.
+     */
+    private OffHeapIntColumn albums;
+
+    /**
+     * Length id of each slot.
+     */
+    private OffHeapIntColumn lengths;
+
+    /**
+     * Length in seconds of each slot.
+     */
+    private OffHeapIntColumn seconds;
+
+    /**
+     * The live slots, in database order.
+     */
+    private OffHeapIntList order;
+
+    /**
+     * Slots freed by removals, reused before new ones are made.
+     */
+    private OffHeapIntColumn freeSlots;
+
+    /**
+     * Open-addressed table of live slots plus one, EMPTY, or TOMBSTONE.
+     */
+    private OffHeapIntColumn rows;
+
+    /**
+     * Number of entries of {@code rows} that are live or TOMBSTONE.
+     */
+    private int rowsUsed;
+
+    /**
+     * The order the database is kept sorted by, or null if it is not.
+     */
+    private Comparator<Song> keptOrder;
+
+    /**
+     * For each id in the pool, the id of its normal form, or null until
+     * {@code indexNormalized} is first called. Normal forms do not depend on
+     * the field, so one column serves every field.
+     */
+    private OffHeapIntColumn normalizedIds;
+
+    /**
+     * Whether a snapshot shares the columns and pool, which must then be
+     * copied before they are changed.
+     */
+    private boolean shared;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.pool = new OffHeapStringPool();
+        this.removedSinceRebuild = 0;
+        this.titles = new OffHeapIntColumn();
+        this.artists = new OffHeapIntColumn();
+        this.albums = new OffHeapIntColumn();
+        this.lengths = new OffHeapIntColumn();
+        this.seconds = new OffHeapIntColumn();
+        this.order = new OffHeapIntList(true);
+        this.freeSlots = new OffHeapIntColumn();
+        this.rows = new OffHeapIntColumn(DEFAULT_TABLE_SIZE);
+        this.rowsUsed = 0;
+        this.keptOrder = null;
+        this.normalizedIds = null;
+        this.shared = false;
+    }
+
+    /**
+     * Replaces the columns and pool with copies if a snapshot shares them.
+     */
+    private void unshare() {
+        if (this.shared) {
+            this.pool = new OffHeapStringPool(this.pool);
+            this.titles = new OffHeapIntColumn(this.titles);
+            this.artists = new OffHeapIntColumn(this.artists);
+            this.albums = new OffHeapIntColumn(this.albums);
+            this.lengths = new OffHeapIntColumn(this.lengths);
+            this.seconds = new OffHeapIntColumn(this.seconds);
+            this.order = new OffHeapIntList(this.order);
+            this.freeSlots = new OffHeapIntColumn(this.freeSlots);
+            this.rows = new OffHeapIntColumn(this.rows);
+            if (this.normalizedIds != null) {
+                this.normalizedIds = new OffHeapIntColumn(this.normalizedIds);
+            }
+            this.shared = false;
+        }
+    }
+
+    /**
+     * Returns the column holding the ids of {@code field}.
+     *
+     * @param field
+     *            The field to look up
+     * @return The column of {@code field}
+     */
+    private OffHeapIntColumn column(SearchField field) {
+        OffHeapIntColumn result;
+        switch (field) {
+            case TITLE:
+                result = this.titles;
+                break;
+            case ARTIST:
+                result = this.artists;
+                break;
+            case ALBUM:
+                result = this.albums;
+                break;
+            default:
+                result = this.lengths;
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Builds the song stored in {@code slot}.
+     *
+     * @param slot
+     *            A live slot
+     * @return The song
+     */
+    private Song song(int slot) {
+        return new Song(this.pool.get(this.titles.get(slot)),
+                this.pool.get(this.artists.get(slot)),
+                this.pool.get(this.albums.get(slot)),
+                this.pool.get(this.lengths.get(slot)),
+                this.seconds.get(slot));
+    }
+
+    /**
+     * Returns the first row table entry for a row with the given ids.
+     *
+     * @param title
+     *            The title id
+     * @param artist
+     *            The artist id
+     * @param album
+     *            The album id
+     * @param length
+     *            The length id
+     * @return The entry to start probing at
+     */
+    private int start(int title, int artist, int album, int length) {
+        int hash = (((title * HASH_MULTIPLIER + artist) * HASH_MULTIPLIER
+                + album) * HASH_MULTIPLIER + length) * SCATTER;
+        return (hash ^ (hash >>> 16)) & (this.rows.size() - 1);
+    }
+
+    /**
+     * Returns the row table entry holding the slot with the given ids or, if
+     * there is none, the entry a slot with those ids should be stored in.
+     *
+     * @param title
+     *            The title id
+     * @param artist
+     *            The artist id
+     * @param album
+     *            The album id
+     * @param length
+     *            The length id
+     * @return The matching entry, or the EMPTY or TOMBSTONE entry to use
+     */
+    private int probe(int title, int artist, int album, int length) {
+        int mask = this.rows.size() - 1;
+        int i = this.start(title, artist, album, length);
+        int free = -1;
+        int result = -1;
+        while (result < 0 && this.rows.get(i) != EMPTY) {
+            int entry = this.rows.get(i);
+            if (entry == TOMBSTONE) {
+                if (free < 0) {
+                    free = i;
+                }
+                i = (i + 1) & mask;
+            } else if (this.titles.get(entry - 1) == title
+                    && this.artists.get(entry - 1) == artist
+                    && this.albums.get(entry - 1) == album
+                    && this.lengths.get(entry - 1) == length) {
+                result = i;
+            } else {
+                i = (i + 1) & mask;
+            }
+        }
+        if (result < 0) {
+            result = i;
+            if (free >= 0) {
+                result = free;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the row table entry holding the slot of {@code song}, or -1 if
+     * {@code song} is not in this.
+     *
+     * @param song
+     *            The song to look up
+     * @return The entry of {@code song}, or -1
+     */
+    private int find(Song song) {
+        int title = this.pool.find(song.title());
+        int artist = this.pool.find(song.artist());
+        int album = this.pool.find(song.album());
+        int length = this.pool.find(song.length());
+        int result = -1;
+        if (title >= 0 && artist >= 0 && album >= 0 && length >= 0) {
+            int i = this.probe(title, artist, album, length);
+            if (this.rows.get(i) > 0) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the row table from {@code this.order}, dropping tombstones and
+     * growing it if it is more than a quarter full of live rows.
+     */
+    private void rehashRows() {
+        int size = this.rows.size();
+        if (4L * this.order.size() > size) {
+            size *= 2;
+        }
+        this.rows = new OffHeapIntColumn(size);
+        this.rowsUsed = 0;
+        for (int i = 0; i < this.order.size(); i++) {
+            int slot = this.order.get(i);
+            int entry = this.probe(this.titles.get(slot),
+                    this.artists.get(slot), this.albums.get(slot),
+                    this.lengths.get(slot));
+            this.rows.set(entry, slot + 1);
+            this.rowsUsed++;
+        }
+    }
+
+    /**
+     * Adds {@code song} after the last song, unless it is already in this.
+     *
+     * @param song
+     *            The song to add
+     */
+    private void addRow(Song song) {
+        this.addRow(this.pool.add(song.title()), this.pool.add(song.artist()),
+                this.pool.add(song.album()), this.pool.add(song.length()),
+                song.seconds());
+    }
+
+    /**
+     * Adds the song with the given ids and length in seconds after the last
+     * song, unless it is already in this.
+     *
+     * @param title
+     *            Pool id of the title
+     * @param artist
+     *            Pool id of the artist
+     * @param album
+     *            Pool id of the album
+     * @param length
+     *            Pool id of the length
+     * @param secs
+     *            The length in seconds
+     */
+    private void addRow(int title, int artist, int album, int length,
+            int secs) {
+        int entry = this.probe(title, artist, album, length);
+        if (this.rows.get(entry) <= 0) {
+            int slot;
+            if (this.freeSlots.size() > 0) {
+                slot = this.freeSlots.get(this.freeSlots.size() - 1);
+                this.freeSlots.truncate(this.freeSlots.size() - 1);
+                this.titles.set(slot, title);
+                this.artists.set(slot, artist);
+                this.albums.set(slot, album);
+                this.lengths.set(slot, length);
+                this.seconds.set(slot, secs);
+            } else {
+                slot = this.titles.size();
+                this.titles.add(title);
+                this.artists.add(artist);
+                this.albums.add(album);
+                this.lengths.add(length);
+                this.seconds.add(secs);
+            }
+            if (this.rows.get(entry) == EMPTY) {
+                this.rowsUsed++;
+            }
+            this.rows.set(entry, slot + 1);
+            this.order.add(slot);
+            if (2 * this.rowsUsed >= this.rows.size()) {
+                this.rehashRows();
+            }
+            if (this.normalizedIds != null) {
+                this.normalizeNewStrings();
+            }
+        }
+    }
+
+    /**
+     * Extends {@code normalizedIds} to cover every string in the pool,
+     * adding normal forms to the pool as needed; each of those is its own
+     * normal form, so the loop ends.
+     */
+    private void normalizeNewStrings() {
+        while (this.normalizedIds.size() < this.pool.size()) {
+            int id = this.normalizedIds.size();
+            this.normalizedIds.add(this.pool
+                    .add(FieldNormalizer.normalize(this.pool.get(id))));
+        }
+    }
+
+    /**
+     * Returns the id in {@code to} of the string with id {@code id} in
+     * {@code from}, adding it on first use. Each string is decoded once
+     * however many rows use it.
+     *
+     * @param from
+     *            The pool the id is from
+     * @param to
+     *            The pool to translate the id into
+     * @param id
+     *            An id in {@code from}
+     * @param idMap
+     *            Ids already translated, plus one, or 0
+     * @return The id in {@code to}
+     * @updates to, idMap
+     */
+    private static int mapId(OffHeapStringPool from, OffHeapStringPool to,
+            int id, int[] idMap) {
+        if (idMap[id] == 0) {
+            idMap[id] = to.add(from.get(id)) + 1;
+        }
+        return idMap[id] - 1;
+    }
+
+    /**
+     * Adds the song in {@code slot} of {@code source} after the last song,
+     * unless it is already in this, without building a {@code Song}.
+     *
+     * @param source
+     *            The database to copy from
+     * @param slot
+     *            A live slot of {@code source}
+     * @param idMap
+     *            Ids of the pool of {@code source} already translated, plus
+     *            one, or 0
+     * @updates idMap
+     */
+    private void copyRow(MusicDatabase3 source, int slot, int[] idMap) {
+        this.addRow(
+                mapId(source.pool, this.pool, source.titles.get(slot), idMap),
+                mapId(source.pool, this.pool, source.artists.get(slot), idMap),
+                mapId(source.pool, this.pool, source.albums.get(slot), idMap),
+                mapId(source.pool, this.pool, source.lengths.get(slot), idMap),
+                source.seconds.get(slot));
+    }
+
+    /**
+     * Replaces the pool with one holding only the strings of live slots,
+     * translating the id columns, normal forms, and row table to it.
+     */
+    private void rebuildPool() {
+        OffHeapStringPool fresh = new OffHeapStringPool();
+        int[] idMap = new int[this.pool.size()];
+        OffHeapIntColumn[] columns = { this.titles, this.artists,
+                this.albums, this.lengths };
+        for (int i = 0; i < this.order.size(); i++) {
+            int slot = this.order.get(i);
+            for (OffHeapIntColumn column : columns) {
+                column.set(slot,
+                        mapId(this.pool, fresh, column.get(slot), idMap));
+            }
+        }
+        this.pool = fresh;
+        this.removedSinceRebuild = 0;
+        if (this.normalizedIds != null) {
+            this.normalizedIds = new OffHeapIntColumn();
+            this.normalizeNewStrings();
+        }
+        this.rehashRows();
+    }
+
+    /**
+     * Records that {@code count} songs were removed. Once more songs have been
+     * removed since the pool was last built than are left, it is rebuilt
+     * from the strings still in use, so the pool stays within a constant
+     * factor of them and each removal pays O(1) amortized for the rebuilds.
+     *
+     * @param count
+     *            The number of songs just removed
+     */
+    private void removed(int count) {
+        this.removedSinceRebuild += count;
+        if (this.removedSinceRebuild > this.order.size() + REBUILD_SLACK) {
+            this.rebuildPool();
+        }
+    }
+
+    /**
+     * Returns the first position in {@code [from, to)} of {@code this.order}
+     * whose song comes after {@code song} in the kept order, or {@code to}.
+     *
+     * @param song
+     *            The song to place
+     * @param from
+     *            Start of the sorted range to search
+     * @param to
+     *            End of the sorted range to search
+     * @return The position just past the songs before or tied with
+     *         {@code song}
+     */
+    private int upperBound(Song song, int from, int to) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.keptOrder.compare(this.song(this.order.get(mid)),
+                    song) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Merges the songs appended to {@code this.order} from position
+     * {@code start} on into the sorted songs before it. The appended songs
+     * are sorted, then each is placed by binary search in the part of the
+     * sorted range not yet passed, and the new order column is written in a
+     * single pass.
+     *
+     * @param start
+     *            Number of songs, at the front of the order, that are sorted
+     */
+    private void mergeAppended(int start) {
+        ArrayList<Song> appended = new ArrayList<Song>(
+                this.order.size() - start);
+        for (int i = start; i < this.order.size(); i++) {
+            appended.add(this.song(this.order.get(i)));
+        }
+        int[] positions = SongSorter.sortedPositions(appended,
+                this.keptOrder);
+        OffHeapIntList merged = new OffHeapIntList(true);
+        int next = 0;
+        for (int p : positions) {
+            int position = this.upperBound(appended.get(p), next, start);
+            while (next < position) {
+                merged.add(this.order.get(next));
+                next++;
+            }
+            merged.add(this.order.get(start + p));
+        }
+        while (next < start) {
+            merged.add(this.order.get(next));
+            next++;
+        }
+        this.order = merged;
+    }
+
+    /**
+     * Frees the slot stored in row table entry {@code entry}; the caller
+     * takes it out of {@code this.order}.
+     *
+     * @param entry
+     *            A row table entry holding a live slot
+     */
+    private void freeRow(int entry) {
+        this.freeSlots.add(this.rows.get(entry) - 1);
+        this.rows.set(entry, TOMBSTONE);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public MusicDatabase3() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor for a snapshot of {@code source}, sharing its
+     * representation.
+     *
+     * @param source
+     *            The database to share the representation of
+     */
+    private MusicDatabase3(MusicDatabase3 source) {
+        this.pool = source.pool;
+        this.removedSinceRebuild = source.removedSinceRebuild;
+        this.titles = source.titles;
+        this.artists = source.artists;
+        this.albums = source.albums;
+        this.lengths = source.lengths;
+        this.seconds = source.seconds;
+        this.order = source.order;
+        this.freeSlots = source.freeSlots;
+        this.rows = source.rows;
+        this.rowsUsed = source.rowsUsed;
+        this.keptOrder = source.keptOrder;
+        this.normalizedIds = source.normalizedIds;
+        this.shared = true;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final MusicDatabase newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MusicDatabase3 : ""
+                + "Violation of: source is of dynamic type MusicDatabase3";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case.
+         */
+        MusicDatabase3 localSource = (MusicDatabase3) source;
+        this.pool = localSource.pool;
+        this.removedSinceRebuild = localSource.removedSinceRebuild;
+        this.titles = localSource.titles;
+        this.artists = localSource.artists;
+        this.albums = localSource.albums;
+        this.lengths = localSource.lengths;
+        this.seconds = localSource.seconds;
+        this.order = localSource.order;
+        this.freeSlots = localSource.freeSlots;
+        this.rows = localSource.rows;
+        this.rowsUsed = localSource.rowsUsed;
+        this.keptOrder = localSource.keptOrder;
+        this.normalizedIds = localSource.normalizedIds;
+        this.shared = localSource.shared;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        this.unshare();
+        int before = this.order.size();
+        this.addRow(song);
+        if (this.keptOrder != null && this.order.size() > before) {
+            int slot = this.order.get(before);
+            this.order.truncate(before);
+            this.order.insert(this.upperBound(song, 0, before), slot);
+        }
+    }
+
+    @Override
+    public final void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        this.unshare();
+        int before = this.order.size();
+        for (Song song : songs) {
+            this.addRow(song);
+        }
+        if (this.keptOrder != null && this.order.size() > before) {
+            this.mergeAppended(before);
+        }
+    }
+
+    @Override
+    public final Song getEntryInOrder(int n) {
+        Song result = null;
+        if (n >= 0 && n < this.order.size()) {
+            result = this.song(this.order.get(n));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        int id = this.pool.find(value);
+        if (id >= 0) {
+            OffHeapIntColumn column = this.column(field);
+            for (int i = 0; i < this.order.size(); i++) {
+                int slot = this.order.get(i);
+                if (column.get(slot) == id) {
+                    result.add(this.song(slot));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> removeEntries(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        this.unshare();
+        ArrayList<Song> removedSongs = new ArrayList<Song>();
+        int id = this.pool.find(value);
+        if (id >= 0) {
+            OffHeapIntColumn column = this.column(field);
+            int kept = 0;
+            for (int i = 0; i < this.order.size(); i++) {
+                int slot = this.order.get(i);
+                if (column.get(slot) == id) {
+                    removedSongs.add(this.song(slot));
+                    this.freeRow(this.probe(this.titles.get(slot),
+                            this.artists.get(slot), this.albums.get(slot),
+                            this.lengths.get(slot)));
+                } else {
+                    this.order.set(kept, slot);
+                    kept++;
+                }
+            }
+            this.order.truncate(kept);
+            this.removed(removedSongs.size());
+        }
+        return removedSongs;
+    }
+
+    @Override
+    public final Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+        int entry = this.find(song);
+        assert entry >= 0 : "Violation of: song is in this";
+
+        this.unshare();
+        this.order.removeAt(this.order.indexOf(this.rows.get(entry) - 1));
+        this.freeRow(entry);
+        this.removed(1);
+
+        return song;
+    }
+
+    @Override
+    public final Boolean contains(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        return this.find(song) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.order.size();
+    }
+
+    @Override
+    public final void sort(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.unshare();
+        int[] slots = new int[this.order.size()];
+        Song[] songs = new Song[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = this.order.get(i);
+        }
+        if (SongSorter.isParallel(slots.length)) {
+            /*
+             * Building songs only reads the columns and the pool, with
+             * absolute gets that leave the buffers' state alone, so the
+             * decoding can be spread over the pool.
+             */
+            Arrays.parallelSetAll(songs, i -> this.song(slots[i]));
+        } else {
+            for (int i = 0; i < slots.length; i++) {
+                songs[i] = this.song(slots[i]);
+            }
+        }
+        int[] positions = SongSorter.sortedPositions(Arrays.asList(songs),
+                order);
+        for (int i = 0; i < positions.length; i++) {
+            this.order.set(i, slots[positions[i]]);
+        }
+        this.keptOrder = null;
+    }
+
+    @Override
+    public final void keepSorted(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.sort(order);
+        this.keptOrder = order;
+    }
+
+    @Override
+    public final void stopKeepingSorted() {
+        this.keptOrder = null;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        assert 0 <= minSeconds : "Violation of: 0 <= minSeconds";
+        assert minSeconds <= maxSeconds : ""
+                + "Violation of: minSeconds <= maxSeconds";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (int i = 0; i < this.order.size(); i++) {
+            int slot = this.order.get(i);
+            int s = this.seconds.get(slot);
+            if (s >= minSeconds && s <= maxSeconds) {
+                result.add(this.song(slot));
+            }
+        }
+        result.sort(Comparator.comparingInt(Song::seconds));
+
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        assert criteria != null : "Violation of: criteria != null";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        OffHeapIntColumn[] columns = new OffHeapIntColumn[criteria.size()];
+        int[] ids = new int[criteria.size()];
+        boolean possible = true;
+        int k = 0;
+        for (Map.Entry<SearchField, String> criterion : criteria.entrySet()) {
+            columns[k] = this.column(criterion.getKey());
+            ids[k] = this.pool.find(criterion.getValue());
+            possible = possible && ids[k] >= 0;
+            k++;
+        }
+        if (possible) {
+            /*
+             * Every criterion becomes an int compare on its id column, and a
+             * song is built only once all of them hold.
+             */
+            for (int i = 0; i < this.order.size(); i++) {
+                int slot = this.order.get(i);
+                boolean match = true;
+                for (int j = 0; j < ids.length && match; j++) {
+                    match = columns[j].get(slot) == ids[j];
+                }
+                if (match) {
+                    result.add(this.song(slot));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexNormalized(SearchField field) {
+        if (this.normalizedIds == null) {
+            this.unshare();
+            this.normalizedIds = new OffHeapIntColumn();
+            this.normalizeNewStrings();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result;
+        if (this.normalizedIds == null) {
+            result = super.getEntriesNormalized(field, value);
+        } else {
+            result = new ArrayList<Song>();
+            int id = this.pool.find(FieldNormalizer.normalize(value));
+            if (id >= 0) {
+                OffHeapIntColumn column = this.column(field);
+                for (int i = 0; i < this.order.size(); i++) {
+                    int slot = this.order.get(i);
+                    if (this.normalizedIds.get(column.get(slot)) == id) {
+                        result.add(this.song(slot));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final Stream<Song> stream() {
+        OffHeapIntList slots = this.order;
+        return IntStream.range(0, slots.size())
+                .mapToObj(i -> this.song(slots.get(i)));
+    }
+
+    @Override
+    public final Stream<Song> streamEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        Stream<Song> result = Stream.empty();
+        int id = this.pool.find(value);
+        if (id >= 0) {
+            /*
+             * Only the id column is read for songs that do not match, and a
+             * song is built only when the stream asks for it.
+             */
+            OffHeapIntList slots = this.order;
+            OffHeapIntColumn column = this.column(field);
+            result = IntStream.range(0, slots.size()).map(slots::get)
+                    .filter(slot -> column.get(slot) == id)
+                    .mapToObj(this::song);
+        }
+        return result;
+    }
+
+    @Override
+    public final MusicDatabase snapshot() {
+        this.shared = true;
+        return new MusicDatabaseSnapshot(new MusicDatabase3(this));
+    }
+
+    @Override
+    public final MusicDatabase split(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        MusicDatabase3 result = (MusicDatabase3) this.newInstance();
+        int id = this.pool.find(value);
+        if (id >= 0) {
+            this.unshare();
+            OffHeapIntColumn column = this.column(field);
+            int kept = 0;
+            /*
+             * The matches are usually few next to the pool, so they are
+             * copied as songs rather than through a map of every pool id.
+             */
+            for (int i = 0; i < this.order.size(); i++) {
+                int slot = this.order.get(i);
+                if (column.get(slot) == id) {
+                    result.addRow(this.song(slot));
+                    this.freeRow(this.probe(this.titles.get(slot),
+                            this.artists.get(slot), this.albums.get(slot),
+                            this.lengths.get(slot)));
+                } else {
+                    this.order.set(kept, slot);
+                    kept++;
+                }
+            }
+            this.order.truncate(kept);
+            this.removed(result.size());
+        }
+
+        return result;
+    }
+
+    @Override
+    public final void append(MusicDatabase db) {
+        assert db != null : "Violation of: db != null";
+
+        if (db instanceof MusicDatabase3 && db != this) {
+            MusicDatabase3 localDb = (MusicDatabase3) db;
+            if (this.order.size() == 0 && this.keptOrder == null
+                    && this.normalizedIds == null) {
+                /*
+                 * Appending to an empty database copies db exactly, so the
+                 * columns are shared, as with a snapshot, until either side
+                 * changes.
+                 */
+                this.pool = localDb.pool;
+                this.removedSinceRebuild = localDb.removedSinceRebuild;
+                this.titles = localDb.titles;
+                this.artists = localDb.artists;
+                this.albums = localDb.albums;
+                this.lengths = localDb.lengths;
+                this.seconds = localDb.seconds;
+                this.order = localDb.order;
+                this.freeSlots = localDb.freeSlots;
+                this.rows = localDb.rows;
+                this.rowsUsed = localDb.rowsUsed;
+                this.normalizedIds = localDb.normalizedIds;
+                this.shared = true;
+                localDb.shared = true;
+            } else {
+                this.unshare();
+                int before = this.order.size();
+                int[] idMap = new int[localDb.pool.size()];
+                for (int i = 0; i < localDb.order.size(); i++) {
+                    this.copyRow(localDb, localDb.order.get(i), idMap);
+                }
+                if (this.keptOrder != null && this.order.size() > before) {
+                    this.mergeAppended(before);
+                }
+            }
+        } else {
+            super.append(db);
+        }
+    }
+
+    @Override
+    public final Iterator<Song> iterator() {
+        return new MusicDatabase3Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MusicDatabase3}.
+     */
+    private final class MusicDatabase3Iterator implements Iterator<Song> {
+
+        /**
+         * Position of the next song in order.
+         */
+        private int next;
+
+        /**
+         * No-argument constructor.
+         */
+        MusicDatabase3Iterator() {
+            this.next = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < MusicDatabase3.this.order.size();
+        }
+
+        @Override
+        public Song next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            Song result = MusicDatabase3.this
+                    .song(MusicDatabase3.this.order.get(this.next));
+            this.next++;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,1415 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * {@code MusicDatabase} that is safe to share between threads. Reads
+ * ({@code contains}, {@code getEntries}, {@code size}, {@code getEntryInOrder},
+ * iteration, and streams) never block: they go straight to concurrent
+ * collections and see each write either entirely or not at all for the song
+ * it touches. Iteration, streams, and multi-song results are weakly
+ * consistent, reflecting some writes made while they run and never throwing
+ * {@code ConcurrentModificationException}.
+ *
+ * <p>
+ * Writes to a song lock only the stripe of {@code STRIPES} its hash falls
+ * in, so writers of different songs rarely wait on each other; two writes of
+ * the same song are always serialized, which keeps it from being added twice.
+ * {@code sort}, {@code keepSorted}, {@code stopKeepingSorted}, and
+ * {@code clear} take every stripe and swap in a new representation at once.
+ * {@code addAll} and {@code removeEntries} take the stripes of the songs they
+ * write, in stripe order, so no other write of those songs interleaves with
+ * them, but readers, which take no lock, may see them partly done; only an
+ * {@code addAll} into an empty database that covers every stripe builds a new
+ * representation and swaps it in whole. {@code transferFrom} and
+ * {@code append} take the stripes of both databases, in an order fixed by
+ * their identity hashes. Secondary methods built from several kernel calls,
+ * such as {@code split}, are not atomic.
+ *
+ * <p>
+ * Every song gets an {@code OrderKey}: the song and a sequence number handed
+ * out in order of addition. The database order is a skip list of those keys,
+ * ordered by sequence number or, while kept sorted, by the kept order and then
+ * sequence number. Each {@code SearchField} has a concurrent map from value to
+ * a skip list of the keys having it, in the same order, and so does each field
+ * opted in with {@code indexNormalized}, keyed by normalized value. Fields
+ * opted in with {@code indexPrefixes} also keep a skip list of their values,
+ * updated in step with the posting sets, and those opted in with
+ * {@code indexText} a {@code TrigramIndex} of them.
+ *
+ * <p>
+ * A song goes into the order and key map before any index posts it, and
+ * leaves every index before it leaves them, so every song a lookup returns is
+ * one {@code contains} reports, though a song just added may not be found by
+ * a lookup yet. {@code getEntryInOrder} reads a copy of the order as an array,
+ * made by the first call after a write, so it costs O(1) between writes and
+ * O(n) once after each.
+ *
+ * <p>
+ * {@code snapshot} takes every stripe just long enough to mark the
+ * representation shared and hand it to the snapshot. The next write then
+ * takes every stripe once to build a copy, so the snapshot never sees it.
+ *
+ * @convention [$this.rep.keys maps exactly the songs of $this.rep.order to
+ *             their key] AND [each index in $this.rep.indexes maps each value
+ *             to a non-empty set of exactly the keys of the songs having it]
+ *             AND [each index in $this.rep.normalized maps each normal form to
+ *             a non-empty set of exactly the keys of the songs whose field has
+ *             it] AND [each set in $this.rep.prefixes holds exactly the values
+ *             its field maps in $this.rep.indexes] AND [each index in
+ *             $this.rep.texts holds exactly the values its field maps in
+ *             $this.rep.indexes]
+ *             AND [every set is ordered by $this.rep.comparator] AND [no two
+ *             keys share a sequence number] AND [every sequence number is less
+ *             than $this.rep.nextSeq] AND [$this.stripes has STRIPES locks]
+ * @correspondence this = [the songs of the keys of $this.rep.order, in order]
+ */
+public class MusicDatabase4 extends MusicDatabaseSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of write lock stripes; a power of two, and at most 64 so a set
+     * of stripes fits in a {@code long}.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * The set of every stripe, as a mask.
+     */
+    private static final long ALL_STRIPES = -1L >>> (Long.SIZE - STRIPES);
+
+    /**
+     * Held while taking the stripes of two databases whose identity hashes
+     * are equal, which {@code lockBoth} cannot otherwise order.
+     */
+    private static final ReentrantLock TIE_LOCK = new ReentrantLock();
+
+    /**
+     * A song and the sequence number that places it in the database order.
+     */
+    private static final class OrderKey {
+
+        /**
+         * The song.
+         */
+        private final Song song;
+
+        /**
+         * Sequence number, unique within a representation.
+         */
+        private final long seq;
+
+        /**
+         * Constructor.
+         *
+         * @param song
+         *            The song
+         * @param seq
+         *            The sequence number
+         */
+        OrderKey(Song song, long seq) {
+            this.song = song;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * The keys of an order, in order, as they were when its change count was
+     * {@code stamp}.
+     */
+    private static final class Positions {
+
+        /**
+         * The keys, in order.
+         */
+        private final OrderKey[] keys;
+
+        /**
+         * The change count of the order when {@code keys} were copied.
+         */
+        private final long stamp;
+
+        /**
+         * Constructor.
+         *
+         * @param keys
+         *            The keys, in order
+         * @param stamp
+         *            The change count they were copied at
+         */
+        Positions(OrderKey[] keys, long stamp) {
+            this.keys = keys;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * The representation, replaced as a whole by operations that reorder
+     * every song so readers never see it half rebuilt.
+     */
+    private static final class Rep {
+
+        /**
+         * The order the database is kept sorted by, or null if it is not.
+         */
+        private final Comparator<Song> kept;
+
+        /**
+         * The order of keys: by {@code kept} if set, then by sequence number.
+         */
+        private final Comparator<OrderKey> comparator;
+
+        /**
+         * The next sequence number to hand out.
+         */
+        private final AtomicLong nextSeq;
+
+        /**
+         * The keys of the songs, in database order.
+         */
+        private final ConcurrentSkipListSet<OrderKey> order;
+
+        /**
+         * The number of changes made to {@code order}, counted once each is
+         * complete.
+         */
+        private final AtomicLong changes;
+
+        /**
+         * A copy of {@code order} made by {@code getEntryInOrder}, or null.
+         */
+        private volatile Positions positions;
+
+        /**
+         * The key of each song.
+         */
+        private final ConcurrentHashMap<Song, OrderKey> keys;
+
+        /**
+         * Per field, the keys of the songs having each value.
+         */
+        private final EnumMap<SearchField, ConcurrentHashMap<String,
+                ConcurrentSkipListSet<OrderKey>>> indexes;
+
+        /**
+         * Per field opted in with {@code indexNormalized}, the keys of the
+         * songs having each normalized value.
+         */
+        private final EnumMap<SearchField, ConcurrentHashMap<String,
+                ConcurrentSkipListSet<OrderKey>>> normalized;
+
+        /**
+         * Per field opted in with {@code indexPrefixes}, the values that key
+         * a posting set in {@code indexes}, in order.
+         */
+        private final EnumMap<SearchField,
+                ConcurrentSkipListSet<String>> prefixes;
+
+        /**
+         * Per field opted in with {@code indexText}, a trigram index of the
+         * values that key a posting set in {@code indexes}.
+         */
+        private final EnumMap<SearchField, TrigramIndex> texts;
+
+        /**
+         * Whether a snapshot shares this, which must then never change.
+         * Written only while holding every stripe, and read while holding
+         * one.
+         */
+        private boolean shared;
+
+        /**
+         * Constructor.
+         *
+         * @param kept
+         *            The order to keep the database sorted by, or null
+         * @param optedIn
+         *            The representation whose opted-in fields get empty
+         *            indexes here too, or null for none
+         */
+        Rep(Comparator<Song> kept, Rep optedIn) {
+            this(kept, optedIn, 0);
+        }
+
+        /**
+         * Constructor for a representation about to be given
+         * {@code expected} songs.
+         *
+         * @param kept
+         *            The order to keep the database sorted by, or null
+         * @param optedIn
+         *            The representation whose opted-in fields get empty
+         *            indexes here too, or null for none
+         * @param expected
+         *            The number of songs to make room for
+         */
+        Rep(Comparator<Song> kept, Rep optedIn, int expected) {
+            this.kept = kept;
+            Comparator<OrderKey> bySeq = Comparator.comparingLong(k -> k.seq);
+            if (kept == null) {
+                this.comparator = bySeq;
+            } else {
+                this.comparator = Comparator
+                        .<OrderKey, Song>comparing(k -> k.song, kept)
+                        .thenComparing(bySeq);
+            }
+            this.nextSeq = new AtomicLong();
+            this.order = new ConcurrentSkipListSet<OrderKey>(this.comparator);
+            this.changes = new AtomicLong();
+            this.keys = new ConcurrentHashMap<Song, OrderKey>(expected);
+            this.indexes = new EnumMap<>(SearchField.class);
+            for (SearchField field : SearchField.values()) {
+                /*
+                 * Titles are mostly distinct, so that index gets as many
+                 * values as songs; the other fields repeat.
+                 */
+                int values = 0;
+                if (field == SearchField.TITLE) {
+                    values = expected;
+                }
+                this.indexes.put(field, new ConcurrentHashMap<>(values));
+            }
+            this.normalized = new EnumMap<>(SearchField.class);
+            this.prefixes = new EnumMap<>(SearchField.class);
+            this.texts = new EnumMap<>(SearchField.class);
+            if (optedIn != null) {
+                for (SearchField field : optedIn.normalized.keySet()) {
+                    this.normalized.put(field, new ConcurrentHashMap<>());
+                }
+                for (SearchField field : optedIn.prefixes.keySet()) {
+                    this.prefixes.put(field, new ConcurrentSkipListSet<>());
+                }
+                for (SearchField field : optedIn.texts.keySet()) {
+                    this.texts.put(field, new TrigramIndex());
+                }
+            }
+        }
+
+        /**
+         * Constructor for a representation that shares everything with
+         * {@code source} except the maps of opted-in indexes, so one can be
+         * added before this replaces {@code source}, which must not be used
+         * afterwards.
+         *
+         * @param source
+         *            The representation to extend
+         */
+        Rep(Rep source) {
+            this.kept = source.kept;
+            this.comparator = source.comparator;
+            this.nextSeq = source.nextSeq;
+            this.order = source.order;
+            this.changes = source.changes;
+            this.positions = source.positions;
+            this.keys = source.keys;
+            this.indexes = source.indexes;
+            this.normalized = new EnumMap<>(source.normalized);
+            this.prefixes = new EnumMap<>(source.prefixes);
+            this.texts = new EnumMap<>(source.texts);
+            this.shared = source.shared;
+        }
+    }
+
+    /**
+     * Write locks, one per stripe of song hashes.
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * The current representation.
+     */
+    private volatile Rep rep;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.rep = new Rep(null, null);
+    }
+
+    /**
+     * Returns the lock guarding writes of {@code song}.
+     *
+     * @param song
+     *            The song
+     * @return Its stripe's lock
+     */
+    private ReentrantLock stripe(Song song) {
+        return this.stripes[stripeOf(song)];
+    }
+
+    /**
+     * Returns the number of the stripe of {@code song}.
+     *
+     * @param song
+     *            The song
+     * @return Its stripe number
+     * @ensures 0 <= stripeOf < STRIPES
+     */
+    private static int stripeOf(Song song) {
+        int h = song.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Returns the set of the stripes of {@code songs}, as a mask with bit
+     * {@code i} set for stripe {@code i}.
+     *
+     * @param songs
+     *            The songs
+     * @return Their stripes
+     */
+    private static long stripesOf(Collection<Song> songs) {
+        long result = 0;
+        for (Song song : songs) {
+            result |= 1L << stripeOf(song);
+        }
+        return result;
+    }
+
+    /**
+     * Takes the stripe locks in {@code held}, lowest first, the order
+     * {@code lockAll} takes them in, so no two writers can deadlock.
+     *
+     * @param held
+     *            The stripes, as a mask
+     */
+    private void lock(long held) {
+        for (int i = 0; i < STRIPES; i++) {
+            if ((held & (1L << i)) != 0) {
+                this.stripes[i].lock();
+            }
+        }
+    }
+
+    /**
+     * Releases the stripe locks in {@code held}.
+     *
+     * @param held
+     *            The stripes, as a mask
+     */
+    private void unlock(long held) {
+        for (int i = 0; i < STRIPES; i++) {
+            if ((held & (1L << i)) != 0) {
+                this.stripes[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Takes every stripe lock, in a fixed order.
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : this.stripes) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases every stripe lock.
+     */
+    private void unlockAll() {
+        for (ReentrantLock lock : this.stripes) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes every stripe lock, then replaces the representation with a copy
+     * if a snapshot shares it.
+     */
+    private void lockAllForWrite() {
+        this.lockAll();
+        if (this.rep.shared) {
+            this.rebuild(this.rep.kept, this.songsInOrder());
+        }
+    }
+
+    /**
+     * Takes every stripe lock of this and of {@code other}, those of the
+     * database with the lower identity hash first, so two threads locking the
+     * same two databases, each from either side, cannot deadlock. Databases
+     * with equal hashes are locked while holding {@code TIE_LOCK}.
+     *
+     * @param other
+     *            The other database
+     */
+    private void lockBoth(MusicDatabase4 other) {
+        int mine = System.identityHashCode(this);
+        int theirs = System.identityHashCode(other);
+        if (mine < theirs) {
+            this.lockAll();
+            other.lockAll();
+        } else if (mine > theirs) {
+            other.lockAll();
+            this.lockAll();
+        } else {
+            TIE_LOCK.lock();
+            this.lockAll();
+            other.lockAll();
+        }
+    }
+
+    /**
+     * Releases the locks taken by {@code lockBoth(other)}.
+     *
+     * @param other
+     *            The other database
+     */
+    private void unlockBoth(MusicDatabase4 other) {
+        other.unlockAll();
+        this.unlockAll();
+        if (System.identityHashCode(this) == System
+                .identityHashCode(other)) {
+            TIE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Takes the stripe locks in {@code held}, first replacing the
+     * representation with a copy if a snapshot shares it and some stripe is
+     * to be taken.
+     *
+     * @param held
+     *            The stripes, as a mask
+     */
+    private void lockForWrite(long held) {
+        this.lock(held);
+        while (held != 0 && this.rep.shared) {
+            this.unlock(held);
+            this.lockAllForWrite();
+            this.unlockAll();
+            this.lock(held);
+        }
+    }
+
+    /**
+     * Takes the stripe lock of {@code song}, first replacing the
+     * representation with a copy if a snapshot shares it.
+     *
+     * @param song
+     *            The song to be written
+     * @return The lock taken
+     */
+    private ReentrantLock lockFor(Song song) {
+        ReentrantLock lock = this.stripe(song);
+        lock.lock();
+        while (this.rep.shared) {
+            lock.unlock();
+            this.lockAll();
+            try {
+                if (this.rep.shared) {
+                    this.rebuild(this.rep.kept, this.songsInOrder());
+                }
+            } finally {
+                this.unlockAll();
+            }
+            lock.lock();
+        }
+        return lock;
+    }
+
+    /**
+     * Adds {@code key} to the posting set of {@code value} in {@code index},
+     * adding {@code value} to {@code values} and {@code text}, if given, with
+     * a new set.
+     *
+     * @param r
+     *            The representation
+     * @param index
+     *            The index
+     * @param value
+     *            The value posted under
+     * @param key
+     *            The key to add
+     * @param values
+     *            The sorted values of {@code index}, or null
+     * @param text
+     *            The trigram index of the values of {@code index}, or null
+     */
+    private static void post(Rep r,
+            ConcurrentHashMap<String, ConcurrentSkipListSet<OrderKey>> index,
+            String value, OrderKey key, ConcurrentSkipListSet<String> values,
+            TrigramIndex text) {
+        /*
+         * compute runs atomically for its key, so a posting set cannot be
+         * dropped as empty while another writer adds to it, and values keeps
+         * step with the sets.
+         */
+        index.compute(value, (v, set) -> {
+            ConcurrentSkipListSet<OrderKey> s = set;
+            if (s == null) {
+                s = new ConcurrentSkipListSet<OrderKey>(r.comparator);
+                if (values != null) {
+                    values.add(v);
+                }
+                if (text != null) {
+                    text.add(v);
+                }
+            }
+            s.add(key);
+            return s;
+        });
+    }
+
+    /**
+     * Removes {@code key} from the posting set of {@code value} in
+     * {@code index}, dropping the set, and {@code value} from {@code values}
+     * and {@code text} if given, once it is empty.
+     *
+     * @param index
+     *            The index
+     * @param value
+     *            The value posted under
+     * @param key
+     *            The key to remove
+     * @param values
+     *            The sorted values of {@code index}, or null
+     * @param text
+     *            The trigram index of the values of {@code index}, or null
+     */
+    private static void unpost(
+            ConcurrentHashMap<String, ConcurrentSkipListSet<OrderKey>> index,
+            String value, OrderKey key, ConcurrentSkipListSet<String> values,
+            TrigramIndex text) {
+        index.computeIfPresent(value, (v, set) -> {
+            set.remove(key);
+            ConcurrentSkipListSet<OrderKey> s = set;
+            if (s.isEmpty()) {
+                s = null;
+                if (values != null) {
+                    values.remove(v);
+                }
+                if (text != null) {
+                    text.remove(v);
+                }
+            }
+            return s;
+        });
+    }
+
+    /**
+     * Adds {@code song} to {@code r} after its other songs, unless it is
+     * already there. The caller holds the stripe of {@code song}.
+     *
+     * @param r
+     *            The representation
+     * @param song
+     *            The song to add
+     */
+    private static void addLocked(Rep r, Song song) {
+        if (!r.keys.containsKey(song)) {
+            OrderKey key = new OrderKey(song, r.nextSeq.getAndIncrement());
+            r.order.add(key);
+            r.changes.incrementAndGet();
+            r.keys.put(song, key);
+            for (SearchField field : SearchField.values()) {
+                post(r, r.indexes.get(field), song.field(field), key,
+                        r.prefixes.get(field), r.texts.get(field));
+            }
+            for (Map.Entry<SearchField, ConcurrentHashMap<String,
+                    ConcurrentSkipListSet<OrderKey>>> entry : r.normalized
+                            .entrySet()) {
+                post(r, entry.getValue(), FieldNormalizer
+                        .normalize(song.field(entry.getKey())), key, null,
+                        null);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code songs} to {@code r}, skipping duplicates. Posting them song
+     * by song would touch a different skip list for every field of every
+     * song, each far from the last in memory; instead the new keys are
+     * grouped by value first, and each posting set is given its group in one
+     * run. As in {@code addLocked}, a song is put in {@code r.order} and
+     * {@code r.keys} before any index posts it. The caller holds the stripes
+     * of {@code songs}.
+     *
+     * @param r
+     *            The representation
+     * @param songs
+     *            The songs to add
+     */
+    private static void addAllLocked(Rep r, Collection<Song> songs) {
+        ArrayList<OrderKey> added = new ArrayList<OrderKey>(songs.size());
+        HashSet<Song> seen = new HashSet<Song>();
+        for (Song song : songs) {
+            if (!r.keys.containsKey(song) && seen.add(song)) {
+                added.add(new OrderKey(song, r.nextSeq.getAndIncrement()));
+            }
+        }
+        if (r.kept != null) {
+            added.sort(r.comparator);
+        }
+        r.order.addAll(added);
+        r.changes.incrementAndGet();
+        for (OrderKey key : added) {
+            r.keys.put(key.song, key);
+        }
+        for (SearchField field : SearchField.values()) {
+            postAll(r, r.indexes.get(field), field, false, added,
+                    r.prefixes.get(field), r.texts.get(field));
+        }
+        for (Map.Entry<SearchField, ConcurrentHashMap<String,
+                ConcurrentSkipListSet<OrderKey>>> entry : r.normalized
+                        .entrySet()) {
+            postAll(r, entry.getValue(), entry.getKey(), true, added, null,
+                    null);
+        }
+    }
+
+    /**
+     * Posts each of {@code keys} in {@code index} under its song's value of
+     * {@code field}, adding values new to {@code index} to {@code values} and
+     * {@code text}, if given. A new posting set is filled before it is put in
+     * {@code index}, so readers never see it empty. The caller holds the
+     * stripes of {@code keys}.
+     *
+     * @param r
+     *            The representation
+     * @param index
+     *            The index
+     * @param field
+     *            The field the index is of
+     * @param normalize
+     *            Whether the index is keyed by normalized value
+     * @param keys
+     *            The keys, in the order of {@code r.comparator}
+     * @param values
+     *            The sorted values of {@code index}, or null
+     * @param text
+     *            The trigram index of the values of {@code index}, or null
+     */
+    private static void postAll(Rep r,
+            ConcurrentHashMap<String, ConcurrentSkipListSet<OrderKey>> index,
+            SearchField field, boolean normalize, List<OrderKey> keys,
+            ConcurrentSkipListSet<String> values, TrigramIndex text) {
+        HashMap<String, ArrayList<OrderKey>> groups = new HashMap<>();
+        for (OrderKey key : keys) {
+            String value = key.song.field(field);
+            if (normalize) {
+                value = FieldNormalizer.normalize(value);
+            }
+            groups.computeIfAbsent(value, v -> new ArrayList<OrderKey>())
+                    .add(key);
+        }
+        for (Map.Entry<String, ArrayList<OrderKey>> group : groups
+                .entrySet()) {
+            ConcurrentSkipListSet<OrderKey> set = index.get(group.getKey());
+            if (set == null) {
+                set = new ConcurrentSkipListSet<OrderKey>(r.comparator);
+                set.addAll(group.getValue());
+                if (values != null) {
+                    values.add(group.getKey());
+                }
+                if (text != null) {
+                    text.add(group.getKey());
+                }
+                index.put(group.getKey(), set);
+            } else {
+                set.addAll(group.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes {@code song} from {@code r}, if it is there, taking it out of
+     * every index before the order and key map. The caller holds the stripe
+     * of {@code song}.
+     *
+     * @param r
+     *            The representation
+     * @param song
+     *            The song to remove
+     * @return Whether {@code song} was removed
+     */
+    private static boolean removeLocked(Rep r, Song song) {
+        OrderKey key = r.keys.get(song);
+        if (key != null) {
+            for (SearchField field : SearchField.values()) {
+                unpost(r.indexes.get(field), song.field(field), key,
+                        r.prefixes.get(field), r.texts.get(field));
+            }
+            for (Map.Entry<SearchField, ConcurrentHashMap<String,
+                    ConcurrentSkipListSet<OrderKey>>> entry : r.normalized
+                            .entrySet()) {
+                unpost(entry.getValue(), FieldNormalizer
+                        .normalize(song.field(entry.getKey())), key, null,
+                        null);
+            }
+            r.order.remove(key);
+            r.changes.incrementAndGet();
+            r.keys.remove(song);
+        }
+        return key != null;
+    }
+
+    /**
+     * Replaces the representation with one holding the current songs in the
+     * order given by {@code songs}, keeping the indexes opted in so far. The
+     * caller holds every stripe.
+     *
+     * @param kept
+     *            The order to keep the database sorted by, or null
+     * @param songs
+     *            The songs, in the order to number them
+     */
+    private void rebuild(Comparator<Song> kept, Collection<Song> songs) {
+        Rep r = new Rep(kept, this.rep, songs.size());
+        addAllLocked(r, songs);
+        this.rep = r;
+    }
+
+    /**
+     * Returns the songs of {@code r} having each of {@code values} in
+     * {@code field}, value by value, and in database order within a value.
+     *
+     * @param r
+     *            The representation to read
+     * @param field
+     *            The field the values are of
+     * @param values
+     *            The values, in the order wanted
+     * @return The songs
+     */
+    private static ArrayList<Song> songsWith(Rep r, SearchField field,
+            List<String> values) {
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (String value : values) {
+            ConcurrentSkipListSet<OrderKey> posting = r.indexes.get(field)
+                    .get(value);
+            /*
+             * A writer may have dropped the set since value was read.
+             */
+            if (posting != null) {
+                for (OrderKey key : posting) {
+                    result.add(key.song);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the songs currently in this, in order.
+     *
+     * @return The songs
+     */
+    private ArrayList<Song> songsInOrder() {
+        ArrayList<Song> result = new ArrayList<Song>(this.rep.keys.size());
+        for (OrderKey key : this.rep.order) {
+            result.add(key.song);
+        }
+        return result;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public MusicDatabase4() {
+        this.stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor for a snapshot of {@code source}, sharing its
+     * representation; the caller holds every stripe of {@code source}.
+     *
+     * @param source
+     *            The database to share the representation of
+     */
+    private MusicDatabase4(MusicDatabase4 source) {
+        this.stripes = source.stripes;
+        this.rep = source.rep;
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final MusicDatabase newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.lockAll();
+        try {
+            this.createNewRep();
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final void transferFrom(MusicDatabase source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof MusicDatabase4 : ""
+                + "Violation of: source is of dynamic type MusicDatabase4";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case.
+         */
+        MusicDatabase4 localSource = (MusicDatabase4) source;
+        this.lockBoth(localSource);
+        try {
+            this.rep = localSource.rep;
+            localSource.createNewRep();
+        } finally {
+            this.unlockBoth(localSource);
+        }
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void addEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        ReentrantLock lock = this.lockFor(song);
+        try {
+            addLocked(this.rep, song);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public final void addAll(Collection<Song> songs) {
+        assert songs != null : "Violation of: songs != null";
+
+        long held = stripesOf(songs);
+        this.lockForWrite(held);
+        try {
+            if (held == ALL_STRIPES && this.rep.keys.isEmpty()) {
+                /*
+                 * Songs loaded into an empty database go into a new
+                 * representation sized for them, which readers see only once
+                 * it is complete. Swapping it in needs every stripe, which
+                 * all but small batches cover.
+                 */
+                Rep r = new Rep(this.rep.kept, this.rep, songs.size());
+                addAllLocked(r, songs);
+                this.rep = r;
+            } else {
+                addAllLocked(this.rep, songs);
+            }
+        } finally {
+            this.unlock(held);
+        }
+    }
+
+    @Override
+    public final Song getEntryInOrder(int n) {
+        Song result = null;
+        if (n >= 0) {
+            Rep r = this.rep;
+            /*
+             * The count is read before the copy, so a change made during the
+             * copy leaves it stale, to be copied again by the next call.
+             */
+            Positions positions = r.positions;
+            long stamp = r.changes.get();
+            if (positions == null || positions.stamp != stamp) {
+                positions = new Positions(r.order.toArray(new OrderKey[0]),
+                        stamp);
+                r.positions = positions;
+            }
+            if (n < positions.keys.length) {
+                result = positions.keys[n].song;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        ConcurrentSkipListSet<OrderKey> posting = this.rep.indexes.get(field)
+                .get(value);
+        if (posting != null) {
+            for (OrderKey key : posting) {
+                result.add(key.song);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> removeEntries(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> removedSongs = this.getEntries(field, value);
+        long held = stripesOf(removedSongs);
+        boolean done = false;
+        while (!done) {
+            long needed;
+            this.lockForWrite(held);
+            try {
+                /*
+                 * Songs with the value may have been added, in stripes not
+                 * held, since it was read; if so, try again holding those
+                 * too.
+                 */
+                removedSongs = this.getEntries(field, value);
+                needed = stripesOf(removedSongs);
+                done = (needed & ~held) == 0;
+                if (done) {
+                    for (Song song : removedSongs) {
+                        removeLocked(this.rep, song);
+                    }
+                }
+            } finally {
+                this.unlock(held);
+            }
+            held |= needed;
+        }
+        return removedSongs;
+    }
+
+    @Override
+    public final Song removeEntry(Song song) {
+        assert song != null : "Violation of: song != null";
+        assert this.contains(song) : "Violation of: song is in this";
+
+        ReentrantLock lock = this.lockFor(song);
+        try {
+            removeLocked(this.rep, song);
+        } finally {
+            lock.unlock();
+        }
+        return song;
+    }
+
+    @Override
+    public final Boolean contains(Song song) {
+        assert song != null : "Violation of: song != null";
+
+        return this.rep.keys.containsKey(song);
+    }
+
+    @Override
+    public final int size() {
+        return this.rep.keys.size();
+    }
+
+    @Override
+    public final void sort(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.lockAll();
+        try {
+            ArrayList<Song> songs = this.songsInOrder();
+            SongSorter.sort(songs, order);
+            this.rebuild(null, songs);
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final void keepSorted(Comparator<Song> order) {
+        assert order != null : "Violation of: order != null";
+
+        this.lockAll();
+        try {
+            /*
+             * Renumbering in the current order makes ties under the new order
+             * keep it, as a stable sort would.
+             */
+            this.rebuild(order, this.songsInOrder());
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final void stopKeepingSorted() {
+        this.lockAll();
+        try {
+            if (this.rep.kept != null) {
+                this.rebuild(null, this.songsInOrder());
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        assert criteria != null : "Violation of: criteria != null";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        Rep r = this.rep;
+        ArrayList<ConcurrentSkipListSet<OrderKey>> postings = new ArrayList<>();
+        boolean possible = true;
+        for (Map.Entry<SearchField, String> criterion : criteria.entrySet()) {
+            ConcurrentSkipListSet<OrderKey> posting = r.indexes
+                    .get(criterion.getKey()).get(criterion.getValue());
+            possible = possible && posting != null;
+            postings.add(posting);
+        }
+        if (postings.isEmpty()) {
+            for (OrderKey key : r.order) {
+                result.add(key.song);
+            }
+        } else if (possible) {
+            /*
+             * Skip list sizes take a full walk to count, but every posting
+             * list is sorted by the same order, so they are intersected by
+             * leapfrogging: each list jumps straight to the first key not
+             * before the current candidate, until all of them land on it.
+             */
+            Iterator<OrderKey> first = postings.get(0).iterator();
+            OrderKey candidate = null;
+            if (first.hasNext()) {
+                candidate = first.next();
+            }
+            /*
+             * agreeing counts the lists, up to and including the last one
+             * visited, known to hold candidate.
+             */
+            int agreeing = 1;
+            int i = 1 % postings.size();
+            while (candidate != null) {
+                if (agreeing == postings.size()) {
+                    result.add(candidate.song);
+                    candidate = postings.get(i).higher(candidate);
+                    agreeing = 1;
+                } else {
+                    OrderKey next = postings.get(i).ceiling(candidate);
+                    if (next == candidate) {
+                        agreeing++;
+                    } else {
+                        candidate = next;
+                        agreeing = 1;
+                    }
+                }
+                i = (i + 1) % postings.size();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexNormalized(SearchField field) {
+        this.lockAll();
+        try {
+            if (!this.rep.normalized.containsKey(field)) {
+                /*
+                 * Readers still using the old representation see the same
+                 * songs, just without the new index.
+                 */
+                Rep r = new Rep(this.rep);
+                ConcurrentHashMap<String, ConcurrentSkipListSet<OrderKey>>
+                        index = new ConcurrentHashMap<>();
+                for (OrderKey key : r.order) {
+                    post(r, index, FieldNormalizer.normalize(key.song.field(
+                            field)), key, null, null);
+                }
+                r.normalized.put(field, index);
+                this.rep = r;
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        ArrayList<Song> result;
+        ConcurrentHashMap<String, ConcurrentSkipListSet<OrderKey>> index =
+                this.rep.normalized.get(field);
+        if (index == null) {
+            result = super.getEntriesNormalized(field, value);
+        } else {
+            result = new ArrayList<Song>();
+            ConcurrentSkipListSet<OrderKey> posting = index
+                    .get(FieldNormalizer.normalize(value));
+            if (posting != null) {
+                for (OrderKey key : posting) {
+                    result.add(key.song);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexPrefixes(SearchField field) {
+        this.lockAll();
+        try {
+            if (!this.rep.prefixes.containsKey(field)) {
+                Rep r = new Rep(this.rep);
+                r.prefixes.put(field, new ConcurrentSkipListSet<String>(
+                        r.indexes.get(field).keySet()));
+                this.rep = r;
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesWithPrefix(SearchField field,
+            String prefix, int limit) {
+        assert prefix != null : "Violation of: prefix != null";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        ArrayList<Song> result;
+        Rep r = this.rep;
+        ConcurrentSkipListSet<String> values = r.prefixes.get(field);
+        if (values == null) {
+            result = super.getEntriesWithPrefix(field, prefix, limit);
+        } else {
+            result = new ArrayList<Song>();
+            Iterator<String> it = values.tailSet(prefix).iterator();
+            while (result.size() < limit && it.hasNext()) {
+                String value = it.next();
+                if (value.startsWith(prefix)) {
+                    ConcurrentSkipListSet<OrderKey> posting = r.indexes
+                            .get(field).get(value);
+                    /*
+                     * A writer may have dropped the set since value was
+                     * read.
+                     */
+                    if (posting != null) {
+                        Iterator<OrderKey> keys = posting.iterator();
+                        while (result.size() < limit && keys.hasNext()) {
+                            result.add(keys.next().song);
+                        }
+                    }
+                } else {
+                    /*
+                     * Values sharing a prefix are contiguous, so none after
+                     * this one can match.
+                     */
+                    it = Collections.emptyIterator();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void indexText(SearchField field) {
+        this.lockAll();
+        try {
+            if (!this.rep.texts.containsKey(field)) {
+                Rep r = new Rep(this.rep);
+                TrigramIndex text = new TrigramIndex();
+                for (String value : r.indexes.get(field).keySet()) {
+                    text.add(value);
+                }
+                r.texts.put(field, text);
+                this.rep = r;
+            }
+        } finally {
+            this.unlockAll();
+        }
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesContaining(SearchField field,
+            String text) {
+        assert text != null : "Violation of: text != null";
+
+        ArrayList<Song> result;
+        Rep r = this.rep;
+        TrigramIndex index = r.texts.get(field);
+        if (index == null) {
+            result = super.getEntriesContaining(field, text);
+        } else {
+            result = songsWith(r, field, index.containing(text));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesMatching(SearchField field,
+            String pattern) {
+        assert pattern != null : "Violation of: pattern != null";
+
+        ArrayList<Song> result;
+        Rep r = this.rep;
+        TrigramIndex index = r.texts.get(field);
+        if (index == null) {
+            result = super.getEntriesMatching(field, pattern);
+        } else {
+            result = songsWith(r, field, index.matching(pattern));
+        }
+        return result;
+    }
+
+    @Override
+    public final ArrayList<Song> getEntriesSimilar(SearchField field,
+            String value, int maxEdits) {
+        assert value != null : "Violation of: value != null";
+        assert maxEdits >= 0 : "Violation of: maxEdits >= 0";
+
+        ArrayList<Song> result;
+        Rep r = this.rep;
+        TrigramIndex index = r.texts.get(field);
+        if (index == null) {
+            result = super.getEntriesSimilar(field, value, maxEdits);
+        } else {
+            result = songsWith(r, field, index.similar(value, maxEdits));
+        }
+        return result;
+    }
+
+    @Override
+    public final Stream<Song> stream() {
+        return this.rep.order.stream().map(key -> key.song);
+    }
+
+    @Override
+    public final Stream<Song> streamEntries(SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        Stream<Song> result = Stream.empty();
+        ConcurrentSkipListSet<OrderKey> posting = this.rep.indexes.get(field)
+                .get(value);
+        if (posting != null) {
+            result = posting.stream().map(key -> key.song);
+        }
+        return result;
+    }
+
+    @Override
+    public final MusicDatabase snapshot() {
+        MusicDatabase result;
+        this.lockAll();
+        try {
+            this.rep.shared = true;
+            result = new MusicDatabaseSnapshot(new MusicDatabase4(this));
+        } finally {
+            this.unlockAll();
+        }
+        return result;
+    }
+
+    @Override
+    public final void append(MusicDatabase db) {
+        assert db != null : "Violation of: db != null";
+
+        if (db instanceof MusicDatabase4 && db != this) {
+            MusicDatabase4 localDb = (MusicDatabase4) db;
+            boolean shared = false;
+            this.lockBoth(localDb);
+            try {
+                if (this.rep.keys.isEmpty() && this.rep.kept == null
+                        && this.rep.normalized.isEmpty()
+                        && this.rep.prefixes.isEmpty()
+                        && this.rep.texts.isEmpty()
+                        && localDb.rep.kept == null) {
+                    /*
+                     * Appending to an empty database copies db exactly, so
+                     * the representation is shared, as with a snapshot,
+                     * until either side writes.
+                     */
+                    localDb.rep.shared = true;
+                    this.rep = localDb.rep;
+                    shared = true;
+                }
+            } finally {
+                this.unlockBoth(localDb);
+            }
+            if (!shared) {
+                this.addAll(localDb.songsInOrder());
+            }
+        } else {
+            super.append(db);
+        }
+    }
+
+    @Override
+    public final Iterator<Song> iterator() {
+        return new MusicDatabase4Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code MusicDatabase4}.
+     * It is weakly consistent.
+     */
+    private final class MusicDatabase4Iterator implements Iterator<Song> {
+
+        /**
+         * Representation iterator.
+         */
+        private final Iterator<OrderKey> iterator;
+
+        /**
+         * No-argument constructor.
+         */
+        MusicDatabase4Iterator() {
+            this.iterator = MusicDatabase4.this.rep.order.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public Song next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            return this.iterator.next().song;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
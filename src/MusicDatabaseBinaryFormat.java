@@ -0,0 +1,214 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Versioned binary snapshot format for {@code MusicDatabase}. Unlike the
+ * tab-delimited format, nothing needs to be validated or split on load: the
+ * file is read into memory once and decoded front to back.
+ *
+ * <p>
+ * Layout (all integers big-endian):
+ *
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    flags, 0 (reserved)
+ * int    n, the number of songs
+ * int    d, the number of distinct strings
+ * d x    [int byte length, UTF-8 bytes]    the string dictionary
+ * 4 x    int[n]                            title, artist, album, and length
+ *                                          columns, as dictionary ids
+ * int[n]                                   length in seconds, or -1
+ * </pre>
+ *
+ * No field indexes are stored: each kernel builds its own as the songs are
+ * added, in a layout of its own, so stored ones would only be skipped.
+ */
+final class MusicDatabaseBinaryFormat {
+
+    /**
+     * File signature, "MDBS".
+     */
+    static final int MAGIC = 0x4D444253;
+
+    /**
+     * Current format version.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of bytes in an int.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Marks a dictionary length whose seconds are not parsed yet; below every
+     * result of {@code Song.parseLength}.
+     */
+    private static final int UNPARSED = -2;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MusicDatabaseBinaryFormat() {
+    }
+
+    /**
+     * Writes the songs of {@code db} to {@code path}, replacing it.
+     *
+     * @param db
+     *            The database to write
+     * @param path
+     *            The file to write
+     * @throws IOException
+     *             If writing fails
+     */
+    static void write(MusicDatabase db, Path path) throws IOException {
+        int n = db.size();
+        StringDictionary strings = new StringDictionary();
+        MusicDatabaseKernel.SearchField[] fields = {
+                MusicDatabaseKernel.SearchField.TITLE,
+                MusicDatabaseKernel.SearchField.ARTIST,
+                MusicDatabaseKernel.SearchField.ALBUM,
+                MusicDatabaseKernel.SearchField.LENGTH };
+        int[][] columns = new int[fields.length][n];
+        int[] seconds = new int[n];
+
+        int row = 0;
+        for (Song song : db) {
+            for (int f = 0; f < fields.length; f++) {
+                columns[f][row] = strings.add(song.field(fields[f]));
+            }
+            seconds[row] = song.seconds();
+            row++;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path),
+                        BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(0);
+            out.writeInt(n);
+            out.writeInt(strings.size());
+            for (int id = 0; id < strings.size(); id++) {
+                byte[] bytes = strings.get(id).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int[] column : columns) {
+                for (int id : column) {
+                    out.writeInt(id);
+                }
+            }
+            for (int s : seconds) {
+                out.writeInt(s);
+            }
+        }
+    }
+
+    /**
+     * Adds the songs stored in the file at {@code path} to {@code target}, in
+     * the stored order, skipping any already in {@code target}.
+     *
+     * @param path
+     *            The file to read
+     * @param target
+     *            The database to add to
+     * @throws IOException
+     *             If reading fails
+     * @updates target
+     */
+    static void read(Path path, MusicDatabase target) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "ERROR: binary file is larger than 2 GB");
+            }
+            /*
+             * Read rather than mapped, since a mapping outlives the channel
+             * until it is garbage collected, and on some platforms keeps the
+             * file from being replaced or deleted, as journal compaction does
+             * with old snapshots.
+             */
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                /* keep reading */
+            }
+            in.flip();
+        }
+
+        if (in.remaining() < INT_BYTES * 2 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException(
+                    "ERROR: file is not a music database binary file");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "ERROR: unsupported binary file version " + version);
+        }
+        in.getInt();
+        int n = in.getInt();
+        int d = in.getInt();
+
+        String[] strings = new String[d];
+        byte[] scratch = new byte[0];
+        for (int i = 0; i < d; i++) {
+            int length = in.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            in.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length,
+                    StandardCharsets.UTF_8);
+        }
+
+        /*
+         * The columns are laid out one after another, so each song's fields
+         * are read at a fixed stride from the start of the title column. The
+         * stored seconds are checked against each distinct length, parsed
+         * once on first use, so a damaged file is rejected rather than
+         * loaded without parsing the length of every row.
+         */
+        int titles = in.position();
+        int stride = n * INT_BYTES;
+        int[] parsed = new int[d];
+        Arrays.fill(parsed, UNPARSED);
+        ArrayList<Song> songs = new ArrayList<Song>(n);
+        for (int row = 0; row < n; row++) {
+            int at = titles + row * INT_BYTES;
+            int length = in.getInt(at + 3 * stride);
+            int seconds = in.getInt(at + 4 * stride);
+            if (parsed[length] == UNPARSED) {
+                parsed[length] = Song.parseLength(strings[length]);
+            }
+            if (seconds != parsed[length]) {
+                throw new IllegalArgumentException("ERROR: length \""
+                        + strings[length] + "\" is not " + seconds
+                        + " seconds");
+            }
+            songs.add(new Song(strings[in.getInt(at)],
+                    strings[in.getInt(at + stride)],
+                    strings[in.getInt(at + 2 * stride)], strings[length],
+                    seconds));
+        }
+        target.addAll(songs);
+    }
+
+}
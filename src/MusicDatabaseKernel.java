@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 
 import components.standard.Standard;
@@ -40,16 +41,31 @@ public interface MusicDatabaseKernel
      */
     void addEntry(Song song);
 
+    /**
+     * Adds every {@code Song} in {@code songs} that is not already in the
+     * database, in iteration order. Duplicates within {@code songs} are only
+     * added once. Meant for bulk loads: implementations reserve space once and
+     * do a single hashed pass over the batch.
+     *
+     * @param songs
+     *            The songs to add to the database.
+     * @requires songs != null AND no element of songs is null
+     * @ensures this = #this * [the first occurrence of each song in songs
+     *          that is not in #this, in order]
+     * @updates this
+     */
+    void addAll(Collection<Song> songs);
+
     /**
      * Returns the {@code Song} at position {@code n} in the database. Returns
-     * -1 if no object exists at that position.
+     * null if no object exists at that position.
      *
      * @param n
      *            An int representing the index at which the user wants to fetch
      *            a value from.
      * @return A {@code Song} if one exists at {@code n}.
      * @ensures getEntryInOrder = The {@code Song} at position {@code n} if it
-     *          exists, or -1 otherwise
+     *          exists, or null otherwise
      */
     Song getEntryInOrder(int n);
 
@@ -123,7 +139,8 @@ public interface MusicDatabaseKernel
     int size();
 
     /**
-     * Sorts the database based on the provided {@code Comparator}.
+     * Sorts the database based on the provided {@code Comparator}. This is a
+     * one-time sort: if the database was being kept sorted, it no longer is.
      *
      * @param order
      *            A {@code Comparator<MusicDatabase>} used to sort the database.
@@ -131,4 +148,27 @@ public interface MusicDatabaseKernel
      * @updates this
      */
     void sort(Comparator<Song> order);
+
+    /**
+     * Sorts the database based on the provided {@code Comparator} and keeps it
+     * sorted: from then on, each added song is placed after the songs that
+     * come before or tie with it under {@code order}, instead of at the end.
+     * This lasts until {@code stopKeepingSorted} or {@code sort} is called.
+     *
+     * @param order
+     *            A {@code Comparator<Song>} to keep the database sorted by
+     * @ensures The database is sorted according to {@code order}, and later
+     *          additions keep it so
+     * @updates this
+     */
+    void keepSorted(Comparator<Song> order);
+
+    /**
+     * Stops keeping the database sorted, so later songs are added at the end
+     * again. The current order is not changed.
+     *
+     * @ensures this = #this
+     * @updates this
+     */
+    void stopKeepingSorted();
 }
@@ -1,18 +1,44 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Layered implementation of secondary methods for {@code MusicDatabase}.
  */
 public abstract class MusicDatabaseSecondary implements MusicDatabase {
 
+    /**
+     * Number of rows {@code readFromFile} parses before adding them to this
+     * with a single {@code addAll}.
+     */
+    private static final int READ_BATCH_SIZE = 8192;
+
+    /**
+     * Files at least this many bytes long are parsed in parallel chunks by
+     * {@code readFromFile}.
+     */
+    private static final long PARALLEL_READ_THRESHOLD = 1L << 26;
+
     /*
      * ----------------------------Utility methods------------------------------
      */
@@ -37,7 +63,7 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
      *          the format "Title\tArtist\tAlbum\tLength".
      */
     private static void isValidHeader(String line) {
-        if (!line.equals("Title\tArtist\tAlbum\tLength")) {
+        if (!line.equals(SongRowReader.HEADER)) {
             throw new IllegalArgumentException(
                     "ERROR: Header is incorrectly formatted. "
                             + "Header should be in the form"
@@ -46,74 +72,24 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
         }
     }
 
-    /**
-     * Throws an exception if the given line of data is not properly formatted.
-     * See the ensures tag for details. Also prints the number of the row
-     * currently being checked.
-     *
-     * @param line
-     *            A line of text
-     * @param rowNum
-     *            The row currently being checked
-     * @ensures An exception with a descriptive message is thrown for each
-     *          individual case: 1. If the number of values separated by tabs is
-     *          not four 2. If the first value in the line (title) is null or an
-     *          empty string 3. If the second value in the line (artist) is null
-     *          or an empty string 4. If the fourth value in the line (length)
-     *          is null or an empty string
-     */
-    private static void isValidDataRow(String line, int rowNum) {
-        /*
-         * Splits line along any tabs, including empty strings.
-         */
-        String[] fields = line.split("\t", -1);
-        /*
-         * Checks the number of tabs in the input to make sure there are four
-         * values, even if album is blank.
-         */
-        final int four = 4;
-        if (fields.length != four) {
-            throw new IllegalArgumentException("ERROR on row " + rowNum
-                    + ": the given line is invalid. There must be four "
-                    + "separate values separated by three total tabs "
-                    + "in each row of data.");
-        }
-        /*
-         * Checks to make sure title (index 0), artist (index 1), and length
-         * (index 3) are not null.
-         */
-        if (fields[0] == null || fields[0] == "") {
-            throw new IllegalArgumentException("ERROR on row " + rowNum
-                    + ": Title is blank, a title is required for every data row.");
-        }
-        if (fields[1] == null || fields[1] == "") {
-            throw new IllegalArgumentException("ERROR on row " + rowNum
-                    + ": Artist is blank, an artist is required"
-                    + " for every data row.");
-        }
-        final int three = 3;
-        if (fields[three] == null || fields[three] == "") {
-            throw new IllegalArgumentException("ERROR on row " + rowNum
-                    + ": Length is blank, a length is required for every data row.");
-        }
-    }
-
     /**
      * Throws an exception and prints an error message if the file at the given
-     * file path is not a .txt file.
+     * file path is not a .txt file. Only the file name is checked, since
+     * probing the content type costs a file system lookup per call.
      *
      * @param filePath
      *            The path to a file.
      * @requires filePath != null
-     * @ensures isTxt = Whether the file at the given path is a text/plain file
+     * @ensures isTxt = Whether the file at the given path is a .txt file
      */
     private static void isTxt(String filePath) {
         assert filePath != null : "Violation of: filePath != null";
 
         try {
-            Path pathToFile = Paths.get(filePath);
+            Path fileName = Paths.get(filePath).getFileName();
 
-            if (!Files.probeContentType(pathToFile).equals("text/plain")) {
+            if (fileName == null || !fileName.toString()
+                    .toLowerCase(Locale.ROOT).endsWith(".txt")) {
                 throw new IllegalArgumentException(
                         "ERROR: file must be of type \".txt\", "
                                 + "or more specifically, \"text/plain\"");
@@ -123,6 +99,115 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
         }
     }
 
+    /**
+     * Adds every valid row from {@code rdr} that is not already in this,
+     * after checking the header. Invalid rows are reported to the console and
+     * skipped.
+     *
+     * @param rdr
+     *            The source of rows, positioned before the header
+     * @throws IOException
+     *             If reading fails
+     * @updates this
+     */
+    private void readRows(SongRowReader rdr) throws IOException {
+        /*
+         * The header is checked once up front; a bad header means the columns
+         * can't be trusted, so nothing is read.
+         */
+        isValidHeader(String.valueOf(rdr.readHeader()));
+
+        /*
+         * Invalid rows are reported and skipped rather than thrown, so one bad
+         * row does not abandon the rest of a large file.
+         */
+        ArrayList<Song> batch = new ArrayList<Song>(READ_BATCH_SIZE);
+        Song song = rdr.next();
+        while (song != null || rdr.error() != null) {
+            if (song == null) {
+                System.err.println(rdr.error());
+            } else {
+                batch.add(song);
+                if (batch.size() == READ_BATCH_SIZE) {
+                    this.addAll(batch);
+                    batch.clear();
+                }
+            }
+            song = rdr.next();
+        }
+        this.addAll(batch);
+    }
+
+    /**
+     * Checks the header of the file at {@code path}, then parses its rows in
+     * parallel chunks and adds them to this in file order.
+     *
+     * @param path
+     *            The file to read
+     * @throws IOException
+     *             If reading fails
+     * @updates this
+     */
+    private void readChunks(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ);
+                MappedSongReader rdr = new MappedSongReader(channel, 0,
+                        channel.size(), 1)) {
+            isValidHeader(String.valueOf(rdr.readHeader()));
+            ChunkedSongLoader.load(channel, rdr.position(),
+                    rdr.lineNumber() + 1, this);
+        }
+    }
+
+    /**
+     * Moves {@code source} over {@code target}, atomically if the file system
+     * allows it, so readers of {@code target} see either the old or the new
+     * file and never a partly written one.
+     *
+     * @param source
+     *            The file to move
+     * @param target
+     *            The file to replace
+     * @throws IOException
+     *             If the move fails
+     */
+    static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates an empty file next to {@code target}, under a name no other
+     * file has, to be written and then moved over {@code target} by
+     * {@code replace}. {@code Files.createTempFile} would make it readable by
+     * its owner only; this gives it the permissions of any new file, so the
+     * file it replaces stays readable by whoever could read it before.
+     *
+     * @param target
+     *            The file to be replaced
+     * @return The new file
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    static Path createSibling(Path target) throws IOException {
+        Path result = null;
+        while (result == null) {
+            Path candidate = target.resolveSibling(target.getFileName() + "."
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + ".tmp");
+            try {
+                result = Files.createFile(candidate);
+            } catch (FileAlreadyExistsException e) {
+                /* another name is tried */
+            }
+        }
+        return result;
+    }
+
     /*
      * ------------------------- Secondary methods -----------------------------
      */
@@ -133,37 +218,38 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
         assert inputPath != null : "Violation of: inputPath != null";
         assert inputPath != "" : "Violation of: inputPath != \"\"";
 
-        try (BufferedReader rdr = new BufferedReader(
-                new FileReader(inputPath));) {
-            isTxt(inputPath);
+        isTxt(inputPath);
 
-            String line = rdr.readLine();
-            /*
-             * The previous call to readLine() got the headers of the file,
-             * which we don't care about the value of, so we need to call
-             * readLine() again to get the first row of actual data. But before
-             * that, we still need to make sure the header in the first line is
-             * valid.
-             */
-            isValidHeader(line);
-
-            line = rdr.readLine();
-            int lineCount = 2;
-            while (line != null) {
-                isValidDataRow(line, lineCount);
+        try {
+            Path path = Paths.get(inputPath);
+            if (Files.size(path) >= PARALLEL_READ_THRESHOLD
+                    && Runtime.getRuntime().availableProcessors() > 1) {
+                this.readChunks(path);
+            } else {
+                try (SongRowReader rdr = new TabDelimitedSongReader(
+                        new InputStreamReader(new FileInputStream(inputPath),
+                                StandardCharsets.UTF_8))) {
+                    this.readRows(rdr);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-                String[] fields = line.split("\t");
-                final int three = 3;
-                Song song = new Song(fields[0], fields[1], fields[2],
-                        fields[three]);
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void readFromMappedFile(String inputPath) {
+        assert inputPath != null : "Violation of: inputPath != null";
+        assert inputPath != "" : "Violation of: inputPath != \"\"";
 
-                if (!this.contains(song)) {
-                    this.addEntry(song);
-                }
+        isTxt(inputPath);
 
-                line = rdr.readLine();
-                lineCount++;
-            }
+        try (FileChannel channel = FileChannel.open(Paths.get(inputPath),
+                StandardOpenOption.READ);
+                SongRowReader rdr = new MappedSongReader(channel, 0,
+                        channel.size(), 1)) {
+            this.readRows(rdr);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -174,40 +260,114 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
     public void writeToFile(String outputPath) {
         assert outputPath != null : "Violation of: outputPath != null";
 
-        BufferedWriter wrtr = null;
+        this.writeToFile(outputPath, false);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void writeToFile(String outputPath, boolean atomic) {
+        assert outputPath != null : "Violation of: outputPath != null";
+
+        Path temp = null;
         try {
             String path = outputPath;
-            if (outputPath == "") {
+            if (outputPath.equals("")) {
                 path = ".\\output\\Music_Database";
             }
 
-            File outputFile = new File(path);
+            Path outputFile = Paths.get(path).toAbsolutePath();
             /*
              * Makes the parent folders of the given path if they don't already
              * exist.
              */
-            File outputDirectory = outputFile.getParentFile();
+            Path outputDirectory = outputFile.getParent();
             if (outputDirectory != null) {
-                outputDirectory.mkdirs();
+                Files.createDirectories(outputDirectory);
+            }
+            /*
+             * An atomic write goes to a temporary file next to the output, so
+             * the rename at the end stays on one file system.
+             */
+            Path writeTo = outputFile;
+            if (atomic) {
+                temp = createSibling(outputFile);
+                writeTo = temp;
             }
-            wrtr = new BufferedWriter(new FileWriter(outputFile));
 
-            wrtr.write("Title\tArtist\tAlbum\tLength");
-            wrtr.newLine();
+            try (TabDelimitedSongWriter wrtr = new TabDelimitedSongWriter(
+                    FileChannel.open(writeTo, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING))) {
+                wrtr.writeHeader();
+                for (Song song : this) {
+                    wrtr.write(song);
+                }
+                if (atomic) {
+                    wrtr.sync();
+                }
+            }
 
-            for (Song song : this) {
-                wrtr.write(String.format("%s\t%s\t%s\t%s", song.title(),
-                        song.artist(), song.album(), song.length()));
-                wrtr.newLine();
+            if (atomic) {
+                replace(temp, outputFile);
+                temp = null;
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void readFromBinaryFile(String inputPath) {
+        assert inputPath != null : "Violation of: inputPath != null";
+        assert inputPath != "" : "Violation of: inputPath != \"\"";
+
+        try {
+            MusicDatabaseBinaryFormat.read(Paths.get(inputPath), this);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            wrtr.flush();
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void writeToBinaryFile(String outputPath) {
+        assert outputPath != null : "Violation of: outputPath != null";
+        assert outputPath != "" : "Violation of: outputPath != \"\"";
+
+        Path temp = null;
+        try {
+            Path outputFile = Paths.get(outputPath).toAbsolutePath();
+            Path outputDirectory = outputFile.getParent();
+            if (outputDirectory != null) {
+                Files.createDirectories(outputDirectory);
+            }
+            temp = createSibling(outputFile);
+            MusicDatabaseBinaryFormat.write(this, temp);
+            /*
+             * The file must be on disk before the rename, or a crash could
+             * leave a truncated file under the output's name.
+             */
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            replace(temp, outputFile);
+            temp = null;
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
             try {
-                if (wrtr != null) {
-                    wrtr.close();
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -262,11 +422,7 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
         assert value != null : "Violation of: value != null";
 
         MusicDatabase newDB = this.newInstance();
-        ArrayList<Song> splitSongs = this.removeEntries(field, value);
-
-        for (Song song : splitSongs) {
-            newDB.addEntry(song);
-        }
+        newDB.addAll(this.removeEntries(field, value));
 
         return newDB;
     }
@@ -276,29 +432,232 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
     public void append(MusicDatabase db) {
         assert db != null : "Violation of: db != null";
 
+        ArrayList<Song> songs = new ArrayList<Song>(db.size());
         for (Song song : db) {
-            if (!this.contains(song)) {
-                this.addEntry(song);
-            }
+            songs.add(song);
         }
+        this.addAll(songs);
     }
 
-    /*
-     * For the methods above and below, their functionality is identical, but
-     * they take different parameters. Are they fine as is or should I combine
-     * them into one overloaded method?
-     */
-
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
     @Override
     public void addEntries(ArrayList<Song> songs) {
         assert songs != null : "Violation of: songs != null";
 
-        for (Song song : songs) {
-            if (!this.contains(song)) {
-                this.addEntry(song);
+        this.addAll(songs);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        assert 0 <= minSeconds : "Violation of: 0 <= minSeconds";
+        assert minSeconds <= maxSeconds : ""
+                + "Violation of: minSeconds <= maxSeconds";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            if (song.seconds() >= minSeconds && song.seconds() <= maxSeconds) {
+                result.add(song);
+            }
+        }
+        /*
+         * List.sort is stable, so songs of equal length stay in order.
+         */
+        result.sort(Comparator.comparingInt(Song::seconds));
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public MusicDatabase snapshot() {
+        MusicDatabase copy = this.newInstance();
+        copy.append(this);
+
+        return new MusicDatabaseSnapshot(copy);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntries(
+            Map<MusicDatabaseKernel.SearchField, String> criteria) {
+        assert criteria != null : "Violation of: criteria != null";
+
+        /*
+         * Any one criterion narrows the songs to check, through an index if
+         * the kernel has one; the rest are checked on those songs only.
+         */
+        Iterable<Song> candidates = this;
+        Iterator<Map.Entry<MusicDatabaseKernel.SearchField, String>> first =
+                criteria.entrySet().iterator();
+        if (first.hasNext()) {
+            Map.Entry<MusicDatabaseKernel.SearchField, String> criterion =
+                    first.next();
+            candidates = this.getEntries(criterion.getKey(),
+                    criterion.getValue());
+        }
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : candidates) {
+            if (song.matches(criteria)) {
+                result.add(song);
+            }
+        }
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void indexNormalized(MusicDatabaseKernel.SearchField field) {
+        /*
+         * Without indexes there is nothing to build; getEntriesNormalized
+         * scans.
+         */
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesNormalized(
+            MusicDatabaseKernel.SearchField field, String value) {
+        assert value != null : "Violation of: value != null";
+
+        String normal = FieldNormalizer.normalize(value);
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            if (FieldNormalizer.normalize(song.field(field)).equals(normal)) {
+                result.add(song);
+            }
+        }
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void indexPrefixes(MusicDatabaseKernel.SearchField field) {
+        /*
+         * Without indexes there is nothing to build; getEntriesWithPrefix
+         * scans.
+         */
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesWithPrefix(
+            MusicDatabaseKernel.SearchField field, String prefix, int limit) {
+        assert prefix != null : "Violation of: prefix != null";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            if (song.field(field).startsWith(prefix)) {
+                result.add(song);
+            }
+        }
+        Comparator<Song> byField = Comparator
+                .comparing(song -> song.field(field));
+        SongSorter.sort(result, byField);
+        if (result.size() > limit) {
+            result.subList(limit, result.size()).clear();
+        }
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public void indexText(MusicDatabaseKernel.SearchField field) {
+        /*
+         * Without indexes there is nothing to build; text searches scan.
+         */
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesContaining(
+            MusicDatabaseKernel.SearchField field, String text) {
+        assert text != null : "Violation of: text != null";
+
+        String normal = FieldNormalizer.normalize(text);
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            if (FieldNormalizer.normalize(song.field(field))
+                    .contains(normal)) {
+                result.add(song);
+            }
+        }
+        Comparator<Song> byField = Comparator
+                .comparing(song -> song.field(field));
+        SongSorter.sort(result, byField);
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesMatching(
+            MusicDatabaseKernel.SearchField field, String pattern) {
+        assert pattern != null : "Violation of: pattern != null";
+
+        String normal = FieldNormalizer.normalize(pattern);
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            if (TrigramIndex.globMatches(
+                    FieldNormalizer.normalize(song.field(field)), normal)) {
+                result.add(song);
+            }
+        }
+        Comparator<Song> byField = Comparator
+                .comparing(song -> song.field(field));
+        SongSorter.sort(result, byField);
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public ArrayList<Song> getEntriesSimilar(
+            MusicDatabaseKernel.SearchField field, String value,
+            int maxEdits) {
+        assert value != null : "Violation of: value != null";
+        assert maxEdits >= 0 : "Violation of: maxEdits >= 0";
+
+        String normal = FieldNormalizer.normalize(value);
+        Map<String, Integer> distances = new HashMap<String, Integer>();
+        ArrayList<Song> result = new ArrayList<Song>();
+        for (Song song : this) {
+            int distance = distances.computeIfAbsent(song.field(field),
+                    v -> TrigramIndex.editDistance(
+                            FieldNormalizer.normalize(v), normal, maxEdits));
+            if (distance <= maxEdits) {
+                result.add(song);
             }
         }
+        Comparator<Song> byDistance = Comparator
+                .<Song>comparingInt(song -> distances.get(song.field(field)))
+                .thenComparing(song -> song.field(field));
+        SongSorter.sort(result, byDistance);
+
+        return result;
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Stream<Song> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(this.iterator(),
+                this.size(), Spliterator.ORDERED | Spliterator.DISTINCT
+                        | Spliterator.NONNULL),
+                false);
+    }
+
+    // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
+    @Override
+    public Stream<Song> streamEntries(MusicDatabaseKernel.SearchField field,
+            String value) {
+        assert value != null : "Violation of: value != null";
+
+        return this.stream().filter(song -> song.field(field).equals(value));
     }
 
     // CHECKSTYLE: ALLOW THIS METHOD TO BE OVERRIDDEN
@@ -306,8 +665,9 @@ public abstract class MusicDatabaseSecondary implements MusicDatabase {
     public String toString() {
         StringBuilder result = new StringBuilder(this.size());
         for (Song song : this) {
-            result.append(String.format("%s\t%s\t%s\t%s\n", song.title(),
-                    song.artist(), song.album(), song.length()));
+            result.append(song.title()).append('\t').append(song.artist())
+                    .append('\t').append(song.album()).append('\t')
+                    .append(song.length()).append('\n');
         }
 
         return result.toString();
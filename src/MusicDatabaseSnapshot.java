@@ -0,0 +1,230 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Read-only view of a frozen {@code MusicDatabase}, returned by
+ * {@code snapshot}. The frozen database is reachable only through this view,
+ * so nothing ever changes it: queries and iteration are passed on to it, and
+ * every method that would change it throws
+ * {@code UnsupportedOperationException}. Kernels that share their
+ * representation with the frozen database copy it before their own next
+ * change.
+ *
+ * @convention $this.frozen is never changed
+ * @correspondence this = $this.frozen
+ */
+final class MusicDatabaseSnapshot extends MusicDatabaseSecondary {
+
+    /**
+     * The database viewed.
+     */
+    private final MusicDatabase frozen;
+
+    /**
+     * Constructor.
+     *
+     * @param frozen
+     *            The database to view; no other reference to it may be used
+     *            to change it
+     */
+    MusicDatabaseSnapshot(MusicDatabase frozen) {
+        this.frozen = frozen;
+    }
+
+    /**
+     * Reports that a snapshot cannot be changed.
+     *
+     * @return The exception to throw
+     */
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException(
+                "a snapshot cannot be changed");
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    /**
+     * Returns a new, empty, changeable database of the kind this snapshot was
+     * taken from.
+     *
+     * @return The new database
+     */
+    @Override
+    public MusicDatabase newInstance() {
+        return this.frozen.newInstance();
+    }
+
+    @Override
+    public void clear() {
+        throw immutable();
+    }
+
+    @Override
+    public void transferFrom(MusicDatabase source) {
+        throw immutable();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public void addEntry(Song song) {
+        throw immutable();
+    }
+
+    @Override
+    public void addAll(Collection<Song> songs) {
+        throw immutable();
+    }
+
+    @Override
+    public Song getEntryInOrder(int n) {
+        return this.frozen.getEntryInOrder(n);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(SearchField field, String value) {
+        return this.frozen.getEntries(field, value);
+    }
+
+    @Override
+    public ArrayList<Song> removeEntries(SearchField field, String value) {
+        throw immutable();
+    }
+
+    @Override
+    public Song removeEntry(Song song) {
+        throw immutable();
+    }
+
+    @Override
+    public Boolean contains(Song song) {
+        return this.frozen.contains(song);
+    }
+
+    @Override
+    public int size() {
+        return this.frozen.size();
+    }
+
+    @Override
+    public void sort(Comparator<Song> order) {
+        throw immutable();
+    }
+
+    @Override
+    public void keepSorted(Comparator<Song> order) {
+        throw immutable();
+    }
+
+    @Override
+    public void stopKeepingSorted() {
+        throw immutable();
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return this.frozen.iterator();
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    @Override
+    public ArrayList<Song> getEntriesInLengthRange(int minSeconds,
+            int maxSeconds) {
+        return this.frozen.getEntriesInLengthRange(minSeconds, maxSeconds);
+    }
+
+    @Override
+    public ArrayList<Song> getEntries(Map<SearchField, String> criteria) {
+        return this.frozen.getEntries(criteria);
+    }
+
+    /**
+     * Does nothing: a snapshot keeps the indexes its database had, since
+     * building one would change the frozen representation.
+     *
+     * @param field
+     *            Ignored
+     */
+    @Override
+    public void indexNormalized(SearchField field) {
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesNormalized(SearchField field,
+            String value) {
+        return this.frozen.getEntriesNormalized(field, value);
+    }
+
+    /**
+     * Does nothing: a snapshot keeps the indexes its database had, since
+     * building one would change the frozen representation.
+     *
+     * @param field
+     *            Ignored
+     */
+    @Override
+    public void indexPrefixes(SearchField field) {
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesWithPrefix(SearchField field,
+            String prefix, int limit) {
+        return this.frozen.getEntriesWithPrefix(field, prefix, limit);
+    }
+
+    /**
+     * Does nothing: a snapshot keeps the indexes its database had, since
+     * building one would change the frozen representation.
+     *
+     * @param field
+     *            Ignored
+     */
+    @Override
+    public void indexText(SearchField field) {
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesContaining(SearchField field,
+            String text) {
+        return this.frozen.getEntriesContaining(field, text);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesMatching(SearchField field,
+            String pattern) {
+        return this.frozen.getEntriesMatching(field, pattern);
+    }
+
+    @Override
+    public ArrayList<Song> getEntriesSimilar(SearchField field, String value,
+            int maxEdits) {
+        return this.frozen.getEntriesSimilar(field, value, maxEdits);
+    }
+
+    @Override
+    public Stream<Song> stream() {
+        return this.frozen.stream();
+    }
+
+    @Override
+    public Stream<Song> streamEntries(SearchField field, String value) {
+        return this.frozen.streamEntries(field, value);
+    }
+
+    @Override
+    public MusicDatabase snapshot() {
+        return this;
+    }
+
+}
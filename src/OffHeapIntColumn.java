@@ -0,0 +1,227 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A growable column of {@code int}s kept in a direct {@code ByteBuffer}, so
+ * the values live outside the Java heap and are never scanned or copied by
+ * the garbage collector. It holds at most {@code Integer.MAX_VALUE / 4}
+ * values.
+ *
+ * @convention [$this.size * 4 <= $this.buffer.capacity()] AND
+ *             [$this.buffer.capacity() is a multiple of 4]
+ * @correspondence this = [the ints at byte offsets 0, 4, ..., 4 * ($this.size
+ *                 - 1) of $this.buffer]
+ */
+final class OffHeapIntColumn {
+
+    /**
+     * Number of bytes in an int.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Default number of values room is made for.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    /**
+     * Largest number of values a column can hold.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / INT_BYTES;
+
+    /**
+     * The values; bytes past {@code 4 * size} are unused.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The number of values.
+     */
+    private int size;
+
+    /**
+     * Constructor for an empty column.
+     */
+    OffHeapIntColumn() {
+        this.buffer = ByteBuffer.allocateDirect(DEFAULT_CAPACITY * INT_BYTES);
+    }
+
+    /**
+     * Constructor for a column of {@code size} zeros.
+     *
+     * @param size
+     *            The number of values
+     * @requires 0 <= size <= Integer.MAX_VALUE / 4
+     */
+    OffHeapIntColumn(int size) {
+        /*
+         * Direct buffers start zeroed, so nothing needs to be filled.
+         */
+        this.buffer = ByteBuffer.allocateDirect(
+                Math.max(size, 1) * INT_BYTES);
+        this.size = size;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     *            The column to copy
+     */
+    OffHeapIntColumn(OffHeapIntColumn other) {
+        this.buffer = ByteBuffer.allocateDirect(
+                Math.max(other.size, 1) * INT_BYTES);
+        ByteBuffer used = other.buffer.duplicate();
+        used.position(0).limit(other.size * INT_BYTES);
+        this.buffer.put(used);
+        this.size = other.size;
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return The number of values
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the value at {@code i}.
+     *
+     * @param i
+     *            The position to read
+     * @return The value
+     * @requires 0 <= i < |this|
+     */
+    int get(int i) {
+        return this.buffer.getInt(i * INT_BYTES);
+    }
+
+    /**
+     * Replaces the value at {@code i}.
+     *
+     * @param i
+     *            The position to write
+     * @param value
+     *            The new value
+     * @requires 0 <= i < |this|
+     * @updates this
+     */
+    void set(int i, int value) {
+        this.buffer.putInt(i * INT_BYTES, value);
+    }
+
+    /**
+     * Makes room for at least {@code capacity} values without another copy.
+     *
+     * @param capacity
+     *            The number of values to make room for
+     * @requires capacity <= Integer.MAX_VALUE / 4
+     */
+    void ensureCapacity(int capacity) {
+        if ((long) capacity * INT_BYTES > this.buffer.capacity()) {
+            int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(capacity,
+                    2L * this.buffer.capacity() / INT_BYTES));
+            ByteBuffer grown = ByteBuffer
+                    .allocateDirect(newCapacity * INT_BYTES);
+            ByteBuffer used = this.buffer.duplicate();
+            used.position(0).limit(this.size * INT_BYTES);
+            grown.put(used);
+            this.buffer = grown;
+        }
+    }
+
+    /**
+     * Appends {@code value}.
+     *
+     * @param value
+     *            The value to append
+     * @updates this
+     * @ensures this = #this * <value>
+     */
+    void add(int value) {
+        if (this.size == MAX_CAPACITY) {
+            throw new IllegalStateException(
+                    "ERROR: off-heap column is full");
+        }
+        this.ensureCapacity(this.size + 1);
+        this.buffer.putInt(this.size * INT_BYTES, value);
+        this.size++;
+    }
+
+    /**
+     * Inserts {@code value} at {@code i}, shifting the later values up.
+     *
+     * @param i
+     *            The position to insert at
+     * @param value
+     *            The value to insert
+     * @requires 0 <= i <= |this|
+     * @updates this
+     */
+    void insert(int i, int value) {
+        this.add(value);
+        /*
+         * The later values move towards the end, over themselves; a bulk put
+         * between views of the same memory acts as if the source were copied
+         * aside first, so none is overwritten before it is read.
+         */
+        ByteBuffer later = this.buffer.duplicate();
+        later.position(i * INT_BYTES).limit((this.size - 1) * INT_BYTES);
+        ByteBuffer target = this.buffer.duplicate();
+        target.position((i + 1) * INT_BYTES);
+        target.put(later);
+        this.buffer.putInt(i * INT_BYTES, value);
+    }
+
+    /**
+     * Removes the value at {@code i}, shifting the later values down.
+     *
+     * @param i
+     *            The position to remove
+     * @requires 0 <= i < |this|
+     * @updates this
+     */
+    void removeAt(int i) {
+        /*
+         * The later values move towards the start, so a forward bulk copy
+         * never overwrites a value before it is read.
+         */
+        ByteBuffer later = this.buffer.duplicate();
+        later.position((i + 1) * INT_BYTES).limit(this.size * INT_BYTES);
+        ByteBuffer target = this.buffer.duplicate();
+        target.position(i * INT_BYTES);
+        target.put(later);
+        this.size--;
+    }
+
+    /**
+     * Removes the last {@code |this| - size} values.
+     *
+     * @param size
+     *            The number of values to keep
+     * @requires 0 <= size <= |this|
+     * @updates this
+     */
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the first position holding {@code value}, or -1.
+     *
+     * @param value
+     *            The value to look for
+     * @return The position of {@code value}, or -1
+     */
+    int indexOf(int value) {
+        int result = -1;
+        for (int i = 0; i < this.size && result < 0; i++) {
+            if (this.buffer.getInt(i * INT_BYTES) == value) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,394 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A list of {@code int}s kept outside the Java heap, like
+ * {@code OffHeapIntColumn}, that can also insert and remove at any position
+ * without shifting every later value. The values are split into blocks of at
+ * most {@code BLOCK_SIZE}, each an {@code OffHeapIntColumn}, and the position
+ * of the first value of each block is kept, so a position is found by binary
+ * search over the blocks and an insertion or removal shifts only the values
+ * after it in its own block, plus one start per later block.
+ *
+ * <p>
+ * Reads remember the block they last landed in, so a run of reads at nearby
+ * positions, such as a scan, skips the search. The hint is checked before it
+ * is used, so reads from several threads at once, with no writer, stay
+ * correct.
+ *
+ * <p>
+ * An indexed list, whose values are distinct and non-negative, such as slot
+ * numbers, also remembers the block each value was last written to, so
+ * {@code indexOf} searches that one block instead of the whole list. Blocks
+ * are named by ids that do not change as blocks are split or dropped.
+ *
+ * @convention [$this.blocks is not empty] AND [every block holds at most
+ *             BLOCK_SIZE values] AND [no block is empty unless it is the only
+ *             one] AND [$this.starts.length > |$this.blocks|] AND
+ *             [$this.starts[b] is the total size of the blocks before block
+ *             b, for each b in [0, |$this.blocks|]] AND [0 <=
+ *             $this.lastBlock] AND [$this.ids.length = $this.starts.length]
+ *             AND [the first |$this.blocks| entries of $this.ids are
+ *             distinct and less than $this.nextId] AND [if $this.homes /=
+ *             null, then for each value v of this, $this.homes[v] is
+ *             $this.ids[b] for the block b holding v]
+ * @correspondence this = [the values of $this.blocks, block after block]
+ */
+final class OffHeapIntList {
+
+    /**
+     * Most values a block holds; a full block is split in two before another
+     * value is inserted into it.
+     */
+    private static final int BLOCK_SIZE = 1 << 12;
+
+    /**
+     * Default number of block starts room is made for.
+     */
+    private static final int DEFAULT_BLOCKS = 16;
+
+    /**
+     * The blocks, in order.
+     */
+    private final ArrayList<OffHeapIntColumn> blocks;
+
+    /**
+     * Position of the first value of each block, then the size of this.
+     */
+    private int[] starts;
+
+    /**
+     * The block the last lookup landed in; only a hint.
+     */
+    private int lastBlock;
+
+    /**
+     * Id of each block, by index.
+     */
+    private int[] ids;
+
+    /**
+     * Id the next new block gets.
+     */
+    private int nextId;
+
+    /**
+     * Id of the block each value was last written to, by value, or null if
+     * this is not indexed.
+     */
+    private final OffHeapIntColumn homes;
+
+    /**
+     * Constructor for an empty list.
+     */
+    OffHeapIntList() {
+        this(false);
+    }
+
+    /**
+     * Constructor for an empty list, indexed if {@code indexed}.
+     *
+     * @param indexed
+     *            Whether {@code indexOf} should search only the block a value
+     *            was last written to
+     * @requires [if indexed, every value written to this is non-negative]
+     */
+    OffHeapIntList(boolean indexed) {
+        this.blocks = new ArrayList<OffHeapIntColumn>();
+        this.blocks.add(new OffHeapIntColumn());
+        this.starts = new int[DEFAULT_BLOCKS];
+        this.ids = new int[DEFAULT_BLOCKS];
+        this.nextId = 1;
+        OffHeapIntColumn index = null;
+        if (indexed) {
+            index = new OffHeapIntColumn();
+        }
+        this.homes = index;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     *            The list to copy
+     */
+    OffHeapIntList(OffHeapIntList other) {
+        this.blocks = new ArrayList<OffHeapIntColumn>(other.blocks.size());
+        for (OffHeapIntColumn block : other.blocks) {
+            this.blocks.add(new OffHeapIntColumn(block));
+        }
+        this.starts = other.starts.clone();
+        this.ids = other.ids.clone();
+        this.nextId = other.nextId;
+        OffHeapIntColumn index = null;
+        if (other.homes != null) {
+            index = new OffHeapIntColumn(other.homes);
+        }
+        this.homes = index;
+    }
+
+    /**
+     * Records that {@code value} is in block {@code b}, if this is indexed.
+     *
+     * @param value
+     *            A value of block {@code b}
+     * @param b
+     *            The index of the block
+     */
+    private void setHome(int value, int b) {
+        if (this.homes != null) {
+            while (this.homes.size() <= value) {
+                this.homes.add(0);
+            }
+            this.homes.set(value, this.ids[b]);
+        }
+    }
+
+    /**
+     * Returns the block holding position {@code i}: the last one starting at
+     * or before it.
+     *
+     * @param i
+     *            A position
+     * @return The index of the block
+     * @requires 0 <= i <= |this|
+     */
+    private int blockOf(int i) {
+        int hint = this.lastBlock;
+        int result;
+        if (hint < this.blocks.size() && this.starts[hint] <= i
+                && i < this.starts[hint + 1]) {
+            result = hint;
+        } else {
+            int lo = 0;
+            int hi = this.blocks.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (this.starts[mid] <= i) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            result = lo;
+            this.lastBlock = result;
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code delta} to the starts of the blocks after block {@code b},
+     * and to the size.
+     *
+     * @param b
+     *            The block whose size changed
+     * @param delta
+     *            The change in its size
+     */
+    private void shiftStarts(int b, int delta) {
+        for (int c = b + 1; c <= this.blocks.size(); c++) {
+            this.starts[c] += delta;
+        }
+    }
+
+    /**
+     * Inserts {@code block}, starting at position {@code start}, as block
+     * {@code b}.
+     *
+     * @param b
+     *            The index the block gets
+     * @param start
+     *            The position of its first value
+     * @param block
+     *            The block
+     */
+    private void insertBlock(int b, int start, OffHeapIntColumn block) {
+        if (this.blocks.size() + 1 >= this.starts.length) {
+            this.starts = Arrays.copyOf(this.starts, 2 * this.starts.length);
+            this.ids = Arrays.copyOf(this.ids, this.starts.length);
+        }
+        System.arraycopy(this.starts, b, this.starts, b + 1,
+                this.blocks.size() + 1 - b);
+        System.arraycopy(this.ids, b, this.ids, b + 1,
+                this.blocks.size() - b);
+        this.starts[b] = start;
+        this.ids[b] = this.nextId;
+        this.nextId++;
+        this.blocks.add(b, block);
+    }
+
+    /**
+     * Removes block {@code b}, which is empty.
+     *
+     * @param b
+     *            The index of the block
+     */
+    private void removeBlock(int b) {
+        this.blocks.remove(b);
+        System.arraycopy(this.starts, b + 1, this.starts, b,
+                this.blocks.size() + 1 - b);
+        System.arraycopy(this.ids, b + 1, this.ids, b,
+                this.blocks.size() - b);
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return The number of values
+     */
+    int size() {
+        return this.starts[this.blocks.size()];
+    }
+
+    /**
+     * Returns the value at {@code i}.
+     *
+     * @param i
+     *            The position to read
+     * @return The value
+     * @requires 0 <= i < |this|
+     */
+    int get(int i) {
+        int b = this.blockOf(i);
+        return this.blocks.get(b).get(i - this.starts[b]);
+    }
+
+    /**
+     * Replaces the value at {@code i}.
+     *
+     * @param i
+     *            The position to write
+     * @param value
+     *            The new value
+     * @requires 0 <= i < |this|
+     * @updates this
+     */
+    void set(int i, int value) {
+        int b = this.blockOf(i);
+        this.blocks.get(b).set(i - this.starts[b], value);
+        this.setHome(value, b);
+    }
+
+    /**
+     * Appends {@code value}.
+     *
+     * @param value
+     *            The value to append
+     * @updates this
+     * @ensures this = #this * <value>
+     */
+    void add(int value) {
+        this.insert(this.size(), value);
+    }
+
+    /**
+     * Inserts {@code value} at {@code i}, shifting the later values up.
+     *
+     * @param i
+     *            The position to insert at
+     * @param value
+     *            The value to insert
+     * @requires 0 <= i <= |this|
+     * @updates this
+     */
+    void insert(int i, int value) {
+        int b = this.blockOf(i);
+        OffHeapIntColumn block = this.blocks.get(b);
+        if (block.size() == BLOCK_SIZE) {
+            OffHeapIntColumn next = new OffHeapIntColumn();
+            if (i == this.size()) {
+                /*
+                 * Appending fills blocks one after another rather than
+                 * leaving each half empty.
+                 */
+                this.insertBlock(b + 1, i, next);
+            } else {
+                int half = BLOCK_SIZE / 2;
+                next.ensureCapacity(BLOCK_SIZE);
+                for (int j = half; j < BLOCK_SIZE; j++) {
+                    next.add(block.get(j));
+                }
+                block.truncate(half);
+                this.insertBlock(b + 1, this.starts[b] + half, next);
+                for (int j = 0; j < next.size(); j++) {
+                    this.setHome(next.get(j), b + 1);
+                }
+            }
+            if (i >= this.starts[b + 1]) {
+                b++;
+                block = next;
+            }
+        }
+        block.insert(i - this.starts[b], value);
+        this.shiftStarts(b, 1);
+        this.setHome(value, b);
+    }
+
+    /**
+     * Removes the value at {@code i}, shifting the later values down.
+     *
+     * @param i
+     *            The position to remove
+     * @requires 0 <= i < |this|
+     * @updates this
+     */
+    void removeAt(int i) {
+        int b = this.blockOf(i);
+        OffHeapIntColumn block = this.blocks.get(b);
+        block.removeAt(i - this.starts[b]);
+        this.shiftStarts(b, -1);
+        if (block.size() == 0 && this.blocks.size() > 1) {
+            this.removeBlock(b);
+        }
+    }
+
+    /**
+     * Removes the last {@code |this| - size} values.
+     *
+     * @param size
+     *            The number of values to keep
+     * @requires 0 <= size <= |this|
+     * @updates this
+     */
+    void truncate(int size) {
+        int last = this.blocks.size() - 1;
+        while (last > 0 && this.starts[last] >= size) {
+            this.blocks.remove(last);
+            last--;
+        }
+        this.blocks.get(last).truncate(size - this.starts[last]);
+        this.starts[last + 1] = size;
+    }
+
+    /**
+     * Returns the first position holding {@code value}, or -1. If this is
+     * indexed and {@code value} is in this, only the block it was last
+     * written to is searched, and the position found there is returned.
+     *
+     * @param value
+     *            The value to look for
+     * @return The position of {@code value}, or -1
+     */
+    int indexOf(int value) {
+        int result = -1;
+        if (this.homes != null && 0 <= value && value < this.homes.size()) {
+            int id = this.homes.get(value);
+            for (int b = 0; b < this.blocks.size() && result < 0; b++) {
+                if (this.ids[b] == id) {
+                    int i = this.blocks.get(b).indexOf(value);
+                    if (i >= 0) {
+                        result = this.starts[b] + i;
+                    }
+                }
+            }
+        }
+        for (int b = 0; b < this.blocks.size() && result < 0; b++) {
+            int i = this.blocks.get(b).indexOf(value);
+            if (i >= 0) {
+                result = this.starts[b] + i;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,261 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A dictionary of distinct strings kept entirely outside the Java heap: the
+ * text is stored as UTF-8 in one direct {@code ByteBuffer} arena, and the
+ * offset, length, and hash of each string, as well as the open-addressed hash
+ * table used to find them, are {@code OffHeapIntColumn}s. Strings are numbered
+ * 0, 1, 2, ... in the order they were first added, and a {@code String} is
+ * only decoded when {@code get} asks for one. The arena holds at most 2 GB.
+ * Strings are never removed; an owner whose strings fall out of use builds a
+ * new pool of those still in use, as {@code MusicDatabase3} does.
+ *
+ * @convention [the strings at $this.offsets[i], $this.lengths[i] in
+ *             $this.arena are distinct] AND [$this.hashes[i] is the hash of
+ *             string i] AND [$this.table.size() is a power of two, at least 2
+ *             * |this|] AND [each id is stored, plus one, in exactly one slot
+ *             of $this.table, reachable by linear probing from its hash]
+ * @correspondence this = [the UTF-8 decoding of $this.arena[$this.offsets[i],
+ *                 $this.offsets[i] + $this.lengths[i]) for each id i, in id
+ *                 order]
+ */
+final class OffHeapStringPool {
+
+    /**
+     * Default arena size in bytes.
+     */
+    private static final int DEFAULT_ARENA_SIZE = 1 << 16;
+
+    /**
+     * Default number of table slots.
+     */
+    private static final int DEFAULT_TABLE_SIZE = 1 << 10;
+
+    /**
+     * Multiplier of the byte hash.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The UTF-8 text of every string, back to back.
+     */
+    private ByteBuffer arena;
+
+    /**
+     * Number of bytes of {@code arena} in use.
+     */
+    private int arenaSize;
+
+    /**
+     * Arena offset of each string, by id.
+     */
+    private final OffHeapIntColumn offsets;
+
+    /**
+     * Byte length of each string, by id.
+     */
+    private final OffHeapIntColumn lengths;
+
+    /**
+     * Hash of each string, by id.
+     */
+    private final OffHeapIntColumn hashes;
+
+    /**
+     * Open-addressed table of ids plus one; 0 marks an empty slot.
+     */
+    private OffHeapIntColumn table;
+
+    /**
+     * No-argument constructor.
+     */
+    OffHeapStringPool() {
+        this.arena = ByteBuffer.allocateDirect(DEFAULT_ARENA_SIZE);
+        this.offsets = new OffHeapIntColumn();
+        this.lengths = new OffHeapIntColumn();
+        this.hashes = new OffHeapIntColumn();
+        this.table = new OffHeapIntColumn(DEFAULT_TABLE_SIZE);
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other
+     *            The pool to copy
+     */
+    OffHeapStringPool(OffHeapStringPool other) {
+        this.arena = ByteBuffer.allocateDirect(
+                Math.max(other.arenaSize, DEFAULT_ARENA_SIZE));
+        ByteBuffer used = other.arena.duplicate();
+        used.position(0).limit(other.arenaSize);
+        this.arena.put(used);
+        this.arenaSize = other.arenaSize;
+        this.offsets = new OffHeapIntColumn(other.offsets);
+        this.lengths = new OffHeapIntColumn(other.lengths);
+        this.hashes = new OffHeapIntColumn(other.hashes);
+        this.table = new OffHeapIntColumn(other.table);
+    }
+
+    /**
+     * Returns the number of strings.
+     *
+     * @return The number of strings
+     */
+    int size() {
+        return this.offsets.size();
+    }
+
+    /**
+     * Returns the hash of {@code bytes}.
+     *
+     * @param bytes
+     *            The bytes to hash
+     * @return The hash
+     */
+    private static int hash(byte[] bytes) {
+        int result = 0;
+        for (byte b : bytes) {
+            result = HASH_MULTIPLIER * result + b;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first table slot for {@code hash}.
+     *
+     * @param hash
+     *            A string hash
+     * @return The slot to start probing at
+     */
+    private int slot(int hash) {
+        return (hash ^ (hash >>> 16)) & (this.table.size() - 1);
+    }
+
+    /**
+     * Reports whether string {@code id} has exactly the bytes {@code bytes}.
+     *
+     * @param id
+     *            The string to compare
+     * @param bytes
+     *            The UTF-8 bytes to compare
+     * @return Whether they are equal
+     */
+    private boolean bytesEqual(int id, byte[] bytes) {
+        boolean result = this.lengths.get(id) == bytes.length;
+        int offset = this.offsets.get(id);
+        for (int i = 0; i < bytes.length && result; i++) {
+            result = this.arena.get(offset + i) == bytes[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the table slot holding {@code bytes}, or the empty slot where
+     * it would be added.
+     *
+     * @param bytes
+     *            The UTF-8 bytes to look up
+     * @param hash
+     *            The hash of {@code bytes}
+     * @return The slot
+     */
+    private int probe(byte[] bytes, int hash) {
+        int mask = this.table.size() - 1;
+        int slot = this.slot(hash);
+        boolean found = false;
+        while (!found && this.table.get(slot) != 0) {
+            int id = this.table.get(slot) - 1;
+            if (this.hashes.get(id) == hash && this.bytesEqual(id, bytes)) {
+                found = true;
+            } else {
+                slot = (slot + 1) & mask;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the table and reinserts every id.
+     */
+    private void rehash() {
+        this.table = new OffHeapIntColumn(2 * this.table.size());
+        int mask = this.table.size() - 1;
+        for (int id = 0; id < this.size(); id++) {
+            int slot = this.slot(this.hashes.get(id));
+            while (this.table.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table.set(slot, id + 1);
+        }
+    }
+
+    /**
+     * Returns the id of {@code value}, or -1 if it is not in this.
+     *
+     * @param value
+     *            The string to look up
+     * @return The id of {@code value}, or -1
+     */
+    int find(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return this.table.get(this.probe(bytes, hash(bytes))) - 1;
+    }
+
+    /**
+     * Returns the id of {@code value}, adding it first if it is not in this.
+     *
+     * @param value
+     *            The string to add
+     * @return The id of {@code value}
+     * @updates this
+     */
+    int add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        int slot = this.probe(bytes, hash);
+        int result = this.table.get(slot) - 1;
+        if (result < 0) {
+            if (bytes.length > Integer.MAX_VALUE - this.arenaSize) {
+                throw new IllegalStateException(
+                        "ERROR: off-heap string arena is full");
+            }
+            if (this.arenaSize + bytes.length > this.arena.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(
+                        Integer.MAX_VALUE,
+                        Math.max(2L * this.arena.capacity(),
+                                (long) this.arenaSize + bytes.length)));
+                ByteBuffer used = this.arena.duplicate();
+                used.position(0).limit(this.arenaSize);
+                grown.put(used);
+                this.arena = grown;
+            }
+            this.arena.put(this.arenaSize, bytes);
+            result = this.size();
+            this.offsets.add(this.arenaSize);
+            this.lengths.add(bytes.length);
+            this.hashes.add(hash);
+            this.arenaSize += bytes.length;
+            this.table.set(slot, result + 1);
+            if (2 * this.size() > this.table.size()) {
+                this.rehash();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns string {@code id}, decoded into a new {@code String}.
+     *
+     * @param id
+     *            The id to look up
+     * @return The string
+     * @requires 0 <= id < |this|
+     */
+    String get(int id) {
+        byte[] bytes = new byte[this.lengths.get(id)];
+        this.arena.get(this.offsets.get(id), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
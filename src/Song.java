@@ -1,12 +1,151 @@
+import java.util.Map;
+
 /**
- * A record class meant to hold song data. Parameters are self explanatory.
+ * A record class meant to hold song data. Parameters are self explanatory,
+ * except {@code seconds}, which is {@code length} parsed once into a number of
+ * seconds (or -1 if it cannot be parsed) so that lengths can be compared and
+ * range-queried without reparsing the string. Since {@code seconds} takes part
+ * in {@code equals} and {@code hashCode}, it must match {@code length}. Songs
+ * from text are built with the constructor that parses {@code length}; the
+ * canonical constructor trusts its caller, so copies built from stored columns
+ * are not parsed again.
  *
  * @param title
  * @param artist
  * @param length
  * @param album
+ * @param seconds
  * @return
  */
-public record Song(String title, String artist, String album, String length) {
+public record Song(String title, String artist, String album, String length,
+        int seconds) {
+
+    /**
+     * Seconds in a minute.
+     */
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /**
+     * Bound on each number in a length, so parsing cannot overflow.
+     */
+    private static final int MAX_PART = 1_000_000;
+
+    /**
+     * Returns {@code length}, in the "m:ss" or "h:mm:ss" form (or just
+     * seconds), converted to a number of seconds.
+     *
+     * @param length
+     *            A song length
+     * @return The length in seconds, or -1 if it cannot be parsed
+     * @ensures parseLength >= -1
+     */
+    public static int parseLength(String length) {
+        int total = 0;
+        int part = -1;
+        boolean valid = true;
+        for (int i = 0; i < length.length() && valid; i++) {
+            char c = length.charAt(i);
+            if (c >= '0' && c <= '9') {
+                part = Math.max(part, 0) * 10 + (c - '0');
+                valid = part < MAX_PART;
+            } else if (c == ':' && part >= 0
+                    && total < Integer.MAX_VALUE / SECONDS_PER_MINUTE) {
+                total = total * SECONDS_PER_MINUTE + part;
+                part = -1;
+            } else {
+                valid = false;
+            }
+        }
+        int result = -1;
+        if (valid && part >= 0
+                && total < Integer.MAX_VALUE / SECONDS_PER_MINUTE) {
+            result = total * SECONDS_PER_MINUTE + part;
+        }
+        return result;
+    }
+
+    /**
+     * Canonical constructor, for a length already parsed.
+     *
+     * @param title
+     *            The title
+     * @param artist
+     *            The artist
+     * @param album
+     *            The album
+     * @param length
+     *            The length, as written
+     * @param seconds
+     *            {@code length} in seconds
+     * @requires seconds = parseLength(length)
+     */
+    public Song {
+        assert seconds == parseLength(length) : ""
+                + "Violation of: seconds = parseLength(length)";
+    }
+
+    /**
+     * Constructor that parses {@code length}.
+     *
+     * @param title
+     *            The title
+     * @param artist
+     *            The artist
+     * @param album
+     *            The album
+     * @param length
+     *            The length, as written
+     */
+    public Song(String title, String artist, String album, String length) {
+        this(title, artist, album, length, parseLength(length));
+    }
+
+    /**
+     * Returns the value of this song's given field.
+     *
+     * @param field
+     *            The field to read
+     * @return The value of {@code field} in this
+     * @ensures field = the title, artist, album, or length of this, as chosen
+     *          by {@code field}
+     */
+    public String field(MusicDatabaseKernel.SearchField field) {
+        String result;
+        switch (field) {
+            case TITLE:
+                result = this.title;
+                break;
+            case ARTIST:
+                result = this.artist;
+                break;
+            case ALBUM:
+                result = this.album;
+                break;
+            default:
+                result = this.length;
+                break;
+        }
+        return result;
+    }
 
+    /**
+     * Reports whether every field named in {@code criteria} has the value it
+     * maps to in this song.
+     *
+     * @param criteria
+     *            Map from fields to the values they must have
+     * @return Whether this song meets every criterion
+     * @requires no value in criteria is null
+     * @ensures matches = [for each (f, v) in criteria, field(f) = v]
+     */
+    public boolean matches(
+            Map<MusicDatabaseKernel.SearchField, String> criteria) {
+        boolean result = true;
+        for (Map.Entry<MusicDatabaseKernel.SearchField, String> criterion
+                : criteria.entrySet()) {
+            result = result && this.field(criterion.getKey())
+                    .equals(criterion.getValue());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,404 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An inverted index over one field of {@code Song}, mapping each value of that
+ * field to the songs that have it (i.e. its posting list). Posting lists keep
+ * the order songs were added in.
+ *
+ * <p>
+ * Values are identified by their id in a {@code StringDictionary} shared with
+ * the owning kernel, so posting lists live in an array indexed by id rather
+ * than in a map keyed by string. A value held by a single song, as most titles
+ * are, stores that {@code Song} directly instead of a one-element set.
+ *
+ * <p>
+ * A normalized index keys each song by the normal form of its field, as
+ * given by {@code FieldNormalizer}, rather than the field itself.
+ *
+ * <p>
+ * Once {@code keepSortedValues} is called, the values with a posting list are
+ * also kept in a {@code TreeSet}, so the values starting with a prefix can be
+ * walked in order without looking at the others. Likewise, once
+ * {@code keepTextIndex} is called, they are kept in a {@code TrigramIndex}.
+ *
+ * @convention [$this.postings[id] is null, a Song, or a LinkedHashSet<Song>
+ *             of at least two songs] AND [every song in the posting list for
+ *             id has $this.strings.get(id) in $this.field, normalized if
+ *             $this.normalized] AND [$this.sortedValues is null or holds
+ *             exactly $this.strings.get(id) for each id with a non-null
+ *             posting] AND [$this.text is null or holds exactly the same
+ *             values]
+ * @correspondence this = [map from $this.strings.get(id) to the songs in
+ *                 $this.postings[id], for each id with a non-null posting]
+ */
+final class SongIndex {
+
+    /**
+     * Default length of the posting array.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The field of {@code Song} this indexes.
+     */
+    private final MusicDatabaseKernel.SearchField field;
+
+    /**
+     * The dictionary the ids of values come from.
+     */
+    private final StringDictionary strings;
+
+    /**
+     * Whether songs are keyed by the normal form of their field.
+     */
+    private final boolean normalized;
+
+    /**
+     * Posting list of each value, by id: null, a single {@code Song}, or a
+     * {@code LinkedHashSet<Song>}.
+     */
+    private Object[] postings;
+
+    /**
+     * The values with a posting list, in order, or null if not kept.
+     */
+    private TreeSet<String> sortedValues;
+
+    /**
+     * The values with a posting list, for text search, or null if not kept.
+     */
+    private TrigramIndex text;
+
+    /**
+     * Constructor.
+     *
+     * @param field
+     *            The field of {@code Song} to index
+     * @param strings
+     *            The dictionary to take value ids from
+     */
+    SongIndex(MusicDatabaseKernel.SearchField field, StringDictionary strings) {
+        this(field, strings, false);
+    }
+
+    /**
+     * Constructor for an index that may be normalized.
+     *
+     * @param field
+     *            The field of {@code Song} to index
+     * @param strings
+     *            The dictionary to take value ids from
+     * @param normalized
+     *            Whether to key songs by the normal form of their field
+     */
+    SongIndex(MusicDatabaseKernel.SearchField field, StringDictionary strings,
+            boolean normalized) {
+        this.field = field;
+        this.strings = strings;
+        this.normalized = normalized;
+        this.postings = new Object[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Returns the field this indexes.
+     *
+     * @return The indexed field
+     */
+    MusicDatabaseKernel.SearchField field() {
+        return this.field;
+    }
+
+    /**
+     * Reports whether this keys songs by the normal form of their field.
+     *
+     * @return Whether this is normalized
+     */
+    boolean isNormalized() {
+        return this.normalized;
+    }
+
+    /**
+     * Returns the key this index files a song with field value
+     * {@code value} under.
+     *
+     * @param value
+     *            A value of the indexed field
+     * @return {@code value}, normalized if this is
+     */
+    String key(String value) {
+        String result = value;
+        if (this.normalized) {
+            result = FieldNormalizer.normalize(value);
+        }
+        return result;
+    }
+
+    /**
+     * Starts keeping the values with a posting list in sorted order, if this
+     * does not already.
+     *
+     * @updates this
+     */
+    void keepSortedValues() {
+        if (this.sortedValues == null) {
+            this.sortedValues = new TreeSet<String>();
+            for (int id = 0; id < this.postings.length; id++) {
+                if (this.postings[id] != null) {
+                    this.sortedValues.add(this.strings.get(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports whether this keeps its values in sorted order.
+     *
+     * @return Whether {@code keepSortedValues} was called
+     */
+    boolean keepsSortedValues() {
+        return this.sortedValues != null;
+    }
+
+    /**
+     * Returns a read-only view, in order, of the values with a posting list
+     * that are not less than {@code value}.
+     *
+     * @param value
+     *            The least value to include
+     * @return The values from {@code value} on
+     * @requires this keeps its values in sorted order
+     */
+    SortedSet<String> valuesFrom(String value) {
+        assert this.sortedValues != null : ""
+                + "Violation of: this keeps its values in sorted order";
+
+        return Collections.unmodifiableSortedSet(
+                this.sortedValues.tailSet(value));
+    }
+
+    /**
+     * Starts keeping the values with a posting list in a trigram index, if
+     * this does not already.
+     *
+     * @updates this
+     */
+    void keepTextIndex() {
+        if (this.text == null) {
+            this.text = new TrigramIndex();
+            for (int id = 0; id < this.postings.length; id++) {
+                if (this.postings[id] != null) {
+                    this.text.add(this.strings.get(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the trigram index of the values with a posting list, or null if
+     * {@code keepTextIndex} was not called.
+     *
+     * @return The trigram index, or null
+     */
+    TrigramIndex textIndex() {
+        return this.text;
+    }
+
+    /**
+     * Records that the value with id {@code id} now has a posting list.
+     *
+     * @param id
+     *            The id of the value
+     * @updates this
+     */
+    private void valueAdded(int id) {
+        if (this.sortedValues != null) {
+            this.sortedValues.add(this.strings.get(id));
+        }
+        if (this.text != null) {
+            this.text.add(this.strings.get(id));
+        }
+    }
+
+    /**
+     * Records that {@code value} no longer has a posting list.
+     *
+     * @param value
+     *            The value
+     * @updates this
+     */
+    private void valueRemoved(String value) {
+        if (this.sortedValues != null) {
+            this.sortedValues.remove(value);
+        }
+        if (this.text != null) {
+            this.text.remove(value);
+        }
+    }
+
+    /**
+     * Returns {@code posting} as a set; it must not be a single song.
+     *
+     * @param posting
+     *            A posting list holding two or more songs
+     * @return {@code posting}
+     */
+    @SuppressWarnings("unchecked")
+    private static LinkedHashSet<Song> asSet(Object posting) {
+        return (LinkedHashSet<Song>) posting;
+    }
+
+    /**
+     * Returns the posting list of {@code value}.
+     *
+     * @param value
+     *            The value to look up
+     * @return The posting list, which may be a single song, or null
+     */
+    private Object posting(String value) {
+        int id = this.strings.find(value);
+        Object result = null;
+        if (id >= 0 && id < this.postings.length) {
+            result = this.postings[id];
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code song} to the posting list of value id {@code id}.
+     *
+     * @param id
+     *            The id of the value of {@code song}
+     * @param song
+     *            The song to index
+     * @updates this
+     */
+    private void add(int id, Song song) {
+        if (id >= this.postings.length) {
+            this.postings = Arrays.copyOf(this.postings,
+                    Math.max(id + 1, 2 * this.postings.length));
+        }
+        Object posting = this.postings[id];
+        if (posting == null) {
+            this.postings[id] = song;
+            this.valueAdded(id);
+        } else if (posting instanceof Song) {
+            if (!posting.equals(song)) {
+                LinkedHashSet<Song> set = new LinkedHashSet<Song>();
+                set.add((Song) posting);
+                set.add(song);
+                this.postings[id] = set;
+            }
+        } else {
+            asSet(posting).add(song);
+        }
+    }
+
+    /**
+     * Adds {@code song} to the posting list of its value.
+     *
+     * @param song
+     *            The song to index
+     * @updates this
+     */
+    void add(Song song) {
+        this.add(this.strings.add(this.key(song.field(this.field))), song);
+    }
+
+    /**
+     * Adds every song in {@code songs} to the posting list of its value. Runs
+     * of songs sharing a value, which are common since catalogs tend to be
+     * grouped by artist and album, reuse the id found for the first song of
+     * the run instead of looking it up again.
+     *
+     * @param songs
+     *            The songs to index
+     * @updates this
+     */
+    void addAll(Collection<Song> songs) {
+        String lastValue = null;
+        int id = -1;
+        for (Song song : songs) {
+            String value = song.field(this.field);
+            if (!value.equals(lastValue)) {
+                id = this.strings.add(this.key(value));
+                lastValue = value;
+            }
+            this.add(id, song);
+        }
+    }
+
+    /**
+     * Removes {@code song} from the posting list of its value, dropping the
+     * list once it is empty.
+     *
+     * @param song
+     *            The song to unindex
+     * @updates this
+     */
+    void remove(Song song) {
+        int id = this.strings.find(this.key(song.field(this.field)));
+        if (id >= 0 && id < this.postings.length) {
+            Object posting = this.postings[id];
+            if (posting instanceof Song) {
+                if (posting.equals(song)) {
+                    this.postings[id] = null;
+                    this.valueRemoved(this.strings.get(id));
+                }
+            } else if (posting != null) {
+                LinkedHashSet<Song> set = asSet(posting);
+                if (set.remove(song) && set.size() == 1) {
+                    this.postings[id] = set.iterator().next();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only view of the songs filed under {@code value}, in the
+     * order they were added.
+     *
+     * @param value
+     *            The key to look up, normalized if this is
+     * @return The posting list of {@code value}, or an empty set
+     */
+    Set<Song> get(String value) {
+        Object posting = this.posting(value);
+        Set<Song> result = Collections.emptySet();
+        if (posting instanceof Song) {
+            result = Collections.singleton((Song) posting);
+        } else if (posting != null) {
+            result = Collections.unmodifiableSet(asSet(posting));
+        }
+        return result;
+    }
+
+    /**
+     * Removes and returns the whole posting list of {@code value}.
+     *
+     * @param value
+     *            The value to remove
+     * @return The songs that were indexed under {@code value}, or an empty set
+     * @updates this
+     */
+    Set<Song> removeValue(String value) {
+        Object posting = this.posting(value);
+        Set<Song> result = Collections.emptySet();
+        if (posting != null) {
+            this.postings[this.strings.find(value)] = null;
+            this.valueRemoved(value);
+            if (posting instanceof Song) {
+                result = Collections.singleton((Song) posting);
+            } else {
+                result = asSet(posting);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,444 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log file of changes to a {@code MusicDatabase}, one record per
+ * change, for {@code JournaledMusicDatabase}.
+ *
+ * <p>
+ * Layout of a record (all integers big-endian):
+ *
+ * <pre>
+ * int    p, the payload byte length
+ * int    CRC-32C of the payload
+ * payload:
+ *        byte   operation
+ *        byte   k, the number of arguments
+ *        k x    [int byte length, UTF-8 bytes]
+ * </pre>
+ *
+ * Records are appended to a buffer in memory and reach the file on
+ * {@code commit}, which writes every pending record and forces them to the
+ * storage device together. A commit that finds another one writing waits for
+ * it and is then usually covered already, or covers every record appended in
+ * the meantime with one more force, so concurrent writers share their forces
+ * (group commit).
+ *
+ * <p>
+ * Positions are counted across the journals of one directory: a new journal
+ * starts where the one before it ended, so a writer holding a position need
+ * not know which file its record went to.
+ *
+ * <p>
+ * A commit that fails to write or force puts its records back in front of
+ * those appended since and cuts the file back to its last forced record, so
+ * nothing half written is left before later records. The journal is then
+ * failed: the changes it recorded are in memory but may never reach the
+ * file, so every later commit throws too.
+ *
+ * <p>
+ * A crash can leave a torn record at the end of the file. {@code replay} stops
+ * at the first record whose length or checksum does not fit, and the
+ * constructor cuts the file back to the records before it.
+ *
+ * @convention [$this.pending holds the records from $this.durable to
+ *             $this.appended not yet written to $this.channel] AND
+ *             $this.durable <= $this.appended AND [if $this.failure is not
+ *             null, every commit throws]
+ * @correspondence this = [the records of the file followed by those in
+ *                 $this.pending]
+ */
+final class SongJournal implements Closeable {
+
+    /**
+     * Adds a song; arguments title, artist, album, length.
+     */
+    static final byte ADD = 1;
+
+    /**
+     * Removes a song; arguments title, artist, album, length.
+     */
+    static final byte REMOVE = 2;
+
+    /**
+     * Removes the songs with a field value; arguments the
+     * {@code SearchField} name and the value.
+     */
+    static final byte REMOVE_ENTRIES = 3;
+
+    /**
+     * Removes every song; no arguments.
+     */
+    static final byte CLEAR = 4;
+
+    /**
+     * Sorts once; argument the {@code SongOrder} name.
+     */
+    static final byte SORT = 5;
+
+    /**
+     * Keeps the songs sorted; argument the {@code SongOrder} name.
+     */
+    static final byte KEEP_SORTED = 6;
+
+    /**
+     * Stops keeping the songs sorted; no arguments.
+     */
+    static final byte STOP_KEEPING_SORTED = 7;
+
+    /**
+     * Number of bytes before a payload.
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Number of bytes before the arguments of a payload.
+     */
+    private static final int PAYLOAD_HEADER_BYTES = 2;
+
+    /**
+     * Number of bytes in an int.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Initial size of the pending buffers.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Held while writing and forcing, so commits run one at a time.
+     */
+    private final Object commitLock;
+
+    /**
+     * Records appended but not yet written; guarded by this.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * Empty buffer swapped in for {@code pending} by a commit; guarded by
+     * {@code commitLock}.
+     */
+    private ByteBuffer spare;
+
+    /**
+     * Position after the last record appended; guarded by this.
+     */
+    private long appended;
+
+    /**
+     * Position after the last record forced to the storage device.
+     */
+    private volatile long durable;
+
+    /**
+     * Position of the first byte of the file.
+     */
+    private final long origin;
+
+    /**
+     * The error that failed a commit, or null if none has.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Opens the journal at {@code path}, creating it if need be, for appending
+     * after its first {@code validLength} bytes; anything after them is cut.
+     *
+     * @param path
+     *            The file
+     * @param validLength
+     *            The length of its valid records, as {@code replay} returned
+     * @param start
+     *            The position of the end of the file
+     * @throws IOException
+     *             If the file cannot be opened
+     */
+    SongJournal(Path path, long validLength, long start) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        this.channel.truncate(validLength);
+        this.channel.position(validLength);
+        this.commitLock = new Object();
+        this.pending = ByteBuffer.allocate(BUFFER_SIZE);
+        this.spare = ByteBuffer.allocate(BUFFER_SIZE);
+        this.appended = start;
+        this.durable = start;
+        this.origin = start - validLength;
+    }
+
+    /**
+     * Appends a record to this, in memory.
+     *
+     * @param operation
+     *            The operation
+     * @param arguments
+     *            Its arguments
+     * @return The position after the record, to pass to {@code commit}
+     * @requires |arguments| <= 127
+     */
+    synchronized long append(byte operation, String... arguments) {
+        byte[][] encoded = new byte[arguments.length][];
+        int payload = PAYLOAD_HEADER_BYTES;
+        for (int i = 0; i < arguments.length; i++) {
+            encoded[i] = arguments[i].getBytes(StandardCharsets.UTF_8);
+            payload += INT_BYTES + encoded[i].length;
+        }
+        if (this.pending.remaining() < HEADER_BYTES + payload) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                    2 * this.pending.capacity(),
+                    this.pending.position() + HEADER_BYTES + payload));
+            this.pending.flip();
+            larger.put(this.pending);
+            this.pending = larger;
+        }
+
+        int start = this.pending.position();
+        this.pending.putInt(payload);
+        this.pending.putInt(0);
+        this.pending.put(operation);
+        this.pending.put((byte) arguments.length);
+        for (byte[] bytes : encoded) {
+            this.pending.putInt(bytes.length);
+            this.pending.put(bytes);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(this.pending.array(), start + HEADER_BYTES, payload);
+        this.pending.putInt(start + INT_BYTES, (int) crc.getValue());
+
+        this.appended += HEADER_BYTES + payload;
+        return this.appended;
+    }
+
+    /**
+     * Returns the position after the last record appended.
+     *
+     * @return The position
+     */
+    synchronized long position() {
+        return this.appended;
+    }
+
+    /**
+     * Returns the number of bytes appended but not yet written.
+     *
+     * @return The number of pending bytes
+     */
+    synchronized int pendingBytes() {
+        return this.pending.position();
+    }
+
+    /**
+     * Returns the length of the file once every pending record is written.
+     *
+     * @return The length in bytes
+     */
+    synchronized long size() {
+        return this.appended - this.origin;
+    }
+
+    /**
+     * Makes sure every record before {@code end} is on the storage device,
+     * writing and forcing all pending records if some of them are not.
+     *
+     * @param end
+     *            A position returned by {@code append}, of this journal or
+     *            of one before it
+     * @throws IOException
+     *             If writing fails, now or in an earlier commit
+     */
+    void commit(long end) throws IOException {
+        synchronized (this.commitLock) {
+            if (this.failure != null) {
+                throw new IOException("ERROR: journal failed earlier",
+                        this.failure);
+            }
+            if (this.durable < end) {
+                ByteBuffer batch;
+                long batchEnd;
+                synchronized (this) {
+                    batch = this.pending;
+                    this.pending = this.spare;
+                    batchEnd = this.appended;
+                }
+                batch.flip();
+                try {
+                    while (batch.hasRemaining()) {
+                        this.channel.write(batch);
+                    }
+                    this.channel.force(false);
+                } catch (IOException e) {
+                    this.fail(batch, e);
+                    throw e;
+                }
+                batch.clear();
+                this.spare = batch;
+                this.durable = batchEnd;
+            }
+        }
+    }
+
+    /**
+     * Undoes a commit of {@code batch} that failed with {@code e}: puts its
+     * records back in front of those appended since, cuts the file back to
+     * its last forced record, and marks this failed. The caller holds
+     * {@code commitLock}.
+     *
+     * @param batch
+     *            The records the commit took, flipped, written or not
+     * @param e
+     *            The error
+     */
+    private void fail(ByteBuffer batch, IOException e) {
+        synchronized (this) {
+            ByteBuffer later = this.pending;
+            later.flip();
+            ByteBuffer restored = batch;
+            if (batch.capacity() - batch.limit() < later.remaining()) {
+                restored = ByteBuffer
+                        .allocate(batch.limit() + later.remaining());
+            }
+            batch.rewind();
+            if (restored != batch) {
+                restored.put(batch);
+            } else {
+                batch.position(batch.limit());
+                batch.limit(batch.capacity());
+            }
+            restored.put(later);
+            later.clear();
+            this.pending = restored;
+            this.spare = later;
+        }
+        try {
+            this.channel.truncate(this.durable - this.origin);
+            this.channel.position(this.durable - this.origin);
+        } catch (IOException truncating) {
+            e.addSuppressed(truncating);
+        }
+        this.failure = e;
+    }
+
+    /**
+     * Commits every record and closes the file.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.commit(this.position());
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Passes the operation and arguments of each valid record in the journal
+     * at {@code path} to {@code apply}, in order, stopping at the first record
+     * that is torn, fails its checksum, or has an unknown operation.
+     *
+     * @param path
+     *            The file to read; nothing is read if it does not exist
+     * @param apply
+     *            Receives each record
+     * @return The length of the valid records
+     * @throws IOException
+     *             If reading fails
+     */
+    static long replay(Path path, BiConsumer<Byte, String[]> apply)
+            throws IOException {
+        long result = 0;
+        if (Files.exists(path)) {
+            ByteBuffer in;
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException(
+                            "ERROR: journal is larger than 2 GB");
+                }
+                /*
+                 * The file is read rather than mapped: a mapping outlives the
+                 * channel until it is garbage collected, and on some platforms
+                 * a mapped file cannot be truncated or deleted, as the
+                 * constructor and compaction do.
+                 */
+                in = ByteBuffer.allocate((int) channel.size());
+                while (in.hasRemaining() && channel.read(in) >= 0) {
+                    /* keep reading */
+                }
+                in.flip();
+            }
+
+            boolean valid = true;
+            while (valid && in.remaining() >= HEADER_BYTES) {
+                int payload = in.getInt();
+                int checksum = in.getInt();
+                valid = payload >= PAYLOAD_HEADER_BYTES
+                        && payload <= in.remaining();
+                if (valid) {
+                    ByteBuffer record = in.slice();
+                    record.limit(payload);
+                    CRC32C crc = new CRC32C();
+                    crc.update(record);
+                    record.rewind();
+                    valid = (int) crc.getValue() == checksum;
+                    if (valid) {
+                        byte operation = record.get();
+                        String[] arguments = decode(record);
+                        valid = operation >= ADD
+                                && operation <= STOP_KEEPING_SORTED
+                                && arguments != null;
+                        if (valid) {
+                            apply.accept(operation, arguments);
+                            in.position(in.position() + payload);
+                            result = in.position();
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the arguments of a payload whose operation has been read.
+     *
+     * @param record
+     *            The payload, positioned after its operation
+     * @return The arguments, or null if they do not fit the payload
+     */
+    private static String[] decode(ByteBuffer record) {
+        String[] result = new String[record.get()];
+        for (int i = 0; i < result.length && result != null; i++) {
+            int length = -1;
+            if (record.remaining() >= INT_BYTES) {
+                length = record.getInt();
+            }
+            if (length < 0 || length > record.remaining()) {
+                result = null;
+            } else {
+                byte[] bytes = new byte[length];
+                record.get(bytes);
+                result[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,342 @@
+import java.util.Comparator;
+
+/**
+ * Built-in orderings of {@code Song}s. Text fields are compared ignoring case,
+ * as {@code String.compareToIgnoreCase} does, and lengths by their value in
+ * seconds, with lengths that cannot be parsed first.
+ *
+ * <p>
+ * Each ordering can turn a song into a {@code SortKey} that holds the case
+ * folded text once, led by its first three characters packed into a
+ * {@code long}. Comparing two songs through {@code compare} builds both keys
+ * each time, but the kernels' {@code sort} and {@code keepSorted} build each
+ * song's key only once and sort the keys, so case folding is done n times
+ * rather than O(n log n) times, and most comparisons are settled by the
+ * packed prefix alone. {@code SortedSongList} likewise keeps each song's key
+ * beside it, so an insertion folds only the song inserted.
+ */
+public enum SongOrder implements Comparator<Song> {
+
+    /**
+     * By title.
+     */
+    TITLE,
+
+    /**
+     * By artist.
+     */
+    ARTIST,
+
+    /**
+     * By album.
+     */
+    ALBUM,
+
+    /**
+     * By length in seconds.
+     */
+    LENGTH,
+
+    /**
+     * By artist, then title.
+     */
+    ARTIST_TITLE,
+
+    /**
+     * By artist, then album, then title.
+     */
+    ARTIST_ALBUM_TITLE;
+
+    /**
+     * Separator placed between fields of a composite key; it sorts before
+     * every other character, so a shorter field sorts first.
+     */
+    private static final char SEPARATOR = '\0';
+
+    /**
+     * Number of code points packed into a key's prefix.
+     */
+    private static final int PREFIX_CODE_POINTS = 3;
+
+    /**
+     * Number of bits per packed code point, enough for any of them.
+     */
+    private static final int CODE_POINT_BITS = 21;
+
+    /**
+     * A precomputed sort key: the folded text, with its first characters also
+     * packed into a {@code long} so most comparisons need no string compare.
+     * Keys of songs that tie are ordered by position, so sorting them gives a
+     * stable order even with a sort that is not stable itself.
+     */
+    static final class SortKey implements Comparable<SortKey> {
+
+        /**
+         * The first {@code PREFIX_CODE_POINTS} code points of {@code text},
+         * or a number, packed so that unsigned order matches text order.
+         */
+        private final long prefix;
+
+        /**
+         * The folded text, compared when the prefixes tie.
+         */
+        private final String text;
+
+        /**
+         * Whether {@code text} has no {@code char} from U+D800 on, so
+         * {@code String.compareTo} puts it in code point order.
+         */
+        private final boolean charOrdered;
+
+        /**
+         * Position of the song the key was built for, in the list being
+         * sorted.
+         */
+        private final int position;
+
+        /**
+         * Constructor.
+         *
+         * @param prefix
+         *            The packed prefix
+         * @param text
+         *            The folded text
+         * @param position
+         *            Position of the song
+         */
+        SortKey(long prefix, String text, int position) {
+            this.prefix = prefix;
+            this.text = text;
+            this.charOrdered = isCharOrdered(text);
+            this.position = position;
+        }
+
+        /**
+         * Returns the position of the song this key was built for.
+         *
+         * @return The position
+         */
+        int position() {
+            return this.position;
+        }
+
+        /**
+         * Compares the songs this key and {@code other} were built for in
+         * their ordering, ignoring their positions.
+         *
+         * @param other
+         *            A key of the same ordering
+         * @return A negative number, zero, or a positive number as the song
+         *         of this key is before, tied with, or after that of
+         *         {@code other}
+         */
+        int compareSongs(SortKey other) {
+            int result = Long.compareUnsigned(this.prefix, other.prefix);
+            if (result == 0) {
+                if (this.charOrdered && other.charOrdered) {
+                    result = this.text.compareTo(other.text);
+                } else {
+                    result = compareCodePoints(this.text, other.text);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int result = this.compareSongs(other);
+            if (result == 0) {
+                result = Integer.compare(this.position, other.position);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Appends {@code value} to {@code out} with case folded as
+     * {@code String.compareToIgnoreCase} does.
+     *
+     * @param value
+     *            The text to fold
+     * @param out
+     *            The builder to append to
+     */
+    private static void fold(String value, StringBuilder out) {
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                out.append(c);
+                i++;
+            } else {
+                /*
+                 * Supplementary characters have cases too, so anything past
+                 * ASCII is folded a code point at a time.
+                 */
+                int cp = value.codePointAt(i);
+                out.appendCodePoint(
+                        Character.toLowerCase(Character.toUpperCase(cp)));
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    /**
+     * Returns the code point of {@code text} that the {@code char} at
+     * {@code i} is part of: the whole surrogate pair if it is one half of
+     * one, or the {@code char} itself.
+     *
+     * @param text
+     *            The text
+     * @param i
+     *            The index of the {@code char}
+     * @return The code point
+     * @requires 0 <= i < |text|
+     */
+    private static int codePointAround(String text, int i) {
+        int result = text.codePointAt(i);
+        if (i > 0 && Character.isLowSurrogate(text.charAt(i))
+                && Character.isHighSurrogate(text.charAt(i - 1))) {
+            result = text.codePointBefore(i + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether every {@code char} of {@code text} is below U+D800, the
+     * first surrogate. Then each {@code char} is a code point, and no
+     * {@code char} sorts after one from a surrogate pair.
+     *
+     * @param text
+     *            The text
+     * @return Whether {@code text} is in code point order by {@code char}
+     */
+    private static boolean isCharOrdered(String text) {
+        boolean result = true;
+        for (int i = 0; i < text.length() && result; i++) {
+            result = text.charAt(i) < Character.MIN_SURROGATE;
+        }
+        return result;
+    }
+
+    /**
+     * Compares folded texts code point by code point, as
+     * {@code String.compareToIgnoreCase} does, so a surrogate pair sorts as
+     * the one character it encodes, after every {@code char} on its own.
+     * {@code String.compareTo} compares {@code char}s, which would put it
+     * before the characters from U+E000 on.
+     *
+     * @param a
+     *            The first text
+     * @param b
+     *            The second text
+     * @return A negative number, zero, or a positive number as {@code a} is
+     *         before, equal to, or after {@code b}
+     */
+    private static int compareCodePoints(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        int result;
+        if (i == n) {
+            result = a.length() - b.length();
+        } else {
+            result = codePointAround(a, i) - codePointAround(b, i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first {@code PREFIX_CODE_POINTS} code points of
+     * {@code text} packed into a {@code long}, padded with zeros.
+     *
+     * @param text
+     *            The text
+     * @return The packed prefix
+     */
+    private static long pack(String text) {
+        long result = 0;
+        int i = 0;
+        for (int n = 0; n < PREFIX_CODE_POINTS; n++) {
+            result <<= CODE_POINT_BITS;
+            if (i < text.length()) {
+                int cp = text.codePointAt(i);
+                result |= cp;
+                i += Character.charCount(cp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sort key of {@code song} in this ordering.
+     *
+     * @param song
+     *            The song
+     * @param position
+     *            Position of {@code song} in the list being sorted
+     * @return The key
+     */
+    SortKey key(Song song, int position) {
+        SortKey result;
+        if (this == LENGTH) {
+            /*
+             * Unparsable lengths are -1, so adding one keeps them first under
+             * an unsigned compare.
+             */
+            result = new SortKey(song.seconds() + 1L, "", position);
+        } else {
+            StringBuilder text = new StringBuilder();
+            switch (this) {
+                case TITLE:
+                    fold(song.title(), text);
+                    break;
+                case ARTIST:
+                    fold(song.artist(), text);
+                    break;
+                case ALBUM:
+                    fold(song.album(), text);
+                    break;
+                case ARTIST_TITLE:
+                    fold(song.artist(), text);
+                    text.append(SEPARATOR);
+                    fold(song.title(), text);
+                    break;
+                default:
+                    fold(song.artist(), text);
+                    text.append(SEPARATOR);
+                    fold(song.album(), text);
+                    text.append(SEPARATOR);
+                    fold(song.title(), text);
+                    break;
+            }
+            String folded = text.toString();
+            result = new SortKey(pack(folded), folded, position);
+        }
+        return result;
+    }
+
+    /**
+     * Compares {@code s1} and {@code s2} in this ordering. Both keys are built,
+     * and so both songs' text folded, on every call; a caller comparing the
+     * same songs many times should build each key once with {@code key} and
+     * compare the keys, as {@code SongSorter} and {@code SortedSongList} do.
+     *
+     * @param s1
+     *            The first song
+     * @param s2
+     *            The second song
+     * @return A negative number, zero, or a positive number as {@code s1} is
+     *         before, tied with, or after {@code s2}
+     */
+    @Override
+    public int compare(Song s1, Song s2) {
+        return this.key(s1, 0).compareSongs(this.key(s2, 0));
+    }
+
+}
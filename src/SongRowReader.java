@@ -0,0 +1,145 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of {@code Song} rows in the tab-delimited format used by
+ * {@code MusicDatabase.readFromFile}: a header line followed by one song per
+ * line. Invalid rows do not throw; {@code next} skips them and records a
+ * message, which the caller can pick up with {@code error} after each call.
+ */
+interface SongRowReader extends Closeable {
+
+    /**
+     * The only valid header line.
+     */
+    String HEADER = "Title\tArtist\tAlbum\tLength";
+
+    /**
+     * Number of fields in every row.
+     */
+    int FIELD_COUNT = 4;
+
+    /**
+     * Problem code for a valid row.
+     */
+    int VALID = 0;
+
+    /**
+     * Problem code for a row without exactly four values.
+     */
+    int WRONG_FIELD_COUNT = 1;
+
+    /**
+     * Problem code for a row with a blank title.
+     */
+    int BLANK_TITLE = 2;
+
+    /**
+     * Problem code for a row with a blank artist.
+     */
+    int BLANK_ARTIST = 3;
+
+    /**
+     * Problem code for a row with a blank length.
+     */
+    int BLANK_LENGTH = 4;
+
+    /**
+     * Returns the code of the first rule the given row breaks, or
+     * {@code VALID}. The rules are the same for every reader of this format.
+     *
+     * @param fieldCount
+     *            The number of tab separated values in the row
+     * @param titleLength
+     *            The length of the title value
+     * @param artistLength
+     *            The length of the artist value
+     * @param lengthLength
+     *            The length of the length value
+     * @return A problem code
+     * @ensures rowProblem = VALID iff [the row has four values AND the title,
+     *          artist, and length values are not empty]
+     */
+    static int rowProblem(int fieldCount, int titleLength, int artistLength,
+            int lengthLength) {
+        int result = VALID;
+        if (fieldCount != FIELD_COUNT) {
+            result = WRONG_FIELD_COUNT;
+        } else if (titleLength == 0) {
+            result = BLANK_TITLE;
+        } else if (artistLength == 0) {
+            result = BLANK_ARTIST;
+        } else if (lengthLength == 0) {
+            result = BLANK_LENGTH;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the message describing {@code problem} on row {@code rowNum}.
+     * Messages are only built when a problem is reported, never per row.
+     *
+     * @param problem
+     *            A problem code other than {@code VALID}
+     * @param rowNum
+     *            The row the problem is on
+     * @return An error message
+     */
+    static String problemMessage(int problem, int rowNum) {
+        String result;
+        switch (problem) {
+            case WRONG_FIELD_COUNT:
+                result = "ERROR on row " + rowNum
+                        + ": the given line is invalid. There must be four "
+                        + "separate values separated by three total tabs "
+                        + "in each row of data.";
+                break;
+            case BLANK_TITLE:
+                result = "ERROR on row " + rowNum
+                        + ": Title is blank, a title is required for every "
+                        + "data row.";
+                break;
+            case BLANK_ARTIST:
+                result = "ERROR on row " + rowNum
+                        + ": Artist is blank, an artist is required"
+                        + " for every data row.";
+                break;
+            default:
+                result = "ERROR on row " + rowNum
+                        + ": Length is blank, a length is required for every "
+                        + "data row.";
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the first line of the input, which should be the header.
+     *
+     * @return The header line, or null if the input is empty
+     * @throws IOException
+     *             If reading fails
+     */
+    String readHeader() throws IOException;
+
+    /**
+     * Reads the next data row. Invalid rows are not returned; the method
+     * returns null for them and {@code error} describes the problem.
+     *
+     * @return The next {@code Song}, or null if the row was invalid or the
+     *         input is exhausted
+     * @throws IOException
+     *             If reading fails
+     * @ensures [error() = null AND next = null] iff end of input was reached
+     */
+    Song next() throws IOException;
+
+    /**
+     * Returns the message for the row last read by {@code next}, or null if it
+     * was valid (or there was no row).
+     *
+     * @return The error message or null
+     */
+    String error();
+
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Stable sorting of song lists shared by the kernels. A {@code SongOrder} is
+ * sorted by precomputed keys, one per song; any other {@code Comparator} is
+ * used as is.
+ *
+ * <p>
+ * Lists of at least {@code PARALLEL_SORT_THRESHOLD} songs are sorted with
+ * {@code Arrays.parallelSort}, a parallel merge sort on the common
+ * {@code ForkJoinPool}, and their keys are built in parallel too. That sort
+ * can reorder equal elements, so songs that tie are always ordered by their
+ * position, which makes every sort here stable whichever way it runs. The
+ * threshold can be set with the {@code musicdatabase.parallelSortThreshold}
+ * system property.
+ */
+final class SongSorter {
+
+    /**
+     * Default value of {@code PARALLEL_SORT_THRESHOLD}.
+     */
+    private static final int DEFAULT_PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    /**
+     * Lists at least this long are sorted in parallel.
+     */
+    static final int PARALLEL_SORT_THRESHOLD = Integer.getInteger(
+            "musicdatabase.parallelSortThreshold",
+            DEFAULT_PARALLEL_SORT_THRESHOLD);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SongSorter() {
+    }
+
+    /**
+     * Reports whether work over {@code n} songs should be split across the
+     * common {@code ForkJoinPool}.
+     *
+     * @param n
+     *            The number of songs
+     * @return Whether to work in parallel
+     */
+    static boolean isParallel(int n) {
+        return n >= PARALLEL_SORT_THRESHOLD
+                && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Returns the positions of {@code songs} in the order a stable sort by
+     * {@code order} would put them.
+     *
+     * @param songs
+     *            The songs to sort, with fast random access; not changed
+     * @param order
+     *            The order to sort by
+     * @return p such that songs[p[0]], songs[p[1]], ... is sorted
+     */
+    static int[] sortedPositions(List<Song> songs, Comparator<Song> order) {
+        int[] result = new int[songs.size()];
+        boolean parallel = isParallel(songs.size());
+        if (order instanceof SongOrder) {
+            SongOrder builtIn = (SongOrder) order;
+            SongOrder.SortKey[] keys = new SongOrder.SortKey[songs.size()];
+            if (parallel) {
+                Arrays.parallelSetAll(keys,
+                        i -> builtIn.key(songs.get(i), i));
+                Arrays.parallelSort(keys);
+                Arrays.parallelSetAll(result, i -> keys[i].position());
+            } else {
+                int i = 0;
+                for (Song song : songs) {
+                    keys[i] = builtIn.key(song, i);
+                    i++;
+                }
+                Arrays.sort(keys);
+                for (i = 0; i < keys.length; i++) {
+                    result[i] = keys[i].position();
+                }
+            }
+        } else {
+            Integer[] positions = new Integer[songs.size()];
+            Arrays.setAll(positions, i -> i);
+            Comparator<Integer> byPosition = (a, b) -> {
+                int c = order.compare(songs.get(a), songs.get(b));
+                if (c == 0) {
+                    c = Integer.compare(a, b);
+                }
+                return c;
+            };
+            if (parallel) {
+                Arrays.parallelSort(positions, byPosition);
+            } else {
+                Arrays.sort(positions, byPosition);
+            }
+            Arrays.setAll(result, i -> positions[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts {@code songs} by {@code order}, keeping songs that tie in their
+     * current relative order.
+     *
+     * @param songs
+     *            The songs to sort
+     * @param order
+     *            The order to sort by
+     * @updates songs
+     */
+    static void sort(List<Song> songs, Comparator<Song> order) {
+        if (order instanceof SongOrder || isParallel(songs.size())) {
+            int[] positions = sortedPositions(songs, order);
+            Song[] sorted = new Song[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                sorted[i] = songs.get(positions[i]);
+            }
+            for (int i = 0; i < sorted.length; i++) {
+                songs.set(i, sorted[i]);
+            }
+        } else {
+            songs.sort(order);
+        }
+    }
+
+}
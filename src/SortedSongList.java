@@ -0,0 +1,555 @@
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * A list of songs that keeps itself sorted by a {@code Comparator}, stored as
+ * a treap (a binary search tree balanced by random heap priorities) whose
+ * nodes also count the size of their subtree. The counts make
+ * {@code get(n)} an order-statistic lookup, so reading or inserting anywhere
+ * costs O(log n) expected time rather than a shift or a full sort.
+ *
+ * <p>
+ * {@code add} places a song after every song that compares equal to it, so
+ * songs that tie under the comparator stay in the order they were added, as a
+ * stable sort would leave them. Large batches passed to {@code addAll}, and
+ * {@code removeIf}, rebuild the tree in one linear pass instead.
+ *
+ * <p>
+ * When the order is a {@code SongOrder}, each node also holds its song's
+ * {@code SortKey}, so the case folding of a song is done once, when it is
+ * added, rather than on every comparison a later insertion or lookup makes
+ * with it.
+ *
+ * @convention [the in-order sequence of the tree at $this.root is sorted by
+ *             $this.order] AND [every node's size is one more than the sizes
+ *             of its children] AND [every node's priority is at least the
+ *             priorities of its children] AND [if $this.order is a
+ *             SongOrder, every node's key is the key of its song in it, and
+ *             otherwise null]
+ * @correspondence this = [the in-order sequence of the tree at $this.root]
+ */
+final class SortedSongList extends AbstractList<Song> {
+
+    /**
+     * A batch is merged into a rebuilt tree, rather than inserted song by
+     * song, once it is larger than the list divided by this.
+     */
+    private static final int MERGE_RATIO = 16;
+
+    /**
+     * A tree node.
+     */
+    private static final class Node {
+
+        /**
+         * The song.
+         */
+        private final Song song;
+
+        /**
+         * Sort key of the song, or null if the order is not a
+         * {@code SongOrder}.
+         */
+        private final SongOrder.SortKey key;
+
+        /**
+         * Heap priority.
+         */
+        private final int priority;
+
+        /**
+         * Left subtree.
+         */
+        private Node left;
+
+        /**
+         * Right subtree.
+         */
+        private Node right;
+
+        /**
+         * Number of nodes in this subtree.
+         */
+        private int size;
+
+        /**
+         * Constructor.
+         *
+         * @param song
+         *            The song
+         * @param key
+         *            The sort key of the song, or null
+         * @param priority
+         *            The heap priority
+         */
+        Node(Song song, SongOrder.SortKey key, int priority) {
+            this.song = song;
+            this.key = key;
+            this.priority = priority;
+            this.size = 1;
+        }
+    }
+
+    /**
+     * The order kept.
+     */
+    private final Comparator<Song> order;
+
+    /**
+     * Source of node priorities.
+     */
+    private final Random random;
+
+    /**
+     * Root of the tree, or null if empty.
+     */
+    private Node root;
+
+    /**
+     * Constructor.
+     *
+     * @param order
+     *            The order to keep
+     * @param songs
+     *            The initial songs, in any order
+     */
+    SortedSongList(Comparator<Song> order, Collection<Song> songs) {
+        this.order = order;
+        this.random = new Random();
+        ArrayList<Song> sorted = new ArrayList<Song>(songs);
+        SongSorter.sort(sorted, order);
+        ArrayList<Node> nodes = new ArrayList<Node>(sorted.size());
+        for (Song song : sorted) {
+            nodes.add(this.newNode(song, this.keyOf(song)));
+        }
+        this.root = this.build(nodes);
+    }
+
+    /**
+     * Copy constructor; the copy shares no nodes with {@code other}.
+     *
+     * @param other
+     *            The list to copy
+     */
+    SortedSongList(SortedSongList other) {
+        this.order = other.order;
+        this.random = new Random();
+        this.root = this.build(this.copyNodes(other, song -> true));
+    }
+
+    /**
+     * Returns the order this list is kept in.
+     *
+     * @return The order
+     */
+    Comparator<Song> comparator() {
+        return this.order;
+    }
+
+    /**
+     * Returns the size of {@code node}, which may be null.
+     *
+     * @param node
+     *            A subtree
+     * @return Its size
+     */
+    private static int size(Node node) {
+        int result = 0;
+        if (node != null) {
+            result = node.size;
+        }
+        return result;
+    }
+
+    /**
+     * Recomputes the size of {@code node} from its children.
+     *
+     * @param node
+     *            A node
+     */
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    /**
+     * Returns the key of {@code song} in the order, or null if the order is
+     * not a {@code SongOrder}.
+     *
+     * @param song
+     *            The song
+     * @return Its key, or null
+     */
+    private SongOrder.SortKey keyOf(Song song) {
+        SongOrder.SortKey result = null;
+        if (this.order instanceof SongOrder) {
+            result = ((SongOrder) this.order).key(song, 0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new node, with no children, for {@code song}.
+     *
+     * @param song
+     *            The song
+     * @param key
+     *            The key of {@code song}, from {@code keyOf}
+     * @return The node
+     */
+    private Node newNode(Song song, SongOrder.SortKey key) {
+        return new Node(song, key, this.random.nextInt());
+    }
+
+    /**
+     * Compares {@code song}, whose key is {@code key}, with the song of
+     * {@code node} in the order, through the keys when there are keys.
+     *
+     * @param song
+     *            The song
+     * @param key
+     *            The key of {@code song}, from {@code keyOf}
+     * @param node
+     *            A node
+     * @return A negative number, zero, or a positive number as {@code song}
+     *         is before, tied with, or after the song of {@code node}
+     */
+    private int compare(Song song, SongOrder.SortKey key, Node node) {
+        int result;
+        if (key != null) {
+            result = key.compareSongs(node.key);
+        } else {
+            result = this.order.compare(song, node.song);
+        }
+        return result;
+    }
+
+    /**
+     * Returns new nodes, in order, for the songs of {@code list} that
+     * {@code filter} accepts, keeping their keys.
+     *
+     * @param list
+     *            The list to copy from
+     * @param filter
+     *            Which songs to copy
+     * @return The new nodes
+     */
+    private ArrayList<Node> copyNodes(SortedSongList list,
+            Predicate<? super Song> filter) {
+        ArrayList<Node> result = new ArrayList<Node>(list.size());
+        InOrderIterator it = list.new InOrderIterator();
+        while (it.hasNext()) {
+            Node node = it.nextNode();
+            if (filter.test(node.song)) {
+                result.add(this.newNode(node.song, node.key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a tree holding {@code sorted} in order, in linear time, by
+     * keeping the right spine of the tree built so far on a stack.
+     *
+     * @param sorted
+     *            New nodes, with no children, already in order
+     * @return The root of the tree
+     */
+    private Node build(ArrayList<Node> sorted) {
+        ArrayDeque<Node> spine = new ArrayDeque<Node>();
+        for (Node node : sorted) {
+            Node last = null;
+            while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+                last = spine.pop();
+                update(last);
+            }
+            node.left = last;
+            if (!spine.isEmpty()) {
+                spine.peek().right = node;
+            }
+            spine.push(node);
+        }
+        Node result = null;
+        while (!spine.isEmpty()) {
+            result = spine.pop();
+            update(result);
+        }
+        return result;
+    }
+
+    /**
+     * Joins two trees, every song of {@code a} coming before every song of
+     * {@code b}.
+     *
+     * @param a
+     *            The first tree
+     * @param b
+     *            The second tree
+     * @return The root of the joined tree
+     */
+    private static Node merge(Node a, Node b) {
+        Node result;
+        if (a == null) {
+            result = b;
+        } else if (b == null) {
+            result = a;
+        } else if (a.priority >= b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            result = a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            result = b;
+        }
+        return result;
+    }
+
+    /**
+     * Splits {@code node} into its first {@code k} songs and the rest.
+     *
+     * @param node
+     *            The tree to split
+     * @param k
+     *            The number of songs in the first part
+     * @param parts
+     *            Receives the two roots
+     */
+    private static void split(Node node, int k, Node[] parts) {
+        if (node == null) {
+            parts[0] = null;
+            parts[1] = null;
+        } else if (size(node.left) >= k) {
+            split(node.left, k, parts);
+            node.left = parts[1];
+            update(node);
+            parts[1] = node;
+        } else {
+            split(node.right, k - size(node.left) - 1, parts);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+        }
+    }
+
+    /**
+     * Returns the number of songs that come before {@code song} in order; if
+     * {@code after} holds, songs equal to it in order count as before it.
+     *
+     * @param song
+     *            The song to place
+     * @param key
+     *            The key of {@code song}, from {@code keyOf}
+     * @param after
+     *            Whether ties count as before
+     * @return The number of songs before {@code song}
+     */
+    private int rank(Song song, SongOrder.SortKey key, boolean after) {
+        int result = 0;
+        Node node = this.root;
+        while (node != null) {
+            int c = this.compare(song, key, node);
+            if (c > 0 || (c == 0 && after)) {
+                result += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the node at position {@code n}.
+     *
+     * @param n
+     *            The position
+     * @return The node
+     * @requires 0 <= n < |this|
+     */
+    private Node node(int n) {
+        Node node = this.root;
+        int i = n;
+        while (size(node.left) != i) {
+            if (i < size(node.left)) {
+                node = node.left;
+            } else {
+                i -= size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    @Override
+    public int size() {
+        return size(this.root);
+    }
+
+    @Override
+    public Song get(int index) {
+        if (index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.node(index).song;
+    }
+
+    @Override
+    public boolean add(Song song) {
+        SongOrder.SortKey key = this.keyOf(song);
+        Node[] parts = new Node[2];
+        split(this.root, this.rank(song, key, true), parts);
+        Node node = this.newNode(song, key);
+        this.root = merge(merge(parts[0], node), parts[1]);
+        this.modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Song> songs) {
+        if (songs.size() > this.size() / MERGE_RATIO) {
+            ArrayList<Song> batch = new ArrayList<Song>(songs);
+            SongSorter.sort(batch, this.order);
+            ArrayList<Node> old = this.copyNodes(this, song -> true);
+            ArrayList<Node> merged = new ArrayList<Node>(
+                    old.size() + batch.size());
+            int next = 0;
+            for (Song song : batch) {
+                SongOrder.SortKey key = this.keyOf(song);
+                while (next < old.size()
+                        && this.compare(song, key, old.get(next)) >= 0) {
+                    merged.add(old.get(next));
+                    next++;
+                }
+                merged.add(this.newNode(song, key));
+            }
+            merged.addAll(old.subList(next, old.size()));
+            this.root = this.build(merged);
+            this.modCount++;
+        } else {
+            for (Song song : songs) {
+                this.add(song);
+            }
+        }
+        return !songs.isEmpty();
+    }
+
+    @Override
+    public Song remove(int index) {
+        Song result = this.get(index);
+        Node[] parts = new Node[2];
+        split(this.root, index, parts);
+        Node before = parts[0];
+        split(parts[1], 1, parts);
+        this.root = merge(before, parts[1]);
+        this.modCount++;
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean result = false;
+        if (o instanceof Song) {
+            Song song = (Song) o;
+            SongOrder.SortKey key = this.keyOf(song);
+            /*
+             * Only the songs tying with o under the order need checking.
+             */
+            int end = this.rank(song, key, true);
+            for (int i = this.rank(song, key, false); i < end && !result;
+                    i++) {
+                if (this.node(i).song.equals(song)) {
+                    this.remove(i);
+                    result = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Song> filter) {
+        ArrayList<Node> kept = this.copyNodes(this, filter.negate());
+        boolean result = kept.size() != this.size();
+        if (result) {
+            this.root = this.build(kept);
+            this.modCount++;
+        }
+        return result;
+    }
+
+    @Override
+    public void sort(Comparator<? super Song> c) {
+        throw new UnsupportedOperationException(
+                "a SortedSongList keeps its own order");
+    }
+
+    @Override
+    public Iterator<Song> iterator() {
+        return new InOrderIterator();
+    }
+
+    /**
+     * In-order iterator over the tree, holding the path to the next node.
+     */
+    private final class InOrderIterator implements Iterator<Song> {
+
+        /**
+         * Nodes whose song and right subtree are still to be visited.
+         */
+        private final ArrayDeque<Node> path;
+
+        /**
+         * No-argument constructor.
+         */
+        InOrderIterator() {
+            this.path = new ArrayDeque<Node>();
+            this.pushLeft(SortedSongList.this.root);
+        }
+
+        /**
+         * Pushes {@code node} and its chain of left children.
+         *
+         * @param node
+         *            The subtree to descend into
+         */
+        private void pushLeft(Node node) {
+            Node n = node;
+            while (n != null) {
+                this.path.push(n);
+                n = n.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.path.isEmpty();
+        }
+
+        /**
+         * Returns the next node.
+         *
+         * @return The next node
+         */
+        Node nextNode() {
+            if (this.path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = this.path.pop();
+            this.pushLeft(node.right);
+            return node;
+        }
+
+        @Override
+        public Song next() {
+            return this.nextNode().song;
+        }
+    }
+
+}
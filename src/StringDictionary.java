@@ -0,0 +1,356 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dictionary that holds each distinct string once and numbers them 0, 1,
+ * 2, ... in the order they were first added. Catalogs repeat the same artist,
+ * album, and length values across many songs, so passing every field through
+ * one of these keeps a single copy of each value, and gives the value a dense
+ * {@code int} id that indexes can use in place of the string.
+ *
+ * <p>
+ * Values can be added straight from a {@code char} or UTF-8 {@code byte}
+ * range, in which case a {@code String} is only created the first time a
+ * value is seen. The table is open-addressed with linear probing and uses
+ * {@code String.hashCode}, so hashes of existing strings are never recomputed.
+ *
+ * @convention [$this.values[0, $this.size) are distinct and not null] AND
+ *             [$this.hashes[i] = $this.values[i].hashCode() for i in [0,
+ *             $this.size)] AND [$this.table.length is a power of two, at
+ *             least 2 * $this.size] AND [each id in [0, $this.size) is stored,
+ *             plus one, in exactly one slot of $this.table, reachable by
+ *             linear probing from its hash]
+ * @correspondence this = [$this.values[0, $this.size), in id order]
+ */
+final class StringDictionary {
+
+    /**
+     * Default number of table slots.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    /**
+     * Multiplier of {@code String.hashCode}.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * Largest byte value of a one-byte (ASCII) UTF-8 sequence.
+     */
+    private static final int MAX_ASCII = 0x7F;
+
+    /**
+     * Open-addressed table of ids plus one; 0 marks an empty slot.
+     */
+    private int[] table;
+
+    /**
+     * The strings, by id.
+     */
+    private String[] values;
+
+    /**
+     * The hash of each string, by id.
+     */
+    private int[] hashes;
+
+    /**
+     * The number of strings.
+     */
+    private int size;
+
+    /**
+     * No-argument constructor.
+     */
+    StringDictionary() {
+        this.table = new int[DEFAULT_CAPACITY];
+        this.values = new String[DEFAULT_CAPACITY / 2];
+        this.hashes = new int[DEFAULT_CAPACITY / 2];
+    }
+
+    /**
+     * Returns the number of strings in this.
+     *
+     * @return The number of strings
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the string with id {@code id}.
+     *
+     * @param id
+     *            The id to look up
+     * @return The string
+     * @requires 0 <= id < |this|
+     */
+    String get(int id) {
+        assert 0 <= id && id < this.size : "Violation of: id is in this";
+
+        return this.values[id];
+    }
+
+    /**
+     * Returns the first slot for {@code hash}.
+     *
+     * @param hash
+     *            A string hash
+     * @return The slot to start probing at
+     */
+    private int slot(int hash) {
+        /*
+         * Spread the high bits down, as HashMap does, since String.hashCode
+         * varies mostly in its low bits for short strings.
+         */
+        return (hash ^ (hash >>> 16)) & (this.table.length - 1);
+    }
+
+    /**
+     * Adds {@code value}, known to be absent, with hash {@code hash} and
+     * returns its new id.
+     *
+     * @param value
+     *            The string to add
+     * @param hash
+     *            {@code value.hashCode()}
+     * @param slot
+     *            The empty slot {@code value} probes to
+     * @return The id of {@code value}
+     */
+    private int insert(String value, int hash, int slot) {
+        int id = this.size;
+        if (id == this.values.length) {
+            this.values = Arrays.copyOf(this.values, 2 * id);
+            this.hashes = Arrays.copyOf(this.hashes, 2 * id);
+        }
+        this.values[id] = value;
+        this.hashes[id] = hash;
+        this.table[slot] = id + 1;
+        this.size++;
+        if (2 * this.size > this.table.length) {
+            this.rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the table and reinserts every id.
+     */
+    private void rehash() {
+        this.table = new int[2 * this.table.length];
+        int mask = this.table.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.slot(this.hashes[id]);
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Returns the id of {@code value}, or -1 if it is not in this.
+     *
+     * @param value
+     *            The string to look up
+     * @return The id of {@code value}, or -1
+     */
+    int find(String value) {
+        assert value != null : "Violation of: value != null";
+
+        int hash = value.hashCode();
+        int mask = this.table.length - 1;
+        int slot = this.slot(hash);
+        int result = -1;
+        while (result < 0 && this.table[slot] != 0) {
+            int id = this.table[slot] - 1;
+            String candidate = this.values[id];
+            if (candidate == value || (this.hashes[id] == hash
+                    && candidate.equals(value))) {
+                result = id;
+            } else {
+                slot = (slot + 1) & mask;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of {@code value}, adding it first if it is not in this.
+     *
+     * @param value
+     *            The string to add
+     * @return The id of {@code value}
+     * @updates this
+     */
+    int add(String value) {
+        assert value != null : "Violation of: value != null";
+
+        int hash = value.hashCode();
+        int mask = this.table.length - 1;
+        int slot = this.slot(hash);
+        int result = -1;
+        while (result < 0 && this.table[slot] != 0) {
+            int id = this.table[slot] - 1;
+            String candidate = this.values[id];
+            if (candidate == value || (this.hashes[id] == hash
+                    && candidate.equals(value))) {
+                result = id;
+            } else {
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (result < 0) {
+            result = this.insert(value, hash, slot);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the copy of {@code value} held by this, adding it first if it is
+     * not in this.
+     *
+     * @param value
+     *            The string to canonicalize
+     * @return The string in this equal to {@code value}
+     * @updates this
+     */
+    String intern(String value) {
+        int id = this.add(value);
+        return this.values[id];
+    }
+
+    /**
+     * Returns the copy of {@code chars[from, to)} held by this, adding it first
+     * if it is not in this. No {@code String} is created if it is already
+     * present.
+     *
+     * @param chars
+     *            The characters to read
+     * @param from
+     *            Index of the first character
+     * @param to
+     *            Index just past the last character
+     * @return The string in this equal to {@code chars[from, to)}
+     * @requires 0 <= from <= to <= chars.length
+     * @updates this
+     */
+    String intern(char[] chars, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = HASH_MULTIPLIER * hash + chars[i];
+        }
+        int mask = this.table.length - 1;
+        int slot = this.slot(hash);
+        String result = null;
+        while (result == null && this.table[slot] != 0) {
+            int id = this.table[slot] - 1;
+            String candidate = this.values[id];
+            if (this.hashes[id] == hash && candidate.length() == to - from
+                    && charsEqual(candidate, chars, from)) {
+                result = candidate;
+            } else {
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (result == null) {
+            result = new String(chars, from, to - from);
+            this.insert(result, hash, slot);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the copy of the UTF-8 text in {@code bytes[from, to)} held by
+     * this, adding it first if it is not in this. For ASCII text, which each
+     * byte is one {@code char} of, no {@code String} is created if it is
+     * already present.
+     *
+     * @param bytes
+     *            The UTF-8 bytes to read
+     * @param from
+     *            Index of the first byte
+     * @param to
+     *            Index just past the last byte
+     * @return The string in this equal to the decoded text
+     * @requires 0 <= from <= to <= bytes.length
+     * @updates this
+     */
+    String intern(byte[] bytes, int from, int to) {
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = from; i < to && ascii; i++) {
+            hash = HASH_MULTIPLIER * hash + bytes[i];
+            ascii = bytes[i] >= 0 && bytes[i] <= MAX_ASCII;
+        }
+        String result = null;
+        if (ascii) {
+            int mask = this.table.length - 1;
+            int slot = this.slot(hash);
+            while (result == null && this.table[slot] != 0) {
+                int id = this.table[slot] - 1;
+                String candidate = this.values[id];
+                if (this.hashes[id] == hash
+                        && candidate.length() == to - from
+                        && asciiEquals(candidate, bytes, from)) {
+                    result = candidate;
+                } else {
+                    slot = (slot + 1) & mask;
+                }
+            }
+            if (result == null) {
+                result = new String(bytes, from, to - from,
+                        StandardCharsets.ISO_8859_1);
+                this.insert(result, hash, slot);
+            }
+        } else {
+            result = this.intern(new String(bytes, from, to - from,
+                    StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether {@code value} has the same characters as the ones
+     * starting at {@code chars[from]}.
+     *
+     * @param value
+     *            The string to compare
+     * @param chars
+     *            The characters to compare
+     * @param from
+     *            Index of the first character
+     * @return Whether they are equal
+     * @requires from + |value| <= chars.length
+     */
+    private static boolean charsEqual(String value, char[] chars, int from) {
+        boolean result = true;
+        for (int i = 0; i < value.length() && result; i++) {
+            result = value.charAt(i) == chars[from + i];
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether {@code value} has the same characters as the ASCII
+     * bytes starting at {@code bytes[from]}.
+     *
+     * @param value
+     *            The string to compare
+     * @param bytes
+     *            The ASCII bytes to compare
+     * @param from
+     *            Index of the first byte
+     * @return Whether they are equal
+     * @requires from + |value| <= bytes.length
+     */
+    private static boolean asciiEquals(String value, byte[] bytes, int from) {
+        boolean result = true;
+        for (int i = 0; i < value.length() && result; i++) {
+            result = value.charAt(i) == bytes[from + i];
+        }
+        return result;
+    }
+
+}
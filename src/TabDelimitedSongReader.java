@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming reader for the tab-delimited song format used by
+ * {@code MusicDatabase.readFromFile}. Rows are scanned for tabs directly in a
+ * reusable {@code char} buffer, so each row is validated and turned into a
+ * {@code Song} in a single pass without building an intermediate line
+ * {@code String} or splitting it with a regex.
+ *
+ */
+final class TabDelimitedSongReader implements SongRowReader {
+
+    /**
+     * Default size of the character buffer.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Index of the length field in a row.
+     */
+    private static final int LENGTH_FIELD = 3;
+
+    /**
+     * Source of characters.
+     */
+    private final Reader in;
+
+    /**
+     * Reusable character buffer; {@code buf[pos, limit)} is unread.
+     */
+    private char[] buf;
+
+    /**
+     * Position of the next unread character in {@code buf}.
+     */
+    private int pos;
+
+    /**
+     * End of the valid characters in {@code buf}.
+     */
+    private int limit;
+
+    /**
+     * Whether {@code in} has reached end of stream.
+     */
+    private boolean eof;
+
+    /**
+     * Whether the last line ended with a carriage return, in which case a
+     * following line feed belongs to the same line break.
+     */
+    private boolean skipLineFeed;
+
+    /**
+     * Number of the line most recently read, starting at 1 for the header.
+     */
+    private int lineNumber;
+
+    /**
+     * Start offsets of the fields of the current line, relative to
+     * {@code buf}. The entry after the last field start holds the line end
+     * plus one, so field {@code i} spans
+     * {@code [starts[i], starts[i + 1] - 1)}.
+     */
+    private final int[] starts = new int[FIELD_COUNT + 1];
+
+    /**
+     * Dictionary of the artist, album, and length values read so far, which
+     * repeat across many rows; titles are mostly distinct so are not kept.
+     */
+    private final StringDictionary strings = new StringDictionary();
+
+    /**
+     * Problem code of the row most recently read by {@code next}.
+     */
+    private int problem;
+
+    /**
+     * Constructor.
+     *
+     * @param in
+     *            The source of characters; it is not buffered again
+     */
+    TabDelimitedSongReader(Reader in) {
+        this.in = in;
+        this.buf = new char[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Refills the buffer, keeping the unread characters from {@code keepFrom}
+     * onwards and moving them to the front. Grows the buffer if it is full.
+     *
+     * @param keepFrom
+     *            The first character that must be kept
+     * @return The distance the kept characters moved towards the front
+     * @throws IOException
+     *             If reading fails
+     */
+    private int fill(int keepFrom) throws IOException {
+        int kept = this.limit - keepFrom;
+        if (kept == this.buf.length) {
+            char[] bigger = new char[this.buf.length * 2];
+            System.arraycopy(this.buf, keepFrom, bigger, 0, kept);
+            this.buf = bigger;
+        } else if (keepFrom > 0) {
+            System.arraycopy(this.buf, keepFrom, this.buf, 0, kept);
+        }
+        this.limit = kept;
+        this.pos -= keepFrom;
+        int read = this.in.read(this.buf, this.limit,
+                this.buf.length - this.limit);
+        if (read < 0) {
+            this.eof = true;
+        } else {
+            this.limit += read;
+        }
+        return keepFrom;
+    }
+
+    /**
+     * Scans the next line, recording its field starts in {@code this.starts}.
+     *
+     * @return The number of fields in the line (tabs + 1), or 0 at end of
+     *         stream
+     * @throws IOException
+     *             If reading fails
+     */
+    private int scanLine() throws IOException {
+        if (this.pos == this.limit && !this.eof) {
+            this.fill(this.pos);
+        }
+        if (this.skipLineFeed && this.pos < this.limit
+                && this.buf[this.pos] == '\n') {
+            this.pos++;
+            if (this.pos == this.limit && !this.eof) {
+                this.fill(this.pos);
+            }
+        }
+        this.skipLineFeed = false;
+        int fields = 0;
+        if (this.pos < this.limit) {
+            int lineStart = this.pos;
+            fields = 1;
+            this.starts[0] = lineStart;
+            int i = lineStart;
+            boolean done = false;
+            while (!done) {
+                if (i == this.limit) {
+                    if (this.eof) {
+                        done = true;
+                    } else {
+                        int moved = this.fill(lineStart);
+                        lineStart -= moved;
+                        i -= moved;
+                        for (int f = 0; f < fields && f < FIELD_COUNT; f++) {
+                            this.starts[f] -= moved;
+                        }
+                    }
+                } else {
+                    char c = this.buf[i];
+                    if (c == '\n' || c == '\r') {
+                        this.skipLineFeed = c == '\r';
+                        done = true;
+                    } else {
+                        if (c == '\t') {
+                            if (fields < FIELD_COUNT) {
+                                this.starts[fields] = i + 1;
+                            }
+                            fields++;
+                        }
+                        i++;
+                    }
+                }
+            }
+            /*
+             * i is the line terminator (or end of stream); store it as the
+             * start of a virtual field after the last real one.
+             */
+            this.starts[Math.min(fields, FIELD_COUNT)] = i + 1;
+            this.pos = Math.min(i + 1, this.limit);
+            this.lineNumber++;
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the length of field {@code f} of the current line.
+     *
+     * @param f
+     *            The field index
+     * @return The number of characters in the field
+     */
+    private int fieldLength(int f) {
+        return this.starts[f + 1] - 1 - this.starts[f];
+    }
+
+    /**
+     * Returns field {@code f} of the current line as a {@code String}.
+     *
+     * @param f
+     *            The field index
+     * @return The field value
+     */
+    private String field(int f) {
+        return new String(this.buf, this.starts[f], this.fieldLength(f));
+    }
+
+    /**
+     * Returns field {@code f} of the current line, as the single copy of that
+     * value held by {@code strings}.
+     *
+     * @param f
+     *            The field index
+     * @return The field value
+     */
+    private String sharedField(int f) {
+        int start = this.starts[f];
+        return this.strings.intern(this.buf, start,
+                start + this.fieldLength(f));
+    }
+
+    @Override
+    public String readHeader() throws IOException {
+        int fields = this.scanLine();
+        String result = null;
+        if (fields > 0) {
+            /*
+             * The entry after the last recorded field start is always the line
+             * end plus one, however many tabs the line has.
+             */
+            int last = Math.min(fields, FIELD_COUNT);
+            result = new String(this.buf, this.starts[0],
+                    this.starts[last] - 1 - this.starts[0]);
+        }
+        return result;
+    }
+
+    @Override
+    public Song next() throws IOException {
+        this.problem = VALID;
+        Song result = null;
+        int fields = this.scanLine();
+        if (fields > 0) {
+            if (fields == FIELD_COUNT) {
+                this.problem = SongRowReader.rowProblem(fields,
+                        this.fieldLength(0), this.fieldLength(1),
+                        this.fieldLength(LENGTH_FIELD));
+            } else {
+                this.problem = SongRowReader.rowProblem(fields, 0, 0, 0);
+            }
+            if (this.problem == VALID) {
+                result = new Song(this.field(0), this.sharedField(1),
+                        this.sharedField(2), this.sharedField(LENGTH_FIELD));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String error() {
+        String result = null;
+        if (this.problem != VALID) {
+            result = SongRowReader.problemMessage(this.problem,
+                    this.lineNumber);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+}
@@ -0,0 +1,274 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer for the tab-delimited song format read by
+ * {@code MusicDatabase.readFromFile}. Fields are encoded as UTF-8 straight
+ * into one large reusable byte buffer, which is written to a
+ * {@code FileChannel} whenever it fills, so no format string is parsed and no
+ * per-row {@code String} is built.
+ */
+final class TabDelimitedSongWriter implements Closeable {
+
+    /**
+     * Default size of the byte buffer.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Most bytes a single {@code char} can take in UTF-8.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /**
+     * Replacement byte for unpaired surrogates, as {@code String.getBytes}
+     * uses.
+     */
+    private static final byte REPLACEMENT = '?';
+
+    /**
+     * The channel being written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Reusable output buffer; {@code buf[0, count)} is pending.
+     */
+    private final byte[] buf;
+
+    /**
+     * Wrapper around {@code buf} used to hand it to the channel.
+     */
+    private final ByteBuffer wrapper;
+
+    /**
+     * Number of pending bytes in {@code buf}.
+     */
+    private int count;
+
+    /**
+     * Line separator, encoded.
+     */
+    private final byte[] newLine;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            The channel to write to; closed along with this
+     */
+    TabDelimitedSongWriter(FileChannel channel) {
+        this.channel = channel;
+        this.buf = new byte[DEFAULT_BUFFER_SIZE];
+        this.wrapper = ByteBuffer.wrap(this.buf);
+        this.newLine = System.lineSeparator()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the pending bytes to the channel.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    private void flushBuffer() throws IOException {
+        this.wrapper.clear().limit(this.count);
+        while (this.wrapper.hasRemaining()) {
+            this.channel.write(this.wrapper);
+        }
+        this.count = 0;
+    }
+
+    /**
+     * Makes room for at least {@code n} more bytes, flushing if needed.
+     *
+     * @param n
+     *            Number of bytes about to be written; at most the buffer size
+     * @throws IOException
+     *             If writing fails
+     */
+    private void reserve(int n) throws IOException {
+        if (this.count + n > this.buf.length) {
+            this.flushBuffer();
+        }
+    }
+
+    /**
+     * Appends one byte.
+     *
+     * @param b
+     *            The byte to append
+     * @throws IOException
+     *             If writing fails
+     */
+    private void put(byte b) throws IOException {
+        this.reserve(1);
+        this.buf[this.count] = b;
+        this.count++;
+    }
+
+    /**
+     * Appends {@code text} encoded as UTF-8.
+     *
+     * @param text
+     *            The text to append
+     * @throws IOException
+     *             If writing fails
+     */
+    private void put(String text) throws IOException {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            /*
+             * Encode in runs that are sure to fit, so the loop below never has
+             * to check for room. One byte is held back for a surrogate pair
+             * straddling the end of the run.
+             */
+            int run = Math.min(length - i,
+                    (this.buf.length - this.count - 1) / MAX_BYTES_PER_CHAR);
+            if (run <= 0) {
+                this.flushBuffer();
+                run = Math.min(length - i,
+                        (this.buf.length - 1) / MAX_BYTES_PER_CHAR);
+            }
+            int runEnd = i + run;
+            byte[] b = this.buf;
+            int n = this.count;
+            while (i < runEnd) {
+                char c = text.charAt(i);
+                i++;
+                if (c < 0x80) {
+                    b[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[n++] = (byte) (0xC0 | (c >> 6));
+                    b[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i < length
+                            && Character.isLowSurrogate(text.charAt(i))) {
+                        int cp = Character.toCodePoint(c, text.charAt(i));
+                        i++;
+                        /*
+                         * Two chars become four bytes, within the room kept
+                         * for the run even if the pair ends past it.
+                         */
+                        if (i > runEnd) {
+                            runEnd = i;
+                        }
+                        b[n++] = (byte) (0xF0 | (cp >> 18));
+                        b[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        b[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        b[n++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        b[n++] = REPLACEMENT;
+                    }
+                } else {
+                    b[n++] = (byte) (0xE0 | (c >> 12));
+                    b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    b[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            this.count = n;
+        }
+    }
+
+    /**
+     * Ends the current line.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    private void endLine() throws IOException {
+        this.reserve(this.newLine.length);
+        System.arraycopy(this.newLine, 0, this.buf, this.count,
+                this.newLine.length);
+        this.count += this.newLine.length;
+    }
+
+    /**
+     * Writes the header line.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    void writeHeader() throws IOException {
+        this.put(SongRowReader.HEADER);
+        this.endLine();
+    }
+
+    /**
+     * Writes {@code song} as one row.
+     *
+     * @param song
+     *            The song to write
+     * @throws IOException
+     *             If writing fails
+     */
+    void write(Song song) throws IOException {
+        this.put(song.title());
+        this.put((byte) '\t');
+        this.put(song.artist());
+        this.put((byte) '\t');
+        this.put(song.album());
+        this.put((byte) '\t');
+        this.put(song.length());
+        this.endLine();
+    }
+
+    /**
+     * Writes the header line of a change file, which has a change column
+     * before the song columns.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    void writeChangeHeader() throws IOException {
+        this.put("Change\t");
+        this.writeHeader();
+    }
+
+    /**
+     * Writes one row of a change file: {@code change}, then the fields of
+     * {@code song}, or empty fields if it is null.
+     *
+     * @param change
+     *            The change column
+     * @param song
+     *            The song changed, or null
+     * @throws IOException
+     *             If writing fails
+     */
+    void writeChange(String change, Song song) throws IOException {
+        this.put(change);
+        this.put((byte) '\t');
+        if (song == null) {
+            this.put("\t\t\t");
+            this.endLine();
+        } else {
+            this.write(song);
+        }
+    }
+
+    /**
+     * Writes the pending bytes and forces them to the storage device.
+     *
+     * @throws IOException
+     *             If writing fails
+     */
+    void sync() throws IOException {
+        this.flushBuffer();
+        this.channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flushBuffer();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,415 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A trigram index over the distinct values of one field, for substring,
+ * wildcard, and typo-tolerant search. Values are matched by their normal form
+ * (see {@code FieldNormalizer}); each normal form is posted under every
+ * three-character window of itself, padded with two start and two end
+ * markers, so a query only verifies the normal forms sharing its trigrams
+ * instead of every value.
+ *
+ * <p>
+ * A substring or the literal runs of a wildcard pattern must appear whole in
+ * a match, so only the forms in the smallest posting set of their trigrams
+ * are checked. A value within k edits of a query shares all but at most 3k of
+ * the query's distinct padded trigrams, since one edit touches at most three
+ * windows; forms posted under fewer are skipped without computing a distance.
+ *
+ * <p>
+ * Every map and set is concurrent, so one writer per value may run alongside
+ * others and alongside queries, which are weakly consistent.
+ *
+ * @convention [$this.rawByNormal maps each normal form to the non-empty set of
+ *             values with that form] AND [$this.postings maps each trigram to
+ *             the non-empty set of normal forms of $this.rawByNormal having
+ *             it, padded]
+ * @correspondence this = [the union of the sets of $this.rawByNormal]
+ */
+final class TrigramIndex {
+
+    /**
+     * Padding before a normal form; never part of one, since normalizing
+     * turns control characters into spaces.
+     */
+    private static final char START = '\u0002';
+
+    /**
+     * Padding after a normal form.
+     */
+    private static final char END = '\u0003';
+
+    /**
+     * Length of a gram.
+     */
+    private static final int N = 3;
+
+    /**
+     * Each normal form, mapped to the values having it.
+     */
+    private final ConcurrentHashMap<String, Set<String>> rawByNormal;
+
+    /**
+     * Each trigram, mapped to the normal forms having it once padded.
+     */
+    private final ConcurrentHashMap<String, Set<String>> postings;
+
+    /**
+     * No-argument constructor.
+     */
+    TrigramIndex() {
+        this.rawByNormal = new ConcurrentHashMap<String, Set<String>>();
+        this.postings = new ConcurrentHashMap<String, Set<String>>();
+    }
+
+    /**
+     * Returns {@code normal} with the start and end padding.
+     *
+     * @param normal
+     *            A normal form
+     * @return The padded form
+     */
+    private static String padded(String normal) {
+        return "" + START + START + normal + END + END;
+    }
+
+    /**
+     * Adds the distinct trigrams of {@code text} to {@code grams}.
+     *
+     * @param text
+     *            The text to split
+     * @param grams
+     *            The set to add to
+     * @updates grams
+     */
+    private static void addTrigrams(String text, Set<String> grams) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            grams.add(text.substring(i, i + N));
+        }
+    }
+
+    /**
+     * Returns the distinct trigrams of {@code normal}, padded.
+     *
+     * @param normal
+     *            A normal form
+     * @return Its trigrams
+     */
+    private static Set<String> paddedTrigrams(String normal) {
+        Set<String> result = new HashSet<String>();
+        addTrigrams(padded(normal), result);
+        return result;
+    }
+
+    /**
+     * Adds {@code value}, if it is not already in this.
+     *
+     * @param value
+     *            The value to add
+     * @updates this
+     */
+    void add(String value) {
+        this.rawByNormal.compute(FieldNormalizer.normalize(value),
+                (normal, raw) -> {
+                    Set<String> r = raw;
+                    if (r == null) {
+                        r = ConcurrentHashMap.newKeySet();
+                        for (String gram : paddedTrigrams(normal)) {
+                            /*
+                             * compute, unlike computeIfAbsent and then add,
+                             * keeps a concurrent remove from dropping the set
+                             * as empty just before normal goes in.
+                             */
+                            this.postings.compute(gram, (g, s) -> {
+                                Set<String> forms = s;
+                                if (forms == null) {
+                                    forms = ConcurrentHashMap.newKeySet();
+                                }
+                                forms.add(normal);
+                                return forms;
+                            });
+                        }
+                    }
+                    r.add(value);
+                    return r;
+                });
+    }
+
+    /**
+     * Removes {@code value}, if it is in this.
+     *
+     * @param value
+     *            The value to remove
+     * @updates this
+     */
+    void remove(String value) {
+        this.rawByNormal.computeIfPresent(FieldNormalizer.normalize(value),
+                (normal, raw) -> {
+                    Set<String> r = raw;
+                    r.remove(value);
+                    if (r.isEmpty()) {
+                        r = null;
+                        for (String gram : paddedTrigrams(normal)) {
+                            this.postings.computeIfPresent(gram, (g, s) -> {
+                                Set<String> forms = s;
+                                forms.remove(normal);
+                                if (forms.isEmpty()) {
+                                    forms = null;
+                                }
+                                return forms;
+                            });
+                        }
+                    }
+                    return r;
+                });
+    }
+
+    /**
+     * Returns the normal forms that may have every trigram of {@code grams}:
+     * those posted under the rarest of them, or all of them if
+     * {@code grams} is empty.
+     *
+     * @param grams
+     *            Trigrams every match has
+     * @return The candidate normal forms
+     */
+    private Collection<String> formsWithAll(Set<String> grams) {
+        Collection<String> result = this.rawByNormal.keySet();
+        for (String gram : grams) {
+            Set<String> forms = this.postings.getOrDefault(gram,
+                    Collections.emptySet());
+            if (forms.size() < result.size()) {
+                result = forms;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values whose normal form is in {@code forms}, sorted.
+     *
+     * @param forms
+     *            Matching normal forms
+     * @return Their values, sorted
+     */
+    private List<String> valuesOf(Collection<String> forms) {
+        List<String> result = new ArrayList<String>();
+        for (String normal : forms) {
+            result.addAll(this.rawByNormal.getOrDefault(normal,
+                    Collections.emptySet()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the values whose normal form contains the normal form of
+     * {@code text}, sorted.
+     *
+     * @param text
+     *            The text to find
+     * @return The matching values, sorted
+     */
+    List<String> containing(String text) {
+        String normal = FieldNormalizer.normalize(text);
+        Set<String> grams = new HashSet<String>();
+        addTrigrams(normal, grams);
+        List<String> forms = new ArrayList<String>();
+        for (String form : this.formsWithAll(grams)) {
+            if (form.contains(normal)) {
+                forms.add(form);
+            }
+        }
+        return this.valuesOf(forms);
+    }
+
+    /**
+     * Returns the values whose normal form matches the normal form of
+     * {@code pattern}, in which {@code *} stands for any run of characters and
+     * {@code ?} for any one character, sorted.
+     *
+     * @param pattern
+     *            The pattern to match
+     * @return The matching values, sorted
+     */
+    List<String> matching(String pattern) {
+        String normal = FieldNormalizer.normalize(pattern);
+        /*
+         * Each run of literal characters appears whole in every match, padded
+         * at either end of the pattern that has no wildcard.
+         */
+        Set<String> grams = new HashSet<String>();
+        StringBuilder run = new StringBuilder("" + START + START);
+        for (int i = 0; i < normal.length(); i++) {
+            char c = normal.charAt(i);
+            if (c == '*' || c == '?') {
+                addTrigrams(run.toString(), grams);
+                run.setLength(0);
+            } else {
+                run.append(c);
+            }
+        }
+        run.append(END).append(END);
+        addTrigrams(run.toString(), grams);
+        List<String> forms = new ArrayList<String>();
+        for (String form : this.formsWithAll(grams)) {
+            if (globMatches(form, normal)) {
+                forms.add(form);
+            }
+        }
+        return this.valuesOf(forms);
+    }
+
+    /**
+     * Returns the values whose normal form is at most {@code maxEdits}
+     * insertions, deletions, or substitutions away from the normal form of
+     * {@code value}, closest first and then sorted.
+     *
+     * @param value
+     *            The value to look for
+     * @param maxEdits
+     *            The most edits allowed
+     * @return The matching values, closest first
+     * @requires maxEdits >= 0
+     */
+    List<String> similar(String value, int maxEdits) {
+        assert maxEdits >= 0 : "Violation of: maxEdits >= 0";
+
+        String normal = FieldNormalizer.normalize(value);
+        Set<String> grams = paddedTrigrams(normal);
+        int needed = grams.size() - N * maxEdits;
+        Collection<String> candidates = this.rawByNormal.keySet();
+        if (needed > 0) {
+            Map<String, Integer> shared = new HashMap<String, Integer>();
+            for (String gram : grams) {
+                for (String form : this.postings.getOrDefault(gram,
+                        Collections.emptySet())) {
+                    shared.merge(form, 1, Integer::sum);
+                }
+            }
+            candidates = new ArrayList<String>();
+            for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+                if (entry.getValue() >= needed) {
+                    candidates.add(entry.getKey());
+                }
+            }
+        }
+        Map<String, Integer> distances = new HashMap<String, Integer>();
+        for (String form : candidates) {
+            int distance = editDistance(form, normal, maxEdits);
+            if (distance <= maxEdits) {
+                for (String raw : this.rawByNormal.getOrDefault(form,
+                        Collections.emptySet())) {
+                    distances.put(raw, distance);
+                }
+            }
+        }
+        List<String> result = new ArrayList<String>(distances.keySet());
+        result.sort(Comparator.<String>comparingInt(distances::get)
+                .thenComparing(Comparator.naturalOrder()));
+        return result;
+    }
+
+    /**
+     * Reports whether {@code text} matches {@code pattern}, in which
+     * {@code *} stands for any run of characters and {@code ?} for any one
+     * character.
+     *
+     * @param text
+     *            The text to test
+     * @param pattern
+     *            The pattern
+     * @return Whether {@code text} matches
+     */
+    static boolean globMatches(String text, String pattern) {
+        int t = 0;
+        int p = 0;
+        int star = -1;
+        int resume = 0;
+        boolean failed = false;
+        while (t < text.length() && !failed) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?'
+                    || pattern.charAt(p) == text.charAt(t))) {
+                t++;
+                p++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                /*
+                 * Try the star matching nothing first; on a mismatch, it
+                 * takes one more character and matching resumes after it.
+                 */
+                star = p;
+                p++;
+                resume = t;
+            } else if (star >= 0) {
+                p = star + 1;
+                resume++;
+                t = resume;
+            } else {
+                failed = true;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return !failed && p == pattern.length();
+    }
+
+    /**
+     * Returns the Levenshtein distance between {@code a} and {@code b}, or
+     * {@code max + 1} if it is more than {@code max}.
+     *
+     * @param a
+     *            The first string
+     * @param b
+     *            The second string
+     * @param max
+     *            The largest distance of interest
+     * @return min(distance, max + 1)
+     * @requires max >= 0
+     */
+    static int editDistance(String a, String b, int max) {
+        int result = max + 1;
+        if (Math.abs(a.length() - b.length()) <= max) {
+            int[] previous = new int[b.length() + 1];
+            int[] current = new int[b.length() + 1];
+            for (int j = 0; j <= b.length(); j++) {
+                previous[j] = j;
+            }
+            boolean within = true;
+            for (int i = 1; i <= a.length() && within; i++) {
+                current[0] = i;
+                int rowMin = i;
+                for (int j = 1; j <= b.length(); j++) {
+                    int cost = 1;
+                    if (a.charAt(i - 1) == b.charAt(j - 1)) {
+                        cost = 0;
+                    }
+                    current[j] = Math.min(previous[j - 1] + cost,
+                            Math.min(previous[j], current[j - 1]) + 1);
+                    rowMin = Math.min(rowMin, current[j]);
+                }
+                /*
+                 * Distances never shrink from one row to the next, so once a
+                 * whole row is past max the answer is too.
+                 */
+                within = rowMin <= max;
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            if (within) {
+                result = Math.min(previous[b.length()], max + 1);
+            }
+        }
+        return result;
+    }
+
+}
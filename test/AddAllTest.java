@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code addAll} and {@code addEntries} of every
+ * kernel.
+ */
+public class AddAllTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns {@code count} songs picked by {@code random} from a catalog of
+     * 1000, so some repeat.
+     *
+     * @param random
+     *            The source of randomness
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    private static List<Song> batch(Random random, int count) {
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = 0; i < count; i++) {
+            songs.add(song(random.nextInt(1000)));
+        }
+        return songs;
+    }
+
+    /**
+     * Adds {@code songs} to {@code db} one at a time, skipping those it
+     * already has.
+     *
+     * @param db
+     *            The database
+     * @param songs
+     *            The songs
+     */
+    private static void addEach(MusicDatabase db, List<Song> songs) {
+        for (Song song : songs) {
+            if (!db.contains(song)) {
+                db.addEntry(song);
+            }
+        }
+    }
+
+    /**
+     * Batches with repeats, into an empty and then a non-empty database, add
+     * the same songs in the same order as adding them one at a time, and the
+     * field indexes see them.
+     */
+    @Test
+    public final void testSameAsAddEntry() {
+        for (MusicDatabase db : kernels()) {
+            MusicDatabase reference = new MusicDatabase1();
+            Random random = new Random(4);
+            for (int round = 0; round < 5; round++) {
+                List<Song> songs = batch(random, 400);
+                db.addAll(songs);
+                addEach(reference, songs);
+                assertEquals(songsOf(reference), songsOf(db));
+            }
+            assertEquals(reference.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 4"),
+                    db.getEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                            "Artist 4"));
+            assertEquals(reference.getEntries(
+                    MusicDatabaseKernel.SearchField.LENGTH, "2:12"),
+                    db.getEntries(MusicDatabaseKernel.SearchField.LENGTH,
+                            "2:12"));
+        }
+    }
+
+    /**
+     * An empty batch, or one of songs already present, changes nothing.
+     */
+    @Test
+    public final void testNothingNew() {
+        for (MusicDatabase db : kernels()) {
+            db.addAll(Collections.<Song>emptyList());
+            assertEquals(0, db.size());
+            db.addAll(List.of(song(1), song(2)));
+            db.addAll(List.of(song(2), song(1), song(2)));
+            assertEquals(List.of(song(1), song(2)), songsOf(db));
+        }
+    }
+
+    /**
+     * In keep-sorted mode a batch is merged into the sorted order.
+     */
+    @Test
+    public final void testKeepSorted() {
+        for (MusicDatabase db : kernels()) {
+            Random random = new Random(9);
+            db.keepSorted(SongOrder.TITLE);
+            db.addAll(batch(random, 300));
+            db.addAll(batch(random, 300));
+            List<Song> songs = songsOf(db);
+            for (int n = 1; n < songs.size(); n++) {
+                assertTrue(SongOrder.TITLE.compare(songs.get(n - 1),
+                        songs.get(n)) <= 0);
+            }
+            assertEquals(songs.size(), db.size());
+        }
+    }
+
+    /**
+     * {@code addEntries} adds the songs not already present, in order.
+     */
+    @Test
+    public final void testAddEntries() {
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(song(2));
+            db.addEntries(new ArrayList<Song>(
+                    List.of(song(1), song(2), song(3), song(1))));
+            assertEquals(List.of(song(2), song(1), song(3)), songsOf(db));
+        }
+    }
+
+}
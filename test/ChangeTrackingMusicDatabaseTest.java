@@ -0,0 +1,139 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code ChangeTrackingMusicDatabase}.
+ */
+public class ChangeTrackingMusicDatabaseTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the change files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the change row of song {@code i}.
+     *
+     * @param change
+     *            The change column
+     * @param i
+     *            The number of the song
+     * @return The row
+     */
+    private static String row(String change, int i) {
+        Song song = song(i);
+        return change + "\t" + song.title() + "\t" + song.artist() + "\t"
+                + song.album() + "\t" + song.length();
+    }
+
+    /**
+     * Returns the rows of {@code path} after its header.
+     *
+     * @param path
+     *            A change file
+     * @return Its rows
+     * @throws IOException
+     *             If the file cannot be read
+     */
+    private static List<String> rows(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertTrue(lines.get(0).startsWith("Change\t"));
+        return lines.subList(1, lines.size());
+    }
+
+    /**
+     * Only the songs changed since a checkpoint are written, each with its
+     * last change, and the checkpoint returned continues from there.
+     *
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    @Test
+    public final void testChangesSince() throws IOException {
+        ChangeTrackingMusicDatabase db = new ChangeTrackingMusicDatabase(
+                new MusicDatabase1());
+        db.addEntry(song(1));
+        db.addEntry(song(2));
+        long start = db.checkpoint();
+        db.addEntry(song(3));
+        db.removeEntry(song(1));
+        db.addEntry(song(4));
+        db.removeEntry(song(4));
+
+        Path out = this.folder.getRoot().toPath().resolve("changes.txt");
+        long next = db.writeChangesSince(start, out.toString());
+        assertEquals(db.checkpoint(), next);
+        assertEquals(Arrays.asList(row("add", 3), row("remove", 1),
+                row("remove", 4)), rows(out));
+
+        db.addEntry(song(5));
+        db.writeChangesSince(next, out.toString());
+        assertEquals(Arrays.asList(row("add", 5)), rows(out));
+    }
+
+    /**
+     * A checkpoint older than the changes kept gets a reset and every song.
+     *
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    @Test
+    public final void testReset() throws IOException {
+        ChangeTrackingMusicDatabase db = new ChangeTrackingMusicDatabase(
+                new MusicDatabase2());
+        long start = db.checkpoint();
+        db.addEntry(song(1));
+        db.addEntry(song(2));
+        db.removeEntry(song(1));
+        db.forgetChangesBefore(db.checkpoint());
+
+        Path out = this.folder.getRoot().toPath().resolve("changes.txt");
+        db.writeChangesSince(start, out.toString());
+        assertEquals(Arrays.asList("reset\t\t\t\t", row("add", 2)), rows(out));
+    }
+
+    /**
+     * The change file gets the permissions of any new file, not owner-only
+     * ones, and no temporary file is left beside it.
+     *
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    @Test
+    public final void testPermissions() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews()
+                .contains("posix"));
+        ChangeTrackingMusicDatabase db = new ChangeTrackingMusicDatabase(
+                new MusicDatabase1());
+        db.addEntry(song(1));
+        Path dir = this.folder.getRoot().toPath();
+        Path plain = Files.createFile(dir.resolve("plain.txt"));
+        Path out = dir.resolve("changes.txt");
+        db.writeChangesSince(-1, out.toString());
+
+        Set<PosixFilePermission> expected = Files
+                .getPosixFilePermissions(plain);
+        assertEquals(expected, Files.getPosixFilePermissions(out));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+}
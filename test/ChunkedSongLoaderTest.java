@@ -0,0 +1,120 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code ChunkedSongLoader}.
+ */
+public class ChunkedSongLoaderTest {
+
+    /**
+     * Number of data rows in the file, enough for several chunks.
+     */
+    private static final int ROWS = 400000;
+
+    /**
+     * Number of distinct songs in the file; the rows after these repeat
+     * earlier ones.
+     */
+    private static final int DISTINCT = 300000;
+
+    /**
+     * Line numbers of the invalid rows, one in each half of the file.
+     */
+    private static final List<Integer> BAD_LINES = List.of(1001, 350001);
+
+    /**
+     * Holds the file read.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a file of {@code ROWS} rows, with the invalid rows at
+     * {@code BAD_LINES}.
+     *
+     * @return The file
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    private Path write() throws IOException {
+        Path path = this.folder.newFile("songs.txt").toPath();
+        String padding = "-".repeat(60);
+        try (BufferedWriter out = Files.newBufferedWriter(path,
+                StandardCharsets.UTF_8)) {
+            out.write(SongRowReader.HEADER);
+            for (int line = 2; line < ROWS + 2; line++) {
+                out.write('\n');
+                int i = (line - 2) % DISTINCT;
+                if (BAD_LINES.contains(line)) {
+                    out.write("bad row");
+                } else {
+                    out.write("Title " + i + padding + "\tArtist " + (i % 50)
+                            + "\tAlbum " + (i % 7) + "\t3:" + (10 + i % 50));
+                }
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Loading in chunks adds the same songs, in the same order, as a
+     * sequential read, drops rows that repeat a song of an earlier chunk,
+     * and reports invalid rows by their line in the whole file.
+     *
+     * @throws IOException
+     *             If the file cannot be written or read
+     */
+    @Test
+    public final void testSameAsSequentialRead() throws IOException {
+        Path path = this.write();
+        MusicDatabase sequential = new MusicDatabase1();
+        sequential.readFromMappedFile(path.toString());
+
+        MusicDatabase chunked = new MusicDatabase1();
+        chunked.addEntry(new Song("Title 5" + "-".repeat(60), "Artist 5",
+                "Album 5", "3:15"));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true, "UTF-8"));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            long start = SongRowReader.HEADER.length() + 1;
+            ChunkedSongLoader.load(channel, start, 2, chunked);
+        } finally {
+            System.setErr(err);
+        }
+
+        assertTrue(Files.size(path) > 2 * (1L << 24));
+        assertEquals(DISTINCT, sequential.size());
+        assertEquals(sequential.size(), chunked.size());
+        for (int n = 0; n < 5; n++) {
+            assertEquals(sequential.getEntryInOrder(n),
+                    chunked.getEntryInOrder(n + 1));
+        }
+        for (int n = 6; n < sequential.size(); n += 997) {
+            assertEquals(sequential.getEntryInOrder(n),
+                    chunked.getEntryInOrder(n));
+        }
+        String report = errors.toString("UTF-8");
+        for (int line : BAD_LINES) {
+            assertTrue(report.contains(SongRowReader.problemMessage(
+                    SongRowReader.WRONG_FIELD_COUNT, line)));
+        }
+    }
+
+}
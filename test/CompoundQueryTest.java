@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code getEntries(Map)} of every kernel.
+ */
+public class CompoundQueryTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns song {@code i} with a title that repeats every 40 songs, so
+     * title lookups find several songs.
+     *
+     * @param i
+     *            The number of the song
+     * @return The song
+     */
+    private static Song repeating(int i) {
+        Song song = song(i);
+        return new Song("Song " + (i % 40), song.artist(), song.album(),
+                song.length());
+    }
+
+    /**
+     * Returns the songs of {@code db} that meet every criterion, found by a
+     * scan in order.
+     *
+     * @param db
+     *            The database
+     * @param criteria
+     *            The criteria
+     * @return The matching songs
+     */
+    private static List<Song> scan(MusicDatabase db,
+            Map<MusicDatabaseKernel.SearchField, String> criteria) {
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            boolean matches = true;
+            for (Map.Entry<MusicDatabaseKernel.SearchField, String> c
+                    : criteria.entrySet()) {
+                matches = matches && song.field(c.getKey())
+                        .equals(c.getValue());
+            }
+            if (matches) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * Random combinations of criteria match what a scan finds, in order,
+     * through adds, removals, and a sort.
+     */
+    @Test
+    public final void testMatchesScan() {
+        for (MusicDatabase db : kernels()) {
+            Random random = new Random(19);
+            for (int i = 0; i < 2000; i++) {
+                Song song = repeating(random.nextInt(3000));
+                if (!db.contains(song)) {
+                    db.addEntry(song);
+                }
+            }
+            db.removeEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                    "Album 2");
+            db.sort(SongOrder.ARTIST_TITLE);
+            for (int query = 0; query < 300; query++) {
+                Song like = repeating(random.nextInt(3000));
+                Map<MusicDatabaseKernel.SearchField, String> criteria =
+                        new EnumMap<MusicDatabaseKernel.SearchField, String>(
+                                MusicDatabaseKernel.SearchField.class);
+                for (MusicDatabaseKernel.SearchField field
+                        : MusicDatabaseKernel.SearchField.values()) {
+                    if (random.nextBoolean()) {
+                        criteria.put(field, like.field(field));
+                    }
+                }
+                assertEquals(criteria.toString(), scan(db, criteria),
+                        db.getEntries(criteria));
+            }
+        }
+    }
+
+    /**
+     * An empty map matches every song, and a criterion no song meets
+     * matches none, whatever the others are.
+     */
+    @Test
+    public final void testEdgeCases() {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 100; i++) {
+                db.addEntry(repeating(i));
+            }
+            Map<MusicDatabaseKernel.SearchField, String> criteria =
+                    new EnumMap<MusicDatabaseKernel.SearchField, String>(
+                            MusicDatabaseKernel.SearchField.class);
+            assertEquals(scan(db, criteria), db.getEntries(criteria));
+            assertEquals(100, db.getEntries(criteria).size());
+            criteria.put(MusicDatabaseKernel.SearchField.ARTIST, "Artist 1");
+            criteria.put(MusicDatabaseKernel.SearchField.TITLE, "absent");
+            assertTrue(db.getEntries(criteria).isEmpty());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code FieldNormalizer} and
+ * {@code getEntriesNormalized} of every kernel.
+ */
+public class FieldNormalizerTest extends MusicDatabaseFixture {
+
+    /**
+     * Case, compatibility forms, and whitespace are normalized.
+     */
+    @Test
+    public final void testNormalize() {
+        assertEquals("hoshimachi suisei",
+                FieldNormalizer.normalize("  Hoshimachi \t Suisei\n"));
+        assertEquals("abc", FieldNormalizer.normalize("\uff21\uff42\uff43"));
+        assertEquals("\u30ab", FieldNormalizer.normalize("\uff76"));
+        assertEquals("strasse", FieldNormalizer.normalize("Stra\u00dfe"));
+        assertEquals("strasse", FieldNormalizer.normalize("STRA\u1e9eE"));
+        assertEquals("caf\u00e9", FieldNormalizer.normalize("CAFE\u0301"));
+        assertEquals("a b", FieldNormalizer.normalize("a\u00a0\u3000b"));
+        assertEquals("", FieldNormalizer.normalize(" \t "));
+    }
+
+    /**
+     * Normal forms are their own normal forms, and values already in normal
+     * form are returned as they are.
+     */
+    @Test
+    public final void testIdempotent() {
+        for (String value : new String[] { "  Hoshimachi  Suisei ",
+                "\uff21\uff42\uff43", "Stra\u00dfe", "STRA\u1e9eE",
+                "CAFE\u0301", "\u0130stanbul", "\ufb01n", "" }) {
+            String normal = FieldNormalizer.normalize(value);
+            assertEquals(value, normal, FieldNormalizer.normalize(normal));
+        }
+        String plain = "already plain, 123!";
+        assertSame(plain, FieldNormalizer.normalize(plain));
+    }
+
+    /**
+     * Normalized lookups find the same songs, in order, with and without a
+     * normalized index, and the index follows removals.
+     */
+    @Test
+    public final void testGetEntriesNormalized() {
+        String[] artists = { "Hoshimachi Suisei", "hoshimachi  suisei",
+                "\uff28\uff4f\uff53\uff48\uff49\uff4d\uff41\uff43\uff48\uff49"
+                        + " Suisei",
+                "Other" };
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase plain = kernel.newInstance();
+            MusicDatabase indexed = kernel.newInstance();
+            indexed.indexNormalized(MusicDatabaseKernel.SearchField.ARTIST);
+            for (MusicDatabase db : new MusicDatabase[] { plain, indexed }) {
+                for (int i = 0; i < 40; i++) {
+                    db.addEntry(new Song("Song " + i, artists[i % 4], "",
+                            "3:" + (10 + i)));
+                }
+                db.removeEntry(new Song("Song 1", artists[1], "", "3:11"));
+            }
+            List<Song> expected = new ArrayList<Song>();
+            for (Song song : plain) {
+                if (!song.artist().equals("Other")) {
+                    expected.add(song);
+                }
+            }
+            for (MusicDatabase db : new MusicDatabase[] { plain, indexed }) {
+                assertEquals(expected, db.getEntriesNormalized(
+                        MusicDatabaseKernel.SearchField.ARTIST,
+                        "HOSHIMACHI SUISEI "));
+                assertEquals(10, db.getEntriesNormalized(
+                        MusicDatabaseKernel.SearchField.ARTIST, "other")
+                        .size());
+                assertEquals(0, db.getEntriesNormalized(
+                        MusicDatabaseKernel.SearchField.TITLE, "song 1")
+                        .size());
+                assertEquals(1, db.getEntriesNormalized(
+                        MusicDatabaseKernel.SearchField.TITLE, "SONG 2")
+                        .size());
+            }
+        }
+    }
+
+}
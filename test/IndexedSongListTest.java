@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code IndexedSongList}.
+ */
+public class IndexedSongListTest extends MusicDatabaseFixture {
+
+    /**
+     * Checks that {@code list} holds exactly {@code expected}, by position
+     * and by iteration, and finds each song at its position.
+     *
+     * @param expected
+     *            The songs expected
+     * @param list
+     *            The list
+     */
+    private static void assertSameSongs(List<Song> expected,
+            IndexedSongList list) {
+        assertEquals(expected.size(), list.size());
+        List<Song> iterated = new ArrayList<Song>();
+        for (Song song : list) {
+            iterated.add(song);
+        }
+        assertEquals(expected, iterated);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+            assertEquals(i, list.indexOf(expected.get(i)));
+        }
+    }
+
+    /**
+     * Appends and removals by song and by position, enough to pack the list
+     * several times, match an {@code ArrayList}.
+     */
+    @Test
+    public final void testRandomEdits() {
+        IndexedSongList list = new IndexedSongList();
+        List<Song> expected = new ArrayList<Song>();
+        Random random = new Random(21);
+        int next = 0;
+        for (int step = 0; step < 60000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5 || expected.isEmpty()) {
+                list.add(song(next));
+                expected.add(song(next));
+                next++;
+            } else if (op < 8) {
+                Song song = expected.get(random.nextInt(expected.size()));
+                assertTrue(list.remove(song));
+                expected.remove(song);
+                assertFalse(list.contains(song));
+                assertEquals(-1, list.indexOf(song));
+            } else {
+                int i = random.nextInt(expected.size());
+                assertEquals(expected.remove(i), list.remove(i));
+            }
+        }
+        assertSameSongs(expected, list);
+        assertFalse(list.remove(song(next)));
+        while (!expected.isEmpty()) {
+            assertTrue(list.remove(expected.remove(expected.size() / 2)));
+        }
+        assertSameSongs(expected, list);
+        list.add(song(0));
+        assertSameSongs(List.of(song(0)), list);
+    }
+
+    /**
+     * A sort, by a {@code SongOrder} or any other comparator, and
+     * {@code removeIf} leave the list in the order an {@code ArrayList}
+     * would have, with every song still found.
+     */
+    @Test
+    public final void testSortAndRemoveIf() {
+        List<Song> expected = new ArrayList<Song>();
+        for (int i = 0; i < 10000; i++) {
+            expected.add(song(i * 7919 % 10000));
+        }
+        IndexedSongList list = new IndexedSongList(expected);
+        for (int i = 0; i < 10000; i += 3) {
+            list.remove(song(i));
+            expected.remove(song(i));
+        }
+        SongSorter.sort(list, SongOrder.ARTIST_TITLE);
+        SongSorter.sort(expected, SongOrder.ARTIST_TITLE);
+        assertSameSongs(expected, list);
+        Comparator<Song> byLength = Comparator.comparingInt(Song::seconds);
+        SongSorter.sort(list, byLength);
+        SongSorter.sort(expected, byLength);
+        assertSameSongs(expected, list);
+        assertTrue(list.removeIf(song -> song.album().equals("Album 1")));
+        expected.removeIf(song -> song.album().equals("Album 1"));
+        assertSameSongs(expected, list);
+        assertFalse(list.removeIf(song -> song.album().equals("Album 1")));
+    }
+
+}
@@ -0,0 +1,216 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code JournaledMusicDatabase}.
+ */
+public class JournaledMusicDatabaseTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the database directories.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Makes the same changes to {@code db} and {@code reference}.
+     *
+     * @param db
+     *            The journaled database
+     * @param reference
+     *            A plain database
+     * @param from
+     *            The number of the first song added
+     */
+    private static void change(MusicDatabase db, MusicDatabase reference,
+            int from) {
+        for (MusicDatabase d : new MusicDatabase[] { db, reference }) {
+            for (int i = from; i < from + 200; i++) {
+                d.addEntry(song(i));
+            }
+            d.removeEntry(song(from + 3));
+            d.removeEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                    "Artist 2");
+            d.sort(SongOrder.ARTIST_TITLE);
+            d.keepSorted(SongOrder.TITLE);
+            d.addEntry(song(from + 1000));
+        }
+    }
+
+    /**
+     * Copies the files of {@code from} into a new directory, as a crash
+     * would leave them, without the lock file. If a compaction deletes a file
+     * while it is copied, the copy starts over.
+     *
+     * @param from
+     *            The directory of an open database
+     * @return The copy
+     * @throws IOException
+     *             If copying fails
+     */
+    private Path crashCopy(Path from) throws IOException {
+        Path to = null;
+        while (to == null) {
+            to = this.folder.newFolder().toPath();
+            try (DirectoryStream<Path> files = Files
+                    .newDirectoryStream(from)) {
+                for (Path file : files) {
+                    if (!file.getFileName().toString().equals("lock")) {
+                        Files.copy(file, to.resolve(file.getFileName()));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                to = null;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Reopening a closed database replays its changes.
+     *
+     * @throws IOException
+     *             If the directory cannot be made
+     */
+    @Test
+    public final void testReopen() throws IOException {
+        String dir = this.folder.newFolder().toString();
+        MusicDatabase reference = new MusicDatabase1();
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase2(), dir)) {
+            change(db, reference, 0);
+        }
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase2(), dir)) {
+            assertEquals(songsOf(reference), songsOf(db));
+            change(db, reference, 5000);
+            assertEquals(songsOf(reference), songsOf(db));
+        }
+    }
+
+    /**
+     * The files left by a database that was never closed replay to the
+     * changes it returned from.
+     *
+     * @throws IOException
+     *             If the directory cannot be made
+     */
+    @Test
+    public final void testCrash() throws IOException {
+        Path dir = this.folder.newFolder().toPath();
+        MusicDatabase reference = new MusicDatabase1();
+        Path crashed;
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase4(), dir.toString())) {
+            change(db, reference, 0);
+            crashed = this.crashCopy(dir);
+        }
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase4(), crashed.toString())) {
+            assertEquals(songsOf(reference), songsOf(db));
+        }
+    }
+
+    /**
+     * A directory in use cannot be opened again until it is closed.
+     *
+     * @throws IOException
+     *             If the directory cannot be made
+     */
+    @Test
+    public final void testOneInstancePerDirectory() throws IOException {
+        String dir = this.folder.newFolder().toString();
+        JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase1(), dir);
+        db.addEntry(song(1));
+        try {
+            new JournaledMusicDatabase(new MusicDatabase1(), dir);
+            fail("a directory in use was opened again");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("in use"));
+        }
+        db.close();
+        try (JournaledMusicDatabase again = new JournaledMusicDatabase(
+                new MusicDatabase1(), dir)) {
+            assertTrue(again.contains(song(1)));
+        }
+    }
+
+    /**
+     * Compaction leaves one snapshot and the journal after it, which
+     * together replay to the same songs.
+     *
+     * @throws IOException
+     *             If the directory cannot be made
+     */
+    @Test
+    public final void testCompaction() throws IOException {
+        Path dir = this.folder.newFolder().toPath();
+        MusicDatabase reference = new MusicDatabase1();
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase3(), dir.toString(), 0, 4096)) {
+            change(db, reference, 0);
+            db.compact();
+            change(db, reference, 10000);
+        }
+        int snapshots = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                "snapshot-*")) {
+            for (Path file : files) {
+                assertFalse(file.toString().endsWith(".tmp"));
+                snapshots++;
+            }
+        }
+        assertEquals(1, snapshots);
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase3(), dir.toString())) {
+            assertEquals(songsOf(reference), songsOf(db));
+        }
+    }
+
+    /**
+     * A change made while other writers roll the journal over is in the files
+     * once it returns.
+     *
+     * @throws IOException
+     *             If the directory cannot be made
+     * @throws InterruptedException
+     *             If interrupted while waiting for the writers
+     */
+    @Test
+    public final void testRolloverRace()
+            throws IOException, InterruptedException {
+        Path dir = this.folder.newFolder().toPath();
+        try (JournaledMusicDatabase db = new JournaledMusicDatabase(
+                new MusicDatabase4(), dir.toString(), 0, 512)) {
+            inParallel(4, t -> {
+                for (int i = 0; i < 25; i++) {
+                    Song song = song(100 * t + i);
+                    db.addEntry(song);
+                    try (JournaledMusicDatabase crashed =
+                            new JournaledMusicDatabase(new MusicDatabase1(),
+                                    this.crashCopy(dir).toString())) {
+                        assertTrue(crashed.contains(song));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            assertEquals(100, db.size());
+        }
+    }
+
+}
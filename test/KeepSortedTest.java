@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code keepSorted} and {@code stopKeepingSorted} of
+ * every kernel.
+ */
+public class KeepSortedTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns a song picked by {@code random} from a catalog of 5000.
+     *
+     * @param random
+     *            The source of randomness
+     * @return The song
+     */
+    private static Song song(Random random) {
+        int i = random.nextInt(5000);
+        return new Song("Title " + (i * 7919 % 5000), "Artist " + (i % 31),
+                "Album " + (i % 11), (i % 8) + ":" + (10 + i % 50));
+    }
+
+    /**
+     * Checks that {@code db} is in {@code order}, by iteration and by
+     * {@code getEntryInOrder}.
+     *
+     * @param db
+     *            The database
+     * @param order
+     *            The order
+     */
+    private static void assertSorted(MusicDatabase db,
+            Comparator<Song> order) {
+        List<Song> songs = songsOf(db);
+        assertEquals(db.size(), songs.size());
+        for (int n = 1; n < songs.size(); n++) {
+            assertTrue(order.compare(songs.get(n - 1), songs.get(n)) <= 0);
+        }
+        for (int n = 0; n < songs.size(); n += 97) {
+            assertEquals(songs.get(n), db.getEntryInOrder(n));
+        }
+    }
+
+    /**
+     * Every kernel stays sorted through random adds and removals, and all
+     * agree on the songs.
+     */
+    @Test
+    public final void testStaysSorted() {
+        for (SongOrder order : SongOrder.values()) {
+            List<List<Song>> results = new ArrayList<List<Song>>();
+            for (MusicDatabase db : kernels()) {
+                Random random = new Random(order.ordinal());
+                for (int i = 0; i < 200; i++) {
+                    Song song = song(random);
+                    if (!db.contains(song)) {
+                        db.addEntry(song);
+                    }
+                }
+                db.keepSorted(order);
+                assertSorted(db, order);
+                for (int i = 0; i < 3000; i++) {
+                    Song song = song(random);
+                    if (i % 4 == 3 && db.contains(song)) {
+                        db.removeEntry(song);
+                    } else if (!db.contains(song)) {
+                        db.addEntry(song);
+                    }
+                }
+                assertSorted(db, order);
+                results.add(songsOf(db));
+            }
+            for (List<Song> result : results) {
+                assertEquals(results.get(0).size(), result.size());
+                assertTrue(result.containsAll(results.get(0)));
+            }
+        }
+    }
+
+    /**
+     * A {@code SortedSongList} kept by a {@code SongOrder}, which compares
+     * the keys it keeps beside each song, holds the same songs in the same
+     * order, ties included, as one kept by a plain comparator through adds,
+     * merged batches, removals, and copies.
+     */
+    @Test
+    public final void testKeysMatchComparator() {
+        Comparator<Song> plain = (a, b) -> SongOrder.ARTIST.compare(a, b);
+        SortedSongList keyed = new SortedSongList(SongOrder.ARTIST,
+                new ArrayList<Song>());
+        SortedSongList compared = new SortedSongList(plain,
+                new ArrayList<Song>());
+        Random random = new Random(9);
+        for (int round = 0; round < 20; round++) {
+            List<Song> batch = new ArrayList<Song>();
+            for (int i = 0; i < 300; i++) {
+                Song song = song(random);
+                if (i % 3 == 0) {
+                    batch.add(song);
+                } else if (i % 3 == 1) {
+                    keyed.add(song);
+                    compared.add(song);
+                } else {
+                    keyed.remove(song);
+                    compared.remove(song);
+                }
+            }
+            keyed.addAll(batch);
+            compared.addAll(batch);
+            int album = round % 11;
+            keyed.removeIf(song -> song.album().equals("Album " + album));
+            compared.removeIf(song -> song.album().equals("Album " + album));
+            assertEquals(compared, keyed);
+            keyed = new SortedSongList(keyed);
+        }
+        assertTrue(keyed.size() > 0);
+    }
+
+    /**
+     * After {@code stopKeepingSorted}, songs are appended again, after the
+     * sorted ones.
+     */
+    @Test
+    public final void testStopKeepingSorted() {
+        for (MusicDatabase db : kernels()) {
+            Random random = new Random(5);
+            db.keepSorted(SongOrder.TITLE);
+            for (int i = 0; i < 500; i++) {
+                Song song = song(random);
+                if (!db.contains(song)) {
+                    db.addEntry(song);
+                }
+            }
+            assertSorted(db, SongOrder.TITLE);
+            db.stopKeepingSorted();
+            Song last = new Song("AAA first by title", "Artist", "Album",
+                    "1:00");
+            db.addEntry(last);
+            assertEquals(last, db.getEntryInOrder(db.size() - 1));
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code MappedSongReader} and
+ * {@code readFromMappedFile}.
+ */
+public class MappedSongReaderTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the files read.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes {@code text} to a new .txt file as UTF-8.
+     *
+     * @param text
+     *            The content
+     * @return The file
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    private Path write(String text) throws IOException {
+        Path path = this.folder.newFile("songs.txt").toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    /**
+     * Reads the rows of {@code path} in {@code [start, end)}, keeping the
+     * valid songs and the error messages of the others.
+     *
+     * @param path
+     *            The file
+     * @param start
+     *            The offset of the first row
+     * @param end
+     *            The offset just past the last row
+     * @param firstLineNumber
+     *            The line number of the first row
+     * @param songs
+     *            Receives the valid songs
+     * @param errors
+     *            Receives the error messages
+     * @throws IOException
+     *             If reading fails
+     */
+    private static void readRange(Path path, long start, long end,
+            int firstLineNumber, List<Song> songs, List<String> errors)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ);
+                MappedSongReader rdr = new MappedSongReader(channel, start,
+                        end, firstLineNumber)) {
+            Song song = rdr.next();
+            while (song != null || rdr.error() != null) {
+                if (song == null) {
+                    errors.add(rdr.error());
+                } else {
+                    songs.add(song);
+                }
+                song = rdr.next();
+            }
+        }
+    }
+
+    /**
+     * Multi-byte characters are decoded, line breaks of every kind end rows,
+     * and invalid rows are reported by their line number.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testWholeFile() throws IOException {
+        Path path = this.write(SongRowReader.HEADER
+                + "\r\nCaf\u00e9\t\u4e2d\u6587\t\t1:00\rbad\n"
+                + "A\t\tC\t2:00\r\nD\tE\tF\t3:00");
+        List<Song> songs = new ArrayList<Song>();
+        List<String> errors = new ArrayList<String>();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ);
+                MappedSongReader rdr = new MappedSongReader(channel, 0,
+                        channel.size(), 1)) {
+            assertEquals(SongRowReader.HEADER, rdr.readHeader());
+            assertEquals(1, rdr.lineNumber());
+        }
+        int start = SongRowReader.HEADER.length() + 2;
+        readRange(path, start, Files.size(path), 2, songs, errors);
+        assertEquals(List.of(new Song("Caf\u00e9", "\u4e2d\u6587", "", "1:00"),
+                new Song("D", "E", "F", "3:00")), songs);
+        assertEquals(List.of(
+                SongRowReader.problemMessage(SongRowReader.WRONG_FIELD_COUNT,
+                        3),
+                SongRowReader.problemMessage(SongRowReader.BLANK_ARTIST, 4)),
+                errors);
+    }
+
+    /**
+     * A range in the middle of a file reads only its own rows.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testRange() throws IOException {
+        String first = "A\tB\tC\t1:00\n";
+        String second = "D\tE\tF\t2:00\n";
+        Path path = this.write(first + second + "G\tH\tI\t3:00\n");
+        List<Song> songs = new ArrayList<Song>();
+        List<String> errors = new ArrayList<String>();
+        readRange(path, first.length(), first.length() + second.length(), 7,
+                songs, errors);
+        assertEquals(List.of(new Song("D", "E", "F", "2:00")), songs);
+        assertEquals(0, errors.size());
+    }
+
+    /**
+     * An empty range has no rows.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testEmptyRange() throws IOException {
+        Path path = this.write("");
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ);
+                MappedSongReader rdr = new MappedSongReader(channel, 0, 0,
+                        1)) {
+            assertNull(rdr.readHeader());
+            assertNull(rdr.next());
+            assertNull(rdr.error());
+        }
+    }
+
+    /**
+     * {@code readFromMappedFile} adds the same songs, in the same order, as
+     * {@code readFromFile}, with every kernel.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testSameAsReadFromFile() throws IOException {
+        StringBuilder text = new StringBuilder(SongRowReader.HEADER);
+        for (int i = 0; i < 2000; i++) {
+            text.append("\nSong ").append(i % 1900).append("\t\u00c9 ")
+                    .append(i % 13).append("\tAlbum ").append(i % 4)
+                    .append("\t3:").append(10 + i % 50);
+        }
+        Path path = this.write(text.toString());
+        for (MusicDatabase mapped : kernels()) {
+            MusicDatabase read = mapped.newInstance();
+            mapped.readFromMappedFile(path.toString());
+            read.readFromFile(path.toString());
+            assertEquals(read.size(), mapped.size());
+            for (int n = 0; n < read.size(); n++) {
+                assertEquals(read.getEntryInOrder(n),
+                        mapped.getEntryInOrder(n));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,381 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for the concurrency of {@code MusicDatabase4}.
+ */
+public class MusicDatabase4Test extends MusicDatabaseFixture {
+
+    /**
+     * Milliseconds a test that could deadlock is given.
+     */
+    private static final int TIMEOUT = 10000;
+
+    /**
+     * Returns {@code count} distinct songs, the first numbered {@code from},
+     * by one of ten artists.
+     *
+     * @param from
+     *            The number of the first song
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    private static List<Song> songs(int from, int count) {
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = from; i < from + count; i++) {
+            songs.add(new Song("Song " + i, "Artist " + (i % 10),
+                    "Album " + (i % 10), "3:" + (10 + i % 50)));
+        }
+        return songs;
+    }
+
+    /**
+     * Threads adding overlapping songs leave each in the database once.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testConcurrentAddEntry() throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        List<Song> songs = songs(0, 2000);
+        inParallel(4, t -> {
+            for (int i = t * 200; i < songs.size(); i++) {
+                db.addEntry(songs.get(i));
+            }
+        });
+        assertEquals(songs.size(), db.size());
+        for (Song song : songs) {
+            assertTrue(db.contains(song));
+        }
+        assertEquals(songs.size() / 10,
+                db.getEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                        "Artist 3").size());
+    }
+
+    /**
+     * Threads adding and removing disjoint songs leave the indexes matching
+     * the songs.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testConcurrentAddAndRemove()
+            throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        List<Song> songs = songs(0, 4000);
+        inParallel(4, t -> {
+            for (int i = t; i < songs.size(); i += 4) {
+                db.addEntry(songs.get(i));
+                if (i % 8 < 4) {
+                    db.removeEntry(songs.get(i));
+                }
+            }
+        });
+        assertEquals(songs.size() / 2, db.size());
+        int found = 0;
+        for (int a = 0; a < 10; a++) {
+            found += db.getEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                    "Artist " + a).size();
+        }
+        assertEquals(songs.size() / 2, found);
+    }
+
+    /**
+     * {@code addAll} into an empty database is seen whole or not at all.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testAddAllIntoEmptyIsAtomic()
+            throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        List<Song> songs = songs(0, 50000);
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentLinkedQueue<Integer> seen = new ConcurrentLinkedQueue<>();
+        inParallel(2, t -> {
+            if (t == 0) {
+                db.addAll(songs);
+                done.set(true);
+            } else {
+                while (!done.get()) {
+                    int size = db.size();
+                    if (size != 0 && size != songs.size()) {
+                        seen.add(size);
+                    }
+                }
+            }
+        });
+        assertTrue("partial sizes seen: " + seen, seen.isEmpty());
+        assertEquals(songs.size(), db.size());
+        assertEquals(songs.size() / 10,
+                db.getEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                        "Album 7").size());
+    }
+
+    /**
+     * {@code addAll} skips songs already present and repeated songs.
+     */
+    @Test
+    public final void testAddAllSkipsDuplicates() {
+        MusicDatabase db = new MusicDatabase4();
+        List<Song> songs = songs(0, 100);
+        songs.addAll(songs(50, 100));
+        db.addAll(songs);
+        assertEquals(150, db.size());
+        db.addAll(songs(100, 100));
+        assertEquals(200, db.size());
+        assertEquals(20, db.getEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                "Artist 0").size());
+    }
+
+    /**
+     * {@code addAll} into an empty kept-sorted database keeps the order.
+     */
+    @Test
+    public final void testAddAllKeepsSorted() {
+        MusicDatabase db = new MusicDatabase4();
+        db.keepSorted(SongOrder.TITLE);
+        List<Song> songs = songs(0, 300);
+        Collections.reverse(songs);
+        db.addAll(songs);
+        Song previous = null;
+        for (Song song : db) {
+            if (previous != null) {
+                assertTrue(SongOrder.TITLE.compare(previous, song) <= 0);
+            }
+            previous = song;
+        }
+        assertEquals(300, db.size());
+    }
+
+    /**
+     * {@code addAll} into a kept-sorted database with opt-in indexes keeps
+     * the order and every index.
+     */
+    @Test
+    public final void testAddAllIntoNonEmptyKeepsIndexes() {
+        MusicDatabase db = new MusicDatabase4();
+        db.keepSorted(SongOrder.ARTIST_TITLE);
+        db.indexNormalized(MusicDatabaseKernel.SearchField.ARTIST);
+        db.indexPrefixes(MusicDatabaseKernel.SearchField.TITLE);
+        db.indexText(MusicDatabaseKernel.SearchField.ALBUM);
+        db.addAll(songs(0, 100));
+        db.addAll(songs(50, 100));
+        assertEquals(150, db.size());
+        Song previous = null;
+        for (Song song : db) {
+            if (previous != null) {
+                assertTrue(
+                        SongOrder.ARTIST_TITLE.compare(previous, song) <= 0);
+            }
+            previous = song;
+        }
+        assertEquals(15, db.getEntriesNormalized(
+                MusicDatabaseKernel.SearchField.ARTIST, "  ARTIST   4").size());
+        assertEquals(11, db.getEntriesWithPrefix(
+                MusicDatabaseKernel.SearchField.TITLE, "Song 14", 100).size());
+        assertEquals(15, db.getEntriesContaining(
+                MusicDatabaseKernel.SearchField.ALBUM, "bum 9").size());
+    }
+
+    /**
+     * {@code removeEntries} racing adds of the same value removes every song
+     * it returns, and no other.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testRemoveEntriesWithConcurrentAdds()
+            throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        List<Song> songs = songs(0, 4000);
+        ConcurrentLinkedQueue<Song> removed = new ConcurrentLinkedQueue<>();
+        inParallel(2, t -> {
+            if (t == 0) {
+                for (Song song : songs) {
+                    db.addEntry(song);
+                }
+            } else {
+                for (int i = 0; i < 200; i++) {
+                    removed.addAll(db.removeEntries(
+                            MusicDatabaseKernel.SearchField.ARTIST,
+                            "Artist 5"));
+                }
+            }
+        });
+        for (Song song : removed) {
+            assertFalse(db.contains(song));
+        }
+        assertEquals(songs.size(), db.size() + removed.size());
+    }
+
+    /**
+     * Every song a lookup returns while another thread adds songs, and
+     * removes others, is one {@code contains} reports.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testLookupsSeeOnlyContainedSongs()
+            throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentLinkedQueue<Song> missing = new ConcurrentLinkedQueue<>();
+        inParallel(2, t -> {
+            if (t == 0) {
+                for (int i = 0; i < 200; i++) {
+                    db.addAll(songs(20 * i, 20));
+                    db.addEntry(songs(100000 + i, 1).get(0));
+                    db.removeEntries(MusicDatabaseKernel.SearchField.TITLE,
+                            "Song " + (20 * i + 4));
+                }
+                done.set(true);
+            } else {
+                while (!done.get()) {
+                    for (Song song : db.getEntries(
+                            MusicDatabaseKernel.SearchField.ARTIST,
+                            "Artist 3")) {
+                        if (!db.contains(song)) {
+                            missing.add(song);
+                        }
+                    }
+                }
+            }
+        });
+        assertTrue("uncontained songs seen: " + missing, missing.isEmpty());
+    }
+
+    /**
+     * Small {@code addAll} batches and {@code removeEntries}, which lock only
+     * the stripes of their songs, leave the order and indexes matching.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test(timeout = TIMEOUT)
+    public final void testSmallBatchesWithRemovals()
+            throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        ConcurrentLinkedQueue<Song> removed = new ConcurrentLinkedQueue<>();
+        inParallel(4, t -> {
+            for (int i = 0; i < 300; i++) {
+                if (t < 3) {
+                    db.addAll(songs(1000 * t + 3 * i, 3));
+                } else {
+                    removed.addAll(db.removeEntries(
+                            MusicDatabaseKernel.SearchField.ALBUM,
+                            "Album " + (i % 10)));
+                }
+            }
+        });
+        assertEquals(2700, db.size() + removed.size());
+        for (Song song : removed) {
+            assertFalse(db.contains(song));
+        }
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            songs.add(song);
+        }
+        assertEquals(db.size(), songs.size());
+        for (int album = 0; album < 10; album++) {
+            List<Song> expected = new ArrayList<Song>();
+            for (Song song : songs) {
+                if (song.album().equals("Album " + album)) {
+                    expected.add(song);
+                }
+            }
+            assertEquals(expected, db.getEntries(
+                    MusicDatabaseKernel.SearchField.ALBUM, "Album " + album));
+        }
+    }
+
+    /**
+     * {@code getEntryInOrder} follows the order through adds, removals, and
+     * sorts.
+     */
+    @Test
+    public final void testGetEntryInOrderAfterWrites() {
+        MusicDatabase db = new MusicDatabase4();
+        db.addAll(songs(0, 50));
+        for (int round = 0; round < 5; round++) {
+            db.addEntry(songs(100 + round, 1).get(0));
+            db.removeEntry(db.getEntryInOrder(7 * round));
+            if (round == 3) {
+                db.sort(SongOrder.ARTIST_TITLE);
+            }
+            int i = 0;
+            for (Song song : db) {
+                assertEquals(song, db.getEntryInOrder(i));
+                i++;
+            }
+            assertEquals(null, db.getEntryInOrder(i));
+        }
+    }
+
+    /**
+     * Two threads transferring between the same two databases in opposite
+     * directions finish.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test(timeout = TIMEOUT)
+    public final void testCrossTransferFromDoesNotDeadlock()
+            throws InterruptedException {
+        MusicDatabase4 a = new MusicDatabase4();
+        MusicDatabase4 b = new MusicDatabase4();
+        a.addAll(songs(0, 10));
+        inParallel(2, t -> {
+            for (int i = 0; i < 20000; i++) {
+                if (t == 0) {
+                    a.transferFrom(b);
+                } else {
+                    b.transferFrom(a);
+                }
+            }
+        });
+        assertTrue(a.size() == 0 || b.size() == 0);
+    }
+
+    /**
+     * Two threads appending the same two databases to each other finish.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test(timeout = TIMEOUT)
+    public final void testCrossAppendDoesNotDeadlock()
+            throws InterruptedException {
+        MusicDatabase4 a = new MusicDatabase4();
+        MusicDatabase4 b = new MusicDatabase4();
+        a.addAll(songs(0, 10));
+        b.addAll(songs(10, 10));
+        inParallel(2, t -> {
+            for (int i = 0; i < 20000; i++) {
+                if (t == 0) {
+                    a.append(b);
+                } else {
+                    b.append(a);
+                }
+            }
+        });
+        assertEquals(20, a.size());
+        assertEquals(20, b.size());
+    }
+
+}
@@ -0,0 +1,215 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code MusicDatabaseBinaryFormat} and the binary
+ * file methods of every kernel.
+ */
+public class MusicDatabaseBinaryFormatTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the binary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns {@code count} songs with repeated artists and albums, a few
+     * with non-ASCII titles.
+     *
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    private static List<Song> songs(int count) {
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = 0; i < count; i++) {
+            String title = "Song " + i;
+            if (i % 10 == 0) {
+                title = "Caf\u00e9 " + i;
+            }
+            songs.add(new Song(title, "Artist " + (i % 9), "Album " + (i % 4),
+                    (i % 6) + ":" + (10 + i % 50)));
+        }
+        return songs;
+    }
+
+    /**
+     * Writes {@code count} songs with {@code MusicDatabase1} to a new file.
+     *
+     * @param count
+     *            The number of songs
+     * @return The file
+     * @throws IOException
+     *             If the file cannot be created
+     */
+    private Path write(int count) throws IOException {
+        Path path = this.folder.newFile().toPath();
+        MusicDatabase db = new MusicDatabase1();
+        db.addAll(songs(count));
+        db.writeToBinaryFile(path.toString());
+        return path;
+    }
+
+    /**
+     * Overwrites the int at {@code position} of {@code path}.
+     *
+     * @param path
+     *            The file
+     * @param position
+     *            The byte position of the int
+     * @param value
+     *            The new value
+     * @throws IOException
+     *             If the file cannot be changed
+     */
+    private static void putInt(Path path, long position, int value)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(Integer.BYTES);
+            b.putInt(value);
+            b.flip();
+            channel.write(b, position);
+        }
+    }
+
+    /**
+     * Reading {@code path} into a new database throws
+     * {@code IllegalArgumentException}.
+     *
+     * @param path
+     *            The file
+     * @throws IOException
+     *             If the file cannot be read
+     */
+    private static void assertRejected(Path path) throws IOException {
+        try {
+            MusicDatabaseBinaryFormat.read(path, new MusicDatabase1());
+            fail("a damaged file was read");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("ERROR"));
+        }
+    }
+
+    /**
+     * Every kernel reads back what every kernel wrote, in order.
+     *
+     * @throws IOException
+     *             If a file cannot be created
+     */
+    @Test
+    public final void testRoundTrip() throws IOException {
+        List<Song> songs = songs(500);
+        for (MusicDatabase writer : kernels()) {
+            writer.addAll(songs);
+            Path path = this.folder.newFile().toPath();
+            writer.writeToBinaryFile(path.toString());
+            for (MusicDatabase reader : kernels()) {
+                reader.readFromBinaryFile(path.toString());
+                assertEquals(songs, songsOf(reader));
+                assertEquals(songs.get(42).seconds(),
+                        reader.getEntryInOrder(42).seconds());
+            }
+        }
+    }
+
+    /**
+     * Reading into a database that has some of the songs adds only the
+     * others, after its own.
+     *
+     * @throws IOException
+     *             If a file cannot be created
+     */
+    @Test
+    public final void testReadSkipsPresent() throws IOException {
+        Path path = this.write(20);
+        List<Song> songs = songs(20);
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(songs.get(5));
+            db.readFromBinaryFile(path.toString());
+            assertEquals(20, db.size());
+            assertEquals(songs.get(5), db.getEntryInOrder(0));
+            assertEquals(songs.get(0), db.getEntryInOrder(1));
+        }
+    }
+
+    /**
+     * An empty database round trips.
+     *
+     * @throws IOException
+     *             If a file cannot be created
+     */
+    @Test
+    public final void testEmpty() throws IOException {
+        Path path = this.write(0);
+        MusicDatabase db = new MusicDatabase2();
+        db.readFromBinaryFile(path.toString());
+        assertEquals(0, db.size());
+    }
+
+    /**
+     * A file with the wrong signature or version is rejected.
+     *
+     * @throws IOException
+     *             If a file cannot be changed
+     */
+    @Test
+    public final void testWrongHeader() throws IOException {
+        Path path = this.write(10);
+        putInt(path, 0, 0x12345678);
+        assertRejected(path);
+
+        path = this.write(10);
+        putInt(path, Integer.BYTES, MusicDatabaseBinaryFormat.VERSION + 1);
+        assertRejected(path);
+    }
+
+    /**
+     * A file whose seconds column disagrees with a length is rejected, and
+     * nothing from it is added.
+     *
+     * @throws IOException
+     *             If a file cannot be changed
+     */
+    @Test
+    public final void testSecondsMismatch() throws IOException {
+        Path path = this.write(10);
+        /* the seconds column is the last int[n] of the file */
+        putInt(path, Files.size(path) - Integer.BYTES, 12345);
+        assertRejected(path);
+        MusicDatabase db = new MusicDatabase3();
+        db.readFromBinaryFile(path.toString());
+        assertEquals(0, db.size());
+    }
+
+    /**
+     * A file that was read can be deleted at once.
+     *
+     * @throws IOException
+     *             If the file cannot be deleted
+     */
+    @Test
+    public final void testFileReleasedAfterRead() throws IOException {
+        Path path = this.write(10);
+        MusicDatabase db = new MusicDatabase4();
+        db.readFromBinaryFile(path.toString());
+        Files.delete(path);
+        assertEquals(10, db.size());
+    }
+
+}
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+/**
+ * Songs and databases shared by the JUnit test fixtures that run against
+ * every kernel.
+ */
+public abstract class MusicDatabaseFixture {
+
+    /**
+     * Returns a new, empty database of every kernel.
+     *
+     * @return The databases
+     */
+    protected static MusicDatabase[] kernels() {
+        return new MusicDatabase[] { new MusicDatabase1(),
+                new MusicDatabase2(), new MusicDatabase3(),
+                new MusicDatabase4() };
+    }
+
+    /**
+     * Returns song {@code i}. Titles are distinct, while artists repeat every
+     * 7 songs, albums every 3, and lengths every 50.
+     *
+     * @param i
+     *            The number of the song
+     * @return The song
+     */
+    protected static Song song(int i) {
+        return new Song("Song " + i, "Artist " + (i % 7), "Album " + (i % 3),
+                (i % 5) + ":" + (10 + i % 50));
+    }
+
+    /**
+     * Returns the songs of {@code db}, in order.
+     *
+     * @param db
+     *            The database
+     * @return Its songs
+     */
+    protected static List<Song> songsOf(MusicDatabase db) {
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            songs.add(song);
+        }
+        return songs;
+    }
+
+    /**
+     * Runs {@code body} on {@code threads} threads at once and waits for
+     * them, rethrowing the first failure.
+     *
+     * @param threads
+     *            The number of threads
+     * @param body
+     *            Given the thread number
+     * @throws InterruptedException
+     *             If interrupted while waiting
+     */
+    protected static void inParallel(int threads, IntConsumer body)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> failures =
+                new ConcurrentLinkedQueue<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int n = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    body.accept(n);
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code getEntries} and {@code removeEntries} of
+ * every kernel, which the indexed kernels answer from per-field indexes.
+ */
+public class MusicDatabaseIndexTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns song {@code i} with a title that repeats every 97 songs, so
+     * title lookups find several songs.
+     *
+     * @param i
+     *            The number of the song
+     * @return The song
+     */
+    private static Song repeating(int i) {
+        Song song = song(i);
+        return new Song("Song " + (i % 97), song.artist(), song.album(),
+                song.length());
+    }
+
+    /**
+     * Returns the songs of {@code db} whose {@code field} is {@code value},
+     * found by a scan in order.
+     *
+     * @param db
+     *            The database
+     * @param field
+     *            The field
+     * @param value
+     *            The value
+     * @return The matching songs
+     */
+    private static List<Song> scan(MusicDatabase db,
+            MusicDatabaseKernel.SearchField field, String value) {
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            if (song.field(field).equals(value)) {
+                songs.add(song);
+            }
+        }
+        return songs;
+    }
+
+    /**
+     * Every field lookup returns the songs with that value in the order of
+     * the database, through adds and removals.
+     */
+    @Test
+    public final void testGetEntriesMatchesScan() {
+        for (MusicDatabase db : kernels()) {
+            Random random = new Random(2);
+            for (int step = 0; step < 3000; step++) {
+                Song song = repeating(random.nextInt(1000));
+                if (random.nextInt(4) > 0 && !db.contains(song)) {
+                    db.addEntry(song);
+                } else if (db.contains(song)) {
+                    db.removeEntry(song);
+                }
+            }
+            for (MusicDatabaseKernel.SearchField field
+                    : MusicDatabaseKernel.SearchField.values()) {
+                for (int i = 0; i < 100; i++) {
+                    String value = repeating(i).field(field);
+                    assertEquals(scan(db, field, value),
+                            db.getEntries(field, value));
+                }
+            }
+            assertTrue(db.getEntries(MusicDatabaseKernel.SearchField.TITLE,
+                    "absent").isEmpty());
+        }
+    }
+
+    /**
+     * Removing by a field value returns exactly the songs a lookup found,
+     * leaves the rest in order, and clears them from every other index.
+     */
+    @Test
+    public final void testRemoveEntries() {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 210; i++) {
+                db.addEntry(repeating(i));
+            }
+            List<Song> expected = db.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 3");
+            List<Song> rest = new ArrayList<Song>();
+            for (Song song : db) {
+                if (!song.artist().equals("Artist 3")) {
+                    rest.add(song);
+                }
+            }
+            assertEquals(expected, db.removeEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 3"));
+            assertEquals(rest.size(), db.size());
+            for (int n = 0; n < rest.size(); n++) {
+                assertEquals(rest.get(n), db.getEntryInOrder(n));
+            }
+            for (Song song : expected) {
+                assertFalse(db.contains(song));
+                assertFalse(db.getEntries(
+                        MusicDatabaseKernel.SearchField.ALBUM, song.album())
+                        .contains(song));
+            }
+            assertTrue(db.removeEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 3")
+                    .isEmpty());
+        }
+    }
+
+    /**
+     * The empty album value is indexed like any other.
+     */
+    @Test
+    public final void testEmptyAlbum() {
+        Song single = new Song("Single", "Artist", "", "2:00");
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(song(1));
+            db.addEntry(single);
+            assertEquals(List.of(single), db.getEntries(
+                    MusicDatabaseKernel.SearchField.ALBUM, ""));
+            assertEquals(List.of(single), db.removeEntries(
+                    MusicDatabaseKernel.SearchField.ALBUM, ""));
+            assertEquals(1, db.size());
+        }
+    }
+
+}
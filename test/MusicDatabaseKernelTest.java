@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for the {@code MusicDatabaseKernel} methods of every
+ * kernel.
+ */
+public class MusicDatabaseKernelTest extends MusicDatabaseFixture {
+
+    /**
+     * A new database is empty.
+     */
+    @Test
+    public final void testEmpty() {
+        for (MusicDatabase db : kernels()) {
+            assertEquals(0, db.size());
+            assertFalse(db.contains(song(1)));
+            assertNull(db.getEntryInOrder(0));
+            assertTrue(songsOf(db).isEmpty());
+        }
+    }
+
+    /**
+     * Added songs are kept in the order they were added, and an equal but
+     * distinct {@code Song} object is found by {@code contains}.
+     */
+    @Test
+    public final void testAddKeepsOrder() {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 100; i++) {
+                db.addEntry(song(i));
+            }
+            assertEquals(100, db.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(song(i), db.getEntryInOrder(i));
+                assertTrue(db.contains(song(i)));
+            }
+            assertNull(db.getEntryInOrder(100));
+            assertFalse(db.contains(song(100)));
+        }
+    }
+
+    /**
+     * Removing a song returns it, closes the gap it left, and lets it be
+     * added again, at the end.
+     */
+    @Test
+    public final void testRemoveAndReadd() {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 10; i++) {
+                db.addEntry(song(i));
+            }
+            assertEquals(song(4), db.removeEntry(song(4)));
+            assertEquals(9, db.size());
+            assertFalse(db.contains(song(4)));
+            assertEquals(song(5), db.getEntryInOrder(4));
+            db.addEntry(song(4));
+            assertEquals(song(4), db.getEntryInOrder(9));
+            assertEquals(10, db.size());
+        }
+    }
+
+    /**
+     * Songs that differ in a single field are distinct.
+     */
+    @Test
+    public final void testSongsDifferingInOneField() {
+        Song base = new Song("Title", "Artist", "Album", "3:00");
+        Song[] others = { new Song("Title2", "Artist", "Album", "3:00"),
+                new Song("Title", "Artist2", "Album", "3:00"),
+                new Song("Title", "Artist", "", "3:00"),
+                new Song("Title", "Artist", "Album", "3:01") };
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(base);
+            for (Song other : others) {
+                assertFalse(db.contains(other));
+                db.addEntry(other);
+            }
+            assertEquals(others.length + 1, db.size());
+            assertTrue(db.contains(base));
+        }
+    }
+
+    /**
+     * Every kernel agrees with {@code MusicDatabase1} through a long run of
+     * random adds and removals.
+     */
+    @Test
+    public final void testKernelsAgree() {
+        MusicDatabase[] dbs = kernels();
+        Random random = new Random(1);
+        for (int step = 0; step < 5000; step++) {
+            Song song = song(random.nextInt(600));
+            boolean add = random.nextInt(3) > 0;
+            for (MusicDatabase db : dbs) {
+                if (add && !db.contains(song)) {
+                    db.addEntry(song);
+                } else if (!add && db.contains(song)) {
+                    assertEquals(song, db.removeEntry(song));
+                }
+            }
+        }
+        List<Song> expected = songsOf(dbs[0]);
+        for (MusicDatabase db : dbs) {
+            assertEquals(expected, songsOf(db));
+            assertEquals(expected.size(), db.size());
+        }
+    }
+
+}
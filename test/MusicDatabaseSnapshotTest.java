@@ -0,0 +1,202 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code snapshot} of every kernel.
+ */
+public class MusicDatabaseSnapshotTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the files snapshots are written to.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A snapshot keeps the songs, order, and query results of the moment it
+     * was taken through every kind of change to the original.
+     */
+    @Test
+    public final void testUnchangedByLaterWrites() {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 300; i++) {
+                db.addEntry(song(i));
+            }
+            List<Song> before = songsOf(db);
+            MusicDatabase snapshot = db.snapshot();
+
+            db.addEntry(song(1000));
+            db.removeEntry(song(7));
+            db.removeEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                    "Artist 2");
+            db.sort(SongOrder.TITLE);
+            db.keepSorted(SongOrder.ALBUM);
+            db.addEntry(song(1001));
+
+            assertEquals(before, songsOf(snapshot));
+            assertEquals(before.size(), snapshot.size());
+            assertTrue(snapshot.contains(song(7)));
+            assertFalse(snapshot.contains(song(1000)));
+            assertEquals(43, snapshot.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 2")
+                    .size());
+            assertEquals(before.get(123), snapshot.getEntryInOrder(123));
+            db.clear();
+            assertEquals(before, songsOf(snapshot));
+        }
+    }
+
+    /**
+     * Two snapshots taken around a change differ only by it, and changing
+     * the original between them leaves the first alone.
+     */
+    @Test
+    public final void testSuccessiveSnapshots() {
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(song(1));
+            MusicDatabase first = db.snapshot();
+            db.addEntry(song(2));
+            MusicDatabase second = db.snapshot();
+            db.removeEntry(song(1));
+            assertEquals(1, first.size());
+            assertEquals(2, second.size());
+            assertEquals(1, db.size());
+            assertEquals(song(2), db.getEntryInOrder(0));
+        }
+    }
+
+    /**
+     * The first write after a snapshot, which copies the representation,
+     * keeps the kept order and every opt-in index of the original.
+     */
+    @Test
+    public final void testFirstWriteKeepsIndexes() {
+        for (MusicDatabase db : kernels()) {
+            db.keepSorted(SongOrder.TITLE);
+            db.indexNormalized(MusicDatabaseKernel.SearchField.ARTIST);
+            db.indexPrefixes(MusicDatabaseKernel.SearchField.TITLE);
+            db.indexText(MusicDatabaseKernel.SearchField.ALBUM);
+            for (int i = 0; i < 100; i++) {
+                db.addEntry(song(i));
+            }
+            MusicDatabase snapshot = db.snapshot();
+            db.addEntry(song(500));
+            db.removeEntry(song(10));
+
+            List<Song> songs = songsOf(db);
+            for (int i = 1; i < songs.size(); i++) {
+                assertTrue(SongOrder.TITLE.compare(songs.get(i - 1),
+                        songs.get(i)) <= 0);
+            }
+            assertEquals(14, db.getEntriesNormalized(
+                    MusicDatabaseKernel.SearchField.ARTIST, " artist  3 ")
+                    .size());
+            assertEquals(12, db.getEntriesWithPrefix(
+                    MusicDatabaseKernel.SearchField.TITLE, "Song 5", 100)
+                    .size());
+            assertEquals(32, db.getEntriesContaining(
+                    MusicDatabaseKernel.SearchField.ALBUM, "bum 1").size());
+            assertEquals(100, snapshot.size());
+        }
+    }
+
+    /**
+     * Every method that would change a snapshot throws.
+     */
+    @Test
+    public final void testImmutable() {
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(song(1));
+            MusicDatabase snapshot = db.snapshot();
+            List<Runnable> writes = new ArrayList<Runnable>();
+            writes.add(() -> snapshot.addEntry(song(2)));
+            writes.add(() -> snapshot.removeEntry(song(1)));
+            writes.add(() -> snapshot.removeEntries(
+                    MusicDatabaseKernel.SearchField.TITLE, "Song 1"));
+            writes.add(() -> snapshot.clear());
+            writes.add(() -> snapshot.sort(SongOrder.TITLE));
+            writes.add(() -> snapshot.keepSorted(SongOrder.TITLE));
+            for (Runnable write : writes) {
+                try {
+                    write.run();
+                    fail("a snapshot was changed");
+                } catch (UnsupportedOperationException e) {
+                    assertEquals(1, snapshot.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * A snapshot can be written out and read back while the original keeps
+     * changing.
+     *
+     * @throws IOException
+     *             If a file cannot be created
+     */
+    @Test
+    public final void testWriteOut() throws IOException {
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 100; i++) {
+                db.addEntry(song(i));
+            }
+            MusicDatabase snapshot = db.snapshot();
+            db.removeEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                    "Album 0");
+            Path path = this.folder.newFile().toPath();
+            snapshot.writeToBinaryFile(path.toString());
+            MusicDatabase copy = db.newInstance();
+            copy.readFromBinaryFile(path.toString());
+            assertEquals(songsOf(snapshot), songsOf(copy));
+            assertEquals(100, copy.size());
+        }
+    }
+
+    /**
+     * A reader iterating a snapshot of {@code MusicDatabase4} sees every
+     * song of it while another thread changes the original.
+     *
+     * @throws InterruptedException
+     *             If interrupted
+     */
+    @Test
+    public final void testConcurrentReader() throws InterruptedException {
+        MusicDatabase db = new MusicDatabase4();
+        for (int i = 0; i < 2000; i++) {
+            db.addEntry(song(i));
+        }
+        MusicDatabase snapshot = db.snapshot();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                db.removeEntry(song(i));
+                db.addEntry(song(i + 5000));
+            }
+        });
+        writer.start();
+        int seen = 0;
+        for (int pass = 0; pass < 20; pass++) {
+            seen = 0;
+            for (Song song : snapshot) {
+                assertTrue(Integer.parseInt(song.title().substring(5)) < 2000);
+                seen++;
+            }
+            assertEquals(2000, seen);
+        }
+        writer.join();
+        assertEquals(2000, snapshot.size());
+        assertFalse(snapshot.contains(song(5000)));
+        assertEquals(2000, db.size());
+    }
+
+}
@@ -0,0 +1,147 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code OffHeapIntList}.
+ */
+public class OffHeapIntListTest {
+
+    /**
+     * Checks that {@code list} holds exactly {@code expected}.
+     *
+     * @param expected
+     *            The values expected
+     * @param list
+     *            The list
+     */
+    private static void assertSame(List<Integer> expected,
+            OffHeapIntList list) {
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((int) expected.get(i), list.get(i));
+        }
+    }
+
+    /**
+     * Appends fill many blocks, and every position reads back.
+     */
+    @Test
+    public final void testAppend() {
+        OffHeapIntList list = new OffHeapIntList();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 50000; i++) {
+            list.add(i * 3);
+            expected.add(i * 3);
+        }
+        assertSame(expected, list);
+        assertEquals(30000, list.indexOf(90000));
+        assertEquals(-1, list.indexOf(1));
+    }
+
+    /**
+     * Inserts and removals at random positions, which split full blocks and
+     * drop empty ones, match an {@code ArrayList}.
+     */
+    @Test
+    public final void testRandomEdits() {
+        OffHeapIntList list = new OffHeapIntList();
+        List<Integer> expected = new ArrayList<Integer>();
+        Random random = new Random(12);
+        for (int step = 0; step < 60000; step++) {
+            int op = random.nextInt(10);
+            int value = random.nextInt();
+            if (op < 6 || expected.isEmpty()) {
+                int i = random.nextInt(expected.size() + 1);
+                list.insert(i, value);
+                expected.add(i, value);
+            } else if (op < 9) {
+                int i = random.nextInt(expected.size());
+                list.removeAt(i);
+                expected.remove(i);
+            } else {
+                int i = random.nextInt(expected.size());
+                list.set(i, value);
+                expected.set(i, value);
+            }
+        }
+        assertSame(expected, list);
+    }
+
+    /**
+     * An indexed list of distinct values finds each of them through random
+     * inserts, removals, and block splits, and not the ones removed.
+     */
+    @Test
+    public final void testIndexedIndexOf() {
+        OffHeapIntList list = new OffHeapIntList(true);
+        List<Integer> expected = new ArrayList<Integer>();
+        Random random = new Random(13);
+        for (int value = 0; value < 30000; value++) {
+            int i = random.nextInt(expected.size() + 1);
+            list.insert(i, value);
+            expected.add(i, value);
+            if (value % 3 == 0) {
+                int j = random.nextInt(expected.size());
+                list.removeAt(j);
+                expected.remove(j);
+            }
+        }
+        OffHeapIntList copy = new OffHeapIntList(list);
+        assertSame(expected, list);
+        for (int value = 0; value < 30000; value++) {
+            assertEquals(expected.indexOf(value), list.indexOf(value));
+            assertEquals(expected.indexOf(value), copy.indexOf(value));
+        }
+    }
+
+    /**
+     * Inserting always at the front keeps the order, and removing every
+     * value leaves a list that can be added to again.
+     */
+    @Test
+    public final void testFrontInsertsAndDrain() {
+        OffHeapIntList list = new OffHeapIntList();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            list.insert(0, i);
+            expected.add(0, i);
+        }
+        assertSame(expected, list);
+        while (list.size() > 0) {
+            list.removeAt(list.size() / 2);
+            expected.remove(expected.size() / 2);
+        }
+        assertSame(expected, list);
+        list.add(5);
+        assertEquals(1, list.size());
+        assertEquals(5, list.get(0));
+    }
+
+    /**
+     * Truncating drops whole blocks and part of one, and a copy is
+     * independent.
+     */
+    @Test
+    public final void testTruncateAndCopy() {
+        OffHeapIntList list = new OffHeapIntList();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 20000; i++) {
+            list.insert(i / 2, i);
+            expected.add(i / 2, i);
+        }
+        OffHeapIntList copy = new OffHeapIntList(list);
+        list.truncate(5001);
+        assertSame(expected.subList(0, 5001), list);
+        list.add(-1);
+        assertEquals(-1, list.get(5001));
+        assertSame(expected, copy);
+        list.truncate(0);
+        assertEquals(0, list.size());
+    }
+
+}
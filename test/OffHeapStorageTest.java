@@ -0,0 +1,185 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for the off-heap storage of {@code MusicDatabase3}:
+ * {@code OffHeapIntColumn}, {@code OffHeapStringPool}, and the kernel built
+ * on them.
+ */
+public class OffHeapStorageTest {
+
+    /**
+     * A column grows past its default capacity and keeps its values through
+     * inserts, removals, and truncation, like a list.
+     */
+    @Test
+    public final void testIntColumnMatchesList() {
+        OffHeapIntColumn column = new OffHeapIntColumn();
+        List<Integer> expected = new ArrayList<Integer>();
+        Random random = new Random(11);
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(10);
+            int value = random.nextInt();
+            if (op < 5 || expected.isEmpty()) {
+                column.add(value);
+                expected.add(value);
+            } else if (op < 7) {
+                int i = random.nextInt(expected.size() + 1);
+                column.insert(i, value);
+                expected.add(i, value);
+            } else if (op < 9) {
+                int i = random.nextInt(expected.size());
+                column.removeAt(i);
+                expected.remove(i);
+            } else {
+                int i = random.nextInt(expected.size());
+                column.set(i, value);
+                expected.set(i, value);
+            }
+        }
+        assertEquals(expected.size(), column.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals((int) expected.get(i), column.get(i));
+        }
+        int last = expected.get(expected.size() - 1);
+        assertEquals(expected.indexOf(last), column.indexOf(last));
+        column.truncate(10);
+        assertEquals(10, column.size());
+        assertEquals((int) expected.get(9), column.get(9));
+    }
+
+    /**
+     * A column of a given size starts zeroed, and a copy is independent.
+     */
+    @Test
+    public final void testIntColumnZeroedAndCopied() {
+        OffHeapIntColumn column = new OffHeapIntColumn(5000);
+        for (int i = 0; i < column.size(); i++) {
+            assertEquals(0, column.get(i));
+        }
+        column.set(4999, 7);
+        OffHeapIntColumn copy = new OffHeapIntColumn(column);
+        column.set(4999, 8);
+        assertEquals(7, copy.get(4999));
+        assertEquals(-1, copy.indexOf(8));
+    }
+
+    /**
+     * A pool numbers distinct strings in order, finds each again, and
+     * decodes non-ASCII text, through several rehashes and arena growths.
+     */
+    @Test
+    public final void testStringPool() {
+        OffHeapStringPool pool = new OffHeapStringPool();
+        List<String> strings = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            String s = "value \u00e9\u4e2d " + i + " " + "x".repeat(i % 40);
+            strings.add(s);
+            assertEquals(i, pool.add(s));
+        }
+        assertEquals(strings.size(), pool.size());
+        for (int i = 0; i < strings.size(); i++) {
+            assertEquals(i, pool.add(strings.get(i)));
+            assertEquals(i, pool.find(strings.get(i)));
+            assertEquals(strings.get(i), pool.get(i));
+        }
+        assertEquals(-1, pool.find("absent"));
+        int empty = pool.add("");
+        assertEquals(strings.size(), empty);
+        assertEquals(empty, pool.add(""));
+        OffHeapStringPool copy = new OffHeapStringPool(pool);
+        pool.add("only in the original");
+        assertEquals(-1, copy.find("only in the original"));
+        assertEquals(strings.get(17), copy.get(17));
+    }
+
+    /**
+     * {@code MusicDatabase3} holds the same songs, in the same order, as
+     * {@code MusicDatabase1} through adds, removals, and sorting.
+     */
+    @Test
+    public final void testKernelMatchesMusicDatabase1() {
+        MusicDatabase offHeap = new MusicDatabase3();
+        MusicDatabase reference = new MusicDatabase1();
+        Random random = new Random(3);
+        for (int step = 0; step < 5000; step++) {
+            int i = random.nextInt(800);
+            Song song = new Song("Title " + i, "Artist " + (i % 17),
+                    "Album " + (i % 5), (i % 7) + ":" + (10 + i % 50));
+            int op = random.nextInt(10);
+            for (MusicDatabase db : new MusicDatabase[] { offHeap,
+                    reference }) {
+                if (op < 6) {
+                    if (!db.contains(song)) {
+                        db.addEntry(song);
+                    }
+                } else if (op < 9) {
+                    if (db.contains(song)) {
+                        db.removeEntry(song);
+                    }
+                } else {
+                    db.removeEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                            "Artist " + (i % 17));
+                }
+            }
+        }
+        offHeap.sort(SongOrder.ALBUM);
+        reference.sort(SongOrder.ALBUM);
+        assertEquals(reference.size(), offHeap.size());
+        for (int n = 0; n < reference.size(); n++) {
+            assertEquals(reference.getEntryInOrder(n),
+                    offHeap.getEntryInOrder(n));
+        }
+        assertNull(offHeap.getEntryInOrder(reference.size()));
+        assertEquals(
+                reference.getEntries(MusicDatabaseKernel.SearchField.LENGTH,
+                        "3:13").size(),
+                offHeap.getEntries(MusicDatabaseKernel.SearchField.LENGTH,
+                        "3:13").size());
+        assertTrue(offHeap.size() > 0);
+    }
+
+    /**
+     * {@code MusicDatabase3} answers lookups right through steady churn that
+     * replaces every song many times over, kept sorted and with normal forms
+     * indexed, so its pool is rebuilt along the way.
+     */
+    @Test
+    public final void testKernelChurn() {
+        MusicDatabase db = new MusicDatabase3();
+        db.keepSorted(SongOrder.ALBUM);
+        db.indexNormalized(MusicDatabaseKernel.SearchField.ARTIST);
+        int live = 1000;
+        for (int i = 0; i < 20 * live; i++) {
+            db.addEntry(new Song("Title " + i, "Artist " + (i % 50),
+                    "Album " + i, "3:" + (10 + i % 50)));
+            if (i >= live) {
+                int old = i - live;
+                db.removeEntry(new Song("Title " + old, "Artist " + (old % 50),
+                        "Album " + old, "3:" + (10 + old % 50)));
+            }
+        }
+        assertEquals(live, db.size());
+        assertTrue(db.getEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                "Album 5").isEmpty());
+        int last = 20 * live - 1;
+        assertEquals(1, db.getEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                "Album " + last).size());
+        assertEquals(20, db.getEntriesNormalized(
+                MusicDatabaseKernel.SearchField.ARTIST, " ARTIST 7").size());
+        assertEquals("Album " + (last - live + 1),
+                db.getEntryInOrder(0).album());
+        for (int n = 1; n < live; n++) {
+            assertTrue(SongOrder.ALBUM.compare(db.getEntryInOrder(n - 1),
+                    db.getEntryInOrder(n)) <= 0);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code getEntriesWithPrefix} of every kernel, with
+ * and without {@code indexPrefixes}.
+ */
+public class PrefixQueryTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns a title made of letters picked by {@code random}, so many
+     * titles share prefixes.
+     *
+     * @param random
+     *            The source of randomness
+     * @return The title
+     */
+    private static String title(Random random) {
+        StringBuilder title = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            title.append("abAB \u00e9".charAt(random.nextInt(6)));
+        }
+        return title.toString();
+    }
+
+    /**
+     * Returns the first {@code limit} songs of {@code db} whose title starts
+     * with {@code prefix}, stably sorted by title.
+     *
+     * @param db
+     *            The database
+     * @param prefix
+     *            The prefix
+     * @param limit
+     *            The most songs to return
+     * @return The matching songs
+     */
+    private static List<Song> scan(MusicDatabase db, String prefix,
+            int limit) {
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            if (song.title().startsWith(prefix)) {
+                songs.add(song);
+            }
+        }
+        songs.sort(Comparator.comparing(Song::title));
+        return songs.subList(0, Math.min(limit, songs.size()));
+    }
+
+    /**
+     * Prefix queries match a scan, with and without the index, through adds
+     * and removals, for every limit.
+     */
+    @Test
+    public final void testMatchesScan() {
+        for (boolean indexed : new boolean[] { false, true }) {
+            for (MusicDatabase db : kernels()) {
+                if (indexed) {
+                    db.indexPrefixes(MusicDatabaseKernel.SearchField.TITLE);
+                }
+                Random random = new Random(21);
+                for (int step = 0; step < 2000; step++) {
+                    Song song = new Song(title(random),
+                            "Artist " + random.nextInt(3), "",
+                            "3:" + (10 + random.nextInt(50)));
+                    if (random.nextInt(4) > 0 && !db.contains(song)) {
+                        db.addEntry(song);
+                    } else if (db.contains(song)) {
+                        db.removeEntry(song);
+                    }
+                }
+                for (int query = 0; query < 200; query++) {
+                    String prefix = title(random);
+                    prefix = prefix.substring(0,
+                            Math.min(prefix.length(), 1 + random.nextInt(2)));
+                    int limit = random.nextInt(30);
+                    assertEquals(prefix + " " + limit,
+                            scan(db, prefix, limit),
+                            db.getEntriesWithPrefix(
+                                    MusicDatabaseKernel.SearchField.TITLE,
+                                    prefix, limit));
+                }
+                assertEquals(scan(db, "", 10), db.getEntriesWithPrefix(
+                        MusicDatabaseKernel.SearchField.TITLE, "", 10));
+                assertEquals(0, db.getEntriesWithPrefix(
+                        MusicDatabaseKernel.SearchField.TITLE, "zzz", 10)
+                        .size());
+            }
+        }
+    }
+
+}
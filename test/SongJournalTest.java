@@ -0,0 +1,217 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code SongJournal}.
+ */
+public class SongJournalTest {
+
+    /**
+     * Holds the journal files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the records replayed from {@code path}, each as its operation
+     * followed by its arguments.
+     *
+     * @param path
+     *            The journal
+     * @param validLength
+     *            Receives the length of the valid records
+     * @return The records
+     * @throws IOException
+     *             If reading fails
+     */
+    private static List<String[]> replay(Path path, long[] validLength)
+            throws IOException {
+        List<String[]> records = new ArrayList<String[]>();
+        validLength[0] = SongJournal.replay(path, (operation, arguments) -> {
+            String[] record = new String[arguments.length + 1];
+            record[0] = String.valueOf(operation);
+            System.arraycopy(arguments, 0, record, 1, arguments.length);
+            records.add(record);
+        });
+        return records;
+    }
+
+    /**
+     * Writes three committed records to a new journal at {@code path}.
+     *
+     * @param path
+     *            The journal
+     * @return The position after each record; the last is the file length
+     * @throws IOException
+     *             If writing fails
+     */
+    private static long[] writeThree(Path path) throws IOException {
+        long[] ends = new long[3];
+        try (SongJournal journal = new SongJournal(path, 0, 0)) {
+            ends[0] = journal.append(SongJournal.ADD, "Title", "Artist",
+                    "Album", "3:15");
+            ends[1] = journal.append(SongJournal.SORT, "TITLE");
+            ends[2] = journal.append(SongJournal.CLEAR);
+            journal.commit(ends[2]);
+        }
+        assertEquals(ends[2], Files.size(path));
+        return ends;
+    }
+
+    /**
+     * Flips one byte of {@code path} at {@code position}.
+     *
+     * @param path
+     *            The file
+     * @param position
+     *            The byte to flip
+     * @throws IOException
+     *             If the file cannot be changed
+     */
+    private static void flip(Path path, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            channel.write(b, position);
+        }
+    }
+
+    /**
+     * Committed records replay in order with their arguments.
+     *
+     * @throws IOException
+     *             If the journal cannot be used
+     */
+    @Test
+    public final void testReplay() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("journal-0.log");
+        long length = writeThree(path)[2];
+        long[] valid = new long[1];
+        List<String[]> records = replay(path, valid);
+        assertEquals(length, valid[0]);
+        assertEquals(3, records.size());
+        assertArrayEquals(new String[] { "1", "Title", "Artist", "Album",
+                "3:15" }, records.get(0));
+        assertArrayEquals(new String[] { "5", "TITLE" }, records.get(1));
+        assertArrayEquals(new String[] { "4" }, records.get(2));
+    }
+
+    /**
+     * A missing journal replays nothing.
+     *
+     * @throws IOException
+     *             If the journal cannot be read
+     */
+    @Test
+    public final void testReplayMissing() throws IOException {
+        long[] valid = new long[1];
+        List<String[]> records = replay(
+                this.folder.getRoot().toPath().resolve("none.log"), valid);
+        assertEquals(0, valid[0]);
+        assertTrue(records.isEmpty());
+    }
+
+    /**
+     * A torn record at the end is dropped, and reopening cuts it off so new
+     * records follow the valid ones.
+     *
+     * @throws IOException
+     *             If the journal cannot be used
+     */
+    @Test
+    public final void testTornTail() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("journal-0.log");
+        long length = writeThree(path)[2];
+        Files.write(path, new byte[] { 0, 0, 0, 40, 1, 2, 3 },
+                StandardOpenOption.APPEND);
+        long[] valid = new long[1];
+        assertEquals(3, replay(path, valid).size());
+        assertEquals(length, valid[0]);
+
+        try (SongJournal journal = new SongJournal(path, valid[0],
+                valid[0])) {
+            journal.commit(journal.append(SongJournal.STOP_KEEPING_SORTED));
+        }
+        List<String[]> records = replay(path, valid);
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[] { "7" }, records.get(3));
+        assertEquals(Files.size(path), valid[0]);
+    }
+
+    /**
+     * Replay stops at a record whose checksum does not match.
+     *
+     * @throws IOException
+     *             If the journal cannot be used
+     */
+    @Test
+    public final void testChecksumMismatch() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("journal-0.log");
+        long[] ends = writeThree(path);
+        /* the first byte of the second record's argument */
+        flip(path, ends[0] + 8 + 2 + 4);
+        long[] valid = new long[1];
+        List<String[]> records = replay(path, valid);
+        assertEquals(1, records.size());
+        assertEquals(ends[0], valid[0]);
+    }
+
+    /**
+     * A commit that fails keeps its records pending, cuts nothing committed,
+     * and leaves every later commit throwing.
+     *
+     * @throws IOException
+     *             If the journal cannot be used
+     */
+    @Test
+    public final void testFailedCommit() throws IOException {
+        Path path = this.folder.getRoot().toPath().resolve("journal-0.log");
+        SongJournal journal = new SongJournal(path, 0, 0);
+        long first = journal.append(SongJournal.SORT, "ARTIST");
+        journal.commit(first);
+        long second = journal.append(SongJournal.CLEAR);
+        int pending = journal.pendingBytes();
+
+        /* an interrupted thread's write closes the channel and throws */
+        Thread.currentThread().interrupt();
+        try {
+            journal.commit(second);
+            fail("commit of a closed channel returned");
+        } catch (IOException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(pending, journal.pendingBytes());
+        assertEquals(second, journal.position());
+        long third = journal.append(SongJournal.STOP_KEEPING_SORTED);
+        assertEquals(third - first, journal.pendingBytes());
+        try {
+            journal.commit(first);
+            fail("commit after a failure returned");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("failed"));
+        }
+
+        long[] valid = new long[1];
+        assertEquals(1, replay(path, valid).size());
+        assertEquals(first, valid[0]);
+    }
+
+}
@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code SongOrder} and {@code sort} of every kernel.
+ */
+public class SongOrderTest extends MusicDatabaseFixture {
+
+    /**
+     * Each built-in order, written with plain comparators.
+     */
+    private static final Map<SongOrder, Comparator<Song>> PLAIN = Map.of(
+            SongOrder.TITLE,
+            Comparator.comparing(Song::title, String.CASE_INSENSITIVE_ORDER),
+            SongOrder.ARTIST,
+            Comparator.comparing(Song::artist, String.CASE_INSENSITIVE_ORDER),
+            SongOrder.ALBUM,
+            Comparator.comparing(Song::album, String.CASE_INSENSITIVE_ORDER),
+            SongOrder.LENGTH, Comparator.comparingInt(Song::seconds),
+            SongOrder.ARTIST_TITLE,
+            Comparator.comparing(Song::artist, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(Song::title,
+                            String.CASE_INSENSITIVE_ORDER),
+            SongOrder.ARTIST_ALBUM_TITLE,
+            Comparator.comparing(Song::artist, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(Song::album, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparing(Song::title,
+                            String.CASE_INSENSITIVE_ORDER));
+
+    /**
+     * Code points the random text is made of: letters of both cases, ones
+     * that fold specially, ones from U+E000 on, and supplementary ones with
+     * and without case.
+     */
+    private static final int[] ALPHABET = ("aAbBzZ \u00e9\u00c9\u0131I\u00df"
+            + "\u4e2d\uff21\uff41\ud83c\udfb5\ud801\udc00\ud801\udc28")
+                    .codePoints().toArray();
+
+    /**
+     * Returns text of up to six code points picked by {@code random}, so
+     * values often share a prefix or are a prefix of each other.
+     *
+     * @param random
+     *            The source of randomness
+     * @return The text
+     */
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(7);
+        for (int i = 0; i < length; i++) {
+            text.appendCodePoint(ALPHABET[random.nextInt(ALPHABET.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns {@code count} songs with random text and lengths.
+     *
+     * @param random
+     *            The source of randomness
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    private static List<Song> songs(Random random, int count) {
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = 0; i < count; i++) {
+            String length = "?";
+            if (random.nextInt(10) > 0) {
+                length = random.nextInt(3) + ":" + (10 + random.nextInt(50));
+            }
+            songs.add(new Song("t" + text(random), "a" + text(random),
+                    text(random), length));
+        }
+        return songs;
+    }
+
+    /**
+     * Every built-in order compares pairs of songs as its plain comparator
+     * does.
+     */
+    @Test
+    public final void testCompareMatchesPlain() {
+        List<Song> songs = songs(new Random(13), 3000);
+        for (SongOrder order : SongOrder.values()) {
+            Comparator<Song> plain = PLAIN.get(order);
+            for (int i = 1; i < songs.size(); i++) {
+                Song s1 = songs.get(i - 1);
+                Song s2 = songs.get(i);
+                assertEquals(order + ": " + s1 + " " + s2,
+                        Integer.signum(plain.compare(s1, s2)),
+                        Integer.signum(order.compare(s1, s2)));
+            }
+        }
+    }
+
+    /**
+     * Sorting any kernel by a built-in order, or by any other comparator,
+     * gives the order of a stable {@code List.sort}.
+     */
+    @Test
+    public final void testSortIsStable() {
+        List<Song> songs = songs(new Random(14), 2000);
+        List<Comparator<Song>> orders = new ArrayList<Comparator<Song>>(
+                List.of(SongOrder.values()));
+        orders.add(Comparator.comparing(Song::album).reversed());
+        for (Comparator<Song> order : orders) {
+            Comparator<Song> plain = PLAIN.getOrDefault(order, order);
+            List<Song> expected = new ArrayList<Song>(
+                    new LinkedHashSet<Song>(songs));
+            expected.sort(plain);
+            for (MusicDatabase db : kernels()) {
+                db.addAll(songs);
+                db.sort(order);
+                List<Song> sorted = new ArrayList<Song>();
+                for (Song song : db) {
+                    sorted.add(song);
+                }
+                assertEquals(expected, sorted);
+            }
+        }
+    }
+
+}
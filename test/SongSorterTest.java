@@ -0,0 +1,76 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code SongSorter}.
+ */
+public class SongSorterTest {
+
+    /**
+     * Returns {@code count} songs with few distinct titles and artists, so
+     * most of them tie in every order but {@code LENGTH}.
+     *
+     * @param count
+     *            The number of songs
+     * @return The songs
+     */
+    private static List<Song> songs(int count) {
+        Random random = new Random(15);
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = 0; i < count; i++) {
+            songs.add(new Song("Title " + random.nextInt(40),
+                    "Artist " + random.nextInt(30), "Album " + i,
+                    random.nextInt(9) + ":" + (10 + random.nextInt(50))));
+        }
+        return songs;
+    }
+
+    /**
+     * Sorts of lists on both sides of {@code PARALLEL_SORT_THRESHOLD}, by
+     * keys or by a plain comparator, give the order of a stable
+     * {@code List.sort}.
+     */
+    @Test
+    public final void testSameAsListSort() {
+        List<Comparator<Song>> orders = new ArrayList<Comparator<Song>>(
+                List.of(SongOrder.values()));
+        orders.add(Comparator.comparing(Song::artist).reversed());
+        for (int count : new int[] { 0, 1, 1000,
+                SongSorter.PARALLEL_SORT_THRESHOLD + 1000 }) {
+            List<Song> songs = songs(count);
+            for (Comparator<Song> order : orders) {
+                List<Song> expected = new ArrayList<Song>(songs);
+                expected.sort(order);
+                List<Song> sorted = new ArrayList<Song>(songs);
+                SongSorter.sort(sorted, order);
+                assertEquals(order + " of " + count, expected, sorted);
+            }
+        }
+    }
+
+    /**
+     * The positions of a sort lead through the list in sorted order, with
+     * tied songs in their original order, and leave the list unchanged.
+     */
+    @Test
+    public final void testSortedPositions() {
+        List<Song> songs = songs(SongSorter.PARALLEL_SORT_THRESHOLD + 10);
+        List<Song> original = new ArrayList<Song>(songs);
+        int[] positions = SongSorter.sortedPositions(songs, SongOrder.ARTIST);
+        assertEquals(original, songs);
+        assertEquals(songs.size(), positions.length);
+        for (int i = 1; i < positions.length; i++) {
+            int c = SongOrder.ARTIST.compare(songs.get(positions[i - 1]),
+                    songs.get(positions[i]));
+            assertEquals(true, c < 0 || (c == 0 && positions[i - 1]
+                    < positions[i]));
+        }
+    }
+
+}
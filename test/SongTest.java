@@ -0,0 +1,90 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code Song} lengths and
+ * {@code getEntriesInLengthRange} of every kernel.
+ */
+public class SongTest extends MusicDatabaseFixture {
+
+    /**
+     * Lengths in every supported form parse to seconds.
+     */
+    @Test
+    public final void testParseLength() {
+        assertEquals(0, Song.parseLength("0:00"));
+        assertEquals(225, Song.parseLength("3:45"));
+        assertEquals(225, Song.parseLength("03:45"));
+        assertEquals(3725, Song.parseLength("1:02:05"));
+        assertEquals(90, Song.parseLength("90"));
+        assertEquals(600, Song.parseLength("9:60"));
+    }
+
+    /**
+     * Lengths that are not numbers separated by colons, or too large to
+     * count, parse to -1.
+     */
+    @Test
+    public final void testParseLengthInvalid() {
+        for (String length : new String[] { "", ":", "3:", ":45", "3::45",
+                "3:4a", "-3:45", "3.45", " 3:45", "9999999",
+                "99999:99999:99999:99999" }) {
+            assertEquals(length, -1, Song.parseLength(length));
+        }
+    }
+
+    /**
+     * A song keeps its length in seconds, and one built from a length already
+     * parsed equals one that parses it.
+     */
+    @Test
+    public final void testSeconds() {
+        assertEquals(225, new Song("T", "A", "", "3:45").seconds());
+        assertEquals(-1, new Song("T", "A", "", "unknown").seconds());
+        assertEquals(new Song("T", "A", "", "3:45"),
+                new Song("T", "A", "", "3:45", 225));
+    }
+
+    /**
+     * Range queries return the songs in range, shortest first and in the
+     * order of the database among equal lengths, never an unparsed length,
+     * and stay right through removals.
+     */
+    @Test
+    public final void testLengthRange() {
+        for (MusicDatabase db : kernels()) {
+            Random random = new Random(6);
+            for (int i = 0; i < 1000; i++) {
+                int seconds = random.nextInt(600);
+                db.addEntry(new Song("Song " + i, "Artist", "",
+                        seconds / 60 + ":" + String.format("%02d",
+                                seconds % 60)));
+            }
+            db.addEntry(new Song("Unknown", "Artist", "", "?"));
+            for (int i = 0; i < 1000; i += 3) {
+                db.removeEntries(MusicDatabaseKernel.SearchField.TITLE,
+                        "Song " + i);
+            }
+            for (int[] range : new int[][] { { 0, 599 }, { 100, 200 },
+                    { 300, 300 }, { 700, 800 } }) {
+                List<Song> expected = new ArrayList<Song>();
+                for (Song song : db) {
+                    if (song.seconds() >= range[0]
+                            && song.seconds() <= range[1]) {
+                        expected.add(song);
+                    }
+                }
+                expected.sort(Comparator.comparingInt(Song::seconds));
+                assertEquals(expected,
+                        db.getEntriesInLengthRange(range[0], range[1]));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code split} and {@code append} of every kernel.
+ */
+public class SplitAppendTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns a database of the same kernel as {@code db} holding songs
+     * {@code [from, to)}.
+     *
+     * @param db
+     *            A database of the kernel to use
+     * @param from
+     *            The first song
+     * @param to
+     *            The song after the last
+     * @return The new database
+     */
+    private static MusicDatabase filled(MusicDatabase db, int from, int to) {
+        MusicDatabase result = db.newInstance();
+        for (int i = from; i < to; i++) {
+            result.addEntry(song(i));
+        }
+        return result;
+    }
+
+    /**
+     * Splitting moves the matching songs, in order, into a new database of
+     * the same kernel that can be searched, and leaves the rest.
+     */
+    @Test
+    public final void testSplit() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase db = filled(kernel, 0, 100);
+            List<Song> expected = db.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 1");
+            MusicDatabase split = db.split(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 1");
+            assertEquals(kernel.getClass(), split.getClass());
+            assertEquals(expected, songsOf(split));
+            assertEquals(85, db.size());
+            assertFalse(db.contains(song(1)));
+            assertTrue(split.contains(song(1)));
+            assertEquals(List.of(song(1), song(22)), split.getEntries(
+                    MusicDatabaseKernel.SearchField.ALBUM, "Album 1")
+                    .subList(0, 2));
+            split.addEntry(song(1000));
+            assertFalse(db.contains(song(1000)));
+
+            MusicDatabase none = db.split(
+                    MusicDatabaseKernel.SearchField.TITLE, "absent");
+            assertEquals(0, none.size());
+            assertEquals(85, db.size());
+        }
+    }
+
+    /**
+     * Appending to an empty database copies the other exactly, and the two
+     * then change independently.
+     */
+    @Test
+    public final void testAppendToEmpty() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase source = filled(kernel, 0, 50);
+            MusicDatabase db = kernel.newInstance();
+            db.append(source);
+            assertEquals(songsOf(source), songsOf(db));
+
+            db.addEntry(song(100));
+            db.removeEntry(song(0));
+            source.removeEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                    "Artist 2");
+            assertEquals(50, db.size());
+            assertTrue(db.contains(song(2)));
+            assertEquals(43, source.size());
+            assertTrue(source.contains(song(0)));
+            assertFalse(source.contains(song(100)));
+            assertEquals(8, db.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 2")
+                    .size());
+        }
+    }
+
+    /**
+     * Appending to a database that has songs adds only the new ones, after
+     * its own, from the same kernel or any other, and appending a database
+     * to itself changes nothing.
+     */
+    @Test
+    public final void testAppendToNonEmpty() {
+        for (MusicDatabase kernel : kernels()) {
+            for (MusicDatabase other : kernels()) {
+                MusicDatabase db = filled(kernel, 0, 30);
+                MusicDatabase source = filled(other, 20, 50);
+                db.append(source);
+                List<Song> expected = songsOf(filled(kernel, 0, 50));
+                assertEquals(expected, songsOf(db));
+                assertEquals(30, source.size());
+                db.append(db);
+                assertEquals(expected, songsOf(db));
+            }
+        }
+    }
+
+    /**
+     * Appending to a database kept sorted merges the new songs into order.
+     */
+    @Test
+    public final void testAppendKeepsSorted() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase db = kernel.newInstance();
+            db.keepSorted(SongOrder.LENGTH);
+            db.append(filled(kernel, 0, 60));
+            db.append(filled(kernel, 40, 100));
+            List<Song> songs = songsOf(db);
+            assertEquals(100, songs.size());
+            for (int n = 1; n < songs.size(); n++) {
+                assertTrue(songs.get(n - 1).seconds() <= songs.get(n)
+                        .seconds());
+            }
+        }
+    }
+
+}
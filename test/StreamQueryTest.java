@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code stream} and {@code streamEntries} of every
+ * kernel.
+ */
+public class StreamQueryTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns a database of the same kernel as {@code kernel} holding 500
+     * songs, with some removed and the rest sorted, so its order is not the
+     * order the songs were added in.
+     *
+     * @param kernel
+     *            A database of the kernel to use
+     * @return The new database
+     */
+    private static MusicDatabase filled(MusicDatabase kernel) {
+        MusicDatabase db = kernel.newInstance();
+        for (int i = 0; i < 500; i++) {
+            db.addEntry(song(i));
+        }
+        db.removeEntries(MusicDatabaseKernel.SearchField.ALBUM, "Album 3");
+        db.sort(SongOrder.LENGTH);
+        return db;
+    }
+
+    /**
+     * {@code stream} produces the songs in order, and stops early.
+     */
+    @Test
+    public final void testStream() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase db = filled(kernel);
+            List<Song> songs = new ArrayList<Song>();
+            for (Song song : db) {
+                songs.add(song);
+            }
+            assertEquals(songs, db.stream().collect(Collectors.toList()));
+            assertEquals(songs.subList(10, 20), db.stream().skip(10)
+                    .limit(10).collect(Collectors.toList()));
+            assertEquals(songs.get(0), db.stream().findFirst().get());
+            assertEquals(0, kernel.newInstance().stream().count());
+        }
+    }
+
+    /**
+     * {@code streamEntries} produces what {@code getEntries} returns, on
+     * every field, and pages through it with {@code skip} and {@code limit}.
+     */
+    @Test
+    public final void testStreamEntries() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase db = filled(kernel);
+            for (MusicDatabaseKernel.SearchField field
+                    : MusicDatabaseKernel.SearchField.values()) {
+                for (int i = 0; i < 12; i++) {
+                    String value = song(i).field(field);
+                    List<Song> expected = db.getEntries(field, value);
+                    assertEquals(expected, db.streamEntries(field, value)
+                            .collect(Collectors.toList()));
+                }
+            }
+            List<Song> artist = db.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 2");
+            assertEquals(artist.subList(5, 15),
+                    db.streamEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                            "Artist 2").skip(5).limit(10)
+                            .collect(Collectors.toList()));
+            assertEquals(0, db.streamEntries(
+                    MusicDatabaseKernel.SearchField.TITLE, "absent").count());
+        }
+    }
+
+    /**
+     * Streams chain with further conditions, and a stream of a snapshot can
+     * be consumed while the original changes.
+     */
+    @Test
+    public final void testFilterAndSnapshot() {
+        for (MusicDatabase kernel : kernels()) {
+            MusicDatabase db = filled(kernel);
+            long expected = db.getEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 1")
+                    .stream().filter(s -> s.album().equals("Album 1"))
+                    .count();
+            assertEquals(expected, db.streamEntries(
+                    MusicDatabaseKernel.SearchField.ARTIST, "Artist 1")
+                    .filter(s -> s.album().equals("Album 1")).count());
+            assertTrue(expected > 0);
+
+            MusicDatabase snapshot = db.snapshot();
+            int size = db.size();
+            List<Song> seen = new ArrayList<Song>();
+            snapshot.stream().forEach(song -> {
+                seen.add(song);
+                if (db.contains(song)) {
+                    db.removeEntry(song);
+                }
+            });
+            assertEquals(size, seen.size());
+            assertEquals(0, db.size());
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code StringDictionary} and the dictionary-encoded
+ * indexes of {@code MusicDatabase2}.
+ */
+public class StringDictionaryTest {
+
+    /**
+     * Distinct strings get ids in the order they were first added, through
+     * several rehashes, and each is found again by its id and value.
+     */
+    @Test
+    public final void testIdsInOrder() {
+        StringDictionary strings = new StringDictionary();
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            String value = "Value " + i;
+            values.add(value);
+            assertEquals(i, strings.add(value));
+        }
+        assertEquals(values.size(), strings.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, strings.add(new String(values.get(i))));
+            assertEquals(i, strings.find(values.get(i)));
+            assertEquals(values.get(i), strings.get(i));
+        }
+        assertEquals(-1, strings.find("Value -1"));
+        assertEquals(values.size(), strings.size());
+    }
+
+    /**
+     * Interning from a {@code String}, a {@code char} range, or a UTF-8
+     * {@code byte} range returns the one copy held, for ASCII and non-ASCII
+     * text and the empty string.
+     */
+    @Test
+    public final void testIntern() {
+        StringDictionary strings = new StringDictionary();
+        for (String value : new String[] { "Artist", "Caf\u00e9",
+                "\u4e2d\u6587", "\ud83c\udfb5", "" }) {
+            String held = strings.intern(new String(value));
+            char[] chars = ("<" + value + ">").toCharArray();
+            assertSame(held, strings.intern(chars, 1, chars.length - 1));
+            byte[] bytes = ("<" + value + ">")
+                    .getBytes(StandardCharsets.UTF_8);
+            assertSame(held, strings.intern(bytes, 1, bytes.length - 1));
+            assertSame(held, strings.intern(value));
+        }
+        assertEquals(5, strings.size());
+
+        StringDictionary fresh = new StringDictionary();
+        char[] chars = "xAlbumx".toCharArray();
+        String first = fresh.intern(chars, 1, 6);
+        assertEquals("Album", first);
+        byte[] bytes = "Caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        assertEquals("Caf\u00e9", fresh.intern(bytes, 0, bytes.length));
+        assertSame(first, fresh.intern("Album"));
+        assertEquals(2, fresh.size());
+    }
+
+    /**
+     * {@code MusicDatabase2} answers lookups right through steady churn that
+     * replaces every song many times over, so its dictionary is rebuilt
+     * along the way, and repeated values of its songs are shared.
+     */
+    @Test
+    public final void testMusicDatabase2Churn() {
+        MusicDatabase db = new MusicDatabase2();
+        int live = 1000;
+        for (int i = 0; i < 20 * live; i++) {
+            db.addEntry(new Song("Title " + i, "Artist " + (i % 50),
+                    "Album " + i, "3:" + (10 + i % 50)));
+            if (i >= live) {
+                int old = i - live;
+                db.removeEntry(new Song("Title " + old, "Artist " + (old % 50),
+                        "Album " + old, "3:" + (10 + old % 50)));
+            }
+        }
+        assertEquals(live, db.size());
+        assertTrue(db.getEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                "Album 5").isEmpty());
+        int last = 20 * live - 1;
+        assertEquals(1, db.getEntries(MusicDatabaseKernel.SearchField.ALBUM,
+                "Album " + last).size());
+        assertEquals(20, db.getEntries(MusicDatabaseKernel.SearchField.ARTIST,
+                "Artist 7").size());
+        assertSame(db.getEntryInOrder(0).artist(),
+                db.getEntryInOrder(50).artist());
+        assertEquals("Title " + (last - live + 1),
+                db.getEntryInOrder(0).title());
+    }
+
+}
@@ -0,0 +1,176 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code TabDelimitedSongReader} and
+ * {@code readFromFile}.
+ */
+public class TabDelimitedSongReaderTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the files read.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Reads every row of {@code text} after the header, keeping the valid
+     * songs and the error messages of the others.
+     *
+     * @param text
+     *            The rows, header first
+     * @param songs
+     *            Receives the valid songs
+     * @param errors
+     *            Receives the error messages
+     * @throws IOException
+     *             If reading fails
+     */
+    private static void readAll(String text, List<Song> songs,
+            List<String> errors) throws IOException {
+        try (TabDelimitedSongReader rdr = new TabDelimitedSongReader(
+                new StringReader(text))) {
+            assertEquals(SongRowReader.HEADER, rdr.readHeader());
+            Song song = rdr.next();
+            while (song != null || rdr.error() != null) {
+                if (song == null) {
+                    errors.add(rdr.error());
+                } else {
+                    songs.add(song);
+                }
+                song = rdr.next();
+            }
+        }
+    }
+
+    /**
+     * Rows end in any mix of line feeds, carriage returns, and both, and the
+     * last row need not end in a line break.
+     *
+     * @throws IOException
+     *             If reading fails
+     */
+    @Test
+    public final void testLineBreaks() throws IOException {
+        List<Song> songs = new ArrayList<Song>();
+        List<String> errors = new ArrayList<String>();
+        readAll(SongRowReader.HEADER + "\r\nA\tB\tC\t1:00\rD\tE\t\t2:00\n"
+                + "F\tG\tH\t3:00", songs, errors);
+        assertEquals(List.of(new Song("A", "B", "C", "1:00"),
+                new Song("D", "E", "", "2:00"),
+                new Song("F", "G", "H", "3:00")), songs);
+        assertTrue(errors.isEmpty());
+    }
+
+    /**
+     * Invalid rows are skipped with a message naming their line, and the
+     * rows after them are still read.
+     *
+     * @throws IOException
+     *             If reading fails
+     */
+    @Test
+    public final void testInvalidRows() throws IOException {
+        List<Song> songs = new ArrayList<Song>();
+        List<String> errors = new ArrayList<String>();
+        readAll(SongRowReader.HEADER + "\nA\tB\tC\n\tB\tC\t1:00\n"
+                + "A\t\tC\t1:00\nA\tB\tC\t\n\nA\tB\tC\t1:00\tX\n"
+                + "A\tB\tC\t1:00\n", songs, errors);
+        assertEquals(List.of(new Song("A", "B", "C", "1:00")), songs);
+        assertEquals(List.of(
+                SongRowReader.problemMessage(SongRowReader.WRONG_FIELD_COUNT,
+                        2),
+                SongRowReader.problemMessage(SongRowReader.BLANK_TITLE, 3),
+                SongRowReader.problemMessage(SongRowReader.BLANK_ARTIST, 4),
+                SongRowReader.problemMessage(SongRowReader.BLANK_LENGTH, 5),
+                SongRowReader.problemMessage(SongRowReader.WRONG_FIELD_COUNT,
+                        6),
+                SongRowReader.problemMessage(SongRowReader.WRONG_FIELD_COUNT,
+                        7)),
+                errors);
+    }
+
+    /**
+     * Rows longer than the buffer, and rows split across refills, are read
+     * whole, and repeated values are shared.
+     *
+     * @throws IOException
+     *             If reading fails
+     */
+    @Test
+    public final void testLongRows() throws IOException {
+        StringBuilder text = new StringBuilder(SongRowReader.HEADER);
+        List<Song> expected = new ArrayList<Song>();
+        for (int i = 0; i < 3000; i++) {
+            String title = "Title " + i + " " + "x".repeat(i * 37 % 300);
+            if (i == 1500) {
+                title = "y".repeat(200000);
+            }
+            Song song = new Song(title, "Artist \u00e9 " + (i % 3), "Album",
+                    "4:" + (10 + i % 50));
+            expected.add(song);
+            text.append('\n').append(title).append('\t')
+                    .append(song.artist()).append("\tAlbum\t")
+                    .append(song.length());
+        }
+        List<Song> songs = new ArrayList<Song>();
+        List<String> errors = new ArrayList<String>();
+        readAll(text.toString(), songs, errors);
+        assertEquals(expected, songs);
+        assertTrue(errors.isEmpty());
+        assertSame(songs.get(0).artist(), songs.get(2997).artist());
+    }
+
+    /**
+     * An empty input has no header.
+     *
+     * @throws IOException
+     *             If reading fails
+     */
+    @Test
+    public final void testEmpty() throws IOException {
+        try (TabDelimitedSongReader rdr = new TabDelimitedSongReader(
+                new StringReader(""))) {
+            assertNull(rdr.readHeader());
+            assertNull(rdr.next());
+            assertNull(rdr.error());
+        }
+    }
+
+    /**
+     * {@code readFromFile} adds the valid rows of a UTF-8 file that are not
+     * already in the database, in order, with every kernel.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testReadFromFile() throws IOException {
+        Path path = this.folder.newFile("songs.txt").toPath();
+        Files.write(path, (SongRowReader.HEADER
+                + "\nCaf\u00e9\tB\tC\t1:00\nbad row\nD\tE\t\t2:00\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        for (MusicDatabase db : kernels()) {
+            db.addEntry(new Song("D", "E", "", "2:00"));
+            db.readFromFile(path.toString());
+            assertEquals(2, db.size());
+            assertEquals(new Song("Caf\u00e9", "B", "C", "1:00"),
+                    db.getEntryInOrder(1));
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JUnit test fixture for {@code TabDelimitedSongWriter} and
+ * {@code writeToFile}.
+ */
+public class TabDelimitedSongWriterTest extends MusicDatabaseFixture {
+
+    /**
+     * Holds the files written.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns the text {@code writeToFile} should produce for {@code songs}.
+     *
+     * @param songs
+     *            The songs
+     * @return The expected text
+     */
+    private static String expected(List<Song> songs) {
+        String nl = System.lineSeparator();
+        StringBuilder text = new StringBuilder(SongRowReader.HEADER);
+        text.append(nl);
+        for (Song song : songs) {
+            text.append(song.title()).append('\t').append(song.artist())
+                    .append('\t').append(song.album()).append('\t')
+                    .append(song.length()).append(nl);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes {@code songs} with a new writer to {@code path}.
+     *
+     * @param path
+     *            The file
+     * @param songs
+     *            The songs
+     * @throws IOException
+     *             If writing fails
+     */
+    private static void write(Path path, List<Song> songs)
+            throws IOException {
+        try (TabDelimitedSongWriter wrtr = new TabDelimitedSongWriter(
+                FileChannel.open(path, StandardOpenOption.WRITE))) {
+            wrtr.writeHeader();
+            for (Song song : songs) {
+                wrtr.write(song);
+            }
+        }
+    }
+
+    /**
+     * Text of every width, including surrogate pairs, is encoded exactly as
+     * {@code String.getBytes} encodes it, across many buffer flushes.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testEncodesLikeGetBytes() throws IOException {
+        List<Song> songs = new ArrayList<Song>();
+        for (int i = 0; i < 20000; i++) {
+            songs.add(new Song("Title " + i + " \u00e9\u4e2d\ud83c\udfb5",
+                    "Artist " + (i % 9), "", "3:" + (10 + i % 50)));
+        }
+        songs.add(new Song("\ud83c\udfb5".repeat(400000), "A", "B", "1:00"));
+        Path path = this.folder.newFile().toPath();
+        write(path, songs);
+        assertArrayEquals(
+                expected(songs).getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(path));
+    }
+
+    /**
+     * An unpaired surrogate is written as a question mark.
+     *
+     * @throws IOException
+     *             If the file cannot be written
+     */
+    @Test
+    public final void testUnpairedSurrogate() throws IOException {
+        List<Song> songs = List.of(new Song("a\ud83cb", "c\udfb5", "", "1:00"));
+        Path path = this.folder.newFile().toPath();
+        write(path, songs);
+        String text = new String(Files.readAllBytes(path),
+                StandardCharsets.UTF_8);
+        assertEquals(expected(List.of(new Song("a?b", "c?", "", "1:00"))),
+                text);
+    }
+
+    /**
+     * {@code writeToFile} writes every kernel's songs in order, and
+     * {@code readFromFile} reads them back.
+     */
+    @Test
+    public final void testRoundTrip() {
+        Path path = this.folder.getRoot().toPath().resolve("out")
+                .resolve("songs.txt");
+        for (MusicDatabase db : kernels()) {
+            for (int i = 0; i < 100; i++) {
+                db.addEntry(new Song("Caf\u00e9 " + i, "Artist " + (i % 4),
+                        "", "2:" + (10 + i % 50)));
+            }
+            db.writeToFile(path.toString(), false);
+            MusicDatabase copy = db.newInstance();
+            copy.readFromFile(path.toString());
+            assertEquals(db.size(), copy.size());
+            for (int n = 0; n < db.size(); n++) {
+                assertEquals(db.getEntryInOrder(n), copy.getEntryInOrder(n));
+            }
+        }
+    }
+
+    /**
+     * An atomic write replaces the file whole, leaves no temporary file
+     * behind, and gives the new file the permissions of any new file.
+     *
+     * @throws IOException
+     *             If a file cannot be read
+     */
+    @Test
+    public final void testAtomicReplace() throws IOException {
+        Path dir = this.folder.getRoot().toPath();
+        Path path = Files.writeString(dir.resolve("songs.txt"), "old");
+        MusicDatabase db = new MusicDatabase1();
+        db.addEntry(new Song("A", "B", "C", "1:00"));
+        db.writeToFile(path.toString(), true);
+        assertEquals(expected(List.of(new Song("A", "B", "C", "1:00"))),
+                Files.readString(path));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(path), files.collect(Collectors.toList()));
+        }
+
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews()
+                .contains("posix"));
+        Path plain = Files.createFile(dir.resolve("plain.txt"));
+        Files.setPosixFilePermissions(path,
+                PosixFilePermissions.fromString("rw-------"));
+        db.writeToFile(path.toString(), true);
+        assertEquals(Files.getPosixFilePermissions(plain),
+                Files.getPosixFilePermissions(path));
+    }
+
+}
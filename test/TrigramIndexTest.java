@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code TrigramIndex} and the substring, wildcard,
+ * and fuzzy queries of every kernel, with and without {@code indexText}.
+ */
+public class TrigramIndexTest extends MusicDatabaseFixture {
+
+    /**
+     * Returns text of up to eight letters picked by {@code random} from a
+     * small alphabet, so values often overlap.
+     *
+     * @param random
+     *            The source of randomness
+     * @param min
+     *            The fewest letters
+     * @return The text
+     */
+    private static String text(Random random, int min) {
+        StringBuilder text = new StringBuilder();
+        int length = min + random.nextInt(9 - min);
+        for (int i = 0; i < length; i++) {
+            text.append("abcAB ".charAt(random.nextInt(6)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the Levenshtein distance between {@code a} and {@code b}.
+     *
+     * @param a
+     *            The first string
+     * @param b
+     *            The second string
+     * @return The distance
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    int cost = 1;
+                    if (a.charAt(i - 1) == b.charAt(j - 1)) {
+                        cost = 0;
+                    }
+                    d[i][j] = Math.min(d[i - 1][j - 1] + cost,
+                            Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    /**
+     * Returns the songs of {@code db} whose normalized artist passes
+     * {@code test}, stably sorted by {@code order}.
+     *
+     * @param db
+     *            The database
+     * @param test
+     *            The test of the normalized artist
+     * @param order
+     *            The order of the result
+     * @return The matching songs
+     */
+    private static List<Song> scan(MusicDatabase db, Predicate<String> test,
+            Comparator<Song> order) {
+        List<Song> songs = new ArrayList<Song>();
+        for (Song song : db) {
+            if (test.test(FieldNormalizer.normalize(song.artist()))) {
+                songs.add(song);
+            }
+        }
+        songs.sort(order);
+        return songs;
+    }
+
+    /**
+     * Wildcards match any run of characters or any one character.
+     */
+    @Test
+    public final void testGlobMatches() {
+        assertTrue(TrigramIndex.globMatches("hello", "h*o"));
+        assertTrue(TrigramIndex.globMatches("hello", "h?llo"));
+        assertTrue(TrigramIndex.globMatches("hello", "*"));
+        assertTrue(TrigramIndex.globMatches("", "*"));
+        assertTrue(TrigramIndex.globMatches("aaab", "*a*b"));
+        assertTrue(TrigramIndex.globMatches("abcbcd", "a*bcd"));
+        assertFalse(TrigramIndex.globMatches("hello", "h*x"));
+        assertFalse(TrigramIndex.globMatches("hello", "hell"));
+        assertFalse(TrigramIndex.globMatches("hello", "?hello"));
+        assertFalse(TrigramIndex.globMatches("", "?"));
+    }
+
+    /**
+     * The bounded edit distance is the true distance when it is at most the
+     * bound, and one more than the bound otherwise.
+     */
+    @Test
+    public final void testEditDistance() {
+        Random random = new Random(22);
+        for (int i = 0; i < 3000; i++) {
+            String a = text(random, 0);
+            String b = text(random, 0);
+            int max = random.nextInt(4);
+            assertEquals(a + " " + b,
+                    Math.min(distance(a, b), max + 1),
+                    TrigramIndex.editDistance(a, b, max));
+        }
+    }
+
+    /**
+     * Substring, wildcard, and fuzzy queries match a scan, with and without
+     * the index, through adds and removals.
+     */
+    @Test
+    public final void testQueriesMatchScan() {
+        Comparator<Song> byArtist = Comparator.comparing(Song::artist);
+        for (boolean indexed : new boolean[] { false, true }) {
+            for (MusicDatabase db : kernels()) {
+                if (indexed) {
+                    db.indexText(MusicDatabaseKernel.SearchField.ARTIST);
+                }
+                Random random = new Random(23);
+                for (int step = 0; step < 1500; step++) {
+                    Song song = new Song("Song " + random.nextInt(5),
+                            text(random, 1), "",
+                            "3:" + (10 + random.nextInt(50)));
+                    if (random.nextInt(4) > 0 && !db.contains(song)) {
+                        db.addEntry(song);
+                    } else if (db.contains(song)) {
+                        db.removeEntry(song);
+                    }
+                }
+                for (int query = 0; query < 50; query++) {
+                    String text = text(random, 1).trim();
+                    String normal = FieldNormalizer.normalize(text);
+                    assertEquals(text, scan(db, s -> s.contains(normal),
+                            byArtist), db.getEntriesContaining(
+                                    MusicDatabaseKernel.SearchField.ARTIST,
+                                    text));
+
+                    String pattern = normal.replace('b', '?') + "*";
+                    assertEquals(pattern,
+                            scan(db, s -> TrigramIndex.globMatches(s,
+                                    pattern), byArtist),
+                            db.getEntriesMatching(
+                                    MusicDatabaseKernel.SearchField.ARTIST,
+                                    pattern));
+
+                    int max = 1 + random.nextInt(2);
+                    assertEquals(text + " " + max,
+                            scan(db, s -> distance(s, normal) <= max,
+                                    Comparator.comparingInt(
+                                            (Song s) -> distance(
+                                                    FieldNormalizer.normalize(
+                                                            s.artist()),
+                                                    normal))
+                                            .thenComparing(byArtist)),
+                            db.getEntriesSimilar(
+                                    MusicDatabaseKernel.SearchField.ARTIST,
+                                    text, max));
+                }
+            }
+        }
+    }
+
+}